@@ -46,6 +46,12 @@ android {
         compose = true
         buildConfig = true
     }
+
+    testOptions {
+        // SteganographyHelperTest draws real bitmaps under Robolectric; the codec, probe and
+        // scheduler tests are plain JVM and don't need it
+        unitTests.isIncludeAndroidResources = true
+    }
 }
 
 dependencies {
@@ -74,6 +80,9 @@ dependencies {
     // Coroutines
     implementation("org.jetbrains.kotlinx:kotlinx-coroutines-android:1.9.0")
 
+    // WorkManager (background media scan)
+    implementation("androidx.work:work-runtime-ktx:2.9.1")
+
     // JSON
     implementation("org.json:json:20240303")
 
@@ -99,6 +108,7 @@ dependencies {
     // Testing
     testImplementation("junit:junit:4.13.2")
     testImplementation("org.jetbrains.kotlinx:kotlinx-coroutines-test:1.9.0")
+    testImplementation("org.robolectric:robolectric:4.14.1")
     androidTestImplementation("androidx.test.ext:junit:1.2.1")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.6.1")
     androidTestImplementation(platform("androidx.compose:compose-bom:2024.12.01"))
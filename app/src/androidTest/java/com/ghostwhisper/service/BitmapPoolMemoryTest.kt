@@ -0,0 +1,83 @@
+package com.ghostwhisper.service
+
+import android.graphics.Bitmap
+import android.graphics.Color
+import android.os.Bundle
+import android.os.Debug
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Memory report for repeated steganography sessions.
+ *
+ * Runs 20 encode/decode cycles (LSB + DCT) the way [com.ghostwhisper.ui.screens.EncodeSection]
+ * does — source and output bitmaps from [BitmapPool], released after each cycle — and reports peak
+ * and steady-state native heap usage. Results are logged under `BitmapPoolMemory` and sent as
+ * instrumentation status so they show up in `am instrument -r` output.
+ */
+@RunWith(AndroidJUnit4::class)
+class BitmapPoolMemoryTest {
+
+    companion object {
+        private const val TAG = "BitmapPoolMemory"
+        private const val CYCLES = 20
+        private const val WARMUP_CYCLES = 2
+        private const val WIDTH = 1600
+        private const val HEIGHT = 1200
+    }
+
+    @Test
+    fun twentyEncodeDecodeCyclesReuseBitmaps() {
+        val pool = BitmapPool(maxBytes = 256L * 1024 * 1024)
+        val message = "{\"v\":1,\"kid\":\"8f3a\",\"iv\":\"AAAAAAAAAAAAAAAA\",\"ct\":\"secret\"}"
+        val nativeSamples = LongArray(CYCLES)
+
+        for (cycle in 0 until CYCLES) {
+            val source = pool.obtain(WIDTH, HEIGHT)
+            for (y in 0 until HEIGHT) {
+                for (x in 0 until WIDTH step 16) {
+                    source.setPixel(x, y, Color.rgb(x and 0xFF, y and 0xFF, (x + y) and 0xFF))
+                }
+            }
+
+            val lsb = SteganographyHelper.encode(source, message, pool)
+            assertNotNull(lsb)
+            assertEquals(message, SteganographyHelper.decode(lsb!!))
+
+            val dct = DCTSteganographyHelper.encode(source, message, pool)
+            assertNotNull(dct)
+            assertEquals(message, DCTSteganographyHelper.decode(dct!!))
+
+            pool.release(lsb)
+            pool.release(dct)
+            pool.release(source)
+
+            nativeSamples[cycle] = Debug.getNativeHeapAllocatedSize()
+        }
+
+        val stats = pool.stats()
+        val steady = nativeSamples.drop(WARMUP_CYCLES)
+        val report =
+                Bundle().apply {
+                    putLong("native_peak_bytes", nativeSamples.max())
+                    putLong("native_steady_avg_bytes", steady.average().toLong())
+                    putLong("native_steady_growth_bytes", steady.last() - steady.first())
+                    putLong("pool_peak_bytes", stats.peakBytes)
+                    putInt("pool_hits", stats.hits)
+                    putInt("pool_misses", stats.misses)
+                    putInt("pool_evictions", stats.evictions)
+                }
+        Log.i(TAG, "Memory report over $CYCLES cycles: $report")
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, report)
+
+        // Only the first cycle allocates: source + one output per algorithm
+        assertEquals(3, stats.misses)
+        assertEquals(0, stats.evictions)
+        val bitmapBytes = BitmapPool.bytesFor(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888)
+        assertEquals(3 * bitmapBytes, stats.peakBytes)
+    }
+}
@@ -0,0 +1,81 @@
+package com.ghostwhisper.service
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.os.Bundle
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import java.io.ByteArrayOutputStream
+import kotlin.random.Random
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Size and time comparison of the lossless stego output formats.
+ *
+ * Encodes a photo-like 12 MP image carrying an LSB payload with every supported
+ * [StegoImageWriter.Format], checks that the payload survives a platform decode, and reports the
+ * median write time and output size per format. Results are logged under `StegoWriterBench` and
+ * sent as instrumentation status.
+ */
+@RunWith(AndroidJUnit4::class)
+class StegoImageWriterBenchmark {
+
+    companion object {
+        private const val TAG = "StegoWriterBench"
+        private const val WIDTH = 4000
+        private const val HEIGHT = 3000
+        private const val RUNS = 5
+    }
+
+    /** Smooth gradients with sensor-like noise — close to how a camera photo compresses. */
+    private fun photoLikeBitmap(): Bitmap {
+        val bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888)
+        val random = Random(1)
+        val row = IntArray(WIDTH)
+        for (y in 0 until HEIGHT) {
+            for (x in 0 until WIDTH) {
+                val r = (x * 255 / WIDTH + random.nextInt(-3, 4)).coerceIn(0, 255)
+                val g = (y * 255 / HEIGHT + random.nextInt(-3, 4)).coerceIn(0, 255)
+                val b = ((x + y) / 28 + random.nextInt(-3, 4)).coerceIn(0, 255)
+                row[x] = (0xFF shl 24) or (r shl 16) or (g shl 8) or b
+            }
+            bitmap.setPixels(row, 0, WIDTH, 0, y, WIDTH, 1)
+        }
+        return bitmap
+    }
+
+    @Test
+    fun compareLosslessFormats() {
+        val message = "{\"v\":1,\"kid\":\"8f3a\",\"iv\":\"AAAAAAAAAAAAAAAA\",\"ct\":\"secret\"}"
+        val stego = SteganographyHelper.encode(photoLikeBitmap(), message)
+        assertNotNull(stego)
+
+        val report = Bundle()
+        for (format in StegoImageWriter.supportedFormats()) {
+            val times = LongArray(RUNS)
+            var bytes = ByteArray(0)
+            for (run in 0 until RUNS) {
+                val out = ByteArrayOutputStream(WIDTH * HEIGHT)
+                val start = System.nanoTime()
+                runBlocking { StegoImageWriter.write(stego!!, format, out) }
+                times[run] = (System.nanoTime() - start) / 1_000_000
+                bytes = out.toByteArray()
+            }
+
+            val decoded = BitmapFactory.decodeByteArray(bytes, 0, bytes.size)
+            assertNotNull("$format not decodable", decoded)
+            assertEquals("$format lost the payload", message, SteganographyHelper.decode(decoded))
+
+            val median = times.sorted()[RUNS / 2]
+            report.putLong("${format.name.lowercase()}_ms", median)
+            report.putLong("${format.name.lowercase()}_bytes", bytes.size.toLong())
+            Log.i(TAG, "$format: median $median ms, ${bytes.size} bytes")
+        }
+
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, report)
+    }
+}
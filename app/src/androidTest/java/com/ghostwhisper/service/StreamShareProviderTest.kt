@@ -0,0 +1,77 @@
+package com.ghostwhisper.service
+
+import android.provider.OpenableColumns
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import java.io.FileNotFoundException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Instrumented tests for [StreamShareProvider].
+ *
+ * Verifies:
+ * - Registered producers stream through the content resolver, repeatedly
+ * - Metadata (type, display name) is served without running the producer
+ * - Unregistered URIs stop resolving and release their resources
+ */
+@RunWith(AndroidJUnit4::class)
+class StreamShareProviderTest {
+
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext
+    private val resolver = context.contentResolver
+
+    @Test
+    fun streamsProducerOutputOnEveryRead() {
+        val payload = ByteArray(512 * 1024) { (it * 31).toByte() }
+        val uri =
+                StreamShareProvider.register(context, "payload.bin", "application/octet-stream") {
+                    out ->
+                    out.write(payload)
+                }
+
+        repeat(2) {
+            val read = resolver.openInputStream(uri)!!.use { it.readBytes() }
+            assertArrayEquals(payload, read)
+        }
+        StreamShareProvider.unregister(uri)
+    }
+
+    @Test
+    fun servesTypeAndDisplayName() {
+        val uri = StreamShareProvider.register(context, "stego_image.png", "image/png") {}
+
+        assertEquals("image/png", resolver.getType(uri))
+        resolver.query(uri, null, null, null, null)!!.use { cursor ->
+            assertTrue(cursor.moveToFirst())
+            val name = cursor.getString(cursor.getColumnIndexOrThrow(OpenableColumns.DISPLAY_NAME))
+            assertEquals("stego_image.png", name)
+        }
+        StreamShareProvider.unregister(uri)
+    }
+
+    @Test
+    fun unregisterReleasesAndStopsServing() {
+        val released = CountDownLatch(1)
+        val uri =
+                StreamShareProvider.register(
+                        context,
+                        "qr.png",
+                        "image/png",
+                        onReleased = { released.countDown() }
+                ) { out -> out.write(1) }
+
+        StreamShareProvider.unregister(uri)
+
+        assertTrue(released.await(1, TimeUnit.SECONDS))
+        try {
+            resolver.openInputStream(uri)
+            fail("Expected unregistered URI to be unreadable")
+        } catch (e: FileNotFoundException) {
+            // expected
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.ghostwhisper
 
 import android.app.Application
+import android.content.ComponentCallbacks2
 import android.util.Log
 import com.ghostwhisper.data.repository.UserRepository
+import com.ghostwhisper.service.BitmapPool
+import com.ghostwhisper.service.StreamShareProvider
 import com.google.firebase.FirebaseApp
 import com.google.firebase.auth.FirebaseAuth
 import kotlinx.coroutines.CoroutineScope
@@ -25,6 +28,9 @@ class GhostWhisperApp : Application() {
         // Initialize Firebase
         FirebaseApp.initializeApp(this)
 
+        // Shares are streamed now; drop temp files left behind by older versions
+        appScope.launch { StreamShareProvider.deleteLegacyCacheFiles(this@GhostWhisperApp) }
+
         // Update last active timestamp if user is logged in
         val currentUser = FirebaseAuth.getInstance().currentUser
         if (currentUser != null) {
@@ -37,4 +43,12 @@ class GhostWhisperApp : Application() {
             }
         }
     }
+
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        // Pooled steganography bitmaps are pure cache — drop them once the UI is hidden
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            BitmapPool.getInstance(this).clear()
+        }
+    }
 }
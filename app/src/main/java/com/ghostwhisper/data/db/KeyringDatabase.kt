@@ -8,17 +8,25 @@ import androidx.room.migration.Migration
 import androidx.sqlite.db.SupportSQLiteDatabase
 import com.ghostwhisper.data.model.ChannelKey
 import com.ghostwhisper.data.model.ChannelMember
+import com.ghostwhisper.data.model.ScannedMedia
 
 /**
  * Room database for Ghost Whisper's keyring and channel members.
  *
  * Version 2: Added ChannelMember entity and new fields on ChannelKey.
+ * Version 3: Added the media scan index (ScannedMedia).
  */
-@Database(entities = [ChannelKey::class, ChannelMember::class], version = 2, exportSchema = false)
+@Database(
+        entities = [ChannelKey::class, ChannelMember::class, ScannedMedia::class],
+        version = 3,
+        exportSchema = false
+)
 abstract class KeyringDatabase : RoomDatabase() {
 
     abstract fun keyringDao(): KeyringDao
 
+    abstract fun mediaScanDao(): MediaScanDao
+
     companion object {
         @Volatile private var INSTANCE: KeyringDatabase? = null
 
@@ -62,6 +70,28 @@ abstract class KeyringDatabase : RoomDatabase() {
                     }
                 }
 
+        /** Migration from v2 to v3: add the background media scan index. */
+        private val MIGRATION_2_3 =
+                object : Migration(2, 3) {
+                    override fun migrate(db: SupportSQLiteDatabase) {
+                        db.execSQL(
+                                """
+                            CREATE TABLE IF NOT EXISTS media_scan_index (
+                                uri TEXT NOT NULL,
+                                size INTEGER NOT NULL,
+                                dateModified INTEGER NOT NULL,
+                                result TEXT NOT NULL,
+                                scannedAt INTEGER NOT NULL,
+                                PRIMARY KEY(uri, size, dateModified)
+                            )
+                        """.trimIndent()
+                        )
+                        db.execSQL(
+                                "CREATE INDEX IF NOT EXISTS index_media_scan_index_result ON media_scan_index (result)"
+                        )
+                    }
+                }
+
         /** Get the singleton database instance. Thread-safe via double-checked locking. */
         fun getInstance(context: Context): KeyringDatabase {
             return INSTANCE
@@ -76,7 +106,7 @@ abstract class KeyringDatabase : RoomDatabase() {
                             KeyringDatabase::class.java,
                             "ghost_whisper_keyring.db"
                     )
-                    .addMigrations(MIGRATION_1_2)
+                    .addMigrations(MIGRATION_1_2, MIGRATION_2_3)
                     .fallbackToDestructiveMigration()
                     .build()
         }
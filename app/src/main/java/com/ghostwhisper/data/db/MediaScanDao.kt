@@ -0,0 +1,29 @@
+package com.ghostwhisper.data.db
+
+import androidx.room.*
+import com.ghostwhisper.data.model.ScannedMedia
+import kotlinx.coroutines.flow.Flow
+
+/** Data Access Object for the background media scan index. */
+@Dao
+interface MediaScanDao {
+
+        /** Whether this exact file version (URI + size + modification time) was already probed. */
+        @Query(
+                "SELECT EXISTS(SELECT 1 FROM media_scan_index WHERE uri = :uri AND size = :size AND dateModified = :dateModified)"
+        )
+        suspend fun isIndexed(uri: String, size: Long, dateModified: Long): Boolean
+
+        /** Record a probe result. A concurrent duplicate probe of the same version is ignored. */
+        @Insert(onConflict = OnConflictStrategy.IGNORE) suspend fun insert(entry: ScannedMedia)
+
+        /** Images whose header matched a Ghost Whisper payload, newest first. */
+        @Query(
+                "SELECT * FROM media_scan_index WHERE result IN ('LSB', 'DCT', 'GIF') ORDER BY scannedAt DESC"
+        )
+        fun getHits(): Flow<List<ScannedMedia>>
+
+        /** Drop index rows older than [cutoff] (their media is long gone or already handled). */
+        @Query("DELETE FROM media_scan_index WHERE scannedAt < :cutoff")
+        suspend fun deleteOlderThan(cutoff: Long): Int
+}
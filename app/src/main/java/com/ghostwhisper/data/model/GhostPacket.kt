@@ -45,6 +45,30 @@ data class GhostPacket(
         fun fromBytes(bytes: ByteArray): GhostPacket {
             return fromJson(String(bytes, Charsets.UTF_8))
         }
+
+        /** Fixed JSON characters around the variable fields: braces, keys, quotes, v=1. */
+        private const val JSON_FRAMING_BYTES = 32
+        private const val KEY_ID_CHARS = 4
+        private const val IV_BASE64_CHARS = 16 // 12-byte IV, unpadded URL-safe Base64
+        private const val AUTH_TAG_BYTES = 16
+
+        /**
+         * Serialized size of a packet carrying [plaintextBytes] of UTF-8 plaintext. Used to turn a
+         * carrier's capacity into a message-length limit before anything is encrypted.
+         */
+        fun serializedSizeFor(plaintextBytes: Int): Int {
+            val ciphertextBytes = plaintextBytes + AUTH_TAG_BYTES
+            val ciphertextChars = (ciphertextBytes * 4 + 2) / 3 // unpadded Base64
+            return JSON_FRAMING_BYTES + KEY_ID_CHARS + IV_BASE64_CHARS + ciphertextChars
+        }
+
+        /** Largest plaintext (UTF-8 bytes) whose packet fits in [capacityBytes]; 0 if none. */
+        fun maxPlaintextFor(capacityBytes: Int): Int {
+            val ciphertextChars =
+                    capacityBytes - JSON_FRAMING_BYTES - KEY_ID_CHARS - IV_BASE64_CHARS
+            val ciphertextBytes = ciphertextChars * 3 / 4
+            return (ciphertextBytes - AUTH_TAG_BYTES).coerceAtLeast(0)
+        }
     }
 
     /** Serialize this packet to JSON string. */
@@ -0,0 +1,50 @@
+package com.ghostwhisper.data.model
+
+import androidx.room.Entity
+import androidx.room.Index
+
+/**
+ * One probed MediaStore image in the background scan index.
+ *
+ * Keyed by content URI + size + modification time, so a file is probed exactly once and probed
+ * again only if it is replaced in place.
+ */
+@Entity(
+        tableName = "media_scan_index",
+        primaryKeys = ["uri", "size", "dateModified"],
+        indices = [Index(value = ["result"])]
+)
+data class ScannedMedia(
+        /** MediaStore content URI of the image. */
+        val uri: String,
+
+        /** File size in bytes (MediaStore `SIZE`). */
+        val size: Long,
+
+        /** MediaStore `DATE_MODIFIED`, in seconds. */
+        val dateModified: Long,
+
+        /** Which header probe matched, if any. */
+        val result: ScanResult,
+
+        /** When the probe ran. */
+        val scannedAt: Long = System.currentTimeMillis()
+)
+
+/** Outcome of a header probe. */
+enum class ScanResult {
+    /** No Ghost Whisper header found. */
+    NONE,
+    /** LSB header in the first pixels (lossless PNG). */
+    LSB,
+    /** DCT header in the top blocks (survives JPEG re-compression). */
+    DCT,
+    /** Ghost Whisper application extension block in a GIF. */
+    GIF,
+    /** The file could not be read or decoded. */
+    UNREADABLE;
+
+    /** Whether a payload header was found. */
+    val isHit: Boolean
+        get() = this == LSB || this == DCT || this == GIF
+}
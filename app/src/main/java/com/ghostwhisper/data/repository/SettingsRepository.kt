@@ -24,6 +24,30 @@ class SettingsRepository(context: Context) {
         get() = prefs.getFloat("overlay_timeout", 10f)
         set(value) = prefs.edit { putFloat("overlay_timeout", value) }
 
+    var mediaScanEnabled: Boolean
+        get() = prefs.getBoolean("media_scan_enabled", false)
+        set(value) = prefs.edit { putBoolean("media_scan_enabled", value) }
+
+    /** Decrypt payloads from WhatsApp notifications (needs notification access too). */
+    var notificationPrefetchEnabled: Boolean
+        get() = prefs.getBoolean("notification_prefetch_enabled", false)
+        set(value) = prefs.edit { putBoolean("notification_prefetch_enabled", value) }
+
+    /** Keep decrypted messages across restarts, encrypted with a Keystore key. */
+    var timelinePersistEnabled: Boolean
+        get() = prefs.getBoolean("timeline_persist_enabled", false)
+        set(value) = prefs.edit { putBoolean("timeline_persist_enabled", value) }
+
+    /** MediaStore `DATE_ADDED` (seconds) of the newest image the media scan has covered. */
+    var mediaScanWatermark: Long
+        get() = prefs.getLong("media_scan_watermark", 0L)
+        set(value) = prefs.edit { putLong("media_scan_watermark", value) }
+
+    /** MediaStore `_ID` of that image, to continue within a second the last run cut through. */
+    var mediaScanWatermarkId: Long
+        get() = prefs.getLong("media_scan_watermark_id", 0L)
+        set(value) = prefs.edit { putLong("media_scan_watermark_id", value) }
+
     fun getCoverMessages(): List<String> {
         val set = prefs.getStringSet("cover_messages", null)
         return set?.toList()
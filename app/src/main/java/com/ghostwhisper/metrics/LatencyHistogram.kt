@@ -0,0 +1,94 @@
+package com.ghostwhisper.metrics
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ *
+ * Each power of two is split into [SUB_BUCKETS] linear sub-buckets, so any recorded value is
+ * reported within 1/[SUB_BUCKETS] (6.25%) of its true value, from 1 ns up to `Long.MAX_VALUE`, in a
+ * fixed ~8 KB. [record] is a handful of atomic adds; safe from any thread.
+ */
+class LatencyHistogram {
+
+    companion object {
+        private const val SUB_BITS = 4
+        const val SUB_BUCKETS = 1 shl SUB_BITS
+        private const val BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS
+
+        internal fun bucketOf(value: Long): Int {
+            if (value < SUB_BUCKETS) return value.toInt()
+            val exponent = 63 - java.lang.Long.numberOfLeadingZeros(value)
+            val shift = exponent - SUB_BITS
+            val mantissa = (value ushr shift).toInt() - SUB_BUCKETS
+            return (shift + 1) * SUB_BUCKETS + mantissa
+        }
+
+        /** Largest value that falls into [bucket]. */
+        internal fun upperBoundOf(bucket: Int): Long {
+            if (bucket < SUB_BUCKETS) return bucket.toLong()
+            val shift = bucket / SUB_BUCKETS - 1
+            val mantissa = bucket % SUB_BUCKETS
+            val lower = (SUB_BUCKETS + mantissa).toLong() shl shift
+            return lower + (1L shl shift) - 1
+        }
+    }
+
+    /** Point-in-time summary; all values in nanoseconds. */
+    data class Snapshot(
+            val count: Long,
+            val mean: Long,
+            val p50: Long,
+            val p90: Long,
+            val p99: Long,
+            val max: Long
+    )
+
+    private val buckets = AtomicLongArray(BUCKETS)
+    private val count = AtomicLong()
+    private val sum = AtomicLong()
+    private val max = AtomicLong()
+
+    /** Record one duration in nanoseconds. Negative values count as zero. */
+    fun record(nanos: Long) {
+        val value = nanos.coerceAtLeast(0)
+        buckets.incrementAndGet(bucketOf(value))
+        count.incrementAndGet()
+        sum.addAndGet(value)
+        max.accumulateAndGet(value, ::maxOf)
+    }
+
+    /** Value at percentile [p] (0–100), as the upper bound of its bucket, capped at the max. */
+    fun percentile(p: Double): Long {
+        val total = count.get()
+        if (total == 0L) return 0
+        val rank = Math.ceil(p / 100.0 * total).toLong().coerceIn(1, total)
+        var seen = 0L
+        for (i in 0 until BUCKETS) {
+            seen += buckets.get(i)
+            if (seen >= rank) return minOf(upperBoundOf(i), max.get())
+        }
+        return max.get()
+    }
+
+    fun snapshot(): Snapshot {
+        val total = count.get()
+        return Snapshot(
+                count = total,
+                mean = if (total == 0L) 0 else sum.get() / total,
+                p50 = percentile(50.0),
+                p90 = percentile(90.0),
+                p99 = percentile(99.0),
+                max = max.get()
+        )
+    }
+
+    /** Clear all recorded values. Records racing with a reset may be kept or dropped. */
+    fun reset() {
+        for (i in 0 until BUCKETS) buckets.set(i, 0)
+        count.set(0)
+        sum.set(0)
+        max.set(0)
+    }
+}
@@ -0,0 +1,132 @@
+package com.ghostwhisper.metrics
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import org.json.JSONObject
+
+/** A lock-free monotonically increasing count. */
+class Counter {
+    private val value = AtomicLong()
+
+    val count: Long
+        get() = value.get()
+
+    fun increment(by: Long = 1) {
+        value.addAndGet(by)
+    }
+
+    fun reset() {
+        value.set(0)
+    }
+}
+
+/**
+ * Process-wide registry of pipeline counters and latency histograms.
+ *
+ * Recording is a few atomic operations and never allocates, so it stays on in release builds;
+ * the TestBench diagnostics panel reads it to compare devices and WhatsApp versions. Nothing here
+ * is persisted or leaves the device unless the user copies the JSON.
+ *
+ * Names are dotted, `<area>.<what>`; histogram values are nanoseconds.
+ */
+object Metrics {
+
+    private val counters = ConcurrentHashMap<String, Counter>()
+    private val histograms = ConcurrentHashMap<String, LatencyHistogram>()
+    private val states = ConcurrentHashMap<String, String>()
+
+    fun counter(name: String): Counter = counters.getOrPut(name) { Counter() }
+
+    fun histogram(name: String): LatencyHistogram = histograms.getOrPut(name) { LatencyHistogram() }
+
+    /** Publish a named current state (a mode, not a count). [reset] leaves states alone. */
+    fun setState(name: String, value: String) {
+        states[name] = value
+    }
+
+    // ─── Accessibility scan ─────────────────────────────────────────
+    val eventsReceived = counter("a11y.events.received")
+    /** Content changes folded into a scan of the same node that was still queued. */
+    val eventsCoalesced = counter("a11y.events.coalesced")
+    /** Root-wide searches for the chat title (window changes and first sightings only). */
+    val titleLookups = counter("a11y.title.lookups")
+    /** Event subscription changes (see ServiceMode). */
+    val modeSwitches = counter("a11y.mode.switches")
+    val nodesVisited = counter("scan.nodes.visited")
+    val payloadsFound = counter("scan.payloads.found")
+    /** Payloads decrypted and shown (fresh or from the outcome cache). */
+    val decryptHits = counter("scan.decrypt.hits")
+    /** Well-formed packets for a key this device doesn't hold. */
+    val decryptMisses = counter("scan.decrypt.misses")
+    /** Chaff, corrupt packets and authentication failures. */
+    val decryptFailures = counter("scan.decrypt.failures")
+    /** Payloads decrypted ahead of time from WhatsApp notifications. */
+    val payloadsPrefetched = counter("scan.payloads.prefetched")
+    /** Chats re-entered whose overlay was refilled from the timeline, before any scan. */
+    val timelineRestores = counter("scan.timeline.restores")
+    val scanDuration = histogram("scan.duration")
+
+    // ─── Sending ────────────────────────────────────────────────────
+    /** Encrypt + encode + inject, from the user's confirm to the send tap. */
+    val injectLatency = histogram("inject.latency")
+
+    // ─── Scheduling ─────────────────────────────────────────────────
+    /** Queued tasks dropped because their lane was full. */
+    val tasksDropped = counter("sched.tasks.dropped")
+    /** Tasks a full lane refused outright (sends). */
+    val tasksRejected = counter("sched.tasks.rejected")
+    /** Running tasks cancelled because a newer one with the same key arrived (scans). */
+    val tasksPreempted = counter("sched.tasks.preempted")
+
+    // ─── Image steganography ────────────────────────────────────────
+    val stegoEncode = histogram("stego.encode")
+    val stegoDecode = histogram("stego.decode")
+
+    /** Zero every counter and histogram. */
+    fun reset() {
+        counters.values.forEach { it.reset() }
+        histograms.values.forEach { it.reset() }
+    }
+
+    /** Current counter values, sorted by name. */
+    fun counters(): Map<String, Long> = counters.mapValues { it.value.count }.toSortedMap()
+
+    /** Current states, sorted by name. */
+    fun states(): Map<String, String> = states.toSortedMap()
+
+    /** Current histogram summaries, sorted by name. */
+    fun histograms(): Map<String, LatencyHistogram.Snapshot> =
+            histograms.mapValues { it.value.snapshot() }.toSortedMap()
+
+    /** Everything as pretty-printed JSON; histogram values in microseconds. */
+    fun toJson(): String {
+        val json = JSONObject()
+        json.put("states", JSONObject(states()))
+        json.put("counters", JSONObject(counters()))
+        val latencies = JSONObject()
+        for ((name, snapshot) in histograms()) {
+            latencies.put(
+                    name,
+                    JSONObject()
+                            .put("count", snapshot.count)
+                            .put("mean_us", snapshot.mean / 1000)
+                            .put("p50_us", snapshot.p50 / 1000)
+                            .put("p90_us", snapshot.p90 / 1000)
+                            .put("p99_us", snapshot.p99 / 1000)
+                            .put("max_us", snapshot.max / 1000)
+            )
+        }
+        json.put("latencies", latencies)
+        return json.toString(2)
+    }
+}
+
+/** Run [block] and record its duration in this histogram. */
+inline fun <T> LatencyHistogram.time(block: () -> T): T {
+    val start = System.nanoTime()
+    try {
+        return block()
+    } finally {
+        record(System.nanoTime() - start)
+    }
+}
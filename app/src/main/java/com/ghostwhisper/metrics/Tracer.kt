@@ -0,0 +1,166 @@
+package com.ghostwhisper.metrics
+
+import java.io.OutputStream
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+import org.json.JSONObject
+
+/**
+ * Always-on trace of the send and receive pipelines, kept in a fixed ring buffer of the last
+ * [CAPACITY] events and exported in the Chrome trace-event JSON format, which Perfetto
+ * (ui.perfetto.dev) and `chrome://tracing` open directly.
+ *
+ * Three kinds of event:
+ * - [section] / [complete] — a timed slice on the current thread (`"X"`).
+ * - [asyncBegin] / [asyncEnd] / [asyncSection] — a span that may hop threads and coroutines, such
+ *   as one secure send from the widget tap to the send click (`"b"` / `"e"`, matched by id).
+ * - [instant] — a point in time (`"i"`).
+ *
+ * Recording is one small allocation plus an atomic increment. Only stage names and counts go in,
+ * never message text, so a trace is safe to share.
+ */
+object Tracer {
+
+    const val CAPACITY = 8_192
+
+    /** All events are from this process; the viewers only need a stable value. */
+    private const val PID = 1
+
+    // Categories, shown as filterable tracks in the viewers
+    const val CATEGORY_SEND = "send"
+    const val CATEGORY_RECEIVE = "receive"
+    const val CATEGORY_BACKGROUND = "background"
+
+    private class Event(
+            val phase: Char,
+            val name: String,
+            val category: String,
+            val timestampNanos: Long,
+            val durationNanos: Long,
+            val threadId: Long,
+            val id: Long,
+            val args: Map<String, Any?>?
+    )
+
+    private val events = AtomicReferenceArray<Event?>(CAPACITY)
+    private val written = AtomicLong()
+    private val asyncIds = AtomicLong()
+    private val threadNames = ConcurrentHashMap<Long, String>()
+
+    fun now(): Long = System.nanoTime()
+
+    /** A fresh id tying an [asyncBegin] to its [asyncEnd]. */
+    fun newAsyncId(): Long = asyncIds.incrementAndGet()
+
+    /** Record a slice on the current thread that started at [startNanos] (from [now]). */
+    fun complete(
+            name: String,
+            category: String,
+            startNanos: Long,
+            args: Map<String, Any?>? = null
+    ) {
+        add('X', name, category, startNanos, now() - startNanos, 0, args)
+    }
+
+    fun instant(name: String, category: String, args: Map<String, Any?>? = null) {
+        add('i', name, category, now(), 0, 0, args)
+    }
+
+    fun asyncBegin(name: String, category: String, id: Long, args: Map<String, Any?>? = null) {
+        add('b', name, category, now(), 0, id, args)
+    }
+
+    fun asyncEnd(name: String, category: String, id: Long, args: Map<String, Any?>? = null) {
+        add('e', name, category, now(), 0, id, args)
+    }
+
+    /** Drop everything recorded so far. */
+    fun clear() {
+        for (i in 0 until CAPACITY) events.set(i, null)
+    }
+
+    /** Write the buffered events as a Chrome trace-event JSON object to [out] (left open). */
+    fun writeChromeJson(out: OutputStream) {
+        val writer = out.bufferedWriter()
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[")
+        var first = true
+        fun emit(json: JSONObject) {
+            if (!first) writer.write(",\n")
+            writer.write(json.toString())
+            first = false
+        }
+
+        for ((threadId, threadName) in threadNames) {
+            emit(
+                    JSONObject()
+                            .put("name", "thread_name")
+                            .put("ph", "M")
+                            .put("pid", PID)
+                            .put("tid", threadId)
+                            .put("args", JSONObject().put("name", threadName))
+            )
+        }
+        val end = written.get()
+        for (index in maxOf(0, end - CAPACITY) until end) {
+            val event = events.get((index % CAPACITY).toInt()) ?: continue
+            val json =
+                    JSONObject()
+                            .put("name", event.name)
+                            .put("cat", event.category)
+                            .put("ph", event.phase.toString())
+                            .put("ts", event.timestampNanos / 1000.0)
+                            .put("pid", PID)
+                            .put("tid", event.threadId)
+            when (event.phase) {
+                'X' -> json.put("dur", event.durationNanos / 1000.0)
+                'b', 'e' -> json.put("id", event.id)
+                'i' -> json.put("s", "t")
+            }
+            event.args?.let { json.put("args", JSONObject(it)) }
+            emit(json)
+        }
+        writer.write("]}")
+        writer.flush()
+    }
+
+    private fun add(
+            phase: Char,
+            name: String,
+            category: String,
+            timestampNanos: Long,
+            durationNanos: Long,
+            id: Long,
+            args: Map<String, Any?>?
+    ) {
+        val thread = Thread.currentThread()
+        val threadId = thread.id
+        if (!threadNames.containsKey(threadId)) threadNames[threadId] = thread.name
+        val event = Event(phase, name, category, timestampNanos, durationNanos, threadId, id, args)
+        events.set((written.getAndIncrement() % CAPACITY).toInt(), event)
+    }
+}
+
+/**
+ * Run [block] as a traced slice named [name] on the current thread. Only for code that doesn't
+ * suspend — a coroutine may resume on another thread; use [asyncSection] there.
+ */
+inline fun <T> Tracer.section(name: String, category: String, block: () -> T): T {
+    val start = now()
+    try {
+        return block()
+    } finally {
+        complete(name, category, start)
+    }
+}
+
+/** Run [block] as an async span, which may suspend and hop threads. */
+inline fun <T> Tracer.asyncSection(name: String, category: String, block: () -> T): T {
+    val id = newAsyncId()
+    asyncBegin(name, category, id)
+    try {
+        return block()
+    } finally {
+        asyncEnd(name, category, id)
+    }
+}
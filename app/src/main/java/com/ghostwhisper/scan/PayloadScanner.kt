@@ -0,0 +1,313 @@
+package com.ghostwhisper.scan
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.data.model.GhostPacket
+import com.ghostwhisper.stegano.SteganoCodec
+import kotlin.coroutines.cancellation.CancellationException
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+
+/** A channel key resolved for encryption or decryption. */
+class ChannelSecret(val keyId: String, val channelName: String, val key: ByteArray)
+
+/** Looks up the channel key for a packet's key ID; null if this device doesn't hold it. */
+fun interface KeyResolver {
+    suspend fun resolve(keyId: String): ChannelSecret?
+}
+
+/** A hidden message that was found and decrypted. */
+data class DecryptedMessage(
+        val keyId: String,
+        val channelName: String,
+        val plaintext: String,
+        /** The on-screen text that carried the payload (cover + ZW characters). */
+        val rawMessage: String,
+        /** Position among the scan's payloads; 0 is the bottom-most (newest) on screen. */
+        val rank: Int = 0
+)
+
+/** What one [PayloadScanner.scan] call did. */
+data class ScanStats(
+        val nodesVisited: Int = 0,
+        /** Text/description values containing ZW characters. */
+        val payloadsFound: Int = 0,
+        /** AES decrypts actually performed (cache misses whose key was held and that verified). */
+        val decrypts: Int = 0,
+        /** Payloads answered from the outcome cache without decoding or decrypting. */
+        val cacheHits: Int = 0,
+        /** Payloads delivered to `onDecrypted`, fresh or cached. */
+        val hits: Int = 0,
+        /** Well-formed packets for a key this device doesn't hold. */
+        val misses: Int = 0,
+        /** Chaff, corrupt packets and authentication failures. */
+        val failures: Int = 0
+) {
+    operator fun plus(other: ScanStats) =
+            ScanStats(
+                    nodesVisited + other.nodesVisited,
+                    payloadsFound + other.payloadsFound,
+                    decrypts + other.decrypts,
+                    cacheHits + other.cacheHits,
+                    hits + other.hits,
+                    misses + other.misses,
+                    failures + other.failures
+            )
+}
+
+/**
+ * The Silent Fail decryption protocol over a [ScanNode] tree.
+ *
+ * Walks the tree and collects every text or content description carrying ZW characters, then
+ * ranks them by on-screen position, bottom-most first: in a chat that is the newest message, and
+ * the one the user is looking at. In that order it extracts each packet, resolves its key and
+ * decrypts. Anything that fails — no key, malformed packet, bad auth tag — is skipped without a
+ * trace. Successful decrypts are handed to [onDecrypted] with their [DecryptedMessage.rank]. A
+ * scan stops between payloads when its coroutine is cancelled, e.g. because a newer scan of the
+ * same content superseded it, so the older, lower-ranked payloads are never decrypted.
+ *
+ * WhatsApp re-sends the whole visible window on every content change, so the same bubbles are
+ * scanned over and over while a chat scrolls. Outcomes are remembered per on-screen string in a
+ * bounded LRU of [cacheCapacity] entries: repeat sightings of a decrypted message are delivered
+ * again without touching AES, and payloads that can never decrypt (chaff, corrupt or forged
+ * packets) are dropped at the cost of a map lookup. Payloads for a key this device doesn't hold
+ * keep their parsed packet and re-ask [keys] each time, so a key imported later still works.
+ *
+ * Platform-independent: `GhostWhisperService` runs it over [TreeSnapshot]s of live accessibility
+ * nodes, and the replay runner runs it over recorded snapshots. Safe to use from concurrent scans.
+ */
+class PayloadScanner(
+        private val keys: KeyResolver,
+        private val cacheCapacity: Int = DEFAULT_CACHE_CAPACITY,
+        private val onDecrypted: suspend (DecryptedMessage) -> Unit
+) {
+
+    companion object {
+        /** A few screens' worth of bubbles, text and content descriptions. */
+        const val DEFAULT_CACHE_CAPACITY = 512
+    }
+
+    /** What is known about one on-screen string. */
+    private sealed class Outcome {
+        class Decrypted(val message: DecryptedMessage) : Outcome()
+
+        /** Well-formed packet for a key we don't hold (yet). */
+        class NoKey(val packet: GhostPacket) : Outcome()
+
+        /** Will never decrypt: not a packet, or failed authentication under our key. */
+        object Invalid : Outcome()
+    }
+
+    private val outcomes =
+            object : LinkedHashMap<String, Outcome>(64, 0.75f, true) {
+                override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Outcome>) =
+                        size > cacheCapacity
+            }
+
+    /** Entries currently cached; never exceeds [cacheCapacity]. */
+    internal val cacheSize: Int
+        get() = synchronized(outcomes) { outcomes.size }
+
+    /** Scan [root] and its descendants. Children are recycled; [root] is left to the caller. */
+    suspend fun scan(root: ScanNode): ScanStats {
+        val counter = Counter()
+        val candidates = ArrayList<Candidate>()
+        collectNode(root, candidates, counter)
+        decryptRanked(candidates, counter)
+        return counter.toStats()
+    }
+
+    /** Scan every node of a flattened [tree]; no platform calls are made. */
+    suspend fun scan(tree: TreeSnapshot): ScanStats {
+        val counter = Counter()
+        val candidates = ArrayList<Candidate>()
+        for (i in 0 until tree.size) {
+            collectValues(
+                    tree.text(i),
+                    tree.contentDescription(i),
+                    tree.screenBottom(i),
+                    candidates,
+                    counter
+            )
+        }
+        decryptRanked(candidates, counter)
+        return counter.toStats()
+    }
+
+    /**
+     * Decrypt [rawMessages] into the outcome cache without delivering them, so that a later scan
+     * meeting the same strings on screen answers from the cache — e.g. WhatsApp notification text
+     * read before the chat is opened. Strings without a payload are ignored. Returns the messages
+     * decrypted by this call; ones already cached are not returned again.
+     */
+    suspend fun prefetch(rawMessages: Collection<String>): List<DecryptedMessage> {
+        val counter = Counter()
+        val fresh = ArrayList<DecryptedMessage>()
+        for (rawMessage in rawMessages) {
+            if (!SteganoCodec.containsPayload(rawMessage)) continue
+            val decryptsBefore = counter.decrypts
+            val message = decrypt(rawMessage, counter) ?: continue
+            if (counter.decrypts > decryptsBefore) fresh.add(message)
+        }
+        return fresh
+    }
+
+    /** Forget all cached outcomes, e.g. after a channel key was deleted. */
+    fun clearCache() {
+        synchronized(outcomes) { outcomes.clear() }
+    }
+
+    private class Counter {
+        var nodes = 0
+        var payloads = 0
+        var decrypts = 0
+        var cacheHits = 0
+        var hits = 0
+        var misses = 0
+        var failures = 0
+
+        fun toStats() =
+                ScanStats(
+                        nodesVisited = nodes,
+                        payloadsFound = payloads,
+                        decrypts = decrypts,
+                        cacheHits = cacheHits,
+                        hits = hits,
+                        misses = misses,
+                        failures = failures
+                )
+    }
+
+    /** A string carrying ZW characters, and where its node sits on screen. */
+    private class Candidate(val rawMessage: String, val screenBottom: Int)
+
+    /** Recursively collect a node tree's ZW payloads. */
+    private fun collectNode(node: ScanNode, candidates: MutableList<Candidate>, counter: Counter) {
+        collectValues(
+                node.text?.toString(),
+                node.contentDescription?.toString(),
+                node.screenBottom,
+                candidates,
+                counter
+        )
+
+        for (i in 0 until node.childCount) {
+            val child = node.getChild(i)
+            if (child != null) {
+                try {
+                    collectNode(child, candidates, counter)
+                } finally {
+                    child.recycle()
+                }
+            }
+        }
+    }
+
+    /** One node's text and content description. */
+    private fun collectValues(
+            text: String?,
+            contentDesc: String?,
+            screenBottom: Int,
+            candidates: MutableList<Candidate>,
+            counter: Counter
+    ) {
+        counter.nodes++
+
+        if (text != null && SteganoCodec.containsPayload(text)) {
+            counter.payloads++
+            candidates.add(Candidate(text, screenBottom))
+        }
+
+        if (contentDesc != null && SteganoCodec.containsPayload(contentDesc)) {
+            counter.payloads++
+            candidates.add(Candidate(contentDesc, screenBottom))
+        }
+    }
+
+    /** Bottom-most first; stable, so payloads level with each other stay in tree order. */
+    private suspend fun decryptRanked(candidates: MutableList<Candidate>, counter: Counter) {
+        candidates.sortByDescending { it.screenBottom }
+        for ((rank, candidate) in candidates.withIndex()) {
+            // A newer scan superseded this one: leave the rest to it
+            currentCoroutineContext().ensureActive()
+            attemptDecrypt(candidate.rawMessage, rank, counter)
+        }
+    }
+
+    private suspend fun attemptDecrypt(rawMessage: String, rank: Int, counter: Counter) {
+        val message = decrypt(rawMessage, counter) ?: return
+        onDecrypted(message.copy(rank = rank))
+    }
+
+    /** The message hidden in [rawMessage], cached or freshly decrypted; null if there is none. */
+    private suspend fun decrypt(rawMessage: String, counter: Counter): DecryptedMessage? {
+        val packet =
+                when (val cached = synchronized(outcomes) { outcomes[rawMessage] }) {
+                    is Outcome.Decrypted -> {
+                        counter.cacheHits++
+                        counter.hits++
+                        return cached.message
+                    }
+                    Outcome.Invalid -> {
+                        counter.cacheHits++
+                        counter.failures++
+                        return null
+                    }
+                    is Outcome.NoKey -> {
+                        counter.cacheHits++
+                        cached.packet
+                    }
+                    null -> parsePacket(rawMessage)
+                }
+        if (packet == null) {
+            counter.failures++
+            remember(rawMessage, Outcome.Invalid)
+            return null
+        }
+
+        // A failed lookup may be transient, so it isn't cached
+        val secret =
+                try {
+                    keys.resolve(packet.keyId)
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    return null
+                }
+        if (secret == null) {
+            counter.misses++
+            remember(rawMessage, Outcome.NoKey(packet))
+            return null
+        }
+
+        val plaintext =
+                try {
+                    AESCrypto.decrypt(
+                            ciphertext = packet.ciphertextBytes(),
+                            key = secret.key,
+                            iv = packet.ivBytes()
+                    )
+                } catch (e: Exception) {
+                    counter.failures++
+                    remember(rawMessage, Outcome.Invalid)
+                    return null // Silent fail
+                }
+        counter.decrypts++
+        counter.hits++
+        val message = DecryptedMessage(secret.keyId, secret.channelName, plaintext, rawMessage)
+        remember(rawMessage, Outcome.Decrypted(message))
+        return message
+    }
+
+    private fun parsePacket(rawMessage: String): GhostPacket? {
+        return try {
+            val zwPayload = SteganoCodec.extractPayload(rawMessage) ?: return null
+            GhostPacket.fromBytes(SteganoCodec.decode(zwPayload))
+        } catch (e: Exception) {
+            null // Silent fail
+        }
+    }
+
+    private fun remember(rawMessage: String, outcome: Outcome) {
+        synchronized(outcomes) { outcomes[rawMessage] = outcome }
+    }
+}
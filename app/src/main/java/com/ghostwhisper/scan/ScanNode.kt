@@ -0,0 +1,81 @@
+package com.ghostwhisper.scan
+
+/**
+ * The slice of an accessibility node the payload scanner needs.
+ *
+ * On device this wraps `AccessibilityNodeInfo` (see `AccessibilityScanNode`); in tests, replays
+ * and benchmarks it is a plain [SnapshotNode] tree, so the same scanning code runs on the JVM.
+ */
+interface ScanNode {
+    val text: CharSequence?
+    val contentDescription: CharSequence?
+    val viewId: String?
+    val childCount: Int
+
+    /** False for rows laid out but scrolled off screen (list item caches keep a few). */
+    val isVisibleToUser: Boolean
+        get() = true
+
+    /** Bottom edge on screen, in pixels; orders payloads newest first. 0 if unknown. */
+    val screenBottom: Int
+        get() = 0
+
+    /** Child at [index], or null if it has gone away. Callers [recycle] what they get. */
+    fun getChild(index: Int): ScanNode?
+
+    /** Release platform resources held by this node. No-op for snapshots. */
+    fun recycle() {}
+}
+
+/** Immutable in-memory node tree — recorded snapshots and synthetic test trees. */
+data class SnapshotNode(
+        override val text: String? = null,
+        override val contentDescription: String? = null,
+        override val viewId: String? = null,
+        val children: List<SnapshotNode> = emptyList(),
+        override val isVisibleToUser: Boolean = true,
+        override val screenBottom: Int = 0
+) : ScanNode {
+
+    override val childCount: Int
+        get() = children.size
+
+    override fun getChild(index: Int): ScanNode? = children.getOrNull(index)
+
+    /** Total nodes in this subtree, including this one. */
+    fun size(): Int = 1 + children.sumOf { it.size() }
+
+    companion object {
+        /**
+         * Copy a live tree into a snapshot, visiting at most [maxNodes] nodes and [maxDepth]
+         * levels. Children fetched from [root] are recycled; [root] itself is not.
+         */
+        fun capture(root: ScanNode, maxNodes: Int = 5_000, maxDepth: Int = 64): SnapshotNode {
+            var budget = maxNodes
+            fun copy(node: ScanNode, depth: Int): SnapshotNode {
+                budget--
+                val children = ArrayList<SnapshotNode>(node.childCount)
+                if (depth < maxDepth) {
+                    for (i in 0 until node.childCount) {
+                        if (budget <= 0) break
+                        val child = node.getChild(i) ?: continue
+                        try {
+                            children.add(copy(child, depth + 1))
+                        } finally {
+                            child.recycle()
+                        }
+                    }
+                }
+                return SnapshotNode(
+                        text = node.text?.toString(),
+                        contentDescription = node.contentDescription?.toString(),
+                        viewId = node.viewId,
+                        children = children,
+                        isVisibleToUser = node.isVisibleToUser,
+                        screenBottom = node.screenBottom
+                )
+            }
+            return copy(root, 0)
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.ghostwhisper.scan
+
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * One recorded accessibility event.
+ *
+ * @param type The `AccessibilityEvent` type — one of the constants below.
+ * @param timeMillis Event time (`AccessibilityEvent.eventTime`, uptime-based).
+ * @param root Snapshot of the event source, or null if it had none.
+ */
+data class TraceEvent(
+        val type: Int,
+        val timeMillis: Long,
+        val packageName: String?,
+        val root: SnapshotNode?
+) {
+    companion object {
+        // Same values as AccessibilityEvent.TYPE_*, so recorded types map 1:1
+        const val TYPE_VIEW_TEXT_CHANGED = 0x10
+        const val TYPE_WINDOW_STATE_CHANGED = 0x20
+        const val TYPE_WINDOW_CONTENT_CHANGED = 0x800
+    }
+}
+
+/**
+ * Compact on-disk format for accessibility event traces (`.gwtrace`).
+ *
+ * Layout, inside a GZIP stream:
+ * ```
+ * "GWRC" version:u8
+ * event*:  type:varint  timeDelta:varint  package:str  hasRoot:u8  node?
+ * node:    text:str  contentDescription:str  viewId:str  childCount:varint  node*
+ * str:     varint 0 = null, 1 = new string (varint length + UTF-8), n >= 2 = table[n - 2]
+ * ```
+ * Every string is interned in a per-file table, so repeated view IDs and package names — most of
+ * a chat screen — cost one or two bytes after their first appearance. Events are streamed; the
+ * file is read until the GZIP stream ends.
+ */
+object ScanTraceFormat {
+
+    private val MAGIC = "GWRC".toByteArray(Charsets.US_ASCII)
+    private const val VERSION = 1
+
+    /** Open a writer; closing it also closes [output]. */
+    fun writer(output: OutputStream): Writer = Writer(output)
+
+    /** Read every event from [input]. The stream is left open. */
+    fun read(input: InputStream): List<TraceEvent> {
+        val data = DataInputStream(GZIPInputStream(input.buffered()))
+        val magic = ByteArray(MAGIC.size)
+        data.readFully(magic)
+        if (!magic.contentEquals(MAGIC)) throw IOException("Not a scan trace")
+        val version = data.readUnsignedByte()
+        if (version != VERSION) throw IOException("Unsupported trace version $version")
+
+        val strings = ArrayList<String>()
+        val events = ArrayList<TraceEvent>()
+        var lastTime = 0L
+        while (true) {
+            val type =
+                    try {
+                        readVarint(data)
+                    } catch (e: EOFException) {
+                        break
+                    }
+            lastTime += readVarint(data)
+            val packageName = readString(data, strings)
+            val root = if (data.readUnsignedByte() != 0) readNode(data, strings) else null
+            events.add(TraceEvent(type.toInt(), lastTime, packageName, root))
+        }
+        return events
+    }
+
+    /** Streams [TraceEvent]s to a trace file. Not thread-safe. */
+    class Writer internal constructor(output: OutputStream) : Closeable {
+        private val data = DataOutputStream(GZIPOutputStream(output.buffered()))
+        private val strings = HashMap<String, Int>()
+        private var lastTime = 0L
+
+        var isClosed = false
+            private set
+
+        /** Number of events written so far. */
+        var eventCount = 0
+            private set
+
+        init {
+            data.write(MAGIC)
+            data.writeByte(VERSION)
+        }
+
+        fun append(event: TraceEvent) {
+            writeVarint(data, event.type.toLong())
+            // Event times are monotonic in practice; clamp so a clock oddity can't break the file
+            writeVarint(data, (event.timeMillis - lastTime).coerceAtLeast(0))
+            lastTime = maxOf(lastTime, event.timeMillis)
+            writeString(event.packageName)
+            if (event.root != null) {
+                data.writeByte(1)
+                writeNode(event.root)
+            } else {
+                data.writeByte(0)
+            }
+            eventCount++
+        }
+
+        override fun close() {
+            isClosed = true
+            data.close()
+        }
+
+        private fun writeNode(node: SnapshotNode) {
+            writeString(node.text)
+            writeString(node.contentDescription)
+            writeString(node.viewId)
+            writeVarint(data, node.children.size.toLong())
+            node.children.forEach { writeNode(it) }
+        }
+
+        private fun writeString(value: String?) {
+            if (value == null) {
+                writeVarint(data, 0)
+                return
+            }
+            val index = strings[value]
+            if (index != null) {
+                writeVarint(data, index + 2L)
+                return
+            }
+            strings[value] = strings.size
+            val bytes = value.toByteArray(Charsets.UTF_8)
+            writeVarint(data, 1)
+            writeVarint(data, bytes.size.toLong())
+            data.write(bytes)
+        }
+    }
+
+    private fun readNode(data: DataInputStream, strings: MutableList<String>): SnapshotNode {
+        val text = readString(data, strings)
+        val contentDescription = readString(data, strings)
+        val viewId = readString(data, strings)
+        val childCount = readVarint(data).toInt()
+        val children = List(childCount) { readNode(data, strings) }
+        return SnapshotNode(text, contentDescription, viewId, children)
+    }
+
+    private fun readString(data: DataInputStream, strings: MutableList<String>): String? {
+        return when (val tag = readVarint(data)) {
+            0L -> null
+            1L -> {
+                val bytes = ByteArray(readVarint(data).toInt())
+                data.readFully(bytes)
+                String(bytes, Charsets.UTF_8).also { strings.add(it) }
+            }
+            else -> strings.getOrNull((tag - 2).toInt()) ?: throw IOException("Bad string ref")
+        }
+    }
+
+    /** Unsigned LEB128. */
+    private fun writeVarint(out: DataOutputStream, value: Long) {
+        var v = value
+        while (v and 0x7FL.inv() != 0L) {
+            out.writeByte(((v and 0x7F) or 0x80).toInt())
+            v = v ushr 7
+        }
+        out.writeByte(v.toInt())
+    }
+
+    private fun readVarint(input: DataInputStream): Long {
+        var result = 0L
+        var shift = 0
+        while (shift < 64) {
+            val b = input.readUnsignedByte()
+            result = result or ((b and 0x7F).toLong() shl shift)
+            if (b and 0x80 == 0) return result
+            shift += 7
+        }
+        throw IOException("Malformed varint")
+    }
+}
@@ -0,0 +1,163 @@
+package com.ghostwhisper.scan
+
+import org.json.JSONArray
+import org.json.JSONObject
+
+/**
+ * Decrypted messages per chat, oldest first, bounded in memory.
+ *
+ * Scans deliver a chat's payloads again every time they scroll back into view; the outcome
+ * cache in [PayloadScanner] saves the decrypts, and this remembers what has been shown, so the
+ * overlay can page through a chat's recent secrets and refill as soon as the chat is re-entered.
+ *
+ * Order is approximate chronology, from what scans report: each scan delivers bottom-most
+ * (newest) first, so a [DecryptedMessage.rank] 0 message is placed after everything seen before,
+ * and the older payloads of the same scan are slotted in just before it, by rank. A message is
+ * recorded once, at its first sighting.
+ *
+ * At most [perChat] messages are kept per chat (the oldest go first) and [maxChats] chats (the
+ * least recently recorded go first). Thread-safe.
+ */
+class SecretTimeline(
+        private val perChat: Int = DEFAULT_PER_CHAT,
+        private val maxChats: Int = DEFAULT_MAX_CHATS
+) {
+
+    private class Entry(val seq: Long, val message: DecryptedMessage)
+
+    private class Chat {
+        /** By raw message; unordered, sorted by seq on read. */
+        val entries = HashMap<String, Entry>()
+        /** Seq of the latest rank-0 message recorded or seen again; older ranks slot below it. */
+        var anchor = 0L
+    }
+
+    private val chats =
+            object : LinkedHashMap<String, Chat>(16, 0.75f, true) {
+                override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Chat>) =
+                        size > maxChats
+            }
+    private var clock = 0L
+
+    /** Record [message], seen in [chat]. Returns true if it wasn't in the timeline yet. */
+    @Synchronized
+    fun record(chat: String, message: DecryptedMessage): Boolean {
+        val timeline = chats.getOrPut(chat) { Chat() }
+        val known = timeline.entries[message.rawMessage]
+        if (known != null) {
+            if (message.rank == 0) timeline.anchor = known.seq
+            return false
+        }
+        val seq =
+                if (message.rank == 0) {
+                    clock += STRIDE
+                    clock.also { timeline.anchor = it }
+                } else {
+                    timeline.anchor - message.rank
+                }
+        timeline.entries[message.rawMessage] = Entry(seq, message.copy(rank = 0))
+        if (timeline.entries.size > perChat) {
+            timeline.entries.values.minByOrNull { it.seq }?.let {
+                timeline.entries.remove(it.message.rawMessage)
+            }
+        }
+        return true
+    }
+
+    /** [chat]'s messages, oldest first; empty if none. */
+    @Synchronized
+    fun messages(chat: String): List<DecryptedMessage> {
+        val timeline = chats[chat] ?: return emptyList()
+        return timeline.entries.values.sortedBy { it.seq }.map { it.message }
+    }
+
+    /** Drop messages for keys not in [keyIds], e.g. after a channel was deleted. */
+    @Synchronized
+    fun retainKeys(keyIds: Set<String>) {
+        val emptied = ArrayList<String>()
+        for ((chat, timeline) in chats) {
+            timeline.entries.values.removeAll { it.message.keyId !in keyIds }
+            if (timeline.entries.isEmpty()) emptied.add(chat)
+        }
+        emptied.forEach(chats::remove)
+    }
+
+    @Synchronized
+    fun clear() {
+        chats.clear()
+    }
+
+    /** Everything, as JSON for [restore]. Contains plaintexts: encrypt before storing. */
+    @Synchronized
+    fun toJson(): String {
+        val array = JSONArray()
+        for ((chat, timeline) in chats) {
+            val messages = JSONArray()
+            for (entry in timeline.entries.values.sortedBy { it.seq }) {
+                val message = entry.message
+                messages.put(
+                        JSONObject()
+                                .put("seq", entry.seq)
+                                .put("keyId", message.keyId)
+                                .put("channel", message.channelName)
+                                .put("plaintext", message.plaintext)
+                                .put("raw", message.rawMessage)
+                )
+            }
+            array.put(
+                    JSONObject()
+                            .put("chat", chat)
+                            .put("anchor", timeline.anchor)
+                            .put("messages", messages)
+            )
+        }
+        return JSONObject().put("clock", clock).put("chats", array).toString()
+    }
+
+    /**
+     * Add what [toJson] saved, in an earlier session, to this timeline. Messages recorded since
+     * stay newer than the saved ones; chats and messages over the bounds are dropped as usual.
+     */
+    @Synchronized
+    fun restore(json: String) {
+        val root = JSONObject(json)
+        val savedClock = root.getLong("clock")
+        for (chat in chats.values) {
+            chat.entries.replaceAll { _, entry -> Entry(entry.seq + savedClock, entry.message) }
+            chat.anchor += savedClock
+        }
+        clock += savedClock
+        val array = root.getJSONArray("chats")
+        for (i in 0 until array.length()) {
+            val item = array.getJSONObject(i)
+            val chatName = item.getString("chat")
+            val chat = chats[chatName] ?: Chat().also { chats[chatName] = it }
+            if (chat.entries.isEmpty()) chat.anchor = item.getLong("anchor")
+            val messages = item.getJSONArray("messages")
+            for (j in 0 until messages.length()) {
+                val m = messages.getJSONObject(j)
+                val message =
+                        DecryptedMessage(
+                                keyId = m.getString("keyId"),
+                                channelName = m.getString("channel"),
+                                plaintext = m.getString("plaintext"),
+                                rawMessage = m.getString("raw")
+                        )
+                chat.entries.getOrPut(message.rawMessage) { Entry(m.getLong("seq"), message) }
+            }
+            while (chat.entries.size > perChat) {
+                val oldest = chat.entries.values.minByOrNull { it.seq } ?: break
+                chat.entries.remove(oldest.message.rawMessage)
+            }
+        }
+    }
+
+    companion object {
+        /** A few screens of scroll-back per chat, for the chats used lately. */
+        const val DEFAULT_PER_CHAT = 50
+        const val DEFAULT_MAX_CHATS = 16
+
+        /** Seq gap between rank-0 messages; older payloads of one scan fit in between. */
+        private const val STRIDE = 1_000L
+    }
+}
@@ -0,0 +1,125 @@
+package com.ghostwhisper.scan
+
+/**
+ * A flattened, in-process copy of a node tree, taken once so that everything after runs without
+ * touching the platform.
+ *
+ * On device, every child fetch of a live accessibility node may be a binder call into WhatsApp's
+ * process, and the scanner's recursion holds a chain of platform nodes open while it decrypts.
+ * [capture] walks the tree exactly once — through a [ScanNode] that asks the platform to
+ * prefetch descendants where it can — recycling each node as soon as it has been copied. The
+ * payload scan then runs over these arrays.
+ *
+ * Nodes are stored in depth-first pre-order as parallel arrays. Strings are interned into
+ * [strings] (list rows repeat timestamps, ticks and view IDs a lot) and referenced by index, -1
+ * meaning null.
+ */
+class TreeSnapshot
+private constructor(
+        /** Distinct strings referenced by the `*Ref` arrays. */
+        val strings: Array<String>,
+        private val textRef: IntArray,
+        private val descriptionRef: IntArray,
+        private val viewIdRef: IntArray,
+        /** Index of each node's parent, -1 for the root. */
+        private val parent: IntArray,
+        private val screenBottom: IntArray
+) {
+
+    /** Number of nodes captured. */
+    val size: Int
+        get() = parent.size
+
+    fun text(index: Int): String? = string(textRef[index])
+
+    fun contentDescription(index: Int): String? = string(descriptionRef[index])
+
+    fun viewId(index: Int): String? = string(viewIdRef[index])
+
+    /** Bottom edge of node [index] on screen, as [ScanNode.screenBottom]. */
+    fun screenBottom(index: Int): Int = screenBottom[index]
+
+    /** Parent of node [index], or -1 for the root. */
+    fun parent(index: Int): Int = parent[index]
+
+    private fun string(ref: Int): String? = if (ref < 0) null else strings[ref]
+
+    companion object {
+        /**
+         * Flatten [root], visiting at most [maxNodes] nodes and [maxDepth] levels. With
+         * [visibleOnly], subtrees not visible to the user are left out. Children are recycled as
+         * soon as they are copied; [root] is left to the caller.
+         */
+        fun capture(
+                root: ScanNode,
+                maxNodes: Int = 5_000,
+                maxDepth: Int = 64,
+                visibleOnly: Boolean = false
+        ): TreeSnapshot {
+            val builder = Builder()
+            fun copy(node: ScanNode, parentIndex: Int, depth: Int) {
+                val index = builder.add(node, parentIndex)
+                if (depth >= maxDepth) return
+                for (i in 0 until node.childCount) {
+                    if (builder.size >= maxNodes) return
+                    val child = node.getChild(i) ?: continue
+                    try {
+                        if (visibleOnly && !child.isVisibleToUser) continue
+                        copy(child, index, depth + 1)
+                    } finally {
+                        child.recycle()
+                    }
+                }
+            }
+            copy(root, -1, 0)
+            return builder.build()
+        }
+    }
+
+    private class Builder {
+        private val interned = HashMap<String, Int>()
+        private val strings = ArrayList<String>()
+        private var textRef = IntArray(64)
+        private var descriptionRef = IntArray(64)
+        private var viewIdRef = IntArray(64)
+        private var parent = IntArray(64)
+        private var screenBottom = IntArray(64)
+        var size = 0
+            private set
+
+        fun add(node: ScanNode, parentIndex: Int): Int {
+            if (size == parent.size) {
+                val capacity = size * 2
+                textRef = textRef.copyOf(capacity)
+                descriptionRef = descriptionRef.copyOf(capacity)
+                viewIdRef = viewIdRef.copyOf(capacity)
+                parent = parent.copyOf(capacity)
+                screenBottom = screenBottom.copyOf(capacity)
+            }
+            textRef[size] = intern(node.text?.toString())
+            descriptionRef[size] = intern(node.contentDescription?.toString())
+            viewIdRef[size] = intern(node.viewId)
+            parent[size] = parentIndex
+            screenBottom[size] = node.screenBottom
+            return size++
+        }
+
+        private fun intern(value: String?): Int {
+            if (value == null) return -1
+            return interned.getOrPut(value) {
+                strings.add(value)
+                strings.size - 1
+            }
+        }
+
+        fun build() =
+                TreeSnapshot(
+                        strings.toTypedArray(),
+                        textRef.copyOf(size),
+                        descriptionRef.copyOf(size),
+                        viewIdRef.copyOf(size),
+                        parent.copyOf(size),
+                        screenBottom.copyOf(size)
+                )
+    }
+}
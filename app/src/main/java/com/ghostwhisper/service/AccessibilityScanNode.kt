@@ -0,0 +1,50 @@
+package com.ghostwhisper.service
+
+import android.graphics.Rect
+import android.os.Build
+import android.view.accessibility.AccessibilityNodeInfo
+import com.ghostwhisper.scan.ScanNode
+
+/**
+ * [ScanNode] view of a live accessibility node. [recycle] recycles the wrapped node.
+ *
+ * Each child fetch that misses the service's node cache is a binder call into the app that owns
+ * the window. On API 33+ every such fetch also asks for the child's descendants to be prefetched
+ * into that cache (up to the platform's batch limit), so walking a whole subtree — as
+ * [com.ghostwhisper.scan.TreeSnapshot.capture] does — costs one call per batch instead of one
+ * per node.
+ */
+class AccessibilityScanNode(private val node: AccessibilityNodeInfo) : ScanNode {
+
+    override val text: CharSequence?
+        get() = node.text
+
+    override val contentDescription: CharSequence?
+        get() = node.contentDescription
+
+    override val viewId: String?
+        get() = node.viewIdResourceName
+
+    override val childCount: Int
+        get() = node.childCount
+
+    override val isVisibleToUser: Boolean
+        get() = node.isVisibleToUser
+
+    override val screenBottom: Int
+        get() = Rect().also(node::getBoundsInScreen).bottom
+
+    override fun getChild(index: Int): ScanNode? {
+        val child =
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                    node.getChild(index, AccessibilityNodeInfo.FLAG_PREFETCH_DESCENDANTS_HYBRID)
+                } else {
+                    node.getChild(index)
+                }
+        return child?.let(::AccessibilityScanNode)
+    }
+
+    override fun recycle() {
+        node.recycle()
+    }
+}
@@ -0,0 +1,24 @@
+package com.ghostwhisper.service
+
+import android.graphics.Bitmap
+
+/**
+ * [PixelBuffer] backed by an ARGB_8888 [Bitmap], using bulk `getPixels` / `setPixels` row copies.
+ * [writeRow] requires a mutable bitmap.
+ */
+class BitmapPixelBuffer(val bitmap: Bitmap) : PixelBuffer {
+
+    override val width: Int
+        get() = bitmap.width
+
+    override val height: Int
+        get() = bitmap.height
+
+    override fun readRow(y: Int, dst: IntArray, offset: Int, x: Int, count: Int) {
+        bitmap.getPixels(dst, offset, count, x, y, count, 1)
+    }
+
+    override fun writeRow(y: Int, src: IntArray, offset: Int, x: Int, count: Int) {
+        bitmap.setPixels(src, offset, count, x, y, count, 1)
+    }
+}
@@ -0,0 +1,276 @@
+package com.ghostwhisper.service
+
+import android.app.ActivityManager
+import android.content.ContentResolver
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.net.Uri
+import android.util.Log
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Reusable bitmap pool for the steganography screens.
+ *
+ * Full-size ARGB bitmaps are the largest allocations in the app (a 12 MP photo is ~48 MB of native
+ * memory). Instead of allocating a fresh bitmap for every pick / encode and waiting for the GC to
+ * find it, callers [release] bitmaps they no longer display and the pool hands them back out for
+ * the next decode ([decode] via `inBitmap`) or encode output ([obtain]).
+ *
+ * Pooled bitmaps are keyed by width, height and config. The byte budget, derived from
+ * [ActivityManager.getMemoryClass], only bounds what the pool keeps: idle bitmaps are recycled,
+ * least recently used first, while idle plus handed-out bytes exceed it. It never refuses a decode
+ * or [obtain] — bitmap pixels live in the native heap, which the memory class doesn't limit, so
+ * the only out-of-memory is a real allocation failure.
+ *
+ * Thread safety: all public methods are synchronized; decode/encode may run on any dispatcher.
+ */
+class BitmapPool(val maxBytes: Long) {
+
+    companion object {
+        private const val TAG = "BitmapPool"
+
+        /** Share of the per-app heap class the pool may occupy. */
+        private const val BUDGET_FRACTION = 0.5
+
+        @Volatile private var INSTANCE: BitmapPool? = null
+
+        /** Get the process-wide pool. Thread-safe via double-checked locking. */
+        fun getInstance(context: Context): BitmapPool {
+            return INSTANCE
+                    ?: synchronized(this) {
+                        INSTANCE ?: BitmapPool(budgetFor(context)).also { INSTANCE = it }
+                    }
+        }
+
+        /** Memory budget in bytes: a fraction of the app's memory class (in MB). */
+        fun budgetFor(context: Context): Long {
+            val am = context.getSystemService(Context.ACTIVITY_SERVICE) as ActivityManager
+            return (am.memoryClass * 1024L * 1024L * BUDGET_FRACTION).toLong()
+        }
+
+        /** Bytes needed for a bitmap of the given geometry. */
+        fun bytesFor(width: Int, height: Int, config: Bitmap.Config): Long {
+            val bytesPerPixel =
+                    when (config) {
+                        Bitmap.Config.ALPHA_8 -> 1
+                        Bitmap.Config.RGB_565 -> 2
+                        Bitmap.Config.RGBA_F16 -> 8
+                        else -> 4
+                    }
+            return width.toLong() * height.toLong() * bytesPerPixel
+        }
+    }
+
+    private data class Key(val width: Int, val height: Int, val config: Bitmap.Config)
+
+    /** Idle bitmaps grouped by geometry. Access-ordered so the first key is least recently used. */
+    private val pooled = LinkedHashMap<Key, ArrayDeque<Bitmap>>(8, 0.75f, true)
+
+    private var pooledBytes = 0L
+    private var inUseBytes = 0L
+    private var peakBytes = 0L
+
+    private var hits = 0
+    private var misses = 0
+    private var evictions = 0
+
+    /** Snapshot of pool accounting, used for diagnostics and memory reports. */
+    data class Stats(
+            val maxBytes: Long,
+            val pooledBytes: Long,
+            val inUseBytes: Long,
+            val peakBytes: Long,
+            val hits: Int,
+            val misses: Int,
+            val evictions: Int
+    )
+
+    @Synchronized
+    fun stats(): Stats =
+            Stats(maxBytes, pooledBytes, inUseBytes, peakBytes, hits, misses, evictions)
+
+    /**
+     * Get a mutable bitmap of the given geometry, reusing a pooled one when available. Pixel
+     * content of a reused bitmap is undefined — callers must overwrite every pixel.
+     */
+    @Synchronized
+    fun obtain(width: Int, height: Int, config: Bitmap.Config = Bitmap.Config.ARGB_8888): Bitmap {
+        val reused = takePooled(Key(width, height, config))
+        if (reused != null) {
+            hits++
+            markInUse(reused)
+            return reused
+        }
+
+        misses++
+        val bytes = bytesFor(width, height, config)
+        trimTo(maxBytes - inUseBytes - bytes)
+        val bitmap = Bitmap.createBitmap(width, height, config)
+        markInUse(bitmap)
+        return bitmap
+    }
+
+    /**
+     * Get a mutable ARGB_8888 copy of [source], reusing a pooled bitmap for the output. Copies row
+     * by row through a one-row buffer of its own, so no second full-size pixel array is allocated
+     * and concurrent copies don't share one.
+     */
+    fun obtainCopy(source: Bitmap): Bitmap {
+        val target = obtain(source.width, source.height, Bitmap.Config.ARGB_8888)
+        val width = source.width
+        val row = IntArray(width)
+        for (y in 0 until source.height) {
+            source.getPixels(row, 0, width, 0, y, width, 1)
+            target.setPixels(row, 0, width, 0, y, width, 1)
+        }
+        return target
+    }
+
+    /**
+     * Return a bitmap to the pool. Immutable or recycled bitmaps are ignored. If keeping it would
+     * exceed the budget, older pooled bitmaps are recycled first; if it still doesn't fit it is
+     * recycled immediately.
+     */
+    @Synchronized
+    fun release(bitmap: Bitmap?) {
+        bitmap ?: return
+        if (bitmap.isRecycled) return
+        val bytes = bitmap.allocationByteCount.toLong()
+        inUseBytes = (inUseBytes - bytes).coerceAtLeast(0)
+
+        if (!bitmap.isMutable) return
+
+        trimTo(maxBytes - inUseBytes - bytes)
+        if (inUseBytes + pooledBytes + bytes > maxBytes) {
+            bitmap.recycle()
+            evictions++
+            return
+        }
+
+        val key = Key(bitmap.width, bitmap.height, bitmap.config ?: Bitmap.Config.ARGB_8888)
+        pooled.getOrPut(key) { ArrayDeque() }.addLast(bitmap)
+        pooledBytes += bytes
+    }
+
+    /**
+     * Reference-counted handle for a pooled bitmap that several owners hold at once (e.g. the
+     * screen displaying it and a share stream still reading it). Starts with one reference; the
+     * bitmap goes back to the pool when the last owner calls [release].
+     */
+    class Lease internal constructor(private val pool: BitmapPool, val bitmap: Bitmap) {
+        private val refs = AtomicInteger(1)
+
+        /** Add an owner. Each call must be matched by one [release]. */
+        fun retain(): Lease {
+            check(refs.getAndIncrement() > 0) { "Lease already released" }
+            return this
+        }
+
+        fun release() {
+            if (refs.decrementAndGet() == 0) pool.release(bitmap)
+        }
+    }
+
+    /** Wrap a bitmap obtained from this pool in a [Lease] held by the caller. */
+    fun lease(bitmap: Bitmap): Lease = Lease(this, bitmap)
+
+    /**
+     * Decode an image from [uri] at full resolution, reusing a pooled bitmap of the same size via
+     * `inBitmap`. Returns null if the stream can't be decoded.
+     */
+    fun decode(resolver: ContentResolver, uri: Uri): Bitmap? {
+        val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        resolver.openInputStream(uri)?.use { BitmapFactory.decodeStream(it, null, bounds) }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null
+
+        val key = Key(bounds.outWidth, bounds.outHeight, Bitmap.Config.ARGB_8888)
+        val bytes = bytesFor(bounds.outWidth, bounds.outHeight, Bitmap.Config.ARGB_8888)
+        var candidate =
+                synchronized(this) {
+                    // Nothing to reuse: make room before the decoder allocates a fresh bitmap
+                    takePooled(key).also { if (it == null) trimTo(maxBytes - inUseBytes - bytes) }
+                }
+        val options =
+                BitmapFactory.Options().apply {
+                    inMutable = true
+                    inPreferredConfig = Bitmap.Config.ARGB_8888
+                    inBitmap = candidate
+                }
+
+        val decoded =
+                try {
+                    resolver.openInputStream(uri)?.use {
+                        BitmapFactory.decodeStream(it, null, options)
+                    }
+                } catch (e: IllegalArgumentException) {
+                    // inBitmap rejected (e.g. unsupported source format) — decode without reuse
+                    Log.d(TAG, "inBitmap reuse rejected: ${e.message}")
+                    options.inBitmap = null
+                    synchronized(this) {
+                        candidate?.let(::returnPooled)
+                        candidate = null
+                        trimTo(maxBytes - inUseBytes - bytes)
+                    }
+                    resolver.openInputStream(uri)?.use {
+                        BitmapFactory.decodeStream(it, null, options)
+                    }
+                }
+
+        synchronized(this) {
+            val reused = candidate
+            // Not decoded into (or nothing decoded): back to the pool, within the budget
+            if (reused != null && reused !== decoded) {
+                returnPooled(reused)
+                trimTo(maxBytes - inUseBytes - (decoded?.allocationByteCount?.toLong() ?: 0L))
+            }
+            if (decoded == null) return null
+            if (reused != null && decoded === reused) hits++ else misses++
+            markInUse(decoded)
+        }
+        return decoded
+    }
+
+    /** Recycle every pooled bitmap (e.g. on low-memory callbacks). In-use bitmaps are untouched. */
+    @Synchronized
+    fun clear() {
+        trimTo(0)
+    }
+
+    // ─── Internal accounting (caller holds the lock) ─────────────
+
+    private fun takePooled(key: Key): Bitmap? {
+        val queue = pooled[key] ?: return null
+        val bitmap = queue.removeLastOrNull()
+        if (queue.isEmpty()) pooled.remove(key)
+        if (bitmap != null) pooledBytes -= bitmap.allocationByteCount.toLong()
+        return bitmap?.takeUnless { it.isRecycled }
+    }
+
+    private fun returnPooled(bitmap: Bitmap) {
+        val key = Key(bitmap.width, bitmap.height, bitmap.config ?: Bitmap.Config.ARGB_8888)
+        pooled.getOrPut(key) { ArrayDeque() }.addLast(bitmap)
+        pooledBytes += bitmap.allocationByteCount.toLong()
+    }
+
+    private fun markInUse(bitmap: Bitmap) {
+        inUseBytes += bitmap.allocationByteCount.toLong()
+        peakBytes = maxOf(peakBytes, inUseBytes + pooledBytes)
+    }
+
+    /** Recycle least recently used pooled bitmaps until [pooledBytes] <= [targetBytes]. */
+    private fun trimTo(targetBytes: Long) {
+        val iterator = pooled.entries.iterator()
+        while (pooledBytes > targetBytes.coerceAtLeast(0) && iterator.hasNext()) {
+            val entry = iterator.next()
+            val queue = entry.value
+            while (pooledBytes > targetBytes.coerceAtLeast(0) && queue.isNotEmpty()) {
+                val evicted = queue.removeFirst()
+                pooledBytes -= evicted.allocationByteCount.toLong()
+                evicted.recycle()
+                evictions++
+            }
+            if (queue.isEmpty()) iterator.remove()
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.ghostwhisper.service
+
+/**
+ * Which WhatsApp chat the user is in, from the chat titles found in its windows.
+ *
+ * Titles are kept per window ID ("" = looked, none found), for at most [maxWindows] windows.
+ * [onTitle] reports when the user has just entered a chat — including the one they left a moment
+ * ago, since leaving to the chat list or out of WhatsApp ([onLeft]) resets the current chat.
+ *
+ * Thread-safe: titles come from content changes on the main thread and from lookups on the
+ * scheduler's housekeeping lane.
+ */
+class ChatTracker(private val maxWindows: Int = DEFAULT_MAX_WINDOWS) {
+
+    companion object {
+        const val DEFAULT_MAX_WINDOWS = 16
+    }
+
+    private val titles =
+            object : LinkedHashMap<Int, String>() {
+                override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, String>) =
+                        size > maxWindows
+            }
+
+    /** The chat on screen now; null in the chat list, elsewhere in WhatsApp, or outside it. */
+    @Volatile
+    var current: String? = null
+        private set
+
+    /**
+     * Record [windowId]'s [title] (null or empty: no chat shown). Returns true if the user has
+     * just entered that chat, i.e. it wasn't the current one.
+     */
+    @Synchronized
+    fun onTitle(windowId: Int, title: String?): Boolean {
+        titles[windowId] = title.orEmpty()
+        if (title.isNullOrEmpty()) {
+            current = null
+            return false
+        }
+        if (title == current) return false
+        current = title
+        return true
+    }
+
+    /** The chat shown in [windowId], or null if none is or it hasn't been looked up. */
+    @Synchronized
+    fun chatIn(windowId: Int): String? = titles[windowId]?.takeIf { it.isNotEmpty() }
+
+    /** Whether [windowId] has been looked up. */
+    @Synchronized
+    fun isKnown(windowId: Int): Boolean = windowId in titles
+
+    /** Note that [windowId] was asked about and has no title, unless it already has one. */
+    @Synchronized
+    fun markLookedUp(windowId: Int) {
+        titles.putIfAbsent(windowId, "")
+    }
+
+    /**
+     * WhatsApp left the foreground. Forget what its windows showed — the user may come back to
+     * another chat — so the next title found counts as entering it.
+     */
+    @Synchronized
+    fun onLeft() {
+        titles.clear()
+        current = null
+    }
+}
@@ -0,0 +1,442 @@
+package com.ghostwhisper.service
+
+import java.nio.charset.StandardCharsets
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.roundToInt
+import kotlin.math.sqrt
+
+/**
+ * DCT (Koch & Zhao) kernel behind [DCTSteganographyHelper], over a platform-independent
+ * [PixelBuffer].
+ *
+ * One bit per 8x8 block, in row-major block order: the relative magnitude of two mid-frequency
+ * luminance coefficients encodes the bit. Blocks are processed a band of 8 rows at a time.
+ */
+object DctCodec {
+
+    private const val HEADER_SIGNATURE = "GW" // 2 bytes
+    private const val HEADER_BYTES = 6
+    private const val HEADER_BITS = HEADER_BYTES * 8
+    private const val BLOCK_SIZE = 8
+    private const val OPAQUE = 0xFF shl 24
+
+    // Coefficients to use for embedding (Mid-frequency).
+    // These indices are 0-63 (zigzag order or row-major).
+    // Using (4,1) and (3,2) or similar mid-band coeffs.
+    // Let's use indices from flattened 8x8 array.
+    private val C1_INDEX = 4 * 8 + 1 // Row 4, Col 1
+    private val C2_INDEX = 3 * 8 + 2 // Row 3, Col 2
+
+    // Threshold for difference. Larger = more robust but more visible distortion.
+    private const val P_THRESHOLD = 25.0
+
+    // Standard JPEG Luminance Quantization Table (approx quality 50)
+    // Used to simulate what coefficients will look like after compression
+    private val Q_TABLE =
+            doubleArrayOf(
+                    16.0,
+                    11.0,
+                    10.0,
+                    16.0,
+                    24.0,
+                    40.0,
+                    51.0,
+                    61.0,
+                    12.0,
+                    12.0,
+                    14.0,
+                    19.0,
+                    26.0,
+                    58.0,
+                    60.0,
+                    55.0,
+                    14.0,
+                    13.0,
+                    16.0,
+                    24.0,
+                    40.0,
+                    57.0,
+                    69.0,
+                    56.0,
+                    14.0,
+                    17.0,
+                    22.0,
+                    29.0,
+                    51.0,
+                    87.0,
+                    80.0,
+                    62.0,
+                    18.0,
+                    22.0,
+                    37.0,
+                    56.0,
+                    68.0,
+                    109.0,
+                    103.0,
+                    77.0,
+                    24.0,
+                    35.0,
+                    55.0,
+                    64.0,
+                    81.0,
+                    104.0,
+                    113.0,
+                    92.0,
+                    49.0,
+                    64.0,
+                    78.0,
+                    87.0,
+                    103.0,
+                    121.0,
+                    120.0,
+                    101.0,
+                    72.0,
+                    92.0,
+                    95.0,
+                    98.0,
+                    112.0,
+                    100.0,
+                    103.0,
+                    99.0
+            )
+
+    /**
+     * Payload bytes an image of this size can carry (one bit per 8x8 block, minus the 6-byte
+     * header). Only needs the dimensions, so it can be shown before the image is decoded.
+     */
+    fun capacityBytes(width: Int, height: Int): Int {
+        return (totalBlocks(width, height) / 8 - HEADER_BYTES).coerceAtLeast(0)
+    }
+
+    /** Whether a [payloadBytes]-byte payload plus header fits an image of this size. */
+    fun fits(width: Int, height: Int, payloadBytes: Int): Boolean {
+        return (HEADER_BYTES + payloadBytes.toLong()) * 8 <= totalBlocks(width, height)
+    }
+
+    /**
+     * Height of the top strip holding the 48 header blocks for an image [width] pixels wide —
+     * the only region [probeHeader] needs decoded.
+     */
+    fun headerStripHeight(width: Int): Int {
+        val blocksPerRow = (width / BLOCK_SIZE).coerceAtLeast(1)
+        return (HEADER_BITS + blocksPerRow - 1) / blocksPerRow * BLOCK_SIZE
+    }
+
+    /**
+     * Embed [payload] into [pixels] in place. Only the bands holding payload bits are rewritten;
+     * pixels of embedded blocks become opaque.
+     *
+     * @return false, with [pixels] untouched, if the payload doesn't fit
+     */
+    fun embed(pixels: PixelBuffer, payload: ByteArray): Boolean {
+        if (!fits(pixels.width, pixels.height, payload.size)) return false
+
+        val sigBytes = HEADER_SIGNATURE.toByteArray(StandardCharsets.UTF_8)
+        val allBits = bytesToBits(sigBytes + intToBytes(payload.size) + payload)
+
+        val width = pixels.width
+        val blocksPerRow = width / BLOCK_SIZE
+        val band = IntArray(width * BLOCK_SIZE)
+
+        // Reusable buffers to avoid massive GC churn
+        val yBlock = Array(BLOCK_SIZE) { DoubleArray(BLOCK_SIZE) }
+        val cbBlock = Array(BLOCK_SIZE) { DoubleArray(BLOCK_SIZE) }
+        val crBlock = Array(BLOCK_SIZE) { DoubleArray(BLOCK_SIZE) }
+
+        // DCT Output buffers
+        val dctY = Array(BLOCK_SIZE) { DoubleArray(BLOCK_SIZE) }
+        val idctY = Array(BLOCK_SIZE) { DoubleArray(BLOCK_SIZE) }
+
+        var bitIndex = 0
+        var bandY = 0
+        while (bitIndex < allBits.size) {
+            readBand(pixels, bandY, band)
+            var blockX = 0
+            while (blockX < blocksPerRow && bitIndex < allBits.size) {
+                embedBitInBlock(
+                        band,
+                        width,
+                        blockX * BLOCK_SIZE,
+                        allBits[bitIndex],
+                        yBlock,
+                        cbBlock,
+                        crBlock,
+                        dctY,
+                        idctY
+                )
+                bitIndex++
+                blockX++
+            }
+            writeBand(pixels, bandY, band)
+            bandY += BLOCK_SIZE
+        }
+        return true
+    }
+
+    /** Extract the payload from [pixels], or null if there is no valid Ghost Whisper header. */
+    fun extract(pixels: PixelBuffer): ByteArray? {
+        val reader = BlockBitReader(pixels)
+        val length = readLength(reader, totalBlocks(pixels.width, pixels.height)) ?: return null
+        return reader.readBytes(length)
+    }
+
+    /**
+     * Cheap header check for background scanning: extract the 48 header bits from the top strip
+     * and verify the signature and a plausible length.
+     *
+     * @param top the top [headerStripHeight] rows of the image
+     * @param imageHeight full image height, for the capacity check
+     */
+    fun probeHeader(top: PixelBuffer, imageHeight: Int): Boolean {
+        val totalBlocks = totalBlocks(top.width, imageHeight)
+        if (totalBlocks < HEADER_BITS) return false
+        return readLength(BlockBitReader(top), totalBlocks) != null
+    }
+
+    /** Read and validate the header: the payload length, or null if invalid. */
+    private fun readLength(reader: BlockBitReader, totalBlocks: Int): Int? {
+        val header = reader.readBytes(HEADER_BYTES) ?: return null
+        val sig = String(header, 0, 2, StandardCharsets.UTF_8)
+        if (sig != HEADER_SIGNATURE) return null
+
+        // Sanity check on length
+        val msgLength = bytesToInt(header.sliceArray(2 until 6))
+        val maxCapacity = totalBlocks - HEADER_BITS
+        if (msgLength <= 0 || msgLength * 8L > maxCapacity) return null
+        return msgLength
+    }
+
+    /** Sequential reader of block bits, one 8-row band fetched at a time. */
+    private class BlockBitReader(private val pixels: PixelBuffer) {
+        private val blocksPerRow = pixels.width / BLOCK_SIZE
+        private val bandCount = pixels.height / BLOCK_SIZE
+        private val band = IntArray(pixels.width * BLOCK_SIZE)
+        private val yBlock = Array(BLOCK_SIZE) { DoubleArray(BLOCK_SIZE) }
+        private val dctY = Array(BLOCK_SIZE) { DoubleArray(BLOCK_SIZE) }
+        private var bandIndex = -1
+        private var blockX = blocksPerRow
+
+        /** Next bit, or -1 once the image is exhausted. */
+        fun readBit(): Int {
+            if (blocksPerRow == 0) return -1
+            if (blockX >= blocksPerRow) {
+                if (bandIndex + 1 >= bandCount) return -1
+                bandIndex++
+                readBand(pixels, bandIndex * BLOCK_SIZE, band)
+                blockX = 0
+            }
+            return extractBitFromBlock(band, pixels.width, blockX++ * BLOCK_SIZE, yBlock, dctY)
+        }
+
+        /** Next [count] bytes, or null if the image runs out first. */
+        fun readBytes(count: Int): ByteArray? {
+            val bytes = ByteArray(count)
+            for (i in 0 until count) {
+                var value = 0
+                repeat(8) {
+                    val bit = readBit()
+                    if (bit < 0) return null
+                    value = (value shl 1) or bit
+                }
+                bytes[i] = value.toByte()
+            }
+            return bytes
+        }
+    }
+
+    private fun readBand(pixels: PixelBuffer, top: Int, band: IntArray) {
+        val width = pixels.width
+        for (row in 0 until BLOCK_SIZE) pixels.readRow(top + row, band, row * width)
+    }
+
+    private fun writeBand(pixels: PixelBuffer, top: Int, band: IntArray) {
+        val width = pixels.width
+        for (row in 0 until BLOCK_SIZE) pixels.writeRow(top + row, band, row * width)
+    }
+
+    /** Embed [bit] into the block at column [startX] of [band] (row stride [stride]). */
+    private fun embedBitInBlock(
+            band: IntArray,
+            stride: Int,
+            startX: Int,
+            bit: Int,
+            yBlock: Array<DoubleArray>,
+            cbBlock: Array<DoubleArray>,
+            crBlock: Array<DoubleArray>,
+            dctY: Array<DoubleArray>,
+            idctY: Array<DoubleArray>
+    ) {
+        // 1. RGB -> YCbCr (Populate buffers)
+        for (y in 0 until BLOCK_SIZE) {
+            for (x in 0 until BLOCK_SIZE) {
+                val pixel = band[y * stride + startX + x]
+                val r = ((pixel shr 16) and 0xFF).toDouble()
+                val g = ((pixel shr 8) and 0xFF).toDouble()
+                val b = (pixel and 0xFF).toDouble()
+
+                // Standard JPEG conversion
+                yBlock[y][x] = 0.299 * r + 0.587 * g + 0.114 * b
+                cbBlock[y][x] = 128.0 - 0.168736 * r - 0.331264 * g + 0.5 * b
+                crBlock[y][x] = 128.0 + 0.5 * r - 0.418688 * g - 0.081312 * b
+            }
+        }
+
+        // 2. DCT on Y channel (Reuse dctY buffer)
+        performDCT(yBlock, dctY)
+
+        // 3. Embed bit in DCT coeffs of Y
+        val c1 = dctY[C1_INDEX / 8][C1_INDEX % 8]
+        val c2 = dctY[C2_INDEX / 8][C2_INDEX % 8]
+
+        // Use absolute values logic for robustness and sign check
+        // Koch & Zhao:
+        // To send 0: |C1| > |C2| + P
+        // To send 1: |C2| > |C1| + P
+        // We modify coefficients. Note: We're not doing full JPEG quantization step here,
+        // but we assume these coeffs are "frequency strengths".
+
+        var newC1 = c1
+        var newC2 = c2
+        val P = P_THRESHOLD
+
+        if (bit == 0) {
+            if (Math.abs(c1) <= Math.abs(c2) + P) {
+                // Force C1 to be larger
+                val target = Math.abs(c2) + P + 1
+                newC1 = if (c1 >= 0) target else -target
+            }
+        } else {
+            if (Math.abs(c2) <= Math.abs(c1) + P) {
+                // Force C2 to be larger
+                val target = Math.abs(c1) + P + 1
+                newC2 = if (c2 >= 0) target else -target
+            }
+        }
+
+        dctY[C1_INDEX / 8][C1_INDEX % 8] = newC1
+        dctY[C2_INDEX / 8][C2_INDEX % 8] = newC2
+
+        // 4. Inverse DCT (Reuse idctY buffer)
+        performIDCT(dctY, idctY)
+
+        // 5. YCbCr -> RGB & clamp
+        for (y in 0 until BLOCK_SIZE) {
+            for (x in 0 until BLOCK_SIZE) {
+                val Y = idctY[y][x]
+                val Cb = cbBlock[y][x]
+                val Cr = crBlock[y][x]
+
+                var r = (Y + 1.402 * (Cr - 128)).roundToInt()
+                var g = (Y - 0.344136 * (Cb - 128) - 0.714136 * (Cr - 128)).roundToInt()
+                var b = (Y + 1.772 * (Cb - 128)).roundToInt()
+
+                r = r.coerceIn(0, 255)
+                g = g.coerceIn(0, 255)
+                b = b.coerceIn(0, 255)
+
+                band[y * stride + startX + x] = OPAQUE or (r shl 16) or (g shl 8) or b
+            }
+        }
+    }
+
+    /** Read the bit carried by the block at column [startX] of [band] (row stride [stride]). */
+    private fun extractBitFromBlock(
+            band: IntArray,
+            stride: Int,
+            startX: Int,
+            yBlock: Array<DoubleArray>,
+            dctY: Array<DoubleArray>
+    ): Int {
+        // RGB -> Y Only
+        for (y in 0 until BLOCK_SIZE) {
+            for (x in 0 until BLOCK_SIZE) {
+                val pixel = band[y * stride + startX + x]
+                val r = ((pixel shr 16) and 0xFF).toDouble()
+                val g = ((pixel shr 8) and 0xFF).toDouble()
+                val b = (pixel and 0xFF).toDouble()
+                yBlock[y][x] = 0.299 * r + 0.587 * g + 0.114 * b
+            }
+        }
+
+        performDCT(yBlock, dctY)
+
+        val c1 = dctY[C1_INDEX / 8][C1_INDEX % 8]
+        val c2 = dctY[C2_INDEX / 8][C2_INDEX % 8]
+
+        return if (Math.abs(c1) > Math.abs(c2)) 0 else 1
+    }
+
+    // --- DCT Math Helpers ---
+
+    private fun performDCT(input: Array<DoubleArray>, output: Array<DoubleArray>) {
+        val N = BLOCK_SIZE.toDouble()
+
+        for (u in 0 until BLOCK_SIZE) {
+            for (v in 0 until BLOCK_SIZE) {
+                var sum = 0.0
+                for (x in 0 until BLOCK_SIZE) {
+                    for (y in 0 until BLOCK_SIZE) {
+                        sum +=
+                                input[x][y] *
+                                        cos((2 * x + 1) * u * PI / (2 * N)) *
+                                        cos((2 * y + 1) * v * PI / (2 * N))
+                    }
+                }
+
+                val alphaU = if (u == 0) 1.0 / sqrt(2.0) else 1.0
+                val alphaV = if (v == 0) 1.0 / sqrt(2.0) else 1.0
+
+                output[u][v] = 0.25 * alphaU * alphaV * sum
+            }
+        }
+    }
+
+    private fun performIDCT(input: Array<DoubleArray>, output: Array<DoubleArray>) {
+        val N = BLOCK_SIZE.toDouble()
+
+        for (x in 0 until BLOCK_SIZE) {
+            for (y in 0 until BLOCK_SIZE) {
+                var sum = 0.0
+                for (u in 0 until BLOCK_SIZE) {
+                    for (v in 0 until BLOCK_SIZE) {
+                        val alphaU = if (u == 0) 1.0 / sqrt(2.0) else 1.0
+                        val alphaV = if (v == 0) 1.0 / sqrt(2.0) else 1.0
+
+                        sum +=
+                                alphaU *
+                                        alphaV *
+                                        input[u][v] *
+                                        cos((2 * x + 1) * u * PI / (2 * N)) *
+                                        cos((2 * y + 1) * v * PI / (2 * N))
+                    }
+                }
+                output[x][y] = 0.25 * sum
+            }
+        }
+    }
+
+    private fun totalBlocks(width: Int, height: Int) = (width / BLOCK_SIZE) * (height / BLOCK_SIZE)
+
+    private fun intToBytes(i: Int): ByteArray {
+        return byteArrayOf((i shr 24).toByte(), (i shr 16).toByte(), (i shr 8).toByte(), i.toByte())
+    }
+
+    private fun bytesToInt(b: ByteArray): Int {
+        return (b[0].toInt() and 0xFF shl 24) or
+                (b[1].toInt() and 0xFF shl 16) or
+                (b[2].toInt() and 0xFF shl 8) or
+                (b[3].toInt() and 0xFF)
+    }
+
+    private fun bytesToBits(bytes: ByteArray): IntArray {
+        val bits = IntArray(bytes.size * 8)
+        for (i in bytes.indices) {
+            val b = bytes[i].toInt()
+            for (j in 0 until 8) {
+                bits[i * 8 + j] = (b shr (7 - j)) and 1
+            }
+        }
+        return bits
+    }
+}
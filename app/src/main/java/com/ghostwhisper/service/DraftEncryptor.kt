@@ -0,0 +1,134 @@
+package com.ghostwhisper.service
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.data.model.GhostPacket
+import com.ghostwhisper.scan.ChannelSecret
+import com.ghostwhisper.scan.KeyResolver
+import com.ghostwhisper.stegano.SteganoCodec
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+
+/**
+ * Speculative encryption of the message the user is still typing in WhatsApp.
+ *
+ * Sending used to resolve the channel key, decode it, set up the cipher, build the packet and ZW
+ * encode it only after the user confirmed the cover message. Now every edit of WhatsApp's input
+ * field calls [onDraftChanged]; once typing pauses for [debounceMillis], the draft is encrypted
+ * for the likely channel in the background. On send, [take] hands over the prepared ZW payload
+ * if — and only if — it was made from exactly the same text for the same channel, so only the
+ * cover message is left to do.
+ *
+ * Resolved channel keys stay cached here too, so a send that misses the speculation still skips
+ * the database. Call [invalidate] whenever the keyring changes.
+ *
+ * Stale work is never used: every edit and every [invalidate] bumps a generation, and a
+ * background result whose generation is no longer current is dropped. A prepared payload is
+ * handed out at most once, so its IV is never reused for a second message.
+ */
+class DraftEncryptor(
+        private val scope: CoroutineScope,
+        private val keys: KeyResolver,
+        private val debounceMillis: Long = DEFAULT_DEBOUNCE_MS
+) {
+
+    companion object {
+        /** Long enough to skip most keystrokes of a fast typist. */
+        const val DEFAULT_DEBOUNCE_MS = 400L
+
+        /** Encrypt [plaintext] for [secret] and ZW-encode the packet, ready for a cover message. */
+        fun encodePayload(plaintext: String, secret: ChannelSecret): String {
+            val encrypted = AESCrypto.encrypt(plaintext, secret.key)
+            val packet =
+                    GhostPacket(
+                            keyId = secret.keyId,
+                            iv = encrypted.ivBase64(),
+                            ciphertext = encrypted.ciphertextBase64()
+                    )
+            return SteganoCodec.encode(packet.toBytes())
+        }
+    }
+
+    /** A draft encrypted ahead of time. */
+    private class Prepared(val keyId: String, val plaintext: String, val payload: String)
+
+    private val lock = Any()
+    private val secrets = HashMap<String, ChannelSecret>()
+    private var generation = 0L
+    private var keyringGeneration = 0L
+    private var job: Job? = null
+    private var prepared: Prepared? = null
+
+    /**
+     * The input field now holds [text]; [keyId] is the channel it would most likely be sent to,
+     * or null if that isn't known yet (several channels and none picked). Cheap; any thread.
+     */
+    fun onDraftChanged(text: String?, keyId: String?) {
+        synchronized(lock) {
+            val current = prepared
+            if (current != null && current.plaintext == text && current.keyId == keyId) return
+            val myGeneration = ++generation
+            job?.cancel()
+            job = null
+            prepared = null
+            if (text.isNullOrBlank() || keyId == null) return
+
+            job =
+                    scope.launch {
+                        delay(debounceMillis)
+                        val secret = secret(keyId) ?: return@launch
+                        val payload = encodePayload(text, secret)
+                        synchronized(lock) {
+                            if (generation == myGeneration) {
+                                prepared = Prepared(keyId, text, payload)
+                            }
+                        }
+                    }
+        }
+    }
+
+    /**
+     * The ZW payload prepared for exactly [plaintext] on [keyId], or null if there is none (the
+     * caller encrypts itself). Whatever was prepared or still in flight is discarded either way.
+     */
+    fun take(plaintext: String, keyId: String): String? {
+        synchronized(lock) {
+            generation++
+            job?.cancel()
+            job = null
+            val current = prepared ?: return null
+            prepared = null
+            return if (current.plaintext == plaintext && current.keyId == keyId) {
+                current.payload
+            } else {
+                null
+            }
+        }
+    }
+
+    /** The key for [keyId], from the cache or resolved (and cached) now; null if not held. */
+    suspend fun secret(keyId: String): ChannelSecret? {
+        val cached = synchronized(lock) { secrets[keyId] }
+        if (cached != null) return cached
+        val myKeyring = synchronized(lock) { keyringGeneration }
+        val secret = keys.resolve(keyId) ?: return null
+        synchronized(lock) {
+            // Resolved against a keyring that has since changed: use once, don't keep
+            if (keyringGeneration == myKeyring) secrets[keyId] = secret
+        }
+        return secret
+    }
+
+    /** Forget cached keys and any prepared or in-flight draft. */
+    fun invalidate() {
+        synchronized(lock) {
+            generation++
+            keyringGeneration++
+            job?.cancel()
+            job = null
+            prepared = null
+            secrets.clear()
+        }
+    }
+}
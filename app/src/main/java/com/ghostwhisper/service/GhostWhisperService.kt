@@ -10,12 +10,28 @@ import android.os.Looper
 import android.util.Log
 import android.view.accessibility.AccessibilityEvent
 import android.view.accessibility.AccessibilityNodeInfo
+import android.view.accessibility.AccessibilityWindowInfo
 import android.widget.Toast
 import com.ghostwhisper.crypto.AESCrypto
 import com.ghostwhisper.data.db.KeyringDatabase
-import com.ghostwhisper.data.model.GhostPacket
+import com.ghostwhisper.data.model.ChannelKey
+import com.ghostwhisper.data.repository.SettingsRepository
 import com.ghostwhisper.data.repository.KeyringRepository
+import com.ghostwhisper.metrics.Metrics
+import com.ghostwhisper.metrics.Tracer
+import com.ghostwhisper.metrics.asyncSection
+import com.ghostwhisper.metrics.section
+import com.ghostwhisper.metrics.time
+import com.ghostwhisper.scan.ChannelSecret
+import com.ghostwhisper.scan.DecryptedMessage
+import com.ghostwhisper.scan.KeyResolver
+import com.ghostwhisper.scan.PayloadScanner
+import com.ghostwhisper.scan.ScanStats
+import com.ghostwhisper.scan.SecretTimeline
+import com.ghostwhisper.scan.TreeSnapshot
 import com.ghostwhisper.stegano.SteganoCodec
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
 import kotlinx.coroutines.*
 
 /**
@@ -37,6 +53,23 @@ class GhostWhisperService : AccessibilityService() {
     companion object {
         private const val TAG = "GhostWhisperService"
         const val WHATSAPP_PACKAGE = "com.whatsapp"
+        private const val TRACE_SEND = "secure send"
+
+        /** Housekeeping key: one chat-title lookup pending at a time. */
+        private const val TASK_LINK_CHAT = "link chat"
+
+        /** Housekeeping key: one timeline save (or delete) pending at a time. */
+        private const val TASK_SAVE_TIMELINE = "save timeline"
+
+        /**
+         * After a window change, how long to wait before looking for a chat title again if the
+         * first lookup found none: the toolbar may not have been laid out yet.
+         */
+        private const val TITLE_RECHECK_MS = 500L
+
+        /** Upper bounds for the send path's UI waits; normally they end on the next event. */
+        private const val FOCUS_TIMEOUT_MS = 1_000L
+        private const val SEND_BUTTON_TIMEOUT_MS = 1_000L
 
         // Known WhatsApp View IDs (Subject to change with WA updates)
         const val ID_INPUT_FIELD = "com.whatsapp:id/entry"
@@ -75,18 +108,63 @@ class GhostWhisperService : AccessibilityService() {
         fun startEncryptionFlow() {
             instance?.beginEncryptionFlow()
         }
+
+        /**
+         * Decrypt payloads found outside the accessibility tree (notification text) into the
+         * scanner's cache, without showing them. Returns those decrypted for the first time;
+         * empty if the service isn't running.
+         */
+        suspend fun prefetchPayloads(rawMessages: List<String>): List<DecryptedMessage> {
+            return instance?.payloadScanner?.prefetch(rawMessages) ?: emptyList()
+        }
+
+        /** Apply the "Keep Secret History" setting: save the timeline now, or delete it. */
+        fun onTimelinePersistChanged(context: Context, enabled: Boolean) {
+            val service = instance
+            when {
+                service != null -> service.scheduleTimelineSave()
+                !enabled -> TimelineStore(context).delete()
+            }
+        }
     }
 
     private val serviceScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+    private lateinit var scheduler: WorkScheduler
     private lateinit var repository: KeyringRepository
     private lateinit var contactsHelper: ContactsHelper
     private lateinit var notificationHelper: NotificationHelper
+    private lateinit var payloadScanner: PayloadScanner
+    private lateinit var draftEncryptor: DraftEncryptor
+    private lateinit var governor: ScanGovernor
+    private lateinit var powerWatcher: PowerWatcher
+    private lateinit var settings: SettingsRepository
+    private lateinit var timelineStore: TimelineStore
+
+    /** Decrypted messages per chat, for paging in the overlay and refilling it on re-entry. */
+    private val timeline = SecretTimeline()
+
+    /** Latest active channels from the keyring flow; null until it first emits. */
+    @Volatile private var channels: List<ChannelKey>? = null
+
+    /** Fed by every accessibility event; the send path awaits UI states on it. */
+    private val uiSignal = UiEventSignal()
 
     private var clipboardManager: ClipboardManager? = null
     private var clipboardGuardEnabled = true
 
-    // Cache current chat to avoid repetitive DB lookups
-    private var lastChatTitle: String? = null
+    /** Whether the active WhatsApp window showed a conversation at its last title lookup. */
+    @Volatile private var chatOpen = false
+
+    /** Event subscription last applied; null until connected. Guarded by `this`. */
+    private var mode: ServiceMode? = null
+
+    /** Chat titles per window, and the chat the user is in. */
+    private val chats = ChatTracker()
+
+    /** The window a scan runs over, in its coroutine context; see [showDecrypted]. */
+    private class ScanWindow(val windowId: Int) : AbstractCoroutineContextElement(ScanWindow) {
+        companion object Key : CoroutineContext.Key<ScanWindow>
+    }
 
     override fun onCreate() {
         super.onCreate()
@@ -95,6 +173,40 @@ class GhostWhisperService : AccessibilityService() {
         repository = KeyringRepository(db.keyringDao())
         contactsHelper = ContactsHelper(contentResolver)
         notificationHelper = NotificationHelper(applicationContext)
+        scheduler =
+                WorkScheduler(serviceScope) { lane, e ->
+                    Log.e(TAG, "Unhandled error in $lane task: ${e.message}", e)
+                }
+        governor = ScanGovernor(::applyScanLevel)
+        applyScanLevel(governor.level)
+        powerWatcher = PowerWatcher(applicationContext, governor)
+        powerWatcher.start()
+        payloadScanner =
+                PayloadScanner(keys = ::resolveChannelSecret, onDecrypted = ::showDecrypted)
+        draftEncryptor =
+                DraftEncryptor(
+                        scope = serviceScope,
+                        keys = KeyResolver { keyId -> repository.findByKeyId(keyId)?.toSecret() }
+                )
+        settings = SettingsRepository(applicationContext)
+        timelineStore = TimelineStore(applicationContext)
+        scheduler.submit(WorkScheduler.Lane.HOUSEKEEPING) {
+            if (settings.timelinePersistEnabled && timelineStore.loadInto(timeline)) {
+                channels?.let { timeline.retainKeys(it.mapTo(HashSet()) { c -> c.keyId }) }
+            }
+        }
+        // Cached scan outcomes, keys and drafts are keyed to the keyring; drop them on any change
+        serviceScope.launch {
+            repository.activeChannels.collect {
+                channels = it
+                updateMode()
+                payloadScanner.clearCache()
+                draftEncryptor.invalidate()
+                timeline.retainKeys(it.mapTo(HashSet()) { channel -> channel.keyId })
+                // A link may have been added for the chat that is already open
+                chats.current?.let(::linkChannel)
+            }
+        }
 
         clipboardManager = getSystemService(Context.CLIPBOARD_SERVICE) as? ClipboardManager
         isServiceRunning = true
@@ -105,7 +217,11 @@ class GhostWhisperService : AccessibilityService() {
         isServiceRunning = false
         isWhatsAppActive = false
         EncryptionOverlayManager.cleanup(applicationContext)
+        OverlayManager.release()
+        MediaScanObserver.unregister(applicationContext)
         instance = null
+        powerWatcher.stop()
+        scheduler.shutdown()
         serviceScope.cancel()
         Log.d(TAG, "GhostWhisperService destroyed")
         super.onDestroy()
@@ -120,19 +236,28 @@ class GhostWhisperService : AccessibilityService() {
      * 4. Encrypt → inject → auto-send
      */
     fun beginEncryptionFlow() {
-        serviceScope.launch {
+        // One async span per secure send, from the widget tap to the send click
+        val traceId = Tracer.newAsyncId()
+        Tracer.asyncBegin(TRACE_SEND, Tracer.CATEGORY_SEND, traceId)
+        submitSend(traceId) {
             try {
-                val text = getInputText()
+                val text = Tracer.section("read input", Tracer.CATEGORY_SEND) { getInputText() }
                 if (text.isNullOrBlank()) {
+                    endSendTrace(traceId, "no text")
                     showToast("Type a message first")
-                    return@launch
+                    return@submitSend
                 }
 
-                val allChannels = repository.getAllActiveKeys()
+                val allChannels =
+                        channels
+                                ?: Tracer.asyncSection("load channels", Tracer.CATEGORY_SEND) {
+                                    repository.getAllActiveKeys()
+                                }
                 Log.d(TAG, "Encryption flow: found ${allChannels.size} channel(s)")
 
                 when {
                     allChannels.isEmpty() -> {
+                        endSendTrace(traceId, "no channels")
                         showToast("Create a channel first")
                     }
                     allChannels.size == 1 -> {
@@ -142,11 +267,17 @@ class GhostWhisperService : AccessibilityService() {
                         Log.d(TAG, "Auto-selected channel: ${channel.channelName}")
                         withContext(Dispatchers.Main) {
                             onChannelAutoSwitched?.invoke(channel.channelName)
-                            showCoverMessageOverlay(channel.channelName, text, channel.keyId)
+                            showCoverMessageOverlay(
+                                    channel.channelName,
+                                    text,
+                                    channel.keyId,
+                                    traceId
+                            )
                         }
                     }
                     else -> {
                         withContext(Dispatchers.Main) {
+                            Tracer.instant("channel picker shown", Tracer.CATEGORY_SEND)
                             EncryptionOverlayManager.showChannelPicker(
                                     context = applicationContext,
                                     channels = allChannels,
@@ -159,11 +290,13 @@ class GhostWhisperService : AccessibilityService() {
                                         showCoverMessageOverlay(
                                                 selected.channelName,
                                                 text,
-                                                selected.keyId
+                                                selected.keyId,
+                                                traceId
                                         )
                                     },
                                     onCancel = {
                                         Log.d(TAG, "User cancelled channel picker")
+                                        endSendTrace(traceId, "cancelled")
                                         EncryptionOverlayManager.dismissOverlay(applicationContext)
                                     }
                             )
@@ -172,6 +305,7 @@ class GhostWhisperService : AccessibilityService() {
                 }
             } catch (e: Exception) {
                 Log.e(TAG, "Encryption flow error: ${e.message}", e)
+                endSendTrace(traceId, "error")
                 showToast("Encryption error — please try again")
             }
         }
@@ -180,8 +314,10 @@ class GhostWhisperService : AccessibilityService() {
     private fun showCoverMessageOverlay(
             channelName: String,
             secretText: String,
-            channelKeyId: String
+            channelKeyId: String,
+            traceId: Long
     ) {
+        Tracer.instant("cover prompt shown", Tracer.CATEGORY_SEND)
         EncryptionOverlayManager.showCoverMessageInput(
                 context = applicationContext,
                 channelName = channelName,
@@ -189,15 +325,28 @@ class GhostWhisperService : AccessibilityService() {
                 onSend = { coverMessage ->
                     Log.d(TAG, "Cover message entered, encrypting for channel: $channelName")
                     EncryptionOverlayManager.dismissOverlay(applicationContext)
-                    injectEncryptedMessage(secretText, coverMessage, channelKeyId)
+                    injectEncryptedMessage(secretText, coverMessage, channelKeyId, traceId)
                 },
                 onCancel = {
                     Log.d(TAG, "User cancelled cover message input")
+                    endSendTrace(traceId, "cancelled")
                     EncryptionOverlayManager.dismissOverlay(applicationContext)
                 }
         )
     }
 
+    /** Run [block] on the send lane; if a send is already pending there, tell the user. */
+    private fun submitSend(traceId: Long, block: suspend () -> Unit) {
+        if (!scheduler.submit(WorkScheduler.Lane.SEND, block = block)) {
+            endSendTrace(traceId, "busy")
+            showToast("Still sending — try again in a moment")
+        }
+    }
+
+    private fun endSendTrace(traceId: Long, outcome: String) {
+        Tracer.asyncEnd(TRACE_SEND, Tracer.CATEGORY_SEND, traceId, mapOf("outcome" to outcome))
+    }
+
     private fun showToast(message: String) {
         Handler(Looper.getMainLooper()).post {
             Toast.makeText(applicationContext, message, Toast.LENGTH_SHORT).show()
@@ -233,18 +382,42 @@ class GhostWhisperService : AccessibilityService() {
         isServiceRunning = true
         Log.d(TAG, "GhostWhisperService connected")
 
+        // Events only arrive on changes: pick up WhatsApp if it is already in front
+        rootInActiveWindow?.let { root ->
+            if (root.packageName?.toString() == WHATSAPP_PACKAGE) {
+                setWhatsAppActive(true)
+                scheduleTitleLookup(root.windowId)
+            }
+            root.recycle()
+        }
+        updateMode()
+
+        // Build the overlay window now, so the first secret only fills in text
+        OverlayManager.prepare(this)
+
         // Set up clipboard guard
         setupClipboardGuard()
+
+        // Watch for incoming stego images if enabled
+        MediaScanObserver.syncWithSettings(applicationContext)
     }
 
     override fun onAccessibilityEvent(event: AccessibilityEvent?) {
         event ?: return
-
-        // Safety: only process WhatsApp events
-        if (event.packageName?.toString() == WHATSAPP_PACKAGE) {
-            // Only process content from WhatsApp, but handle window state for all apps to know when
-            // to hide widget
+        Metrics.eventsReceived.increment()
+        // Wake any send waiting for WhatsApp's UI (focus back, Send button shown). Before the
+        // package check: an overlay going away is a window-list change, which has no package
+        uiSignal.signal()
+
+        // Window-list changes belong to no app; they show another app taking over
+        if (event.eventType == AccessibilityEvent.TYPE_WINDOWS_CHANGED) {
+            handleWindowsChanged()
+            return
         }
+        // Safety: only process WhatsApp events
+        if (event.packageName?.toString() != WHATSAPP_PACKAGE) return
+
+        ScanRecorder.onEvent(event)
 
         when (event.eventType) {
             AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED -> handleWindowStateChanged(event)
@@ -264,202 +437,436 @@ class GhostWhisperService : AccessibilityService() {
 
     /** Detect WhatsApp foreground state & Chat Title. */
     private fun handleWindowStateChanged(event: AccessibilityEvent) {
-        val isWhatsApp = event.packageName?.toString() == WHATSAPP_PACKAGE
-        if (isWhatsAppActive != isWhatsApp) {
-            isWhatsAppActive = isWhatsApp
-            onWhatsAppStateChanged?.invoke(isWhatsApp)
-            Log.d(TAG, "WhatsApp active: $isWhatsApp")
+        setWhatsAppActive(true)
+        // Navigation: the window may now show another chat
+        scheduleTitleLookup(event.windowId, recheck = true)
+    }
+
+    /** The window list changed while WhatsApp was in front: is it still? */
+    private fun handleWindowsChanged() {
+        setWhatsAppActive(
+                ServiceMode.whatsAppInFront(activeAppPackage(), packageName, isWhatsAppActive)
+        )
+    }
+
+    /**
+     * Package of the active window if it is an app's; null if it is the keyboard, system UI or
+     * an overlay, which float over whichever app is in front.
+     */
+    private fun activeAppPackage(): String? {
+        val windows = windows
+        try {
+            val active = windows.firstOrNull { it.isActive } ?: return null
+            if (active.type != AccessibilityWindowInfo.TYPE_APPLICATION) return null
+            val root = active.root ?: return null
+            return try {
+                root.packageName?.toString()
+            } finally {
+                root.recycle()
+            }
+        } finally {
+            windows.forEach { it.recycle() }
         }
+    }
 
-        if (isWhatsApp) {
-            detectAndLinkChat()
+    private fun setWhatsAppActive(active: Boolean) {
+        if (isWhatsAppActive != active) {
+            isWhatsAppActive = active
+            // Coming back, even to the same chat, shows its timeline again
+            if (!active) chats.onLeft()
+            onWhatsAppStateChanged?.invoke(active)
+            Log.d(TAG, "WhatsApp active: $active")
+            updateMode()
         }
     }
 
+    /**
+     * Narrow the event subscription to what the service can use right now (see [ServiceMode]).
+     * Called whenever one of its inputs changes; a no-op unless the mode does.
+     */
+    @Synchronized
+    private fun updateMode() {
+        val next = ServiceMode.of(!channels.isNullOrEmpty(), isWhatsAppActive, chatOpen)
+        if (next == mode) return
+        // Null until connected; onServiceConnected applies the mode then
+        val info = serviceInfo ?: return
+        info.eventTypes = next.eventTypes
+        info.flags = next.flags
+        info.notificationTimeout = next.notificationTimeout
+        serviceInfo = info
+        mode = next
+        Metrics.modeSwitches.increment()
+        Log.d(TAG, "Service mode: $next")
+    }
+
+    /** Scan less eagerly on a hot device or low battery (see [ScanGovernor]). */
+    private fun applyScanLevel(level: ScanGovernor.Level) {
+        scheduler.setHold(WorkScheduler.Lane.SCAN, level.coalesceMillis)
+        Metrics.setState("scan.governor", level.name)
+        Tracer.instant("scan level ${level.name}", Tracer.CATEGORY_RECEIVE)
+        Log.i(TAG, "Scan level: $level")
+    }
+
     /** Scan new message content for hidden payloads. */
     private fun handleContentChanged(event: AccessibilityEvent) {
         val source = event.source ?: return
 
-        // Periodically check chat title even on content change (e.g. searching)
-        detectAndLinkChat()
+        updateChatTitle(event.windowId, source)
+
+        // Queueing shows up as the gap between this span and the scan slice
+        val traceId = Tracer.newAsyncId()
+        Tracer.asyncBegin("scan queued", Tracer.CATEGORY_RECEIVE, traceId)
+        // Keyed by node: a scan of it that hasn't started yet is replaced, and one still running
+        // is cancelled once it has delivered a message, as this one sees the same nodes with the
+        // newer content. The node's hash (view and window IDs) stands in for it, since the node
+        // itself is recycled mid-scan.
+        val accepted =
+                scheduler.submit(
+                        WorkScheduler.Lane.SCAN,
+                        key = source.windowId to source.hashCode(),
+                        onDrop = { reason ->
+                            if (reason == WorkScheduler.Drop.SUPERSEDED) {
+                                Metrics.eventsCoalesced.increment()
+                            }
+                            Tracer.asyncEnd(
+                                    "scan queued",
+                                    Tracer.CATEGORY_RECEIVE,
+                                    traceId,
+                                    mapOf("dropped" to reason.name)
+                            )
+                            source.recycle()
+                        }
+                ) { withContext(ScanWindow(source.windowId)) { scanSource(source, traceId) } }
+        if (!accepted) {
+            Tracer.asyncEnd("scan queued", Tracer.CATEGORY_RECEIVE, traceId)
+            source.recycle()
+        }
+    }
 
-        serviceScope.launch {
-            try {
-                scanNodeForPayloads(source)
-            } catch (e: Exception) {
-                // Silent fail: log only in debug
-                Log.d(TAG, "Scan error: ${e.message}")
-            } finally {
-                source.recycle()
+    private suspend fun scanSource(source: AccessibilityNodeInfo, traceId: Long) {
+        Tracer.asyncEnd("scan queued", Tracer.CATEGORY_RECEIVE, traceId)
+        try {
+            // Async: key lookups suspend, so the scan may finish on another thread
+            Tracer.asyncBegin("scan", Tracer.CATEGORY_RECEIVE, traceId)
+            val level = governor.level
+            val stats = Metrics.scanDuration.time {
+                // One walk over the live tree, releasing nodes as it goes; the scan itself then
+                // makes no binder calls
+                val tree =
+                        try {
+                            Tracer.section("snapshot", Tracer.CATEGORY_RECEIVE) {
+                                TreeSnapshot.capture(
+                                        AccessibilityScanNode(source),
+                                        maxNodes = level.maxNodes,
+                                        visibleOnly = !level.scanOffscreen
+                                )
+                            }
+                        } finally {
+                            source.recycle()
+                        }
+                payloadScanner.scan(tree)
             }
+            Tracer.asyncEnd(
+                    "scan",
+                    Tracer.CATEGORY_RECEIVE,
+                    traceId,
+                    mapOf(
+                            "nodes" to stats.nodesVisited,
+                            "decrypts" to stats.decrypts,
+                            "level" to level.name
+                    )
+            )
+            recordScan(stats)
+        } catch (e: CancellationException) {
+            // Superseded by a newer scan of the same node
+            Tracer.asyncEnd("scan", Tracer.CATEGORY_RECEIVE, traceId, mapOf("preempted" to true))
+            throw e
+        } catch (e: Exception) {
+            Tracer.asyncEnd("scan", Tracer.CATEGORY_RECEIVE, traceId, mapOf("error" to true))
+            // Silent fail: log only in debug
+            Log.d(TAG, "Scan error: ${e.message}")
         }
     }
 
-    /** Monitor text input changes (for widget glow state). */
+    private fun recordScan(stats: ScanStats) {
+        Metrics.nodesVisited.increment(stats.nodesVisited.toLong())
+        Metrics.payloadsFound.increment(stats.payloadsFound.toLong())
+        Metrics.decryptHits.increment(stats.hits.toLong())
+        Metrics.decryptMisses.increment(stats.misses.toLong())
+        Metrics.decryptFailures.increment(stats.failures.toLong())
+    }
+
+    /** Typing in WhatsApp's input field: pre-encrypt the draft for the likely channel. */
     private fun handleTextChanged(event: AccessibilityEvent) {
-        // Implementation for typing detection
+        if (event.packageName?.toString() != WHATSAPP_PACKAGE || event.isPassword) return
+        val source = event.source ?: return
+        val text =
+                try {
+                    if (source.viewIdResourceName != ID_INPUT_FIELD) return
+                    source.text?.toString()
+                } finally {
+                    source.recycle()
+                }
+        val keyId = activeChannelKeyId ?: channels?.singleOrNull()?.keyId
+        draftEncryptor.onDraftChanged(text, keyId)
     }
 
     // ─── Chat Linking Logic ─────────────────────────────────────────
 
-    /** Attempt to identify the current chat and link to a channel. */
-    private fun detectAndLinkChat() {
-        val rootNode = rootInActiveWindow ?: return
-
-        try {
-            val titleNode = findChatTitleNode(rootNode)
-            val title = titleNode?.text?.toString()
+    /**
+     * Keep [windowId]'s chat title current from a content change, without searching the tree: a
+     * change reported on the title node carries the new title, and only a window not seen before
+     * gets a lookup. Everything else is steady-state chatting and costs nothing here.
+     */
+    private fun updateChatTitle(windowId: Int, source: AccessibilityNodeInfo) {
+        if (source.viewIdResourceName == ID_CHAT_TITLE) {
+            onChatTitle(windowId, source.text?.toString())
+        } else if (!chats.isKnown(windowId)) {
+            scheduleTitleLookup(windowId)
+        }
+    }
 
-            if (!title.isNullOrEmpty() && title != lastChatTitle) {
-                lastChatTitle = title
-                lastDetectedGroupName = title
-                Log.d(TAG, "Detected chat title: $title")
+    /**
+     * Search the active window for its chat title, off the main thread. With [recheck], a lookup
+     * that finds none is repeated once after [TITLE_RECHECK_MS]: without a title the service
+     * stays in [ServiceMode.CHAT_LIST], where no content change would trigger another.
+     */
+    private fun scheduleTitleLookup(windowId: Int, recheck: Boolean = false) {
+        // Latest wins: a lookup still queued covers this call
+        scheduler.submit(WorkScheduler.Lane.HOUSEKEEPING, key = TASK_LINK_CHAT) {
+            lookUpChatTitle(windowId, recheck)
+        }
+    }
 
-                checkLinkedGroup(title)
-            }
-        } catch (e: Exception) {
-            Log.e(TAG, "Error linking chat: ${e.message}")
-        } finally {
-            rootNode.recycle()
+    private fun lookUpChatTitle(windowId: Int, recheck: Boolean) {
+        val rootNode = rootInActiveWindow
+        if (rootNode == null) {
+            if (recheck) recheckTitleLater(windowId)
+            return
         }
+        Metrics.titleLookups.increment()
+
+        val rootWindowId = rootNode.windowId
+        val title =
+                try {
+                    val titleNode = findChatTitleNode(rootNode)
+                    titleNode?.text?.toString().also { titleNode?.recycle() }
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error linking chat: ${e.message}")
+                    null
+                } finally {
+                    rootNode.recycle()
+                }
+
+        // Asked about a window that isn't active: don't search again for every change in it
+        if (rootWindowId != windowId) chats.markLookedUp(windowId)
+        onChatTitle(rootWindowId, title)
+
+        if (recheck && title.isNullOrEmpty()) recheckTitleLater(windowId)
+    }
+
+    private fun recheckTitleLater(windowId: Int) {
+        Handler(Looper.getMainLooper()).postDelayed(
+                { if (isWhatsAppActive) scheduleTitleLookup(windowId) },
+                TITLE_RECHECK_MS
+        )
     }
 
     private fun findChatTitleNode(root: AccessibilityNodeInfo): AccessibilityNodeInfo? {
         // Strategy A: ID lookup
         val nodes = root.findAccessibilityNodeInfosByViewId(ID_CHAT_TITLE)
-        if (!nodes.isNullOrEmpty()) return nodes[0]
+        if (!nodes.isNullOrEmpty()) {
+            nodes.drop(1).forEach { it.recycle() }
+            return nodes[0]
+        }
 
         // Strategy B: Heuristic (implied for future if ID fails)
         // Look for text in the top Action Bar area
         return null
     }
 
-    private fun checkLinkedGroup(groupName: String) {
-        serviceScope.launch {
-            val linkedChannels = repository.findChannelsByGroup(groupName)
-            if (linkedChannels.isNotEmpty()) {
-                val channel = linkedChannels.first() // Pick first if multiple
-
-                // Auto-switch!
-                if (activeChannelKeyId != channel.keyId) {
-                    activeChannelKeyId = channel.keyId
-                    activeChannelName = channel.channelName
-
-                    withContext(Dispatchers.Main) {
-                        onChannelAutoSwitched?.invoke(channel.channelName)
-                        Log.i(TAG, "Auto-linked to channel: ${channel.channelName}")
-                    }
+    /** Remember [windowId]'s title and, if the user has just entered a chat, link its channel. */
+    private fun onChatTitle(windowId: Int, title: String?) {
+        val entered = chats.onTitle(windowId, title)
+        chatOpen = !title.isNullOrEmpty()
+        updateMode()
+
+        if (entered && title != null) {
+            lastDetectedGroupName = title
+            Log.d(TAG, "Detected chat title: $title")
+
+            linkChannel(title)
+            // Back in a chat with secrets: show them before any scan has run
+            if (timeline.messages(title).isNotEmpty()) {
+                Handler(Looper.getMainLooper()).post {
+                    Metrics.timelineRestores.increment()
+                    showTimeline(title, rawMessage = null)
                 }
-            } else {
-                // Determine if we should clear active channel?
-                // For now, keep it sticky to avoid annoyance,
-                // or clear it if the user explicitly left the linked chat.
-                // Let's NOT clear it automatically to allow manual override.
             }
         }
     }
 
-    // ─── Silent Fail Decryption Protocol ────────────────────────────
-
-    /** Recursively scan an accessibility node tree for ZW payloads. */
-    private suspend fun scanNodeForPayloads(node: AccessibilityNodeInfo) {
-        val text = node.text?.toString()
-        if (text != null && SteganoCodec.containsPayload(text)) {
-            attemptDecrypt(text)
+    /** Auto-switch to the channel linked to [groupName], from the in-memory keyring. */
+    private fun linkChannel(groupName: String) {
+        // Newest first, like the keyring screen; pick the first if several are linked
+        val channel = channels?.firstOrNull { it.linkedGroupName == groupName }
+        if (channel != null) {
+            // Auto-switch!
+            if (activeChannelKeyId != channel.keyId) {
+                activeChannelKeyId = channel.keyId
+                activeChannelName = channel.channelName
+
+                Handler(Looper.getMainLooper()).post {
+                    onChannelAutoSwitched?.invoke(channel.channelName)
+                    Log.i(TAG, "Auto-linked to channel: ${channel.channelName}")
+                }
+            }
+        } else {
+            // Determine if we should clear active channel?
+            // For now, keep it sticky to avoid annoyance,
+            // or clear it if the user explicitly left the linked chat.
+            // Let's NOT clear it automatically to allow manual override.
         }
+    }
 
-        val contentDesc = node.contentDescription?.toString()
-        if (contentDesc != null && SteganoCodec.containsPayload(contentDesc)) {
-            attemptDecrypt(contentDesc)
-        }
+    // ─── Silent Fail Decryption Protocol ────────────────────────────
+    // The scan itself lives in PayloadScanner so it can be replayed off-device.
 
-        for (i in 0 until node.childCount) {
-            val child = node.getChild(i)
-            if (child != null) {
-                try {
-                    scanNodeForPayloads(child)
-                } finally {
-                    child.recycle()
+    /** Key lookup for [PayloadScanner]; unknown key IDs are simply not ours. */
+    private suspend fun resolveChannelSecret(keyId: String): ChannelSecret? {
+        val channelKey =
+                Tracer.asyncSection("key lookup", Tracer.CATEGORY_RECEIVE) {
+                    repository.findByKeyId(keyId)
                 }
-            }
+        return channelKey?.toSecret()
+    }
+
+    private fun ChannelKey.toSecret(): ChannelSecret {
+        return ChannelSecret(
+                keyId = keyId,
+                channelName = channelName,
+                key = AESCrypto.keyFromBase64(aesKeyBase64)
+        )
+    }
+
+    /**
+     * Surface a decrypted message as an overlay on top of WhatsApp. Only a scan's first-ranked
+     * (newest on screen) message takes the overlay, so older ones don't flash past before it;
+     * all of them go into the chat's timeline, which the overlay pages through.
+     */
+    private suspend fun showDecrypted(message: DecryptedMessage) {
+        // Filed under the chat shown in the scanned window; without a title (e.g. before the
+        // first lookup) by channel
+        val windowId = currentCoroutineContext()[ScanWindow]?.windowId
+        val chat = windowId?.let(chats::chatIn) ?: message.channelName
+        if (timeline.record(chat, message)) scheduleTimelineSave()
+
+        withContext(Dispatchers.Main) {
+            val start = Tracer.now()
+            onMessageDecrypted?.invoke(message.channelName, message.plaintext)
+            if (message.rank > 0) return@withContext
+
+            // Also trigger notification if screen is off or similar?
+            // For now, just Overlay
+            showTimeline(chat, message.rawMessage)
+            Tracer.complete("show overlay", Tracer.CATEGORY_RECEIVE, start)
         }
+        // Something was delivered: a newer scan of the same node may cancel this one from here on
+        WorkScheduler.allowPreemption()
     }
 
-    private suspend fun attemptDecrypt(rawMessage: String) {
-        try {
-            val zwPayload = SteganoCodec.extractPayload(rawMessage) ?: return
-            val payloadBytes = SteganoCodec.decode(zwPayload)
-            val packet = GhostPacket.fromBytes(payloadBytes)
-
-            val channelKey = repository.findByKeyId(packet.keyId) ?: return
-
-            val key = AESCrypto.keyFromBase64(channelKey.aesKeyBase64)
-            val plaintext =
-                    AESCrypto.decrypt(
-                            ciphertext = packet.ciphertextBytes(),
-                            key = key,
-                            iv = packet.ivBytes()
-                    )
+    /** Show [chat]'s timeline in the overlay, at [rawMessage] (the latest if null). Main thread. */
+    private fun showTimeline(chat: String, rawMessage: String?) {
+        val messages = timeline.messages(chat)
+        if (messages.isEmpty()) return
+        val index = messages.indexOfFirst { it.rawMessage == rawMessage }
+        OverlayManager.showPages(
+                context = this,
+                pages =
+                        messages.map { message ->
+                            OverlayManager.Page(
+                                    channelName = message.channelName,
+                                    message = message.plaintext,
+                                    coverMessage = message.rawMessage, // Original text as cover
+                                    onReply = {
+                                        activeChannelKeyId = message.keyId
+                                        activeChannelName = message.channelName
+                                    }
+                            )
+                        },
+                index = if (index >= 0) index else messages.lastIndex
+        )
+    }
 
-            withContext(Dispatchers.Main) {
-                onMessageDecrypted?.invoke(channelKey.channelName, plaintext)
-
-                // Also trigger notification if screen is off or similar?
-                // For now, just Overlay
-                OverlayManager.showOverlay(
-                        context = this@GhostWhisperService,
-                        channelName = channelKey.channelName,
-                        message = plaintext,
-                        coverMessage = rawMessage, // Pass original text as cover
-                        onReply = {
-                            activeChannelKeyId = channelKey.keyId
-                            activeChannelName = channelKey.channelName
-                        }
-                )
-            }
-        } catch (e: Exception) {
-            return // Silent fail
+    /** Persist the timeline if the user keeps secret history, or delete what was kept. */
+    private fun scheduleTimelineSave() {
+        scheduler.submit(WorkScheduler.Lane.HOUSEKEEPING, key = TASK_SAVE_TIMELINE) {
+            if (settings.timelinePersistEnabled) timelineStore.save(timeline)
+            else timelineStore.delete()
         }
     }
 
     // ─── Text Injection (Sender Side) ───────────────────────────────
 
-    fun injectEncryptedMessage(plaintext: String, coverMessage: String, channelKeyId: String) {
-        serviceScope.launch {
+    /**
+     * Encrypt [plaintext] for the channel, hide it in [coverMessage] and send it.
+     *
+     * @param traceId the send's async trace span, begun in [beginEncryptionFlow]; ended here
+     */
+    fun injectEncryptedMessage(
+            plaintext: String,
+            coverMessage: String,
+            channelKeyId: String,
+            traceId: Long
+    ) {
+        submitSend(traceId) {
             try {
-                // Wait for overlay to dismiss and WhatsApp to regain focus
-                delay(300)
-
-                val channelKey = repository.findByKeyId(channelKeyId)
-                if (channelKey == null) {
-                    Log.e(TAG, "Channel key not found: $channelKeyId")
-                    showToast("Channel key not found")
-                    return@launch
-                }
+                val start = System.nanoTime()
 
-                val key = AESCrypto.keyFromBase64(channelKey.aesKeyBase64)
-                val encrypted = AESCrypto.encrypt(plaintext, key)
-                val packet =
-                        GhostPacket(
-                                keyId = channelKey.keyId,
-                                iv = encrypted.ivBase64(),
-                                ciphertext = encrypted.ciphertextBase64()
-                        )
-
-                val zwPayload = SteganoCodec.encode(packet.toBytes())
+                // Usually already encrypted while the user was typing
+                var zwPayload = draftEncryptor.take(plaintext, channelKeyId)
+                if (zwPayload != null) {
+                    Tracer.instant("pre-encrypted draft used", Tracer.CATEGORY_SEND)
+                } else {
+                    val secret = draftEncryptor.secret(channelKeyId)
+                    if (secret == null) {
+                        Log.e(TAG, "Channel key not found: $channelKeyId")
+                        endSendTrace(traceId, "no key")
+                        showToast("Channel key not found")
+                        return@submitSend
+                    }
+                    // Encrypt while the overlay is still going away
+                    zwPayload =
+                            Tracer.section("encrypt + encode", Tracer.CATEGORY_SEND) {
+                                DraftEncryptor.encodePayload(plaintext, secret)
+                            }
+                }
                 val fullMessage = SteganoCodec.injectPayload(coverMessage, zwPayload)
                 Log.d(TAG, "Encrypted payload ready (${fullMessage.length} chars)")
 
-                withContext(Dispatchers.Main) {
-                    val sent = injectTextIntoWhatsApp(fullMessage)
-                    if (sent) {
-                        showToast("Message encrypted & sent ✓")
-                    } else {
-                        showToast("Could not inject — is WhatsApp focused?")
-                    }
+                // Wait for the overlay to dismiss and WhatsApp's input field to be back in front
+                val focused =
+                        Tracer.asyncSection("await WhatsApp focus", Tracer.CATEGORY_SEND) {
+                            uiSignal.await(FOCUS_TIMEOUT_MS) {
+                                true.takeIf { isWhatsAppInputActive() }
+                            }
+                        }
+                if (focused == null) Log.w(TAG, "WhatsApp not focused after $FOCUS_TIMEOUT_MS ms")
+
+                val sent =
+                        Tracer.asyncSection("inject", Tracer.CATEGORY_SEND) {
+                            injectTextIntoWhatsApp(fullMessage)
+                        }
+                endSendTrace(traceId, if (sent) "sent" else "not injected")
+                if (sent) {
+                    Metrics.injectLatency.record(System.nanoTime() - start)
+                    showToast("Message encrypted & sent ✓")
+                } else {
+                    showToast("Could not inject — is WhatsApp focused?")
                 }
             } catch (e: Exception) {
                 Log.e(TAG, "Encryption/injection failed: ${e.message}", e)
+                endSendTrace(traceId, "error")
                 showToast("Encryption failed — try again")
             }
         }
@@ -468,8 +875,11 @@ class GhostWhisperService : AccessibilityService() {
     /**
      * Injects text into WhatsApp's input field and auto-taps Send. Returns true if injection
      * succeeded, false otherwise.
+     *
+     * Node lookups and the wait for WhatsApp to render the Send button run in the caller's
+     * (background) context; only the actions themselves switch to the main thread.
      */
-    private fun injectTextIntoWhatsApp(text: String): Boolean {
+    private suspend fun injectTextIntoWhatsApp(text: String): Boolean {
         val rootNode = rootInActiveWindow
         if (rootNode == null) {
             Log.w(TAG, "Cannot inject: rootInActiveWindow is null")
@@ -489,32 +899,37 @@ class GhostWhisperService : AccessibilityService() {
                         text
                 )
                 val textSet =
-                        inputNode.performAction(AccessibilityNodeInfo.ACTION_SET_TEXT, arguments)
+                        withContext(Dispatchers.Main) {
+                            Tracer.section("set text", Tracer.CATEGORY_SEND) {
+                                inputNode.performAction(
+                                        AccessibilityNodeInfo.ACTION_SET_TEXT,
+                                        arguments
+                                )
+                            }
+                        }
                 if (!textSet) {
                     Log.w(TAG, "ACTION_SET_TEXT returned false")
                     return false
                 }
 
-                // Small delay so WhatsApp renders the Send button
-                Thread.sleep(150)
-
-                // Re-acquire root after delay (WhatsApp may have updated the view tree)
-                val freshRoot = rootInActiveWindow ?: rootNode
-                val sendNodes = freshRoot.findAccessibilityNodeInfosByViewId(ID_SEND_BUTTON)
-                val sendNode = sendNodes?.firstOrNull()
+                // WhatsApp swaps the mic button for Send once the input has text
+                val sendNode =
+                        Tracer.asyncSection("await send button", Tracer.CATEGORY_SEND) {
+                            uiSignal.await(SEND_BUTTON_TIMEOUT_MS) { findEnabledSendButton() }
+                        }
                 if (sendNode != null) {
-                    sendNode.performAction(AccessibilityNodeInfo.ACTION_CLICK)
-                    Log.d(TAG, "Encrypted message sent")
-                    sendNode.recycle()
-                } else {
-                    Log.w(TAG, "Send button not found — message is in input, user must tap Send")
-                }
-                if (freshRoot !== rootNode) {
                     try {
-                        freshRoot.recycle()
-                    } catch (e: Exception) {
-                        Log.w(TAG, "freshRoot.recycle() failed (already recycled?)", e)
+                        withContext(Dispatchers.Main) {
+                            Tracer.section("click send", Tracer.CATEGORY_SEND) {
+                                sendNode.performAction(AccessibilityNodeInfo.ACTION_CLICK)
+                            }
+                        }
+                        Log.d(TAG, "Encrypted message sent")
+                    } finally {
+                        sendNode.recycle()
                     }
+                } else {
+                    Log.w(TAG, "Send button not found — message is in input, user must tap Send")
                 }
                 return true
             } finally {
@@ -525,6 +940,32 @@ class GhostWhisperService : AccessibilityService() {
         }
     }
 
+    /** True if WhatsApp, not one of our overlays, is the active window and shows its input. */
+    private fun isWhatsAppInputActive(): Boolean {
+        val root = rootInActiveWindow ?: return false
+        try {
+            if (root.packageName?.toString() != WHATSAPP_PACKAGE) return false
+            val inputs = root.findAccessibilityNodeInfosByViewId(ID_INPUT_FIELD) ?: return false
+            inputs.forEach { it.recycle() }
+            return inputs.isNotEmpty()
+        } finally {
+            root.recycle()
+        }
+    }
+
+    /** WhatsApp's Send button if it is on screen and enabled; the caller recycles it. */
+    private fun findEnabledSendButton(): AccessibilityNodeInfo? {
+        val root = rootInActiveWindow ?: return null
+        try {
+            val buttons = root.findAccessibilityNodeInfosByViewId(ID_SEND_BUTTON) ?: return null
+            val enabled = buttons.firstOrNull { it.isEnabled }
+            buttons.forEach { if (it !== enabled) it.recycle() }
+            return enabled
+        } finally {
+            root.recycle()
+        }
+    }
+
     // ─── Clipboard Guard ────────────────────────────────────────────
 
     private fun setupClipboardGuard() {
@@ -22,6 +22,12 @@ object GifHelper {
     private val GIF87a = "GIF87a".toByteArray(StandardCharsets.US_ASCII)
     private val GIF89a = "GIF89a".toByteArray(StandardCharsets.US_ASCII)
 
+    /**
+     * Bytes [hasPayloadHeader] needs: header (6) + screen descriptor (7) + largest global color
+     * table (768) + our extension header (14). [embed] always places the block right there.
+     */
+    const val HEADER_PROBE_BYTES = 6 + 7 + 768 + 14
+
     fun isGif(bytes: ByteArray): Boolean {
         if (bytes.size < 6) return false
         val header = bytes.sliceArray(0 until 6)
@@ -72,6 +78,21 @@ object GifHelper {
         return output.toByteArray()
     }
 
+    /**
+     * Cheap check for an embedded Ghost Whisper block using only the first [HEADER_PROBE_BYTES]
+     * of the file — no need to read or parse the frames.
+     */
+    fun hasPayloadHeader(head: ByteArray): Boolean {
+        if (!isGif(head) || head.size < 13) return false
+        val packedFields = head[10].toInt() and 0xFF
+        var index = 13
+        if ((packedFields and 0x80) != 0) index += 3 * (1 shl ((packedFields and 0x07) + 1))
+        if (index + 14 > head.size) return false
+        return (head[index].toInt() and 0xFF) == 0x21 &&
+                (head[index + 1].toInt() and 0xFF) == 0xFF &&
+                isGhostWhisperBlock(head, index)
+    }
+
     /** Extracts the message from the GIF's custom Application Extension Block. */
     fun extract(gifBytes: ByteArray): String? {
         if (!isGif(gifBytes)) return null
@@ -6,13 +6,10 @@ import android.graphics.Bitmap
 import android.net.Uri
 import android.telephony.SmsManager
 import android.util.Log
-import androidx.core.content.FileProvider
 import com.ghostwhisper.data.model.ChannelMember
 import com.ghostwhisper.data.model.KeyDeliveryStatus
 import com.google.zxing.BarcodeFormat
 import com.google.zxing.qrcode.QRCodeWriter
-import java.io.File
-import java.io.FileOutputStream
 
 /**
  * Handles automatic key distribution to channel members.
@@ -49,7 +46,7 @@ class KeyDistributor(private val context: Context) {
             val message = buildMessage(channelName, joinUri)
 
             // Generate QR code
-            val qrFile = generateQrCode(joinUri, channelName)
+            val qrUri = qrCodeUri(joinUri, channelName)
 
             // Send via WhatsApp to specific contact
             val intent =
@@ -57,14 +54,7 @@ class KeyDistributor(private val context: Context) {
                         setPackage(WHATSAPP_PACKAGE)
                         type = "image/*"
                         putExtra(Intent.EXTRA_TEXT, message)
-                        putExtra(
-                                Intent.EXTRA_STREAM,
-                                FileProvider.getUriForFile(
-                                        context,
-                                        "${context.packageName}.fileprovider",
-                                        qrFile
-                                )
-                        )
+                        putExtra(Intent.EXTRA_STREAM, qrUri)
                         addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION)
                         addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
 
@@ -148,21 +138,14 @@ class KeyDistributor(private val context: Context) {
         try {
             val joinUri = buildJoinUri(channelName, keyBase64)
             val message = buildMessage(channelName, joinUri)
-            val qrFile = generateQrCode(joinUri, channelName)
+            val qrUri = qrCodeUri(joinUri, channelName)
 
             val intent =
                     Intent(Intent.ACTION_SEND).apply {
                         setPackage(WHATSAPP_PACKAGE)
                         type = "image/*"
                         putExtra(Intent.EXTRA_TEXT, message)
-                        putExtra(
-                                Intent.EXTRA_STREAM,
-                                FileProvider.getUriForFile(
-                                        context,
-                                        "${context.packageName}.fileprovider",
-                                        qrFile
-                                )
-                        )
+                        putExtra(Intent.EXTRA_STREAM, qrUri)
                         addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION)
                         addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
                     }
@@ -207,8 +190,11 @@ class KeyDistributor(private val context: Context) {
 
     // ─── QR Code generation ──────────────────────────────────────
 
-    /** Generate a QR code bitmap and save to a temp file. */
-    private fun generateQrCode(content: String, channelName: String): File {
+    /**
+     * Generate a QR code bitmap and share it through [StreamShareProvider] — the PNG is encoded
+     * into the receiving app's pipe on demand instead of being written to the cache directory.
+     */
+    private fun qrCodeUri(content: String, channelName: String): Uri {
         val size = 512
         val writer = QRCodeWriter()
         val bitMatrix = writer.encode(content, BarcodeFormat.QR_CODE, size, size)
@@ -224,12 +210,13 @@ class KeyDistributor(private val context: Context) {
             }
         }
 
-        // Save to cache directory
         val fileName = "ghostwhisper_qr_${channelName.replace(" ", "_")}.png"
-        val file = File(context.cacheDir, fileName)
-        FileOutputStream(file).use { out -> bitmap.compress(Bitmap.CompressFormat.PNG, 100, out) }
-
-        return file
+        return StreamShareProvider.register(
+                context,
+                fileName,
+                "image/png",
+                onReleased = { bitmap.recycle() }
+        ) { out -> bitmap.compress(Bitmap.CompressFormat.PNG, 100, out) }
     }
 
     /** Build a dissolution notification message. */
@@ -0,0 +1,150 @@
+package com.ghostwhisper.service
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * Least Significant Bit kernel behind [SteganographyHelper], over a platform-independent
+ * [PixelBuffer].
+ *
+ * Format: [Signature "GW" (2 bytes)][Length (4 bytes, big-endian)][Payload], written MSB first
+ * into the R, G, B least significant bits of each pixel in row-major order. Alpha is untouched.
+ */
+object LsbCodec {
+
+    private const val HEADER_SIGNATURE = "GW" // Ghost Whisper signature (2 bytes)
+    private const val HEADER_BYTES = 6
+
+    /** Pixels holding the 48-bit header (3 LSBs each), in row-major order from the top-left. */
+    const val HEADER_PIXELS = 16
+
+    private val CHANNEL_SHIFTS = intArrayOf(16, 8, 0) // R, G, B
+
+    /**
+     * Payload bytes an image of this size can carry (3 LSBs per pixel, minus the 6-byte header).
+     * Only needs the dimensions, so it can be shown before the image is decoded.
+     */
+    fun capacityBytes(width: Int, height: Int): Int {
+        val bits = width.toLong() * height * 3
+        return (bits / 8 - HEADER_BYTES).coerceIn(0, Int.MAX_VALUE.toLong()).toInt()
+    }
+
+    /** Whether a [payloadBytes]-byte payload plus header fits an image of this size. */
+    fun fits(width: Int, height: Int, payloadBytes: Int): Boolean {
+        return (HEADER_BYTES + payloadBytes.toLong()) * 8 <= width.toLong() * height * 3
+    }
+
+    /**
+     * Embed [payload] into [pixels] in place. Only the rows holding payload bits are rewritten.
+     *
+     * @return false, with [pixels] untouched, if the payload doesn't fit
+     */
+    fun embed(pixels: PixelBuffer, payload: ByteArray): Boolean {
+        if (!fits(pixels.width, pixels.height, payload.size)) return false
+
+        val data = buildHeader(payload.size) + payload
+        val totalBits = data.size * 8
+        val width = pixels.width
+        val row = IntArray(width)
+
+        var bitIndex = 0
+        var y = 0
+        while (bitIndex < totalBits) {
+            pixels.readRow(y, row)
+            var x = 0
+            while (x < width && bitIndex < totalBits) {
+                var pixel = row[x]
+                for (shift in CHANNEL_SHIFTS) {
+                    if (bitIndex >= totalBits) break
+                    val bit = (data[bitIndex / 8].toInt() shr (7 - bitIndex % 8)) and 1
+                    pixel = (pixel and (1 shl shift).inv()) or (bit shl shift)
+                    bitIndex++
+                }
+                row[x++] = pixel
+            }
+            pixels.writeRow(y, row, 0, 0, x)
+            y++
+        }
+        return true
+    }
+
+    /** Extract the payload from [pixels], or null if there is no valid Ghost Whisper header. */
+    fun extract(pixels: PixelBuffer): ByteArray? {
+        val reader = BitReader(pixels)
+        val length = parseLength(reader.readBytes(HEADER_BYTES) ?: return null) ?: return null
+        if (length == 0) return ByteArray(0)
+        if (length < 0 || length > capacityBytes(pixels.width, pixels.height)) return null
+        return reader.readBytes(length)
+    }
+
+    /**
+     * Cheap header check for background scanning: do the first [HEADER_PIXELS] pixels carry the
+     * signature and a length that fits the full image?
+     *
+     * @param top the top rows of the image (at least [HEADER_PIXELS] pixels)
+     * @param imageHeight full image height, for the capacity check
+     */
+    fun probeHeader(top: PixelBuffer, imageHeight: Int): Boolean {
+        val header = BitReader(top).readBytes(HEADER_BYTES) ?: return false
+        val length = parseLength(header) ?: return false
+        return length in 1..capacityBytes(top.width, imageHeight)
+    }
+
+    private fun buildHeader(length: Int): ByteArray {
+        return HEADER_SIGNATURE.toByteArray(StandardCharsets.UTF_8) +
+                byteArrayOf(
+                        (length shr 24).toByte(),
+                        (length shr 16).toByte(),
+                        (length shr 8).toByte(),
+                        length.toByte()
+                )
+    }
+
+    /** Payload length from a 6-byte header, or null if the signature doesn't match. */
+    private fun parseLength(header: ByteArray): Int? {
+        if (String(header, 0, 2, StandardCharsets.UTF_8) != HEADER_SIGNATURE) return null
+        var result = 0
+        for (i in 2 until HEADER_BYTES) {
+            result = (result shl 8) or (header[i].toInt() and 0xFF)
+        }
+        return result
+    }
+
+    /** Sequential reader of R, G, B LSBs, one row fetched at a time. */
+    private class BitReader(private val pixels: PixelBuffer) {
+        private val row = IntArray(pixels.width)
+        private var y = -1
+        private var x = pixels.width
+        private var channel = CHANNEL_SHIFTS.size
+
+        /** Next bit, or -1 once the image is exhausted. */
+        fun readBit(): Int {
+            if (y >= pixels.height) return -1
+            if (channel == CHANNEL_SHIFTS.size) {
+                channel = 0
+                x++
+                if (x >= pixels.width) {
+                    y++
+                    if (y >= pixels.height) return -1
+                    pixels.readRow(y, row)
+                    x = 0
+                }
+            }
+            return (row[x] shr CHANNEL_SHIFTS[channel++]) and 1
+        }
+
+        /** Next [count] bytes, or null if the image runs out first. */
+        fun readBytes(count: Int): ByteArray? {
+            val bytes = ByteArray(count)
+            for (i in 0 until count) {
+                var value = 0
+                repeat(8) {
+                    val bit = readBit()
+                    if (bit < 0) return null
+                    value = (value shl 1) or bit
+                }
+                bytes[i] = value.toByte()
+            }
+            return bytes
+        }
+    }
+}
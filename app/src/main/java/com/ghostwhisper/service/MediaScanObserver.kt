@@ -0,0 +1,85 @@
+package com.ghostwhisper.service
+
+import android.Manifest
+import android.content.Context
+import android.content.pm.PackageManager
+import android.database.ContentObserver
+import android.net.Uri
+import android.os.Build
+import android.os.Handler
+import android.os.Looper
+import android.provider.MediaStore
+import android.util.Log
+import androidx.core.content.ContextCompat
+import com.ghostwhisper.data.repository.SettingsRepository
+
+/**
+ * Watches MediaStore for new images and schedules a [MediaScanWorker] run.
+ *
+ * The observer itself does no I/O — it only (re-)enqueues the debounced worker, so a burst of
+ * incoming WhatsApp media results in one scan. Registered while the accessibility service is
+ * connected (which keeps the process alive) and the "Auto-detect Stego Images" setting is on.
+ */
+object MediaScanObserver {
+
+    private const val TAG = "MediaScanObserver"
+
+    private var observer: ContentObserver? = null
+
+    /** The runtime permission needed to read other apps' images on this API level. */
+    val readPermission: String
+        get() =
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                    Manifest.permission.READ_MEDIA_IMAGES
+                } else {
+                    Manifest.permission.READ_EXTERNAL_STORAGE
+                }
+
+    fun hasReadPermission(context: Context): Boolean {
+        return ContextCompat.checkSelfPermission(context, readPermission) ==
+                PackageManager.PERMISSION_GRANTED
+    }
+
+    /** Persist the setting and start or stop watching accordingly. */
+    fun setEnabled(context: Context, enabled: Boolean) {
+        SettingsRepository(context).mediaScanEnabled = enabled
+        syncWithSettings(context)
+    }
+
+    /** Register or unregister to match the current setting and permission state. */
+    @Synchronized
+    fun syncWithSettings(context: Context) {
+        val appContext = context.applicationContext
+        val shouldWatch =
+                SettingsRepository(appContext).mediaScanEnabled && hasReadPermission(appContext)
+
+        if (shouldWatch && observer == null) {
+            val newObserver =
+                    object : ContentObserver(Handler(Looper.getMainLooper())) {
+                        override fun onChange(selfChange: Boolean, uri: Uri?) {
+                            MediaScanWorker.enqueue(appContext)
+                        }
+                    }
+            appContext.contentResolver.registerContentObserver(
+                    MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                    true,
+                    newObserver
+            )
+            observer = newObserver
+            // Catch up on anything that arrived while we weren't watching
+            MediaScanWorker.enqueue(appContext)
+            Log.d(TAG, "Media scan observer registered")
+        } else if (!shouldWatch && observer != null) {
+            unregister(appContext)
+            MediaScanWorker.cancel(appContext)
+        }
+    }
+
+    @Synchronized
+    fun unregister(context: Context) {
+        val current = observer ?: return
+        context.applicationContext.contentResolver.unregisterContentObserver(current)
+        observer = null
+        Log.d(TAG, "Media scan observer unregistered")
+    }
+}
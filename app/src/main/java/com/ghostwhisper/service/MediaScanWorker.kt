@@ -0,0 +1,263 @@
+package com.ghostwhisper.service
+
+import android.content.ContentUris
+import android.content.Context
+import android.database.Cursor
+import android.net.Uri
+import android.os.Build
+import android.provider.MediaStore
+import android.util.Log
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import com.ghostwhisper.data.db.KeyringDatabase
+import com.ghostwhisper.data.model.ScannedMedia
+import com.ghostwhisper.data.repository.SettingsRepository
+import com.ghostwhisper.metrics.Tracer
+import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+
+/**
+ * Background scan of newly added WhatsApp images for Ghost Whisper payloads.
+ *
+ * Enqueued by [MediaScanObserver] when MediaStore changes. Each run:
+ * 1. Queries WhatsApp images added since the last run's watermark (oldest first, capped). The
+ *    watermark is the last row's `(DATE_ADDED, _ID)`, so a cap that falls among images added in
+ *    the same second continues with the rest of that second next run.
+ * 2. Skips files already in the scan index (same URI + size + modification time).
+ * 3. Runs [StegoProbe] on the rest, at most [PARALLELISM] at a time.
+ * 4. Records every result, then notifies once for all hits.
+ *
+ * Runs only while the battery is not low; WorkManager stops it if that changes, and the index
+ * makes the next run pick up where this one stopped.
+ *
+ * A scan that is pending or running is kept when more media arrives, so a burst of inserts can't
+ * cancel it over and over. Instead each run ends by checking for images past its new watermark and
+ * queues a follow-up behind itself if there are any.
+ */
+class MediaScanWorker(context: Context, params: WorkerParameters) :
+        CoroutineWorker(context, params) {
+
+    companion object {
+        private const val TAG = "MediaScanWorker"
+        private const val WORK_NAME = "media_scan"
+
+        /** Concurrent probes — each decodes only a header strip, but I/O dominates. */
+        private const val PARALLELISM = 2
+
+        /** Probes per run; a longer backlog is continued by a follow-up run. */
+        private const val MAX_PER_RUN = 200
+
+        /** How far back the very first run looks. */
+        private const val INITIAL_LOOKBACK_SECONDS = 24 * 60 * 60L
+
+        /** Index rows are dropped after this long. */
+        private const val INDEX_RETENTION_MS = 90L * 24 * 60 * 60 * 1000
+
+        /** MediaStore changes arrive in bursts; wait for them to settle. */
+        private const val DEBOUNCE_MS = 3_000L
+
+        private const val WHATSAPP_PATH_PATTERN = "%WhatsApp%"
+
+        /**
+         * Schedule a (debounced) scan unless one is already pending or running; that run's
+         * follow-up check picks up whatever was added meanwhile.
+         */
+        fun enqueue(context: Context) = enqueue(context, ExistingWorkPolicy.KEEP)
+
+        /** Queue another run behind the one in progress. */
+        private fun enqueueFollowUp(context: Context) =
+                enqueue(context, ExistingWorkPolicy.APPEND_OR_REPLACE)
+
+        private fun enqueue(context: Context, policy: ExistingWorkPolicy) {
+            val request =
+                    OneTimeWorkRequestBuilder<MediaScanWorker>()
+                            .setConstraints(
+                                    Constraints.Builder().setRequiresBatteryNotLow(true).build()
+                            )
+                            .setInitialDelay(DEBOUNCE_MS, TimeUnit.MILLISECONDS)
+                            .build()
+            WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, policy, request)
+        }
+
+        fun cancel(context: Context) {
+            WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME)
+        }
+    }
+
+    /** A MediaStore row to probe. */
+    private data class Candidate(
+            val id: Long,
+            val uri: Uri,
+            val size: Long,
+            val dateModified: Long,
+            val dateAdded: Long,
+            val mimeType: String?
+    )
+
+    override suspend fun doWork(): Result {
+        val settings = SettingsRepository(applicationContext)
+        if (!settings.mediaScanEnabled) return Result.success()
+        if (!MediaScanObserver.hasReadPermission(applicationContext)) return Result.success()
+
+        val dao = KeyringDatabase.getInstance(applicationContext).mediaScanDao()
+        val resolver = applicationContext.contentResolver
+        val since =
+                settings.mediaScanWatermark.takeIf { it > 0 }
+                        ?: (System.currentTimeMillis() / 1000 - INITIAL_LOOKBACK_SECONDS)
+
+        val traceId = Tracer.newAsyncId()
+        Tracer.asyncBegin("media scan", Tracer.CATEGORY_BACKGROUND, traceId)
+        val sinceId = if (settings.mediaScanWatermark > 0) settings.mediaScanWatermarkId else 0L
+        val candidates = withContext(Dispatchers.IO) { queryCandidates(since, sinceId) }
+        if (candidates.isEmpty()) {
+            Tracer.asyncEnd("media scan", Tracer.CATEGORY_BACKGROUND, traceId)
+            return Result.success()
+        }
+
+        val semaphore = Semaphore(PARALLELISM)
+        val results = coroutineScope {
+            candidates
+                    .map { candidate ->
+                        async(Dispatchers.IO) {
+                            semaphore.withPermit {
+                                if (isStopped) return@withPermit null
+                                val uri = candidate.uri.toString()
+                                if (dao.isIndexed(uri, candidate.size, candidate.dateModified)) {
+                                    return@withPermit null
+                                }
+                                val result =
+                                        StegoProbe.probe(
+                                                resolver,
+                                                candidate.uri,
+                                                candidate.mimeType
+                                        )
+                                dao.insert(
+                                        ScannedMedia(
+                                                uri = uri,
+                                                size = candidate.size,
+                                                dateModified = candidate.dateModified,
+                                                result = result
+                                        )
+                                )
+                                result
+                            }
+                        }
+                    }
+                    .awaitAll()
+        }
+        if (isStopped) {
+            Tracer.asyncEnd("media scan", Tracer.CATEGORY_BACKGROUND, traceId)
+            return Result.success()
+        }
+
+        // Everything up to the last candidate (in query order) is indexed now
+        val last = candidates.last()
+        settings.mediaScanWatermark = last.dateAdded
+        settings.mediaScanWatermarkId = last.id
+
+        val hits = results.count { it != null && it.isHit }
+        val probed = results.count { it != null }
+        Log.d(TAG, "Probed $probed of ${candidates.size} images, $hits hit(s)")
+        Tracer.asyncEnd(
+                "media scan",
+                Tracer.CATEGORY_BACKGROUND,
+                traceId,
+                mapOf("candidates" to candidates.size, "probed" to probed, "hits" to hits)
+        )
+        if (hits > 0) NotificationHelper(applicationContext).notifyStegoMediaFound(hits)
+
+        dao.deleteOlderThan(System.currentTimeMillis() - INDEX_RETENTION_MS)
+        // A capped backlog, or images added while this run was scanning
+        val more =
+                candidates.size == MAX_PER_RUN ||
+                        withContext(Dispatchers.IO) { hasCandidatesAfter(last.dateAdded, last.id) }
+        if (more) enqueueFollowUp(applicationContext)
+        return Result.success()
+    }
+
+    /** Whether any WhatsApp image lies after the watermark ([sinceSeconds], [sinceId]). */
+    private fun hasCandidatesAfter(sinceSeconds: Long, sinceId: Long): Boolean {
+        val cursor = queryAfter(arrayOf(MediaStore.Images.Media._ID), sinceSeconds, sinceId)
+        return cursor?.use { it.moveToFirst() } ?: false
+    }
+
+    /**
+     * WhatsApp images (including GIFs) after the watermark ([sinceSeconds], [sinceId]) in
+     * `(DATE_ADDED, _ID)` order, oldest first.
+     */
+    private fun queryCandidates(sinceSeconds: Long, sinceId: Long): List<Candidate> {
+        val collection = MediaStore.Images.Media.EXTERNAL_CONTENT_URI
+        val projection =
+                arrayOf(
+                        MediaStore.Images.Media._ID,
+                        MediaStore.Images.Media.SIZE,
+                        MediaStore.Images.Media.DATE_MODIFIED,
+                        MediaStore.Images.Media.DATE_ADDED,
+                        MediaStore.Images.Media.MIME_TYPE
+                )
+
+        val candidates = mutableListOf<Candidate>()
+        queryAfter(projection, sinceSeconds, sinceId)?.use { cursor ->
+            val idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID)
+            val sizeColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.SIZE)
+            val modifiedColumn =
+                    cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_MODIFIED)
+            val addedColumn =
+                    cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_ADDED)
+            val mimeColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.MIME_TYPE)
+
+            while (cursor.moveToNext() && candidates.size < MAX_PER_RUN) {
+                val rowId = cursor.getLong(idColumn)
+                candidates.add(
+                        Candidate(
+                                id = rowId,
+                                uri = ContentUris.withAppendedId(collection, rowId),
+                                size = cursor.getLong(sizeColumn),
+                                dateModified = cursor.getLong(modifiedColumn),
+                                dateAdded = cursor.getLong(addedColumn),
+                                mimeType = cursor.getString(mimeColumn)
+                        )
+                )
+            }
+        }
+        return candidates
+    }
+
+    /** WhatsApp images after the watermark, in `(DATE_ADDED, _ID)` order. */
+    private fun queryAfter(projection: Array<String>, sinceSeconds: Long, sinceId: Long): Cursor? {
+        val pathColumn =
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    MediaStore.Images.Media.RELATIVE_PATH
+                } else {
+                    @Suppress("DEPRECATION") MediaStore.Images.Media.DATA
+                }
+        val added = MediaStore.Images.Media.DATE_ADDED
+        val id = MediaStore.Images.Media._ID
+        val selection = "($added > ? OR ($added = ? AND $id > ?)) AND $pathColumn LIKE ?"
+        val args =
+                arrayOf(
+                        sinceSeconds.toString(),
+                        sinceSeconds.toString(),
+                        sinceId.toString(),
+                        WHATSAPP_PATH_PATTERN
+                )
+        val sortOrder = "$added ASC, $id ASC"
+        return applicationContext.contentResolver.query(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                projection,
+                selection,
+                args,
+                sortOrder
+        )
+    }
+}
@@ -15,6 +15,7 @@ import androidx.core.content.ContextCompat
  *
  * Notification types:
  * - Decrypted message received
+ * - New secret hint (from WhatsApp notifications)
  * - Key delivery status updates
  * - Channel dissolution alerts
  */
@@ -25,6 +26,12 @@ class NotificationHelper(private val context: Context) {
         private const val CHANNEL_MESSAGES = "ghost_messages"
         private const val CHANNEL_KEYS = "ghost_keys"
         private const val CHANNEL_ALERTS = "ghost_alerts"
+
+        /** Fixed ID so repeated scan hits update one notification instead of stacking. */
+        private const val NOTIFICATION_ID_MEDIA_SCAN = 0x6757_0001
+
+        /** Tagged with the channel name: one hint per channel, updated in place. */
+        private const val NOTIFICATION_ID_SECRET_HINT = 0x6757_0002
     }
 
     init {
@@ -88,6 +95,27 @@ class NotificationHelper(private val context: Context) {
                 .notify(System.currentTimeMillis().toInt(), notification)
     }
 
+    /**
+     * Hint that a hidden message for [channelName] arrived in a WhatsApp notification. Shows
+     * nothing of the message itself, and nothing but the app name on the lock screen.
+     */
+    fun notifySecretHint(channelName: String) {
+        if (!hasNotificationPermission()) return
+
+        val notification =
+                NotificationCompat.Builder(context, CHANNEL_MESSAGES)
+                        .setSmallIcon(android.R.drawable.ic_lock_lock)
+                        .setContentTitle("🔒 New secret in \"$channelName\"")
+                        .setContentText("Open the chat in WhatsApp to read it")
+                        .setVisibility(NotificationCompat.VISIBILITY_PRIVATE)
+                        .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                        .setAutoCancel(true)
+                        .build()
+
+        NotificationManagerCompat.from(context)
+                .notify(channelName, NOTIFICATION_ID_SECRET_HINT, notification)
+    }
+
     /** Show a notification for key delivery status update. */
     fun notifyKeyDelivered(contactName: String, channelName: String, viaSms: Boolean) {
         if (!hasNotificationPermission()) return
@@ -123,6 +151,25 @@ class NotificationHelper(private val context: Context) {
                 .notify(System.currentTimeMillis().toInt(), notification)
     }
 
+    /** Show a notification when the background media scan finds stego images. */
+    fun notifyStegoMediaFound(count: Int) {
+        if (!hasNotificationPermission()) return
+
+        val title =
+                if (count == 1) "🖼 Hidden message in a new image"
+                else "🖼 Hidden messages in $count new images"
+        val notification =
+                NotificationCompat.Builder(context, CHANNEL_MESSAGES)
+                        .setSmallIcon(android.R.drawable.ic_menu_gallery)
+                        .setContentTitle(title)
+                        .setContentText("Open the Steganography Lab to decode")
+                        .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                        .setAutoCancel(true)
+                        .build()
+
+        NotificationManagerCompat.from(context).notify(NOTIFICATION_ID_MEDIA_SCAN, notification)
+    }
+
     /** Check if POST_NOTIFICATIONS permission is granted (Android 13+). */
     private fun hasNotificationPermission(): Boolean {
         return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
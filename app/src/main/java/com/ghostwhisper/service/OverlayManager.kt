@@ -5,6 +5,7 @@ import android.graphics.PixelFormat
 import android.os.Build
 import android.os.Handler
 import android.os.Looper
+import android.util.Log
 import android.util.TypedValue
 import android.view.Gravity
 import android.view.View
@@ -16,13 +17,51 @@ import android.widget.TextView
  * Manages the "Post-it Note" style overlay for displaying decrypted messages.
  *
  * Draws on top of all apps using TYPE_APPLICATION_OVERLAY. Auto-dismisses after a configurable
- * timeout.
+ * timeout. Given several [Page]s — a chat's recent secrets — it shows ‹ › controls that flip
+ * between them in place.
+ *
+ * The overlay is one window, built and attached once ([prepare]) and then kept: a new message
+ * rewrites its text and fades it in, dismissing fades it out and hides it. Only [release] removes
+ * the window, so bursts of messages cost text updates instead of window adds and removes.
+ *
+ * While one channel's message is up, messages of other channels wait in an [OverlayQueue],
+ * coalesced per channel and announced in a "3 new in Study Group" line; each gets the screen in
+ * turn when the one before is dismissed or times out. One timer runs for whatever is showing.
  */
 object OverlayManager {
 
-    private var currentOverlay: View? = null
+    private const val TAG = "OverlayManager"
+    private const val ANIMATION_MS = 150L
+
+    /** The attached overlay window and the views rewritten for each page. */
+    private class OverlayWindow(
+            /** Whose WindowManager the window was added to. */
+            val context: Context,
+            val root: View,
+            val channelLabel: TextView,
+            val coverLabel: TextView,
+            val messageView: TextView,
+            val pagingRow: View,
+            val pageLabel: TextView,
+            val previousBtn: View,
+            val nextBtn: View,
+            val stackLabel: TextView
+    )
+
+    /** Pages shown together, at [index]; [onCopy] runs when any of them is copied. */
+    private class Deck(val pages: List<Page>, var index: Int, val onCopy: (() -> Unit)?) {
+        val page: Page
+            get() = pages[index]
+    }
+
+    private var window: OverlayWindow? = null
+    /** What is on screen; null while hidden. */
+    private var current: Deck? = null
+    private val queue = OverlayQueue<Deck>()
+
     private val handler = Handler(Looper.getMainLooper())
-    private var dismissRunnable: Runnable? = null
+    /** The single auto-dismiss timer, restarted for whatever is showing. */
+    private val timeout = Runnable { showNext() }
 
     /** Default auto-dismiss timeout in milliseconds */
     var dismissTimeoutMs: Long = 10_000L
@@ -30,17 +69,13 @@ object OverlayManager {
     /** Overlay background color (ARGB) */
     var overlayColor: Int = 0xE6_1A1A2E.toInt() // Dark purple, ~90% opacity
 
-    /**
-     * Show a decrypted message overlay on screen.
-     *
-     * @param context Service context (must be AccessibilityService or similar)
-     * @param channelName Which channel the message came from
-     * @param message The decrypted plaintext
-     * @param onReply Called when the user taps Reply
-     * @param onCopy Called when the user taps Copy
-     */
-    private var lastShownMessage: String? = null
-    private var lastShownChannel: String? = null
+    /** One decrypted message the overlay can show; [onReply] runs when it is replied to. */
+    class Page(
+            val channelName: String,
+            val message: String,
+            val coverMessage: String? = null,
+            val onReply: (() -> Unit)? = null
+    )
 
     /**
      * Show a decrypted message overlay on screen.
@@ -60,27 +95,92 @@ object OverlayManager {
             onReply: (() -> Unit)? = null,
             onCopy: (() -> Unit)? = null
     ) {
-        // Prevent looping/flickering: if same message & channel are already showing, just extend
-        // timeout
-        if (currentOverlay != null && channelName == lastShownChannel && message == lastShownMessage
-        ) {
-            extendTimeout()
+        showPages(context, listOf(Page(channelName, message, coverMessage, onReply)), 0, onCopy)
+    }
+
+    /**
+     * Show [pages] (oldest first), starting at [index]; the user can page through the rest.
+     *
+     * @param onCopy Called when the user taps Copy, on whichever page
+     */
+    fun showPages(
+            context: Context,
+            pages: List<Page>,
+            index: Int = pages.lastIndex,
+            onCopy: (() -> Unit)? = null
+    ) {
+        val page = pages[index]
+        val shown = current
+        if (shown != null) {
+            val window = window ?: return
+            val showingPage = shown.page
+            when {
+                // Prevent looping/flickering: if same message & channel are already showing,
+                // just extend timeout
+                page.channelName == showingPage.channelName &&
+                        page.message == showingPage.message -> restartTimer()
+                // Same channel: refresh in place; follow along only if reading the newest
+                page.channelName == showingPage.channelName -> {
+                    val reading = pages.indexOfFirst { it.message == showingPage.message }
+                    val followNewest = shown.index == shown.pages.lastIndex || reading < 0
+                    current = Deck(pages, if (followNewest) index else reading, onCopy)
+                    bind(window)
+                    restartTimer()
+                }
+                // Another channel: wait in line, and say so
+                else -> {
+                    queue.offer(page.channelName, page.message, Deck(pages, index, onCopy))
+                    bindStack(window)
+                }
+            }
             return
         }
 
-        // Remove existing overlay first if different content
-        dismissOverlay(context)
+        // Can't show overlay — might not have permission
+        val window = attach(context) ?: return
+        show(window, Deck(pages, index, onCopy))
+    }
+
+    private fun show(window: OverlayWindow, deck: Deck) {
+        val wasShowing = current != null
+        current = deck
+        queue.remove(deck.page.channelName)
+        bind(window)
+        bindStack(window)
+        if (!wasShowing) animateIn(window.root)
 
-        lastShownMessage = message
-        lastShownChannel = channelName
+        // Auto-dismiss after timeout
+        restartTimer()
+    }
+
+    /** Replace what is showing with the next channel in line, or hide if none is waiting. */
+    private fun showNext() {
+        val window = window
+        val next = queue.poll()
+        if (window == null || next == null) {
+            hide()
+            return
+        }
+        show(window, next.item)
+    }
+
+    /**
+     * Build and attach the overlay window, hidden, unless it already is; the service calls this
+     * on connect so the first message only fills in text. Returns false if the window can't be
+     * added (no overlay permission). Main thread only.
+     */
+    fun prepare(context: Context): Boolean = attach(context) != null
+
+    private fun attach(context: Context): OverlayWindow? {
+        window?.let { if (it.context === context) return it }
+        release()
 
         val windowManager = context.getSystemService(Context.WINDOW_SERVICE) as WindowManager
 
         // Build the overlay view programmatically (no XML layout needed)
-        val overlay =
-                buildOverlayView(context, channelName, message, coverMessage, onReply, onCopy) {
-                    dismissOverlay(context)
-                }
+        val overlay = buildOverlayWindow(context) { dismissOverlay(context) }
+        // Hidden, the window wraps nothing and takes no touches
+        overlay.root.visibility = View.GONE
 
         val params =
                 WindowManager.LayoutParams(
@@ -99,58 +199,126 @@ object OverlayManager {
                             y = dpToPx(context, 80)
                         }
 
-        try {
-            windowManager.addView(overlay, params)
-            currentOverlay = overlay
-
-            // Auto-dismiss after timeout
-            scheduleDismiss(context)
+        return try {
+            windowManager.addView(overlay.root, params)
+            window = overlay
+            overlay
         } catch (e: Exception) {
-            // Can't show overlay — might not have permission
+            Log.d(TAG, "Can't add overlay window: ${e.message}")
+            null
         }
     }
 
-    private fun scheduleDismiss(context: Context) {
-        dismissRunnable = Runnable { dismissOverlay(context) }
-        handler.postDelayed(dismissRunnable!!, dismissTimeoutMs)
+    private fun restartTimer() {
+        handler.removeCallbacks(timeout)
+        handler.postDelayed(timeout, dismissTimeoutMs)
     }
 
-    private fun extendTimeout() {
-        dismissRunnable?.let {
-            handler.removeCallbacks(it)
-            handler.postDelayed(it, dismissTimeoutMs)
-        }
+    /**
+     * Dismiss the current overlay, and the messages waiting behind it, if one is showing. The
+     * window stays attached, hidden.
+     */
+    fun dismissOverlay(context: Context) {
+        queue.clear()
+        hide()
     }
 
-    /** Dismiss the current overlay if one is showing. */
-    fun dismissOverlay(context: Context) {
-        dismissRunnable?.let { handler.removeCallbacks(it) }
-        dismissRunnable = null
+    private fun hide() {
+        handler.removeCallbacks(timeout)
+        if (current == null) return
+        current = null
+        window?.let(::animateOut)
+    }
+
+    /** Remove the overlay window; the next message builds a new one. */
+    fun release() {
+        handler.removeCallbacks(timeout)
+        current = null
+        queue.clear()
 
-        currentOverlay?.let { view ->
+        window?.let { overlay ->
+            overlay.root.animate().cancel()
             try {
                 val windowManager =
-                        context.getSystemService(Context.WINDOW_SERVICE) as WindowManager
-                windowManager.removeView(view)
+                        overlay.context.getSystemService(Context.WINDOW_SERVICE) as WindowManager
+                windowManager.removeView(overlay.root)
             } catch (e: Exception) {
                 // View might already be removed
             }
         }
-        currentOverlay = null
-        lastShownMessage = null
-        lastShownChannel = null
+        window = null
     }
 
-    /** Build the "Post-it Note" overlay view programmatically. */
-    private fun buildOverlayView(
-            context: Context,
-            channelName: String,
-            message: String,
-            coverMessage: String?,
-            onReply: (() -> Unit)?,
-            onCopy: (() -> Unit)?,
-            onDismiss: () -> Unit
-    ): View {
+    /** Show the current page in [window]. */
+    private fun bind(window: OverlayWindow) {
+        val deck = current ?: return
+        val pages = deck.pages
+        val index = deck.index
+        val page = deck.page
+        window.channelLabel.text = page.channelName
+        window.coverLabel.text = "Hidden in: \"${page.coverMessage}\""
+        window.coverLabel.visibility =
+                if (page.coverMessage.isNullOrBlank()) View.GONE else View.VISIBLE
+        window.messageView.text = page.message
+        window.pagingRow.visibility = if (pages.size > 1) View.VISIBLE else View.GONE
+        window.pageLabel.text = "${index + 1}/${pages.size}"
+        window.previousBtn.alpha = if (index > 0) 1f else 0.3f
+        window.nextBtn.alpha = if (index < pages.lastIndex) 1f else 0.3f
+    }
+
+    /** The "3 new in Study Group" line for the channels waiting, hidden if none is. */
+    private fun bindStack(window: OverlayWindow) {
+        val next = queue.peek()
+        if (next == null) {
+            window.stackLabel.visibility = View.GONE
+            return
+        }
+        val others = queue.size - 1
+        window.stackLabel.text = buildString {
+            append("${next.newMessages} new in ${next.channel}")
+            if (others > 0) append("  ·  +$others more")
+            append("  ›")
+        }
+        window.stackLabel.visibility = View.VISIBLE
+    }
+
+    private fun turnPage(delta: Int) {
+        val window = window ?: return
+        val deck = current ?: return
+        val next = deck.index + delta
+        if (next !in deck.pages.indices) return
+        deck.index = next
+        bind(window)
+        restartTimer()
+    }
+
+    private fun animateIn(root: View) {
+        root.animate().cancel()
+        root.alpha = 0f
+        root.translationY = -dpToPx(root.context, 16).toFloat()
+        root.visibility = View.VISIBLE
+        root.animate().alpha(1f).translationY(0f).setDuration(ANIMATION_MS).start()
+    }
+
+    private fun animateOut(window: OverlayWindow) {
+        val root = window.root
+        root.animate().cancel()
+        root.animate()
+                .alpha(0f)
+                .translationY(-dpToPx(root.context, 16).toFloat())
+                .setDuration(ANIMATION_MS)
+                // Not run if a new message cancels the fade
+                .withEndAction {
+                    root.visibility = View.GONE
+                    // Don't keep plaintext in a hidden view
+                    window.coverLabel.text = null
+                    window.messageView.text = null
+                }
+                .start()
+    }
+
+    /** Build the "Post-it Note" overlay view programmatically; [bind] fills it in. */
+    private fun buildOverlayWindow(context: Context, onDismiss: () -> Unit): OverlayWindow {
         val dp = { value: Int -> dpToPx(context, value) }
         val sp = { value: Float -> spToPx(context, value) }
 
@@ -180,7 +348,6 @@ object OverlayManager {
 
         val channelLabel =
                 TextView(context).apply {
-                    text = channelName
                     setTextColor(0xFF_BB86FC.toInt()) // Purple accent
                     setTextSize(TypedValue.COMPLEX_UNIT_PX, sp(14f))
                     layoutParams =
@@ -193,7 +360,7 @@ object OverlayManager {
                     text = "  ✕"
                     setTextColor(0xFF_999999.toInt())
                     setTextSize(TypedValue.COMPLEX_UNIT_PX, sp(18f))
-                    setOnClickListener { onDismiss() }
+                    setOnClickListener { showNext() }
                 }
         headerRow.addView(closeBtn)
 
@@ -212,35 +379,54 @@ object OverlayManager {
                 }
         root.addView(divider)
 
-        // Cover Message (if present)
-        if (!coverMessage.isNullOrBlank()) {
-            val coverLabel =
-                    TextView(context).apply {
-                        text = "Hidden in: \"$coverMessage\""
-                        setTextColor(0xFF_8B949E.toInt()) // Muted text
-                        setTextSize(TypedValue.COMPLEX_UNIT_PX, sp(12f))
-                        setPadding(0, 0, 0, dp(4))
-                    }
-            root.addView(coverLabel)
-        }
+        // Cover Message (hidden on pages without one)
+        val coverLabel =
+                TextView(context).apply {
+                    setTextColor(0xFF_8B949E.toInt()) // Muted text
+                    setTextSize(TypedValue.COMPLEX_UNIT_PX, sp(12f))
+                    setPadding(0, 0, 0, dp(4))
+                }
+        root.addView(coverLabel)
 
         // Message body
         val messageView =
                 TextView(context).apply {
-                    text = message
                     setTextColor(0xFF_FFFFFF.toInt())
                     setTextSize(TypedValue.COMPLEX_UNIT_PX, sp(15f))
                     setPadding(0, dp(4), 0, dp(8))
                 }
         root.addView(messageView)
 
-        // Action row: Reply + Copy
+        // Action row: paging (several pages only), then Reply + Copy
         val actionRow =
                 LinearLayout(context).apply {
                     orientation = LinearLayout.HORIZONTAL
-                    gravity = Gravity.END
+                    gravity = Gravity.CENTER_VERTICAL
                 }
 
+        val pagingRow =
+                LinearLayout(context).apply {
+                    orientation = LinearLayout.HORIZONTAL
+                    gravity = Gravity.CENTER_VERTICAL
+                }
+        val previousBtn =
+                pagingButton(context, "‹").apply { setOnClickListener { turnPage(-1) } }
+        pagingRow.addView(previousBtn)
+        val pageLabel =
+                TextView(context).apply {
+                    setTextColor(0xFF_8B949E.toInt())
+                    setTextSize(TypedValue.COMPLEX_UNIT_PX, sp(12f))
+                }
+        pagingRow.addView(pageLabel)
+        val nextBtn = pagingButton(context, "›").apply { setOnClickListener { turnPage(1) } }
+        pagingRow.addView(nextBtn)
+        actionRow.addView(pagingRow)
+        actionRow.addView(
+                View(context).apply {
+                    layoutParams = LinearLayout.LayoutParams(0, 0, 1f)
+                }
+        )
+
         val replyBtn =
                 TextView(context).apply {
                     text = "↩ Reply"
@@ -248,7 +434,7 @@ object OverlayManager {
                     setTextSize(TypedValue.COMPLEX_UNIT_PX, sp(13f))
                     setPadding(dp(12), dp(6), dp(12), dp(6))
                     setOnClickListener {
-                        onReply?.invoke()
+                        current?.page?.onReply?.invoke()
                         onDismiss()
                     }
                 }
@@ -264,18 +450,51 @@ object OverlayManager {
                         val clipboard =
                                 context.getSystemService(Context.CLIPBOARD_SERVICE) as
                                         android.content.ClipboardManager
+                        val deck = current ?: return@setOnClickListener
                         clipboard.setPrimaryClip(
-                                android.content.ClipData.newPlainText("ghost", message)
+                                android.content.ClipData.newPlainText("ghost", deck.page.message)
                         )
-                        onCopy?.invoke()
-                        onDismiss()
+                        deck.onCopy?.invoke()
+                        showNext()
                     }
                 }
         actionRow.addView(copyBtn)
 
         root.addView(actionRow)
 
-        return root
+        // Stacked line for other channels' messages waiting behind this one
+        val stackLabel =
+                TextView(context).apply {
+                    setTextColor(0xFF_BB86FC.toInt())
+                    setTextSize(TypedValue.COMPLEX_UNIT_PX, sp(12f))
+                    setPadding(0, dp(6), 0, 0)
+                    visibility = View.GONE
+                    setOnClickListener { showNext() }
+                }
+        root.addView(stackLabel)
+
+        return OverlayWindow(
+                context = context,
+                root = root,
+                channelLabel = channelLabel,
+                coverLabel = coverLabel,
+                messageView = messageView,
+                pagingRow = pagingRow,
+                pageLabel = pageLabel,
+                previousBtn = previousBtn,
+                nextBtn = nextBtn,
+                stackLabel = stackLabel
+        )
+    }
+
+    private fun pagingButton(context: Context, label: String): TextView {
+        return TextView(context).apply {
+            text = label
+            setTextColor(0xFF_BB86FC.toInt())
+            setTextSize(TypedValue.COMPLEX_UNIT_PX, spToPx(context, 18f))
+            val padding = dpToPx(context, 10)
+            setPadding(padding, 0, padding, 0)
+        }
     }
 
     private fun dpToPx(context: Context, dp: Int): Int {
@@ -0,0 +1,65 @@
+package com.ghostwhisper.service
+
+/**
+ * Messages waiting for the decrypted-message overlay while it shows another channel's.
+ *
+ * Coalesced by channel: a channel holds one place in line, keeping the latest [item] offered
+ * for it and counting the distinct messages that arrived ("3 new in Study Group"). At most
+ * [maxChannels] channels wait; past that the one waiting longest is dropped — its messages are
+ * still in the chat's timeline. Channels come out in the order they first arrived.
+ *
+ * Not thread-safe: [OverlayManager] uses it on the main thread only.
+ */
+class OverlayQueue<T>(private val maxChannels: Int = DEFAULT_MAX_CHANNELS) {
+
+    companion object {
+        const val DEFAULT_MAX_CHANNELS = 4
+    }
+
+    /** A channel's place in line: the latest [item] and how many new messages it stands for. */
+    class Entry<T>(val channel: String, val item: T, val newMessages: Int)
+
+    private class Slot<T>(var item: T, val messageIds: MutableSet<String>)
+
+    private val slots = LinkedHashMap<String, Slot<T>>()
+
+    /** Channels waiting. */
+    val size: Int
+        get() = slots.size
+
+    fun isEmpty(): Boolean = slots.isEmpty()
+
+    /**
+     * Queue [item] for [channel]. [messageId] identifies the message it brings; offering the
+     * same message again (a rescan) replaces the item without counting it twice.
+     */
+    fun offer(channel: String, messageId: String, item: T) {
+        val slot = slots[channel]
+        if (slot != null) {
+            slot.item = item
+            slot.messageIds.add(messageId)
+            return
+        }
+        if (slots.size >= maxChannels) slots.remove(slots.keys.first())
+        slots[channel] = Slot(item, hashSetOf(messageId))
+    }
+
+    /** The channel next in line, without removing it. */
+    fun peek(): Entry<T>? {
+        val (channel, slot) = slots.entries.firstOrNull() ?: return null
+        return Entry(channel, slot.item, slot.messageIds.size)
+    }
+
+    fun poll(): Entry<T>? {
+        return peek()?.also { slots.remove(it.channel) }
+    }
+
+    /** Drop [channel]'s place, e.g. because it is on screen now. */
+    fun remove(channel: String) {
+        slots.remove(channel)
+    }
+
+    fun clear() {
+        slots.clear()
+    }
+}
@@ -0,0 +1,358 @@
+package com.ghostwhisper.service
+
+import java.io.DataOutputStream
+import java.io.OutputStream
+import java.util.zip.Adler32
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+
+/**
+ * Lossless PNG encoder that deflates row groups in parallel (pigz-style).
+ *
+ * The image is split into groups of rows (~[CHUNK_BYTES] of filtered data each). Every group is
+ * filtered and deflated independently on [dispatcher]:
+ * - each row gets the PNG filter (None/Sub/Up/Average/Paeth) with the smallest sum of absolute
+ *   byte values — the usual libpng heuristic;
+ * - the group is compressed as raw deflate primed with the previous group's last 32 KiB as a
+ *   dictionary, so compression ratio stays close to a single-stream encoder;
+ * - non-final groups end with a sync flush, making the compressed groups byte-aligned so they
+ *   concatenate into one valid zlib stream.
+ *
+ * The zlib Adler-32 trailer is combined from per-group checksums. Groups are written in order as
+ * they complete, with at most `2 x parallelism` groups in flight, so memory stays bounded
+ * regardless of image size.
+ *
+ * Pure JVM (java.util.zip only) — the Android side supplies rows from a Bitmap via [RowSource].
+ */
+object ParallelPngEncoder {
+
+    /** Target uncompressed bytes per parallel group. */
+    private const val CHUNK_BYTES = 256 * 1024
+
+    /** Deflate window size; also the dictionary carried between groups. */
+    private const val WINDOW_BYTES = 32 * 1024
+
+    /** Max bytes per IDAT chunk written to the stream. */
+    private const val MAX_IDAT_BYTES = 64 * 1024
+
+    private val SIGNATURE = byteArrayOf(0x89.toByte(), 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A)
+
+    private const val COLOR_TYPE_RGB = 2
+    private const val COLOR_TYPE_RGBA = 6
+
+    /** Supplies ARGB pixel rows. Must be safe to call concurrently for different rows. */
+    fun interface RowSource {
+        fun readRow(y: Int, dst: IntArray)
+    }
+
+    /** One compressed row group, ready to be written in order. */
+    private class Block(val data: ByteArray, val length: Int, val adler: Long, val rawLength: Long)
+
+    /**
+     * Encode a [width] x [height] ARGB image to [out] as PNG.
+     *
+     * @param hasAlpha write RGBA; when null the rows are scanned and RGB is used if every pixel is
+     *   opaque
+     * @param level deflate level (1-9)
+     */
+    suspend fun encode(
+            width: Int,
+            height: Int,
+            rows: RowSource,
+            out: OutputStream,
+            hasAlpha: Boolean? = null,
+            level: Int = Deflater.DEFAULT_COMPRESSION,
+            parallelism: Int = Runtime.getRuntime().availableProcessors(),
+            dispatcher: CoroutineDispatcher = Dispatchers.Default
+    ) = coroutineScope {
+        require(width > 0 && height > 0) { "Empty image" }
+        val alpha = hasAlpha ?: detectAlpha(width, height, rows)
+        val bytesPerPixel = if (alpha) 4 else 3
+        val rowBytes = 1 + width * bytesPerPixel
+        val rowsPerGroup = (CHUNK_BYTES / rowBytes).coerceAtLeast(1)
+        val groupCount = (height + rowsPerGroup - 1) / rowsPerGroup
+        val dictRows = (WINDOW_BYTES + rowBytes - 1) / rowBytes
+
+        val data = DataOutputStream(out)
+        data.write(SIGNATURE)
+        writeHeader(data, width, height, if (alpha) COLOR_TYPE_RGBA else COLOR_TYPE_RGB)
+
+        // zlib header: deflate, 32K window, no preset dictionary for the decoder
+        val idat = IdatWriter(data)
+        idat.write(byteArrayOf(0x78, 0x9C.toByte()), 2)
+
+        var adler = 1L
+        val inFlight = ArrayDeque<Deferred<Block>>()
+        val window = (parallelism * 2).coerceAtLeast(1)
+        for (group in 0 until groupCount) {
+            val startRow = group * rowsPerGroup
+            val endRow = minOf(height, startRow + rowsPerGroup)
+            inFlight.addLast(
+                    async(dispatcher) {
+                        compressGroup(
+                                rows,
+                                width,
+                                alpha,
+                                startRow,
+                                endRow,
+                                (startRow - dictRows).coerceAtLeast(0),
+                                last = endRow == height,
+                                level = level
+                        )
+                    }
+            )
+            if (inFlight.size >= window) {
+                adler = writeBlock(idat, inFlight.removeFirst().await(), adler)
+            }
+        }
+        while (inFlight.isNotEmpty()) {
+            adler = writeBlock(idat, inFlight.removeFirst().await(), adler)
+        }
+
+        val trailer = ByteArray(4)
+        for (i in 0 until 4) trailer[i] = (adler ushr (24 - i * 8)).toByte()
+        idat.write(trailer, 4)
+        idat.flush()
+
+        writeChunk(data, "IEND", ByteArray(0), 0)
+        data.flush()
+    }
+
+    /** True if any pixel has alpha below 0xFF. Stops at the first translucent pixel. */
+    fun detectAlpha(width: Int, height: Int, rows: RowSource): Boolean {
+        val row = IntArray(width)
+        for (y in 0 until height) {
+            rows.readRow(y, row)
+            for (pixel in row) if (pixel ushr 24 != 0xFF) return true
+        }
+        return false
+    }
+
+    /** zlib's adler32_combine: checksum of A||B from adler(A), adler(B) and len(B). */
+    fun combineAdler32(adler1: Long, adler2: Long, length2: Long): Long {
+        val base = 65521L
+        val rem = length2 % base
+        var sum1 = adler1 and 0xFFFF
+        var sum2 = (rem * sum1) % base
+        sum1 += (adler2 and 0xFFFF) + base - 1
+        sum2 += ((adler1 ushr 16) and 0xFFFF) + ((adler2 ushr 16) and 0xFFFF) + base - rem
+        if (sum1 >= base) sum1 -= base
+        if (sum1 >= base) sum1 -= base
+        if (sum2 >= base shl 1) sum2 -= base shl 1
+        if (sum2 >= base) sum2 -= base
+        return sum1 or (sum2 shl 16)
+    }
+
+    // ─── Group Compression ──────────────────────────────────────
+
+    private fun compressGroup(
+            rows: RowSource,
+            width: Int,
+            alpha: Boolean,
+            startRow: Int,
+            endRow: Int,
+            dictStartRow: Int,
+            last: Boolean,
+            level: Int
+    ): Block {
+        val bytesPerPixel = if (alpha) 4 else 3
+        val rowBytes = 1 + width * bytesPerPixel
+
+        // Filter the dictionary rows too — filtering is deterministic per row, so these bytes are
+        // identical to the tail the previous group produced.
+        val filtered = ByteArray((endRow - dictStartRow) * rowBytes)
+        val pixels = IntArray(width)
+        var previous = ByteArray(width * bytesPerPixel)
+        var current = ByteArray(width * bytesPerPixel)
+        if (dictStartRow > 0) {
+            rows.readRow(dictStartRow - 1, pixels)
+            unpack(pixels, previous, alpha)
+        }
+        val scratch = ByteArray(rowBytes - 1)
+        for (y in dictStartRow until endRow) {
+            rows.readRow(y, pixels)
+            unpack(pixels, current, alpha)
+            filterRow(
+                    current,
+                    previous,
+                    bytesPerPixel,
+                    filtered,
+                    (y - dictStartRow) * rowBytes,
+                    scratch
+            )
+            val swap = previous
+            previous = current
+            current = swap
+        }
+
+        val dictLength = (startRow - dictStartRow) * rowBytes
+        val dataLength = filtered.size - dictLength
+
+        val deflater = Deflater(level, true)
+        try {
+            // Keep the default strategy: the JDK applies setStrategy() lazily on the first
+            // deflate(), which would flush against the preset dictionary and corrupt the stream.
+            if (dictLength > 0) {
+                val from = (dictLength - WINDOW_BYTES).coerceAtLeast(0)
+                deflater.setDictionary(filtered, from, dictLength - from)
+            }
+            deflater.setInput(filtered, dictLength, dataLength)
+            if (last) deflater.finish()
+
+            var output = ByteArray(dataLength / 2 + 1024)
+            var length = 0
+            val mode = if (last) Deflater.NO_FLUSH else Deflater.SYNC_FLUSH
+            while (true) {
+                if (length == output.size) output = output.copyOf(output.size * 2)
+                val space = output.size - length
+                val n = deflater.deflate(output, length, space, mode)
+                length += n
+                // A flush is complete once deflate leaves spare output space
+                if (if (last) deflater.finished() else n < space) break
+            }
+
+            val checksum = Adler32().apply { update(filtered, dictLength, dataLength) }
+            return Block(output, length, checksum.value, dataLength.toLong())
+        } finally {
+            deflater.end()
+        }
+    }
+
+    /** ARGB ints to packed RGB(A) bytes. */
+    private fun unpack(pixels: IntArray, dst: ByteArray, alpha: Boolean) {
+        var o = 0
+        for (pixel in pixels) {
+            dst[o++] = (pixel shr 16).toByte()
+            dst[o++] = (pixel shr 8).toByte()
+            dst[o++] = pixel.toByte()
+            if (alpha) dst[o++] = (pixel ushr 24).toByte()
+        }
+    }
+
+    /**
+     * Write the best-scoring filtered form of [row] (filter byte + data) to [dst] at [offset].
+     * [prior] is the unfiltered previous row (all zeros for the first row).
+     */
+    private fun filterRow(
+            row: ByteArray,
+            prior: ByteArray,
+            bpp: Int,
+            dst: ByteArray,
+            offset: Int,
+            scratch: ByteArray
+    ) {
+        var bestFilter = 0
+        var bestScore = Long.MAX_VALUE
+        for (filter in 0..4) {
+            applyFilter(filter, row, prior, bpp, scratch)
+            var score = 0L
+            for (b in scratch) {
+                val v = b.toInt()
+                score += if (v < 0) -v else v
+                if (score >= bestScore) break
+            }
+            if (score < bestScore) {
+                bestScore = score
+                bestFilter = filter
+            }
+        }
+        dst[offset] = bestFilter.toByte()
+        applyFilter(bestFilter, row, prior, bpp, scratch)
+        System.arraycopy(scratch, 0, dst, offset + 1, scratch.size)
+    }
+
+    private fun applyFilter(
+            filter: Int,
+            row: ByteArray,
+            prior: ByteArray,
+            bpp: Int,
+            out: ByteArray
+    ) {
+        for (i in row.indices) {
+            val x = row[i].toInt() and 0xFF
+            val a = if (i >= bpp) row[i - bpp].toInt() and 0xFF else 0
+            val b = prior[i].toInt() and 0xFF
+            val c = if (i >= bpp) prior[i - bpp].toInt() and 0xFF else 0
+            val predicted =
+                    when (filter) {
+                        1 -> a
+                        2 -> b
+                        3 -> (a + b) ushr 1
+                        4 -> paeth(a, b, c)
+                        else -> 0
+                    }
+            out[i] = (x - predicted).toByte()
+        }
+    }
+
+    private fun paeth(a: Int, b: Int, c: Int): Int {
+        val p = a + b - c
+        val pa = Math.abs(p - a)
+        val pb = Math.abs(p - b)
+        val pc = Math.abs(p - c)
+        return if (pa <= pb && pa <= pc) a else if (pb <= pc) b else c
+    }
+
+    // ─── Chunk Writing ──────────────────────────────────────────
+
+    private fun writeBlock(idat: IdatWriter, block: Block, adler: Long): Long {
+        idat.write(block.data, block.length)
+        return combineAdler32(adler, block.adler, block.rawLength)
+    }
+
+    private fun writeHeader(out: DataOutputStream, width: Int, height: Int, colorType: Int) {
+        val header = ByteArray(13)
+        intToBytes(width, header, 0)
+        intToBytes(height, header, 4)
+        header[8] = 8 // bit depth
+        header[9] = colorType.toByte()
+        // compression, filter and interlace methods are all 0
+        writeChunk(out, "IHDR", header, header.size)
+    }
+
+    private fun writeChunk(out: DataOutputStream, type: String, data: ByteArray, length: Int) {
+        val typeBytes = type.toByteArray(Charsets.US_ASCII)
+        out.writeInt(length)
+        out.write(typeBytes)
+        out.write(data, 0, length)
+        val crc = CRC32()
+        crc.update(typeBytes)
+        crc.update(data, 0, length)
+        out.writeInt(crc.value.toInt())
+    }
+
+    private fun intToBytes(value: Int, dst: ByteArray, offset: Int) {
+        dst[offset] = (value ushr 24).toByte()
+        dst[offset + 1] = (value ushr 16).toByte()
+        dst[offset + 2] = (value ushr 8).toByte()
+        dst[offset + 3] = value.toByte()
+    }
+
+    /** Buffers the zlib stream into IDAT chunks of at most [MAX_IDAT_BYTES]. */
+    private class IdatWriter(private val out: DataOutputStream) {
+        private val buffer = ByteArray(MAX_IDAT_BYTES)
+        private var size = 0
+
+        fun write(data: ByteArray, length: Int) {
+            var offset = 0
+            while (offset < length) {
+                val n = minOf(length - offset, buffer.size - size)
+                System.arraycopy(data, offset, buffer, size, n)
+                size += n
+                offset += n
+                if (size == buffer.size) flush()
+            }
+        }
+
+        fun flush() {
+            if (size == 0) return
+            writeChunk(out, "IDAT", buffer, size)
+            size = 0
+        }
+    }
+}
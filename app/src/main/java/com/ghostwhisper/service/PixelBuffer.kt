@@ -0,0 +1,46 @@
+package com.ghostwhisper.service
+
+/**
+ * Platform-independent view of an ARGB_8888 image, accessed a row (or part of one) at a time.
+ *
+ * The stego codecs ([LsbCodec], [DctCodec]) only see this interface, so the exact kernels that
+ * ship run under plain JVM tests and benchmarks via [IntArrayPixelBuffer]; on device they run
+ * over a Bitmap via [BitmapPixelBuffer].
+ *
+ * Pixels are non-premultiplied `0xAARRGGBB` ints, as returned by `Bitmap.getPixels`.
+ */
+interface PixelBuffer {
+    val width: Int
+    val height: Int
+
+    /** Copy [count] pixels of row [y], starting at column [x], into [dst] at [offset]. */
+    fun readRow(y: Int, dst: IntArray, offset: Int = 0, x: Int = 0, count: Int = width)
+
+    /** Overwrite [count] pixels of row [y], starting at column [x], from [src] at [offset]. */
+    fun writeRow(y: Int, src: IntArray, offset: Int = 0, x: Int = 0, count: Int = width)
+}
+
+/** [PixelBuffer] over a row-major `IntArray` — for tests, benchmarks and decoded strips. */
+class IntArrayPixelBuffer(
+        override val width: Int,
+        override val height: Int,
+        val pixels: IntArray = IntArray(width * height)
+) : PixelBuffer {
+
+    init {
+        require(width > 0 && height > 0) { "Invalid size ${width}x$height" }
+        require(pixels.size >= width * height) {
+            "Need ${width * height} pixels, got ${pixels.size}"
+        }
+    }
+
+    override fun readRow(y: Int, dst: IntArray, offset: Int, x: Int, count: Int) {
+        System.arraycopy(pixels, y * width + x, dst, offset, count)
+    }
+
+    override fun writeRow(y: Int, src: IntArray, offset: Int, x: Int, count: Int) {
+        System.arraycopy(src, offset, pixels, y * width + x, count)
+    }
+
+    fun copy(): IntArrayPixelBuffer = IntArrayPixelBuffer(width, height, pixels.copyOf())
+}
@@ -0,0 +1,89 @@
+package com.ghostwhisper.service
+
+import android.app.ActivityManager
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.os.BatteryManager
+import android.os.Build
+import android.os.PowerManager
+import androidx.core.content.ContextCompat
+
+/**
+ * Feeds a [ScanGovernor] from the platform: battery level and charging (the sticky
+ * `ACTION_BATTERY_CHANGED`), battery saver, thermal status (API 29+) and the low-RAM device
+ * class. Started with the accessibility service and stopped with it; callbacks arrive on the
+ * main thread.
+ */
+class PowerWatcher(context: Context, private val governor: ScanGovernor) {
+
+    private val context = context.applicationContext
+    private val powerManager = context.getSystemService(PowerManager::class.java)
+    private var thermalListener: PowerManager.OnThermalStatusChangedListener? = null
+    private var registered = false
+
+    private val receiver =
+            object : BroadcastReceiver() {
+                override fun onReceive(context: Context, intent: Intent) {
+                    onBroadcast(intent)
+                }
+            }
+
+    fun start() {
+        if (registered) return
+        registered = true
+
+        val lowRam = context.getSystemService(ActivityManager::class.java)?.isLowRamDevice == true
+        governor.update { it.copy(lowRamDevice = lowRam, powerSave = powerManager.isPowerSaveMode) }
+
+        val filter =
+                IntentFilter().apply {
+                    addAction(Intent.ACTION_BATTERY_CHANGED)
+                    addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED)
+                }
+        // Battery changes are sticky, so the current level comes straight back
+        ContextCompat.registerReceiver(
+                        context,
+                        receiver,
+                        filter,
+                        ContextCompat.RECEIVER_NOT_EXPORTED
+                )
+                ?.let(::onBroadcast)
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // Called right away with the current status, then on every change
+            val listener =
+                    PowerManager.OnThermalStatusChangedListener { status ->
+                        governor.update { it.copy(thermalStatus = status) }
+                    }
+            powerManager.addThermalStatusListener(listener)
+            thermalListener = listener
+        }
+    }
+
+    fun stop() {
+        if (!registered) return
+        registered = false
+        context.unregisterReceiver(receiver)
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            thermalListener?.let(powerManager::removeThermalStatusListener)
+        }
+        thermalListener = null
+    }
+
+    private fun onBroadcast(intent: Intent) {
+        when (intent.action) {
+            Intent.ACTION_BATTERY_CHANGED -> {
+                val level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1)
+                val scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1)
+                val plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0)
+                val percent = if (level >= 0 && scale > 0) level * 100 / scale else -1
+                governor.update { it.copy(batteryPercent = percent, charging = plugged != 0) }
+            }
+            PowerManager.ACTION_POWER_SAVE_MODE_CHANGED -> {
+                governor.update { it.copy(powerSave = powerManager.isPowerSaveMode) }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.ghostwhisper.service
+
+import android.os.PowerManager
+
+/**
+ * Decides how hard payload scanning may work, from the device's power and thermal state.
+ *
+ * Scans run on every content change while a chat is open; on a hot phone or a nearly empty
+ * battery that is exactly the work to cut first. The [Level] trades decrypt latency for less
+ * work: content changes are coalesced over a longer window, fewer nodes are captured per scan,
+ * and rows laid out off screen are left until they scroll into view.
+ *
+ * Fed by [PowerWatcher] on device; pure logic, so it is unit-tested on the JVM.
+ */
+class ScanGovernor(private val onLevelChanged: (Level) -> Unit = {}) {
+
+    enum class Level(
+            /** How long a scan waits for newer content changes of the same node to replace it. */
+            val coalesceMillis: Long,
+            /** Upper bound on nodes captured per scan. */
+            val maxNodes: Int,
+            /** Whether rows that are laid out but not on screen are scanned. */
+            val scanOffscreen: Boolean
+    ) {
+        NORMAL(coalesceMillis = 0, maxNodes = 5_000, scanOffscreen = true),
+        REDUCED(coalesceMillis = 250, maxNodes = 2_000, scanOffscreen = false),
+        MINIMAL(coalesceMillis = 750, maxNodes = 800, scanOffscreen = false)
+    }
+
+    /**
+     * What the governor knows about the device.
+     *
+     * @property thermalStatus a `PowerManager.THERMAL_STATUS_*` value (NONE below API 29)
+     * @property batteryPercent 0–100, or -1 if unknown
+     */
+    data class PowerState(
+            val thermalStatus: Int = PowerManager.THERMAL_STATUS_NONE,
+            val powerSave: Boolean = false,
+            val batteryPercent: Int = -1,
+            val charging: Boolean = false,
+            val lowRamDevice: Boolean = false
+    )
+
+    @Volatile
+    var state = PowerState()
+        private set
+
+    @Volatile
+    var level = Level.NORMAL
+        private set
+
+    /** Apply [transform] to the current state; [onLevelChanged] runs if the level changes. */
+    fun update(transform: (PowerState) -> PowerState) {
+        val changed: Level
+        synchronized(this) {
+            state = transform(state)
+            val next = levelFor(state)
+            if (next == level) return
+            level = next
+            changed = next
+        }
+        onLevelChanged(changed)
+    }
+
+    companion object {
+        /** Battery levels (on battery power) at which scanning backs off. */
+        const val LOW_BATTERY_PERCENT = 15
+        const val CRITICAL_BATTERY_PERCENT = 5
+
+        fun levelFor(state: PowerState): Level {
+            val discharging = !state.charging && state.batteryPercent >= 0
+            return when {
+                state.thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE -> Level.MINIMAL
+                discharging && state.batteryPercent <= CRITICAL_BATTERY_PERCENT -> Level.MINIMAL
+                state.thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE -> Level.REDUCED
+                discharging && state.batteryPercent <= LOW_BATTERY_PERCENT -> Level.REDUCED
+                state.powerSave || state.lowRamDevice -> Level.REDUCED
+                else -> Level.NORMAL
+            }
+        }
+    }
+}
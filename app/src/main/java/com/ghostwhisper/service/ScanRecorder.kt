@@ -0,0 +1,103 @@
+package com.ghostwhisper.service
+
+import android.content.Context
+import android.util.Log
+import android.view.accessibility.AccessibilityEvent
+import com.ghostwhisper.scan.ScanTraceFormat
+import com.ghostwhisper.scan.SnapshotNode
+import com.ghostwhisper.scan.TraceEvent
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.concurrent.Executors
+
+/**
+ * Records accessibility events plus snapshots of their source trees to a `.gwtrace` file, for
+ * replaying the scan pipeline on the JVM (see `benchmark/` → `replayScan`).
+ *
+ * Started and stopped from the TestBench screen. Snapshots are taken on the event thread — the
+ * nodes are only valid there — and written on a background thread.
+ *
+ * **Traces contain the text on screen, including cover messages and their hidden payloads.**
+ * They stay in app-private storage until explicitly shared.
+ */
+object ScanRecorder {
+
+    private const val TAG = "ScanRecorder"
+    private const val TRACE_DIR = "scan_traces"
+
+    /** Bounds per snapshot, so one huge window can't stall the event thread. */
+    private const val MAX_NODES = 2_000
+    private const val MAX_DEPTH = 64
+
+    private val ioExecutor = Executors.newSingleThreadExecutor()
+
+    @Volatile private var writer: ScanTraceFormat.Writer? = null
+
+    /** The file being recorded, or the last one recorded. */
+    @Volatile
+    var traceFile: File? = null
+        private set
+
+    val isRecording: Boolean
+        get() = writer != null
+
+    /** Start a new trace file, ending any recording in progress. */
+    @Synchronized
+    fun start(context: Context): File {
+        stop()
+        val dir = File(context.filesDir, TRACE_DIR).apply { mkdirs() }
+        // Only the latest trace is kept
+        dir.listFiles()?.forEach { it.delete() }
+        val stamp = SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(Date())
+        val file = File(dir, "scan_$stamp.gwtrace")
+        writer = ScanTraceFormat.writer(file.outputStream())
+        traceFile = file
+        Log.d(TAG, "Recording to ${file.name}")
+        return file
+    }
+
+    /** Finish the current trace. Returns the number of events recorded. */
+    @Synchronized
+    fun stop(): Int {
+        val current = writer ?: return 0
+        writer = null
+        return ioExecutor
+                .submit<Int> {
+                    current.close()
+                    current.eventCount
+                }
+                .get()
+                .also { Log.d(TAG, "Recorded $it events") }
+    }
+
+    /** Called from `onAccessibilityEvent` for every event; cheap when not recording. */
+    fun onEvent(event: AccessibilityEvent) {
+        val current = writer ?: return
+        val root =
+                event.source?.let { source ->
+                    val node = AccessibilityScanNode(source)
+                    try {
+                        SnapshotNode.capture(node, MAX_NODES, MAX_DEPTH)
+                    } finally {
+                        node.recycle()
+                    }
+                }
+        val traceEvent =
+                TraceEvent(
+                        type = event.eventType,
+                        timeMillis = event.eventTime,
+                        packageName = event.packageName?.toString(),
+                        root = root
+                )
+        ioExecutor.execute {
+            try {
+                // Events that raced with stop() are dropped
+                if (!current.isClosed) current.append(traceEvent)
+            } catch (e: Exception) {
+                Log.w(TAG, "Trace write failed: ${e.message}")
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.ghostwhisper.service
+
+import android.accessibilityservice.AccessibilityServiceInfo
+import android.view.accessibility.AccessibilityEvent
+
+/**
+ * What the accessibility service currently has work for, and the events it subscribes to in
+ * each case.
+ *
+ * The manifest config is the superset ([OPEN_CHAT]) of event types. At runtime the service
+ * narrows it with `setServiceInfo` so that WhatsApp's content churn is not even delivered, let
+ * alone parsed, unless a chat that might carry payloads is on screen. The package filter stays
+ * `com.whatsapp` in every mode.
+ *
+ * While WhatsApp is in front, the modes also take window-list changes, with interactive windows:
+ * another app taking over shows up there, without receiving any of that app's own events.
+ */
+enum class ServiceMode(
+        /** `AccessibilityEvent.TYPE_*` mask. */
+        val eventTypes: Int,
+        /** `AccessibilityServiceInfo.FLAG_*` mask. */
+        val flags: Int,
+        /** Batching delay for events of the same type, in milliseconds. */
+        val notificationTimeout: Long
+) {
+    /** WhatsApp is in front, but the keyring is empty: only track WhatsApp for the widget. */
+    NO_CHANNELS(FOREGROUND_EVENTS, FOREGROUND_FLAGS, IDLE_TIMEOUT_MS),
+
+    /** WhatsApp isn't in front; wait for its next window change. */
+    WHATSAPP_BACKGROUND(
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED,
+            AccessibilityServiceInfo.DEFAULT,
+            IDLE_TIMEOUT_MS
+    ),
+
+    /** WhatsApp is in front without a conversation; opening one changes the window. */
+    CHAT_LIST(FOREGROUND_EVENTS, FOREGROUND_FLAGS, ACTIVE_TIMEOUT_MS),
+
+    /** A conversation is open: scan incoming messages, pre-encrypt drafts, drive sends. */
+    OPEN_CHAT(
+            FOREGROUND_EVENTS or
+                    AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED or
+                    AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED or
+                    AccessibilityEvent.TYPE_VIEW_CLICKED or
+                    AccessibilityEvent.TYPE_VIEW_FOCUSED,
+            FOREGROUND_FLAGS or AccessibilityServiceInfo.FLAG_REQUEST_ENHANCED_WEB_ACCESSIBILITY,
+            ACTIVE_TIMEOUT_MS
+    );
+
+    companion object {
+        /**
+         * The mode for the service's current knowledge. A chat counts as open whether or not it
+         * is linked to a channel: payloads for any channel in the keyring can arrive in it.
+         */
+        fun of(hasChannels: Boolean, whatsAppForeground: Boolean, chatOpen: Boolean): ServiceMode =
+                when {
+                    !whatsAppForeground -> WHATSAPP_BACKGROUND
+                    !hasChannels -> NO_CHANNELS
+                    !chatOpen -> CHAT_LIST
+                    else -> OPEN_CHAT
+                }
+
+        /**
+         * Whether WhatsApp is in front, given the package of the active application window after
+         * the window list changed. Null (not known) and [ownPackage] — the overlays floating
+         * over WhatsApp — change nothing.
+         */
+        fun whatsAppInFront(
+                activeAppPackage: String?,
+                ownPackage: String,
+                wasInFront: Boolean
+        ): Boolean =
+                when (activeAppPackage) {
+                    GhostWhisperService.WHATSAPP_PACKAGE -> true
+                    null, ownPackage -> wasInFront
+                    else -> false
+                }
+    }
+}
+
+/** WhatsApp's own window changes, and the window list, to notice another app taking over. */
+private const val FOREGROUND_EVENTS =
+        AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED or AccessibilityEvent.TYPE_WINDOWS_CHANGED
+
+private const val FOREGROUND_FLAGS =
+        AccessibilityServiceInfo.DEFAULT or
+                AccessibilityServiceInfo.FLAG_RETRIEVE_INTERACTIVE_WINDOWS
+
+/** Same as the manifest; content events come in bursts while a chat is open. */
+private const val ACTIVE_TIMEOUT_MS = 100L
+
+/** Window changes only; a little extra latency before the widget reacts is fine. */
+private const val IDLE_TIMEOUT_MS = 300L
@@ -0,0 +1,75 @@
+package com.ghostwhisper.service
+
+import android.content.ContentResolver
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.net.Uri
+
+/**
+ * Two-stage image loading for the steganography screens.
+ *
+ * 1. [readInfo] reads only the image header (`inJustDecodeBounds`) — dimensions and MIME type are
+ *    enough to show a capacity estimate immediately.
+ * 2. [decodePreview] decodes a subsampled thumbnail sized for the on-screen preview box.
+ *
+ * Full-resolution pixels are only loaded when encode/decode actually runs, through
+ * [BitmapPool.decode], on a background dispatcher.
+ */
+object StegoImageLoader {
+
+    /** Header information for a picked image. */
+    data class ImageInfo(val uri: Uri, val width: Int, val height: Int, val mimeType: String?) {
+        val megapixels: Double
+            get() = width.toDouble() * height / 1_000_000.0
+    }
+
+    /** Read image dimensions without decoding any pixels. Returns null if not a decodable image. */
+    fun readInfo(resolver: ContentResolver, uri: Uri): ImageInfo? {
+        val options = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        resolver.openInputStream(uri)?.use { BitmapFactory.decodeStream(it, null, options) }
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null
+        return ImageInfo(uri, options.outWidth, options.outHeight, options.outMimeType)
+    }
+
+    /**
+     * Decode a thumbnail no smaller than [targetWidth] x [targetHeight] (unless the image itself
+     * is), using a power-of-two `inSampleSize` so the decoder skips pixels instead of scaling.
+     */
+    fun decodePreview(
+            resolver: ContentResolver,
+            info: ImageInfo,
+            targetWidth: Int,
+            targetHeight: Int
+    ): Bitmap? {
+        val options =
+                BitmapFactory.Options().apply {
+                    inSampleSize = sampleSizeFor(info.width, info.height, targetWidth, targetHeight)
+                    inPreferredConfig = Bitmap.Config.ARGB_8888
+                }
+        return resolver.openInputStream(info.uri)?.use {
+            BitmapFactory.decodeStream(it, null, options)
+        }
+    }
+
+    /** Downscale an already-decoded (e.g. freshly encoded) bitmap for display. */
+    fun scaleForPreview(bitmap: Bitmap, targetWidth: Int, targetHeight: Int): Bitmap {
+        val sample = sampleSizeFor(bitmap.width, bitmap.height, targetWidth, targetHeight)
+        if (sample == 1) return bitmap
+        return Bitmap.createScaledBitmap(
+                bitmap,
+                bitmap.width / sample,
+                bitmap.height / sample,
+                true
+        )
+    }
+
+    /** Largest power of two that keeps both sampled dimensions >= the target. */
+    fun sampleSizeFor(width: Int, height: Int, targetWidth: Int, targetHeight: Int): Int {
+        var sample = 1
+        if (targetWidth <= 0 || targetHeight <= 0) return sample
+        while (width / (sample * 2) >= targetWidth && height / (sample * 2) >= targetHeight) {
+            sample *= 2
+        }
+        return sample
+    }
+}
@@ -0,0 +1,158 @@
+package com.ghostwhisper.service
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.net.Uri
+import android.os.Build
+import android.util.Log
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+
+/**
+ * Writes steganography output bitmaps in a lossless format.
+ *
+ * Every format here preserves RGB values bit-exactly for opaque images, which is what the LSB and
+ * DCT payloads need. Output is streamed straight to the destination with no temp file; a share
+ * keeps the compressed bytes of its first read only so re-reads needn't pin the bitmap
+ * (see [shareUri]).
+ */
+object StegoImageWriter {
+
+    private const val TAG = "StegoImageWriter"
+
+    enum class Format(val mimeType: String, val extension: String, val label: String) {
+        /** [ParallelPngEncoder]: per-row filters, row groups deflated on all cores. */
+        PNG_PARALLEL("image/png", "png", "Fast PNG"),
+
+        /** Platform `Bitmap.compress(PNG)` — single-threaded reference. */
+        PNG_PLATFORM("image/png", "png", "PNG"),
+
+        /** Platform lossless WebP (API 30+). Usually smaller than PNG, slower to write. */
+        WEBP_LOSSLESS("image/webp", "webp", "WebP");
+
+        val isSupported: Boolean
+            get() = this != WEBP_LOSSLESS || Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+    }
+
+    /** Formats usable on this device, default first. */
+    fun supportedFormats(): List<Format> = Format.entries.filter { it.isSupported }
+
+    /** Encode [bitmap] as [format] into [out]. Does not close [out]. */
+    suspend fun write(bitmap: Bitmap, format: Format, out: OutputStream) {
+        when (format) {
+            Format.PNG_PARALLEL -> {
+                val width = bitmap.width
+                ParallelPngEncoder.encode(
+                        width,
+                        bitmap.height,
+                        { y, dst -> bitmap.getPixels(dst, 0, width, 0, y, width, 1) },
+                        out,
+                        // Bitmaps that declare no alpha skip the opacity scan
+                        hasAlpha = if (bitmap.hasAlpha()) null else false
+                )
+            }
+            Format.PNG_PLATFORM ->
+                    withContext(Dispatchers.Default) {
+                        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)
+                    }
+            Format.WEBP_LOSSLESS -> {
+                check(format.isSupported) { "Lossless WebP requires API 30" }
+                withContext(Dispatchers.Default) {
+                    bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSLESS, 100, out)
+                }
+            }
+        }
+    }
+
+    /**
+     * Share the leased bitmap as [format] through [StreamShareProvider]: the image is encoded
+     * directly into the receiving app's pipe when it reads the URI. The lease is retained only
+     * until one read has streamed the whole image; later reads (preview, then send) replay that
+     * read's encoded bytes, so the full-size bitmap goes back to the pool once the receiver has
+     * it. Callers should still [StreamShareProvider.unregister] the URI when the result is gone.
+     */
+    fun shareUri(
+            context: Context,
+            lease: BitmapPool.Lease,
+            format: Format,
+            baseName: String = "stego_image"
+    ): Uri {
+        val image = SharedImage(lease.retain(), format)
+        return StreamShareProvider.register(
+                context,
+                "$baseName.${format.extension}",
+                format.mimeType,
+                onReleased = image::release
+        ) { out -> image.writeTo(out) }
+    }
+
+    /** A shared result: the leased bitmap until one read completes, then that read's bytes. */
+    private class SharedImage(private var lease: BitmapPool.Lease?, private val format: Format) {
+        private var bytes: ByteArray? = null
+
+        fun writeTo(out: OutputStream) {
+            val encoded: ByteArray?
+            val leased: BitmapPool.Lease?
+            synchronized(this) {
+                encoded = bytes
+                // Held for this read, in case an overlapping read finishes first and drops it
+                leased = if (encoded == null) checkNotNull(lease).retain() else null
+            }
+            if (encoded != null) {
+                out.write(encoded)
+                return
+            }
+            checkNotNull(leased)
+            try {
+                val start = System.nanoTime()
+                val copy = ByteArrayOutputStream()
+                runBlocking { write(leased.bitmap, format, TeeOutputStream(out, copy)) }
+                Log.d(TAG, "Streamed $format in ${(System.nanoTime() - start) / 1_000_000} ms")
+                keep(copy.toByteArray())
+            } finally {
+                leased.release()
+            }
+        }
+
+        /** The first complete read's [encoded] bytes replace the bitmap. */
+        private fun keep(encoded: ByteArray) {
+            val dropped =
+                    synchronized(this) {
+                        if (bytes != null) return
+                        bytes = encoded
+                        lease.also { lease = null }
+                    }
+            dropped?.release()
+        }
+
+        fun release() {
+            val dropped =
+                    synchronized(this) {
+                        bytes = null
+                        lease.also { lease = null }
+                    }
+            dropped?.release()
+        }
+    }
+
+    /** Writes to [out] and keeps a [copy]; a failed write to [out] stops both. */
+    private class TeeOutputStream(
+            private val out: OutputStream,
+            private val copy: OutputStream
+    ) : OutputStream() {
+        override fun write(b: Int) {
+            out.write(b)
+            copy.write(b)
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            out.write(b, off, len)
+            copy.write(b, off, len)
+        }
+
+        override fun flush() = out.flush()
+    }
+}
@@ -0,0 +1,109 @@
+package com.ghostwhisper.service
+
+import android.content.ContentResolver
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.BitmapRegionDecoder
+import android.graphics.Rect
+import android.net.Uri
+import android.os.Build
+import android.util.Log
+import com.ghostwhisper.data.model.ScanResult
+import com.ghostwhisper.metrics.Tracer
+import com.ghostwhisper.metrics.section
+import java.io.InputStream
+
+/**
+ * Cheap "does this file carry a Ghost Whisper payload?" checks for background scanning.
+ *
+ * Never decodes a full image: GIFs are checked from their first [GifHelper.HEADER_PROBE_BYTES];
+ * bitmaps only decode the top strip (via [BitmapRegionDecoder]) that holds the LSB and DCT
+ * headers. Nothing is decrypted — a hit only means the header signature and length are valid.
+ */
+object StegoProbe {
+
+    private const val TAG = "StegoProbe"
+
+    fun probe(resolver: ContentResolver, uri: Uri, mimeType: String?): ScanResult {
+        return try {
+            Tracer.section("stego probe", Tracer.CATEGORY_BACKGROUND) {
+                if (mimeType == "image/gif") probeGif(resolver, uri) else probeBitmap(resolver, uri)
+            }
+        } catch (e: Exception) {
+            Log.d(TAG, "Probe failed for $uri: ${e.message}")
+            ScanResult.UNREADABLE
+        } catch (e: OutOfMemoryError) {
+            Log.w(TAG, "Probe out of memory for $uri")
+            ScanResult.UNREADABLE
+        }
+    }
+
+    private fun probeGif(resolver: ContentResolver, uri: Uri): ScanResult {
+        val head =
+                resolver.openInputStream(uri)?.use { readHead(it, GifHelper.HEADER_PROBE_BYTES) }
+                        ?: return ScanResult.UNREADABLE
+        return if (GifHelper.hasPayloadHeader(head)) ScanResult.GIF else ScanResult.NONE
+    }
+
+    private fun probeBitmap(resolver: ContentResolver, uri: Uri): ScanResult {
+        val info = StegoImageLoader.readInfo(resolver, uri) ?: return ScanResult.UNREADABLE
+        val width = info.width
+        val height = info.height
+
+        // One strip covers both headers: 16 LSB pixels and the first 48 DCT blocks
+        val lsbRows = (LsbCodec.HEADER_PIXELS + width - 1) / width
+        val stripHeight =
+                maxOf(lsbRows, DctCodec.headerStripHeight(width)).coerceAtMost(height)
+
+        val strip =
+                decodeTopStrip(resolver, uri, width, stripHeight) ?: return ScanResult.UNREADABLE
+        try {
+            val top = BitmapPixelBuffer(strip)
+            return when {
+                LsbCodec.probeHeader(top, height) -> ScanResult.LSB
+                DctCodec.probeHeader(top, height) -> ScanResult.DCT
+                else -> ScanResult.NONE
+            }
+        } finally {
+            strip.recycle()
+        }
+    }
+
+    private fun decodeTopStrip(
+            resolver: ContentResolver,
+            uri: Uri,
+            width: Int,
+            height: Int
+    ): Bitmap? {
+        return resolver.openInputStream(uri)?.use { stream ->
+            val decoder =
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                        BitmapRegionDecoder.newInstance(stream)
+                    } else {
+                        @Suppress("DEPRECATION") BitmapRegionDecoder.newInstance(stream, false)
+                    }
+                            ?: return@use null
+            try {
+                val options =
+                        BitmapFactory.Options().apply {
+                            inPreferredConfig = Bitmap.Config.ARGB_8888
+                        }
+                decoder.decodeRegion(Rect(0, 0, width, height), options)
+            } finally {
+                decoder.recycle()
+            }
+        }
+    }
+
+    /** Read up to [limit] bytes from the start of [input]. */
+    private fun readHead(input: InputStream, limit: Int): ByteArray {
+        val buffer = ByteArray(limit)
+        var read = 0
+        while (read < limit) {
+            val n = input.read(buffer, read, limit - read)
+            if (n < 0) break
+            read += n
+        }
+        return if (read == limit) buffer else buffer.copyOf(read)
+    }
+}
@@ -0,0 +1,215 @@
+package com.ghostwhisper.service
+
+import android.content.ContentProvider
+import android.content.ContentProvider.PipeDataWriter
+import android.content.ContentValues
+import android.content.Context
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.net.Uri
+import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
+import android.os.ParcelFileDescriptor
+import android.provider.OpenableColumns
+import android.util.Log
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.util.UUID
+
+/**
+ * Shares generated content (stego images, QR invites) without temp files.
+ *
+ * Callers [register] a [Producer] and hand the returned `content://` URI to the receiving app.
+ * When the receiver opens it, the provider creates a pipe (`openPipeHelper`) and runs the producer
+ * on a background thread, writing straight into the pipe as the receiver reads — nothing is
+ * written to or read back from the cache directory.
+ *
+ * Receivers may open a URI more than once (preview, then send), so entries stay readable until
+ * [unregister] or [ENTRY_TTL_MS] elapses. Each entry's `onReleased` callback runs once the entry
+ * is gone *and* no read is in progress, so producers may safely borrow pooled bitmaps.
+ */
+class StreamShareProvider : ContentProvider() {
+
+    companion object {
+        private const val TAG = "StreamShareProvider"
+        private const val AUTHORITY_SUFFIX = ".share"
+
+        /** How long a registered stream stays readable. */
+        private const val ENTRY_TTL_MS = 10 * 60 * 1000L
+
+        /** Oldest entries are dropped beyond this count. */
+        private const val MAX_ENTRIES = 8
+
+        private val COLUMNS = arrayOf(OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE)
+
+        private val entries = LinkedHashMap<String, Entry>()
+        private val handler = Handler(Looper.getMainLooper())
+
+        /**
+         * Register [producer] and return a readable URI. Grant access with
+         * `FLAG_GRANT_READ_URI_PERMISSION` on the share intent.
+         *
+         * @param onReleased called once the entry expires or is unregistered and no read is active
+         */
+        fun register(
+                context: Context,
+                displayName: String,
+                mimeType: String,
+                onReleased: (() -> Unit)? = null,
+                producer: Producer
+        ): Uri {
+            val id = UUID.randomUUID().toString()
+            val evicted = mutableListOf<Entry>()
+            synchronized(entries) {
+                entries[id] = Entry(displayName, mimeType, producer, onReleased)
+                while (entries.size > MAX_ENTRIES) {
+                    val oldest = entries.keys.first()
+                    entries.remove(oldest)?.let { evicted.add(it) }
+                }
+            }
+            evicted.forEach { markRemoved(it) }
+            handler.postDelayed({ unregister(id) }, ENTRY_TTL_MS)
+
+            return Uri.Builder()
+                    .scheme("content")
+                    .authority(context.packageName + AUTHORITY_SUFFIX)
+                    .appendPath(id)
+                    .appendPath(displayName)
+                    .build()
+        }
+
+        /** Stop serving [uri]. Reads already in progress finish first. */
+        fun unregister(uri: Uri) {
+            uri.pathSegments.firstOrNull()?.let { unregister(it) }
+        }
+
+        /**
+         * Delete share files written to the cache by earlier versions (stego exports and QR
+         * invites). Call off the main thread.
+         */
+        fun deleteLegacyCacheFiles(context: Context) {
+            val cacheDir = context.cacheDir
+            File(cacheDir, "images").deleteRecursively()
+            cacheDir.listFiles { file -> file.name.startsWith("ghostwhisper_qr_") }?.forEach {
+                it.delete()
+            }
+        }
+
+        private fun unregister(id: String) {
+            val entry = synchronized(entries) { entries.remove(id) } ?: return
+            markRemoved(entry)
+        }
+
+        private fun lookup(uri: Uri): Entry? {
+            val id = uri.pathSegments.firstOrNull() ?: return null
+            return synchronized(entries) { entries[id] }
+        }
+
+        private fun endRead(entry: Entry) {
+            val release =
+                    synchronized(entry) {
+                        entry.activeReads--
+                        entry.removed && entry.activeReads == 0
+                    }
+            if (release) entry.release()
+        }
+
+        private fun markRemoved(entry: Entry) {
+            val release =
+                    synchronized(entry) {
+                        entry.removed = true
+                        entry.activeReads == 0
+                    }
+            if (release) entry.release()
+        }
+    }
+
+    /** Writes the shared content. Runs on a background thread; must not close [out]. */
+    fun interface Producer {
+        @Throws(IOException::class) fun writeTo(out: OutputStream)
+    }
+
+    private class Entry(
+            val displayName: String,
+            val mimeType: String,
+            val producer: Producer,
+            private val onReleased: (() -> Unit)?
+    ) {
+        var activeReads = 0
+        var removed = false
+        private var released = false
+
+        fun release() {
+            synchronized(this) {
+                if (released) return
+                released = true
+            }
+            onReleased?.invoke()
+        }
+    }
+
+    private val pipeWriter =
+            PipeDataWriter<Entry> { output, uri, _, _, entry ->
+                try {
+                    FileOutputStream(output.fileDescriptor).buffered().use {
+                        entry.producer.writeTo(it)
+                    }
+                } catch (e: IOException) {
+                    // Receiver closed its end early (cancelled share) — not an error for us
+                    Log.d(TAG, "Stream closed early for $uri: ${e.message}")
+                } catch (e: Exception) {
+                    Log.e(TAG, "Producer failed for $uri", e)
+                } finally {
+                    endRead(entry)
+                }
+            }
+
+    override fun onCreate(): Boolean = true
+
+    override fun getType(uri: Uri): String? = lookup(uri)?.mimeType
+
+    override fun query(
+            uri: Uri,
+            projection: Array<out String>?,
+            selection: String?,
+            selectionArgs: Array<out String>?,
+            sortOrder: String?
+    ): Cursor? {
+        val entry = lookup(uri) ?: return null
+        val columns = projection?.filter { it in COLUMNS }?.toTypedArray() ?: COLUMNS
+        // Size is unknown until the producer has run — OpenableColumns allows null
+        val values =
+                columns.map { if (it == OpenableColumns.DISPLAY_NAME) entry.displayName else null }
+        return MatrixCursor(columns, 1).apply { addRow(values) }
+    }
+
+    override fun openFile(uri: Uri, mode: String): ParcelFileDescriptor? {
+        if (mode != "r") throw FileNotFoundException("Read-only: $uri")
+        val entry = lookup(uri) ?: throw FileNotFoundException("No shared stream for $uri")
+        synchronized(entry) {
+            if (entry.removed) throw FileNotFoundException("Expired: $uri")
+            entry.activeReads++
+        }
+        return try {
+            openPipeHelper(uri, entry.mimeType, Bundle.EMPTY, entry, pipeWriter)
+        } catch (e: FileNotFoundException) {
+            endRead(entry)
+            throw e
+        }
+    }
+
+    override fun insert(uri: Uri, values: ContentValues?): Uri? = null
+
+    override fun update(
+            uri: Uri,
+            values: ContentValues?,
+            selection: String?,
+            selectionArgs: Array<out String>?
+    ): Int = 0
+
+    override fun delete(uri: Uri, selection: String?, selectionArgs: Array<out String>?): Int = 0
+}
@@ -0,0 +1,103 @@
+package com.ghostwhisper.service
+
+import android.content.Context
+import android.security.keystore.KeyGenParameterSpec
+import android.security.keystore.KeyProperties
+import android.util.AtomicFile
+import android.util.Log
+import com.ghostwhisper.scan.SecretTimeline
+import java.io.File
+import java.security.KeyStore
+import javax.crypto.Cipher
+import javax.crypto.KeyGenerator
+import javax.crypto.SecretKey
+import javax.crypto.spec.GCMParameterSpec
+
+/**
+ * Keeps a [SecretTimeline] across service restarts, encrypted at rest.
+ *
+ * The timeline holds plaintexts, so it is sealed with AES-GCM under a key that never leaves
+ * the Android Keystore, and written to no-backup storage: a copy of the file is useless off this
+ * device. Only used with the "Keep Secret History" setting on; turning it off deletes the file.
+ */
+class TimelineStore(context: Context) {
+
+    companion object {
+        private const val TAG = "TimelineStore"
+        private const val KEYSTORE = "AndroidKeyStore"
+        private const val KEY_ALIAS = "ghost_timeline"
+        private const val FILE_NAME = "timeline.bin"
+        private const val TRANSFORMATION = "AES/GCM/NoPadding"
+        private const val TAG_BITS = 128
+    }
+
+    private val file = AtomicFile(File(context.noBackupFilesDir, FILE_NAME))
+
+    /** Merge the saved timeline into [timeline]; false if there is none or it can't be read. */
+    fun loadInto(timeline: SecretTimeline): Boolean {
+        val bytes =
+                try {
+                    file.readFully()
+                } catch (e: java.io.FileNotFoundException) {
+                    return false
+                }
+        return try {
+            val ivLength = bytes[0].toInt()
+            val cipher = Cipher.getInstance(TRANSFORMATION)
+            cipher.init(
+                    Cipher.DECRYPT_MODE,
+                    key(),
+                    GCMParameterSpec(TAG_BITS, bytes, 1, ivLength)
+            )
+            val json = cipher.doFinal(bytes, 1 + ivLength, bytes.size - 1 - ivLength)
+            timeline.restore(String(json, Charsets.UTF_8))
+            true
+        } catch (e: Exception) {
+            // Key lost (e.g. lock screen reset) or file damaged: start over
+            Log.w(TAG, "Discarding unreadable timeline: ${e.message}")
+            delete()
+            false
+        }
+    }
+
+    fun save(timeline: SecretTimeline) {
+        val cipher = Cipher.getInstance(TRANSFORMATION)
+        cipher.init(Cipher.ENCRYPT_MODE, key())
+        val iv = cipher.iv
+        val sealed = cipher.doFinal(timeline.toJson().toByteArray(Charsets.UTF_8))
+
+        val out = file.startWrite()
+        try {
+            out.write(iv.size)
+            out.write(iv)
+            out.write(sealed)
+            file.finishWrite(out)
+        } catch (e: Exception) {
+            file.failWrite(out)
+            throw e
+        }
+    }
+
+    fun delete() {
+        file.delete()
+    }
+
+    private fun key(): SecretKey {
+        val keyStore = KeyStore.getInstance(KEYSTORE).apply { load(null) }
+        (keyStore.getKey(KEY_ALIAS, null) as? SecretKey)?.let {
+            return it
+        }
+        val generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE)
+        generator.init(
+                KeyGenParameterSpec.Builder(
+                                KEY_ALIAS,
+                                KeyProperties.PURPOSE_ENCRYPT or KeyProperties.PURPOSE_DECRYPT
+                        )
+                        .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                        .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                        .setKeySize(256)
+                        .build()
+        )
+        return generator.generateKey()
+    }
+}
@@ -0,0 +1,48 @@
+package com.ghostwhisper.service
+
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.mapNotNull
+import kotlinx.coroutines.flow.merge
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.withTimeoutOrNull
+
+/**
+ * Lets a coroutine wait for another app's UI to reach some state instead of sleeping a fixed time.
+ *
+ * The accessibility service calls [signal] on every relevant event (window and focus changes,
+ * content and text changes). [await] runs its check at once, then again after each signal, and
+ * returns the first non-null result — or null once the timeout passes, so callers can fall back
+ * to what they did before. Signals are conflated: a burst of events costs one re-check.
+ *
+ * Not every change raises an event (events are throttled by the service's notification timeout,
+ * and apps don't always announce a button being enabled), so the check also re-runs every
+ * [fallbackPollMillis] as a safety net.
+ */
+class UiEventSignal(private val fallbackPollMillis: Long = 50) {
+
+    private val generation = MutableStateFlow(0L)
+
+    /** Something on screen may have changed; wake up waiters to re-check. Any thread. */
+    fun signal() {
+        generation.update { it + 1 }
+    }
+
+    /**
+     * Suspend until [check] returns non-null, and return that. [check] runs in the caller's
+     * context, so it may touch main-thread-only state if the caller is on the main thread.
+     */
+    suspend fun <T : Any> await(timeoutMillis: Long, check: () -> T?): T? {
+        val fallback = flow {
+            while (true) {
+                delay(fallbackPollMillis)
+                emit(Unit)
+            }
+        }
+        return withTimeoutOrNull(timeoutMillis) {
+            merge(generation, fallback).mapNotNull { check() }.first()
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.ghostwhisper.service
+
+import android.app.Notification
+import android.content.Context
+import android.service.notification.NotificationListenerService
+import android.service.notification.StatusBarNotification
+import android.util.Log
+import androidx.core.app.NotificationCompat
+import androidx.core.app.NotificationManagerCompat
+import com.ghostwhisper.data.repository.SettingsRepository
+import com.ghostwhisper.metrics.Metrics
+import com.ghostwhisper.metrics.Tracer
+import com.ghostwhisper.metrics.asyncSection
+import com.ghostwhisper.stegano.SteganoCodec
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+
+/**
+ * Optional pre-decryption from WhatsApp's notifications.
+ *
+ * A payload is normally found only once its chat is open and the accessibility tree shows it.
+ * WhatsApp's message notifications carry the same text, zero-width characters included, so this
+ * listener decrypts it as it arrives — through [GhostWhisperService.prefetchPayloads], into the
+ * scanner's outcome cache — and opening the chat then answers from the cache without decrypting.
+ * For a secret decrypted here for the first time, it posts a "new secret in <channel>" hint that
+ * shows nothing of the message.
+ *
+ * Runs only with notification access granted in system settings and the "Pre-decrypt from
+ * Notifications" setting on. Notifications without zero-width characters cost one string check
+ * each; nothing else of them is kept.
+ */
+class WhatsAppNotificationListener : NotificationListenerService() {
+
+    companion object {
+        private const val TAG = "NotificationListener"
+
+        /** Whether the user granted this app notification access. */
+        fun hasAccess(context: Context): Boolean {
+            return context.packageName in
+                    NotificationManagerCompat.getEnabledListenerPackages(context)
+        }
+    }
+
+    private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+    private lateinit var settings: SettingsRepository
+    private lateinit var notificationHelper: NotificationHelper
+
+    override fun onCreate() {
+        super.onCreate()
+        settings = SettingsRepository(applicationContext)
+        notificationHelper = NotificationHelper(applicationContext)
+    }
+
+    override fun onDestroy() {
+        scope.cancel()
+        super.onDestroy()
+    }
+
+    override fun onNotificationPosted(sbn: StatusBarNotification) {
+        if (sbn.packageName != GhostWhisperService.WHATSAPP_PACKAGE) return
+        if (!settings.notificationPrefetchEnabled) return
+
+        val payloads = messageTexts(sbn.notification).filter(SteganoCodec::containsPayload)
+        if (payloads.isEmpty()) return
+
+        scope.launch {
+            try {
+                val fresh =
+                        Tracer.asyncSection("notification prefetch", Tracer.CATEGORY_RECEIVE) {
+                            GhostWhisperService.prefetchPayloads(payloads)
+                        }
+                Metrics.payloadsPrefetched.increment(fresh.size.toLong())
+                // In the chat already: the scan shows it as usual
+                if (GhostWhisperService.isWhatsAppActive) return@launch
+                fresh.map { it.channelName }.distinct().forEach(notificationHelper::notifySecretHint)
+            } catch (e: Exception) {
+                // Silent fail: log only in debug
+                Log.d(TAG, "Prefetch error: ${e.message}")
+            }
+        }
+    }
+
+    /**
+     * Every message text in [notification]: the conversation history of a `MessagingStyle`
+     * notification, plus the plain, big and inbox-style texts older WhatsApp versions post.
+     */
+    private fun messageTexts(notification: Notification): List<String> {
+        val texts = LinkedHashSet<String>()
+        NotificationCompat.MessagingStyle.extractMessagingStyleFromNotification(notification)
+                ?.let { style ->
+                    (style.historicMessages + style.messages).forEach { message ->
+                        message.text?.let { texts.add(it.toString()) }
+                    }
+                }
+        val extras = notification.extras
+        extras.getCharSequence(Notification.EXTRA_TEXT)?.let { texts.add(it.toString()) }
+        extras.getCharSequence(Notification.EXTRA_BIG_TEXT)?.let { texts.add(it.toString()) }
+        extras.getCharSequenceArray(Notification.EXTRA_TEXT_LINES)?.forEach {
+            texts.add(it.toString())
+        }
+        return texts.toList()
+    }
+}
@@ -0,0 +1,335 @@
+package com.ghostwhisper.service
+
+import com.ghostwhisper.metrics.Metrics
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Runs the accessibility service's background work in separate lanes, so a burst of incoming
+ * messages can never hold up an outgoing one.
+ *
+ * - [Lane.SEND] — the user's encrypt-and-send, one at a time. While a send is queued or
+ *   running, the other lanes finish what they are doing but start nothing new.
+ * - [Lane.SCAN] — payload scans. Latest wins: a scan submitted under the key of one still
+ *   queued replaces it (the newer one sees the same nodes, fresher), and one already running
+ *   under that key is cancelled once it has got somewhere ([LaneConfig.preempt]).
+ * - [Lane.HOUSEKEEPING] — chat-title linking and the like; low priority, latest wins too.
+ *
+ * Every lane has its own workers and a bounded queue, with an explicit [Overflow] policy. A task
+ * that was accepted but will never run gets its `onDrop` callback (with the reason), so callers
+ * can release what they handed over — an [android.view.accessibility.AccessibilityNodeInfo],
+ * say. Tasks should catch their own exceptions; anything that escapes goes to [onError] and the
+ * lane carries on.
+ */
+class WorkScheduler(
+        scope: CoroutineScope,
+        send: LaneConfig = DEFAULT_SEND,
+        scan: LaneConfig = DEFAULT_SCAN,
+        housekeeping: LaneConfig = DEFAULT_HOUSEKEEPING,
+        private val onError: (Lane, Exception) -> Unit = { _, _ -> }
+) {
+
+    enum class Lane {
+        SEND,
+        SCAN,
+        HOUSEKEEPING
+    }
+
+    /** What a full lane does with one more task. */
+    enum class Overflow {
+        /** Refuse the new task ([submit] returns false). */
+        REJECT,
+        /** Drop the task that has waited longest and queue the new one. */
+        DROP_OLDEST
+    }
+
+    /** Why an accepted task will never run. */
+    enum class Drop {
+        /** A newer task with the same key replaced it. */
+        SUPERSEDED,
+        /** Its lane overflowed with [Overflow.DROP_OLDEST]. */
+        OVERFLOW,
+        /** The scheduler was shut down. */
+        SHUTDOWN
+    }
+
+    /**
+     * @property capacity queued (not yet running) tasks the lane holds
+     * @property preempt cancel a running task when one with the same key is submitted, once the
+     *   running task has called [allowPreemption]. Until then the newer task waits its turn
+     *   (still replaced by even newer ones), so a steady stream of submissions can't cancel
+     *   every run before it delivers anything.
+     */
+    class LaneConfig(
+            val parallelism: Int,
+            val capacity: Int,
+            val overflow: Overflow,
+            val preempt: Boolean = false
+    )
+
+    companion object {
+        /** Sends run strictly one after another; a third tap while two are pending is refused. */
+        val DEFAULT_SEND = LaneConfig(parallelism = 1, capacity = 2, overflow = Overflow.REJECT)
+
+        /** Queued scans are mostly scrolled away by the time the oldest would run. */
+        val DEFAULT_SCAN =
+                LaneConfig(
+                        parallelism = 2,
+                        capacity = 16,
+                        overflow = Overflow.DROP_OLDEST,
+                        preempt = true
+                )
+
+        val DEFAULT_HOUSEKEEPING =
+                LaneConfig(parallelism = 1, capacity = 8, overflow = Overflow.DROP_OLDEST)
+
+        /**
+         * Called by a task on a [LaneConfig.preempt] lane once it has done the part that must not
+         * be lost — a scan, after delivering its first message. From then on a newer task under
+         * the same key cancels it; if one is already waiting, right here. A no-op elsewhere.
+         */
+        suspend fun allowPreemption() {
+            currentCoroutineContext()[PreemptionGate]?.open?.invoke()
+            currentCoroutineContext().ensureActive()
+        }
+    }
+
+    /** Carried by a preemptible task's coroutine; [open] is what [allowPreemption] calls. */
+    private class PreemptionGate(val open: () -> Unit) :
+            AbstractCoroutineContextElement(PreemptionGate) {
+        companion object Key : CoroutineContext.Key<PreemptionGate>
+    }
+
+    /** A task running on a [LaneConfig.preempt] lane. */
+    private class Running(val job: Job) {
+        /** Set by [allowPreemption]. Guarded by the lane's task map. */
+        var preemptible = false
+    }
+
+    private class Task(
+            val block: suspend () -> Unit,
+            val onDrop: (Drop) -> Unit,
+            /** When the first task under this key was queued; see [setHold]. */
+            var queuedAt: Long = System.nanoTime()
+    )
+
+    private inner class LaneQueue(val lane: Lane, val config: LaneConfig) {
+        /** Queued tasks by key, oldest first. */
+        private val tasks = LinkedHashMap<Any, Task>()
+        /** Running tasks by key, with [LaneConfig.preempt]. Guarded by [tasks]. */
+        private val running = HashMap<Any, Running>()
+        private val wakeup = Channel<Unit>(Channel.CONFLATED)
+
+        /** Tasks accepted and not yet finished or dropped. */
+        val active = MutableStateFlow(0)
+
+        @Volatile var holdNanos = 0L
+
+        fun offer(key: Any, task: Task): Boolean {
+            var dropped: Task? = null
+            var reason = Drop.SUPERSEDED
+            synchronized(tasks) {
+                if (isShutdown) return false
+                running[key]?.let {
+                    if (it.preemptible) {
+                        running.remove(key)
+                        it.job.cancel()
+                        Metrics.tasksPreempted.increment()
+                    }
+                }
+                val previous = tasks.remove(key)
+                if (previous != null) {
+                    // Re-inserted, so the map holds the newer key object and its task goes last;
+                    // it keeps the hold clock, so a steady stream of updates can't starve it
+                    task.queuedAt = previous.queuedAt
+                    tasks[key] = task
+                    dropped = previous
+                } else {
+                    if (tasks.size >= config.capacity) {
+                        when (config.overflow) {
+                            Overflow.REJECT -> {
+                                Metrics.tasksRejected.increment()
+                                return false
+                            }
+                            Overflow.DROP_OLDEST -> {
+                                val oldest = tasks.keys.first()
+                                dropped = tasks.remove(oldest)
+                                reason = Drop.OVERFLOW
+                                Metrics.tasksDropped.increment()
+                            }
+                        }
+                    }
+                    tasks[key] = task
+                    // Counted before the worker can see it, so a lower lane never slips past
+                    active.update { it + 1 }
+                }
+            }
+            wakeup.trySend(Unit)
+            dropped?.let {
+                if (reason == Drop.OVERFLOW) active.update { n -> n - 1 }
+                it.onDrop(reason)
+            }
+            return true
+        }
+
+        /** Nanoseconds until the next task may start, or 0 if it may start now (or none). */
+        private fun holdRemaining(): Long {
+            val hold = holdNanos
+            if (hold == 0L) return 0
+            val head = synchronized(tasks) { tasks.values.firstOrNull() } ?: return 0
+            return (head.queuedAt + hold - System.nanoTime()).coerceAtLeast(0)
+        }
+
+        private fun poll(): Pair<Any, Task>? {
+            synchronized(tasks) {
+                val entries = tasks.entries.iterator()
+                while (entries.hasNext()) {
+                    val (key, task) = entries.next()
+                    // Not alongside a same-key task that may not be cancelled yet
+                    if (key in running) continue
+                    entries.remove()
+                    // The wakeup is conflated; pass it on if there is more for another worker
+                    if (tasks.isNotEmpty()) wakeup.trySend(Unit)
+                    return key to task
+                }
+                return null
+            }
+        }
+
+        /** Called through [allowPreemption]: cancel [run] now if a newer task is waiting. */
+        private fun allowPreemption(key: Any, run: Running) {
+            synchronized(tasks) {
+                if (running[key] !== run) return
+                run.preemptible = true
+                if (key !in tasks) return
+                running.remove(key)
+            }
+            run.job.cancel()
+            Metrics.tasksPreempted.increment()
+            wakeup.trySend(Unit)
+        }
+
+        /** Run [task] as its own job, registered under [key] so a newer task can cancel it. */
+        private suspend fun runPreemptible(key: Any, task: Task) {
+            coroutineScope {
+                lateinit var run: Running
+                val gate = PreemptionGate { allowPreemption(key, run) }
+                run = Running(launch(gate, start = CoroutineStart.LAZY) { task.block() })
+                synchronized(tasks) { running[key] = run }
+                try {
+                    run.job.start()
+                    run.job.join()
+                } finally {
+                    synchronized(tasks) { running.remove(key, run) }
+                    // A same-key task held back by this one may start now
+                    wakeup.trySend(Unit)
+                }
+            }
+        }
+
+        suspend fun work(yieldTo: LaneQueue?) {
+            while (true) {
+                yieldTo?.active?.first { it == 0 }
+                val hold = holdRemaining()
+                if (hold > 0) {
+                    // Newer tasks under the same key replace this one meanwhile
+                    delay((hold + 999_999) / 1_000_000)
+                    continue
+                }
+                val next = poll()
+                if (next == null) {
+                    wakeup.receive()
+                    continue
+                }
+                val (key, task) = next
+                try {
+                    if (config.preempt) runPreemptible(key, task) else task.block()
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    onError(lane, e)
+                } finally {
+                    active.update { it - 1 }
+                }
+            }
+        }
+
+        fun drain(): List<Task> {
+            synchronized(tasks) {
+                val all = tasks.values.toList()
+                tasks.clear()
+                active.update { it - all.size }
+                return all
+            }
+        }
+    }
+
+    private val job: Job = SupervisorJob(scope.coroutineContext[Job])
+    private val workerScope = CoroutineScope(scope.coroutineContext + job)
+
+    @Volatile private var isShutdown = false
+
+    private val lanes =
+            mapOf(
+                    Lane.SEND to LaneQueue(Lane.SEND, send),
+                    Lane.SCAN to LaneQueue(Lane.SCAN, scan),
+                    Lane.HOUSEKEEPING to LaneQueue(Lane.HOUSEKEEPING, housekeeping)
+            )
+
+    init {
+        val sendLane = lanes.getValue(Lane.SEND)
+        for (queue in lanes.values) {
+            val yieldTo = if (queue === sendLane) null else sendLane
+            repeat(queue.config.parallelism) { workerScope.launch { queue.work(yieldTo) } }
+        }
+    }
+
+    /**
+     * Queue [block] on [lane]. With a [key], a task still queued under the same key is replaced
+     * (and dropped with [Drop.SUPERSEDED]). Returns false if the task was refused — a full
+     * [Overflow.REJECT] lane, or after [shutdown] — in which case [onDrop] is not called.
+     */
+    fun submit(
+            lane: Lane,
+            key: Any? = null,
+            onDrop: (Drop) -> Unit = {},
+            block: suspend () -> Unit
+    ): Boolean {
+        return lanes.getValue(lane).offer(key ?: Any(), Task(block, onDrop))
+    }
+
+    /**
+     * Hold tasks on [lane] until [millis] after they were first queued, so that updates arriving
+     * in that window replace them instead of running too. The window runs from the first task
+     * under a key, not the latest. 0 (the default) starts tasks as soon as a worker is free.
+     */
+    fun setHold(lane: Lane, millis: Long) {
+        lanes.getValue(lane).holdNanos = millis * 1_000_000
+    }
+
+    /** Tasks queued or running on [lane]. */
+    fun activeCount(lane: Lane): Int = lanes.getValue(lane).active.value
+
+    /** Cancel running tasks and drop queued ones; later submissions are refused. */
+    fun shutdown() {
+        isShutdown = true
+        job.cancel()
+        for (queue in lanes.values) {
+            queue.drain().forEach { it.onDrop(Drop.SHUTDOWN) }
+        }
+    }
+}
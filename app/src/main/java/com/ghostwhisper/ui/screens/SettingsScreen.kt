@@ -1,6 +1,10 @@
 package com.ghostwhisper.ui.screens
 
+import android.content.Intent
+import android.provider.Settings
 import android.util.Log
+import androidx.activity.compose.rememberLauncherForActivityResult
+import androidx.activity.result.contract.ActivityResultContracts
 import androidx.compose.foundation.background
 import androidx.compose.foundation.clickable
 import androidx.compose.foundation.layout.*
@@ -95,6 +99,26 @@ fun SettingsScreen(navController: NavController, onSignOut: () -> Unit) {
                 mutableStateOf(settingsRepository.clipboardGuardEnabled)
         }
         var overlayTimeout by remember { mutableFloatStateOf(settingsRepository.overlayTimeout) }
+        var mediaScanEnabled by remember {
+                mutableStateOf(
+                        settingsRepository.mediaScanEnabled &&
+                                com.ghostwhisper.service.MediaScanObserver.hasReadPermission(
+                                        context
+                                )
+                )
+        }
+        var notificationPrefetchEnabled by remember {
+                mutableStateOf(settingsRepository.notificationPrefetchEnabled)
+        }
+        var timelinePersistEnabled by remember {
+                mutableStateOf(settingsRepository.timelinePersistEnabled)
+        }
+        val mediaPermissionLauncher =
+                rememberLauncherForActivityResult(ActivityResultContracts.RequestPermission()) {
+                        granted ->
+                        mediaScanEnabled = granted
+                        com.ghostwhisper.service.MediaScanObserver.setEnabled(context, granted)
+                }
 
         // Cover messages
         var coverMessages by remember { mutableStateOf(settingsRepository.getCoverMessages()) }
@@ -285,6 +309,52 @@ fun SettingsScreen(navController: NavController, onSignOut: () -> Unit) {
                         }
                 )
 
+                SettingsToggle(
+                        title = "Auto-detect Stego Images",
+                        subtitle =
+                                "Scan incoming WhatsApp images for hidden messages in the background",
+                        checked = mediaScanEnabled,
+                        onCheckedChange = { isChecked ->
+                                val observer = com.ghostwhisper.service.MediaScanObserver
+                                if (isChecked && !observer.hasReadPermission(context)) {
+                                        mediaPermissionLauncher.launch(observer.readPermission)
+                                } else {
+                                        mediaScanEnabled = isChecked
+                                        observer.setEnabled(context, isChecked)
+                                }
+                        }
+                )
+
+                SettingsToggle(
+                        title = "Pre-decrypt from Notifications",
+                        subtitle =
+                                "Decrypt hidden messages as WhatsApp notifications arrive, so chats open instantly (needs notification access)",
+                        checked = notificationPrefetchEnabled,
+                        onCheckedChange = { isChecked ->
+                                notificationPrefetchEnabled = isChecked
+                                settingsRepository.notificationPrefetchEnabled = isChecked
+                                val listener = com.ghostwhisper.service.WhatsAppNotificationListener
+                                if (isChecked && !listener.hasAccess(context)) {
+                                        context.startActivity(
+                                                Intent(Settings.ACTION_NOTIFICATION_LISTENER_SETTINGS)
+                                        )
+                                }
+                        }
+                )
+
+                SettingsToggle(
+                        title = "Keep Secret History",
+                        subtitle =
+                                "Remember decrypted messages across restarts, encrypted on this device only",
+                        checked = timelinePersistEnabled,
+                        onCheckedChange = {
+                                timelinePersistEnabled = it
+                                settingsRepository.timelinePersistEnabled = it
+                                com.ghostwhisper.service.GhostWhisperService
+                                        .onTimelinePersistChanged(context, it)
+                        }
+                )
+
                 Spacer(modifier = Modifier.height(24.dp))
 
                 // ─── Cover Messages Section ──────────────────────────────
@@ -15,6 +15,7 @@ import androidx.activity.result.contract.ActivityResultContracts
 import androidx.compose.foundation.Image
 import androidx.compose.foundation.background
 import androidx.compose.foundation.clickable
+import androidx.compose.foundation.horizontalScroll
 import androidx.compose.foundation.layout.*
 import androidx.compose.foundation.rememberScrollState
 import androidx.compose.foundation.shape.RoundedCornerShape
@@ -34,7 +35,9 @@ import androidx.compose.ui.Modifier
 import androidx.compose.ui.graphics.asImageBitmap
 import androidx.compose.ui.layout.ContentScale
 import androidx.compose.ui.platform.LocalContext
+import androidx.compose.ui.platform.LocalDensity
 import androidx.compose.ui.text.font.FontWeight
+import androidx.compose.ui.unit.IntSize
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.viewinterop.AndroidView
 import androidx.navigation.NavController
@@ -43,8 +46,12 @@ import com.ghostwhisper.data.db.KeyringDatabase
 import com.ghostwhisper.data.model.ChannelKey
 import com.ghostwhisper.data.model.GhostPacket
 import com.ghostwhisper.data.repository.KeyringRepository
+import com.ghostwhisper.service.BitmapPool
 import com.ghostwhisper.service.DCTSteganographyHelper
 import com.ghostwhisper.service.SteganographyHelper
+import com.ghostwhisper.service.StegoImageLoader
+import com.ghostwhisper.service.StegoImageWriter
+import com.ghostwhisper.service.StreamShareProvider
 import com.ghostwhisper.ui.theme.DarkBackground
 import com.ghostwhisper.ui.theme.DarkSurface
 import com.ghostwhisper.ui.theme.GhostPurple
@@ -52,10 +59,8 @@ import com.ghostwhisper.ui.theme.GhostRed
 import com.ghostwhisper.ui.theme.TextMuted
 import com.ghostwhisper.ui.theme.TextPrimary
 import com.ghostwhisper.ui.theme.TextSecondary
-import java.io.ByteArrayOutputStream
-import java.io.File
-import java.io.FileOutputStream
 import java.nio.ByteBuffer
+import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
@@ -143,46 +148,92 @@ fun EncodeSection() {
         withContext(Dispatchers.IO) { channels = repository.getAllActiveKeys() }
     }
 
-    var imageUri by remember { mutableStateOf<Uri?>(null) }
-    var sourceBitmap by remember { mutableStateOf<Bitmap?>(null) }
+    // Full-size bitmaps come from (and go back to) the shared pool
+    val bitmapPool = remember { BitmapPool.getInstance(context) }
+    val previewSize = rememberPreviewSize()
+
+    // Static images: header info + screen-sized thumbnail. Full pixels load only while encoding.
+    var sourceInfo by remember { mutableStateOf<StegoImageLoader.ImageInfo?>(null) }
+    var sourcePreview by remember { mutableStateOf<Bitmap?>(null) }
     var sourceGifBytes by remember { mutableStateOf<ByteArray?>(null) }
 
-    var encodedBitmap by remember { mutableStateOf<Bitmap?>(null) }
+    // Leased so an in-flight share stream keeps the bitmap alive after the screen lets go
+    var encodedLease by remember { mutableStateOf<BitmapPool.Lease?>(null) }
+    var encodedPreview by remember { mutableStateOf<Bitmap?>(null) }
     var encodedGifBytes by remember { mutableStateOf<ByteArray?>(null) }
 
+    // The last share of the result; unregistered with it so the provider lets go of the bitmap
+    var sharedUri by remember { mutableStateOf<Uri?>(null) }
+    fun unshare() {
+        sharedUri?.let { StreamShareProvider.unregister(it) }
+        sharedUri = null
+    }
+
+    DisposableEffect(Unit) {
+        onDispose {
+            unshare()
+            encodedLease?.release()
+        }
+    }
+
     var message by remember { mutableStateOf("") }
     var isRobustMode by remember {
         mutableStateOf(true)
     } // Default to robust based on user feedback
     var isProcessing by remember { mutableStateOf(false) }
 
+    val outputFormats = remember { StegoImageWriter.supportedFormats() }
+    var outputFormat by remember { mutableStateOf(outputFormats.first()) }
+
     val imagePickerLauncher =
             rememberLauncherForActivityResult(contract = ActivityResultContracts.GetContent()) {
                     uri: Uri? ->
                 uri?.let {
-                    imageUri = it
-                    encodedBitmap = null // Reset previous result
+                    // Reset previous result; its bitmap goes back to the pool
+                    unshare()
+                    scope.releaseAfterFrame(encodedLease)
+                    encodedLease = null
+                    encodedPreview = null
                     encodedGifBytes = null
-                    sourceBitmap = null
+                    sourceInfo = null
+                    sourcePreview = null
                     sourceGifBytes = null
 
                     // Load content
-                    try {
-                        val type = context.contentResolver.getType(it)
-                        if (type?.contains("gif") == true) {
-                            // Handle GIF
-                            val bytes =
-                                    context.contentResolver.openInputStream(it)?.use { stream ->
-                                        stream.readBytes()
-                                    }
-                            sourceGifBytes = bytes
-                        } else {
-                            // Handle Static Image
-                            val inputStream = context.contentResolver.openInputStream(it)
-                            sourceBitmap = BitmapFactory.decodeStream(inputStream)
+                    scope.launch {
+                        try {
+                            val type = context.contentResolver.getType(it)
+                            if (type?.contains("gif") == true) {
+                                // Handle GIF
+                                sourceGifBytes =
+                                        withContext(Dispatchers.IO) {
+                                            context.contentResolver.openInputStream(it)?.use {
+                                                    stream ->
+                                                stream.readBytes()
+                                            }
+                                        }
+                            } else {
+                                // Handle Static Image: header first, then a sampled thumbnail
+                                val info =
+                                        withContext(Dispatchers.IO) {
+                                            StegoImageLoader.readInfo(context.contentResolver, it)
+                                        }
+                                                ?: throw IllegalArgumentException("Not an image")
+                                sourceInfo = info
+                                sourcePreview =
+                                        withContext(Dispatchers.IO) {
+                                            StegoImageLoader.decodePreview(
+                                                    context.contentResolver,
+                                                    info,
+                                                    previewSize.width,
+                                                    previewSize.height
+                                            )
+                                        }
+                            }
+                        } catch (e: Exception) {
+                            Toast.makeText(context, "Failed to load image", Toast.LENGTH_SHORT)
+                                    .show()
                         }
-                    } catch (e: Exception) {
-                        Toast.makeText(context, "Failed to load image", Toast.LENGTH_SHORT).show()
                     }
                 }
             }
@@ -193,23 +244,25 @@ fun EncodeSection() {
                         Modifier.fillMaxWidth()
                                 .height(200.dp)
                                 .background(DarkSurface, RoundedCornerShape(12.dp))
-                                .clickable { imagePickerLauncher.launch("image/*") },
+                                .clickable(enabled = !isProcessing) {
+                                    imagePickerLauncher.launch("image/*")
+                                },
                 contentAlignment = Alignment.Center
         ) {
             if (encodedGifBytes != null) {
                 GifImage(gifBytes = encodedGifBytes!!, modifier = Modifier.fillMaxSize())
-            } else if (encodedBitmap != null) {
+            } else if (encodedPreview != null) {
                 Image(
-                        bitmap = encodedBitmap!!.asImageBitmap(),
+                        bitmap = encodedPreview!!.asImageBitmap(),
                         contentDescription = "Encoded Image",
                         modifier = Modifier.fillMaxSize(),
                         contentScale = ContentScale.Fit
                 )
             } else if (sourceGifBytes != null) {
                 GifImage(gifBytes = sourceGifBytes!!, modifier = Modifier.fillMaxSize())
-            } else if (sourceBitmap != null) {
+            } else if (sourcePreview != null) {
                 Image(
-                        bitmap = sourceBitmap!!.asImageBitmap(),
+                        bitmap = sourcePreview!!.asImageBitmap(),
                         contentDescription = "Selected Image",
                         modifier = Modifier.fillMaxSize(),
                         contentScale = ContentScale.Fit
@@ -227,6 +280,8 @@ fun EncodeSection() {
             }
         }
 
+        sourceInfo?.let { info -> CapacityEstimate(info, isRobustMode, message) }
+
         if (sourceGifBytes != null) {
             Text(
                     "Animated GIF detected. Messages will be embedded without losing animation.",
@@ -334,7 +389,7 @@ fun EncodeSection() {
 
         Button(
                 onClick = {
-                    if (sourceBitmap == null && sourceGifBytes == null) {
+                    if (sourceInfo == null && sourceGifBytes == null) {
                         Toast.makeText(context, "Select an image first", Toast.LENGTH_SHORT).show()
                         return@Button
                     }
@@ -374,6 +429,7 @@ fun EncodeSection() {
                                         withContext(Dispatchers.Default) {
                                             SteganographyHelper.encode(sourceGifBytes!!, packetJson)
                                         }
+                                unshare()
                                 encodedGifBytes = result
                                 Toast.makeText(
                                                 context,
@@ -382,24 +438,51 @@ fun EncodeSection() {
                                         )
                                         .show()
                             } else {
-                                // Bitmap Encoding — embed encrypted packet
+                                // Bitmap Encoding — load full-resolution pixels only now.
+                                // The previous result is never drawn (its preview is), so it goes
+                                // back to the pool first rather than being held through the encode
+                                unshare()
+                                encodedLease?.release()
+                                encodedLease = null
+                                encodedPreview = null
+                                val info = sourceInfo!!
+                                val fullBitmap =
+                                        withContext(Dispatchers.IO) {
+                                            bitmapPool.decode(context.contentResolver, info.uri)
+                                        }
+                                                ?: throw IllegalStateException("Image unreadable")
                                 val result =
-                                        withContext(Dispatchers.Default) {
-                                            if (isRobustMode) {
-                                                DCTSteganographyHelper.encode(
-                                                        sourceBitmap!!,
-                                                        packetJson
-                                                )
-                                            } else {
-                                                SteganographyHelper.encode(
-                                                        sourceBitmap!!,
-                                                        packetJson
-                                                )
+                                        try {
+                                            withContext(Dispatchers.Default) {
+                                                if (isRobustMode) {
+                                                    DCTSteganographyHelper.encode(
+                                                            fullBitmap,
+                                                            packetJson,
+                                                            bitmapPool
+                                                    )
+                                                } else {
+                                                    SteganographyHelper.encode(
+                                                            fullBitmap,
+                                                            packetJson,
+                                                            bitmapPool
+                                                    )
+                                                }
                                             }
+                                        } finally {
+                                            bitmapPool.release(fullBitmap)
                                         }
 
                                 if (result != null) {
-                                    encodedBitmap = result
+                                    val preview =
+                                            withContext(Dispatchers.Default) {
+                                                StegoImageLoader.scaleForPreview(
+                                                        result,
+                                                        previewSize.width,
+                                                        previewSize.height
+                                                )
+                                            }
+                                    encodedLease = bitmapPool.lease(result)
+                                    encodedPreview = preview
                                     Toast.makeText(
                                                     context,
                                                     "Encoded + Encrypted! 🔒",
@@ -442,31 +525,54 @@ fun EncodeSection() {
             }
         }
 
-        if (encodedBitmap != null || encodedGifBytes != null) {
+        if (encodedLease != null || encodedGifBytes != null) {
             Spacer(modifier = Modifier.height(16.dp))
+
+            // ─── Lossless Output Format ─────────────────────────────
+            if (encodedGifBytes == null) {
+                Row(
+                        verticalAlignment = Alignment.CenterVertically,
+                        modifier = Modifier.horizontalScroll(rememberScrollState())
+                ) {
+                    Text("Format:", color = TextSecondary)
+                    outputFormats.forEach { format ->
+                        Spacer(modifier = Modifier.width(8.dp))
+                        FilterChip(
+                                selected = outputFormat == format,
+                                onClick = { outputFormat = format },
+                                label = { Text(format.label) }
+                        )
+                    }
+                }
+                Spacer(modifier = Modifier.height(8.dp))
+            }
+
             Button(
                     onClick = {
+                        // Bytes are produced on demand as the receiving app reads the stream.
+                        // Only the latest share stays readable.
+                        unshare()
+                        val gifBytes = encodedGifBytes
                         val uri =
-                                if (encodedGifBytes != null) {
-                                    saveFileToCache(context, encodedGifBytes!!, "stego_image.gif")
-                                } else {
-                                    saveFileToCache(
+                                if (gifBytes != null) {
+                                    StreamShareProvider.register(
                                             context,
-                                            bitmapToBytes(encodedBitmap!!),
-                                            "stego_image.png"
-                                    )
+                                            "stego_image.gif",
+                                            "image/gif"
+                                    ) { out -> out.write(gifBytes) }
+                                } else {
+                                    StegoImageWriter.shareUri(context, encodedLease!!, outputFormat)
                                 }
-
-                        if (uri != null) {
-                            shareImage(
-                                    context,
-                                    uri,
-                                    if (encodedGifBytes != null) "image/gif" else "image/png"
-                            )
-                        }
+                        sharedUri = uri
+                        shareImage(
+                                context,
+                                uri,
+                                if (gifBytes != null) "image/gif" else outputFormat.mimeType
+                        )
                     },
                     modifier = Modifier.fillMaxWidth(),
-                    colors = ButtonDefaults.buttonColors(containerColor = TextSecondary)
+                    colors = ButtonDefaults.buttonColors(containerColor = TextSecondary),
+                    enabled = !isProcessing
             ) {
                 Icon(Icons.Default.Share, contentDescription = null)
                 Spacer(modifier = Modifier.width(8.dp))
@@ -489,8 +595,11 @@ fun DecodeSection() {
         KeyringRepository(KeyringDatabase.getInstance(context).keyringDao())
     }
     val scope = rememberCoroutineScope()
+    val bitmapPool = remember { BitmapPool.getInstance(context) }
+    val previewSize = rememberPreviewSize()
 
-    var sourceBitmap by remember { mutableStateOf<Bitmap?>(null) }
+    var sourceInfo by remember { mutableStateOf<StegoImageLoader.ImageInfo?>(null) }
+    var sourcePreview by remember { mutableStateOf<Bitmap?>(null) }
     var sourceGifBytes by remember { mutableStateOf<ByteArray?>(null) }
 
     var decodedMessage by remember { mutableStateOf<String?>(null) }
@@ -501,25 +610,44 @@ fun DecodeSection() {
             rememberLauncherForActivityResult(contract = ActivityResultContracts.GetContent()) {
                     uri: Uri? ->
                 uri?.let {
-                    sourceBitmap = null
+                    sourceInfo = null
+                    sourcePreview = null
                     sourceGifBytes = null
                     decodedMessage = null
                     statusMessage = ""
 
-                    try {
-                        val type = context.contentResolver.getType(it)
-                        if (type?.contains("gif") == true) {
-                            val bytes =
-                                    context.contentResolver.openInputStream(it)?.use { stream ->
-                                        stream.readBytes()
-                                    }
-                            sourceGifBytes = bytes
-                        } else {
-                            val inputStream = context.contentResolver.openInputStream(it)
-                            sourceBitmap = BitmapFactory.decodeStream(inputStream)
+                    scope.launch {
+                        try {
+                            val type = context.contentResolver.getType(it)
+                            if (type?.contains("gif") == true) {
+                                sourceGifBytes =
+                                        withContext(Dispatchers.IO) {
+                                            context.contentResolver.openInputStream(it)?.use {
+                                                    stream ->
+                                                stream.readBytes()
+                                            }
+                                        }
+                            } else {
+                                val info =
+                                        withContext(Dispatchers.IO) {
+                                            StegoImageLoader.readInfo(context.contentResolver, it)
+                                        }
+                                                ?: throw IllegalArgumentException("Not an image")
+                                sourceInfo = info
+                                sourcePreview =
+                                        withContext(Dispatchers.IO) {
+                                            StegoImageLoader.decodePreview(
+                                                    context.contentResolver,
+                                                    info,
+                                                    previewSize.width,
+                                                    previewSize.height
+                                            )
+                                        }
+                            }
+                        } catch (e: Exception) {
+                            Toast.makeText(context, "Failed to load image", Toast.LENGTH_SHORT)
+                                    .show()
                         }
-                    } catch (e: Exception) {
-                        Toast.makeText(context, "Failed to load image", Toast.LENGTH_SHORT).show()
                     }
                 }
             }
@@ -530,14 +658,16 @@ fun DecodeSection() {
                         Modifier.fillMaxWidth()
                                 .height(200.dp)
                                 .background(DarkSurface, RoundedCornerShape(12.dp))
-                                .clickable { imagePickerLauncher.launch("image/*") },
+                                .clickable(enabled = !isProcessing) {
+                                    imagePickerLauncher.launch("image/*")
+                                },
                 contentAlignment = Alignment.Center
         ) {
             if (sourceGifBytes != null) {
                 GifImage(gifBytes = sourceGifBytes!!, modifier = Modifier.fillMaxSize())
-            } else if (sourceBitmap != null) {
+            } else if (sourcePreview != null) {
                 Image(
-                        bitmap = sourceBitmap!!.asImageBitmap(),
+                        bitmap = sourcePreview!!.asImageBitmap(),
                         contentDescription = "Selected Image",
                         modifier = Modifier.fillMaxSize(),
                         contentScale = ContentScale.Fit
@@ -559,7 +689,7 @@ fun DecodeSection() {
 
         Button(
                 onClick = {
-                    if (sourceBitmap == null && sourceGifBytes == null) {
+                    if (sourceInfo == null && sourceGifBytes == null) {
                         Toast.makeText(context, "Select an image first", Toast.LENGTH_SHORT).show()
                         return@Button
                     }
@@ -579,16 +709,23 @@ fun DecodeSection() {
                                             SteganographyHelper.decode(sourceGifBytes!!)
                                         }
                             } else {
-                                // Bitmap Decode — try LSB first, then DCT
-                                rawPayload =
-                                        withContext(Dispatchers.Default) {
-                                            SteganographyHelper.decode(sourceBitmap!!)
+                                // Bitmap Decode — load full pixels, try LSB first, then DCT
+                                val fullBitmap =
+                                        withContext(Dispatchers.IO) {
+                                            bitmapPool.decode(
+                                                    context.contentResolver,
+                                                    sourceInfo!!.uri
+                                            )
                                         }
-                                if (rawPayload == null) {
+                                                ?: throw IllegalStateException("Image unreadable")
+                                try {
                                     rawPayload =
                                             withContext(Dispatchers.Default) {
-                                                DCTSteganographyHelper.decode(sourceBitmap!!)
+                                                SteganographyHelper.decode(fullBitmap)
+                                                        ?: DCTSteganographyHelper.decode(fullBitmap)
                                             }
+                                } finally {
+                                    bitmapPool.release(fullBitmap)
                                 }
                             }
 
@@ -717,29 +854,61 @@ fun GifImage(gifBytes: ByteArray, modifier: Modifier = Modifier) {
     }
 }
 
-private fun saveFileToCache(context: Context, bytes: ByteArray, filename: String): Uri? {
-    try {
-        val cachePath = File(context.cacheDir, "images")
-        cachePath.mkdirs()
-        val stream = FileOutputStream(File(cachePath, filename))
-        stream.write(bytes)
-        stream.close()
-
-        return androidx.core.content.FileProvider.getUriForFile(
-                context,
-                "${context.packageName}.provider",
-                File(cachePath, filename)
+/** Pixel size of the 200dp preview box, used as the thumbnail decode target. */
+@Composable
+private fun rememberPreviewSize(): IntSize {
+    val density = LocalDensity.current
+    val context = LocalContext.current
+    return remember(density) {
+        IntSize(
+                context.resources.displayMetrics.widthPixels,
+                with(density) { 200.dp.roundToPx() }
         )
-    } catch (e: Exception) {
-        e.printStackTrace()
-        return null
     }
 }
 
-private fun bitmapToBytes(bitmap: Bitmap): ByteArray {
-    val stream = ByteArrayOutputStream()
-    bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream)
-    return stream.toByteArray()
+/**
+ * Capacity hint computed from the image header alone — shown before any full decode so the user
+ * knows up front whether the message will fit.
+ */
+@Composable
+private fun CapacityEstimate(
+        info: StegoImageLoader.ImageInfo,
+        isRobustMode: Boolean,
+        message: String
+) {
+    val capacity =
+            if (isRobustMode) DCTSteganographyHelper.capacityBytes(info.width, info.height)
+            else SteganographyHelper.capacityBytes(info.width, info.height)
+    val maxChars = GhostPacket.maxPlaintextFor(capacity)
+    val needed = GhostPacket.serializedSizeFor(message.toByteArray(Charsets.UTF_8).size)
+    val fits = message.isEmpty() || needed <= capacity
+
+    Text(
+            text =
+                    "${info.width}×${info.height} (${"%.1f".format(info.megapixels)} MP) · " +
+                            "fits ~$maxChars bytes of secret text",
+            color = if (fits) TextSecondary else GhostRed,
+            style = MaterialTheme.typography.bodySmall,
+            modifier = Modifier.padding(top = 8.dp)
+    )
+}
+
+/**
+ * Drop the screen's hold on [lease] once its bitmap is no longer drawn. The caller clears the
+ * state holding it first; waiting two frames lets recomposition and the following draw pass drop
+ * the old bitmap before the pool may hand it out again (or recycle it).
+ */
+private fun CoroutineScope.releaseAfterFrame(lease: BitmapPool.Lease?) {
+    lease ?: return
+    launch {
+        try {
+            withFrameNanos {}
+            withFrameNanos {}
+        } finally {
+            lease.release()
+        }
+    }
 }
 
 private fun shareImage(context: Context, uri: Uri, mimeType: String) {
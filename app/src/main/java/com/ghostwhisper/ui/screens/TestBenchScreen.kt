@@ -1,5 +1,6 @@
 package com.ghostwhisper.ui.screens
 
+import android.content.Intent
 import android.widget.Toast
 import androidx.compose.foundation.background
 import androidx.compose.foundation.layout.*
@@ -21,8 +22,17 @@ import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import com.ghostwhisper.crypto.AESCrypto
 import com.ghostwhisper.data.model.GhostPacket
+import com.ghostwhisper.metrics.Metrics
+import com.ghostwhisper.metrics.Tracer
+import com.ghostwhisper.service.ScanRecorder
+import com.ghostwhisper.service.StreamShareProvider
 import com.ghostwhisper.stegano.SteganoCodec
 import com.ghostwhisper.ui.theme.*
+import java.io.ByteArrayOutputStream
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 /**
  * TestBench screen — Phase 1 milestone.
@@ -50,6 +60,11 @@ fun TestBenchScreen() {
     val testKeyId = remember { AESCrypto.deriveKeyId("TestBench") }
     var chaffingEnabled by remember { mutableStateOf(false) }
 
+    // Scan recorder
+    val scope = rememberCoroutineScope()
+    var isRecording by remember { mutableStateOf(ScanRecorder.isRecording) }
+    var recorderStatus by remember { mutableStateOf<String?>(null) }
+
     Column(
             modifier =
                     Modifier.fillMaxSize()
@@ -347,6 +362,90 @@ fun TestBenchScreen() {
             }
         }
 
+        // ─── SCAN RECORDER ──────────────────────────────────────
+        Spacer(modifier = Modifier.height(24.dp))
+        SectionLabel("⏺ SCAN RECORDER")
+        Text(
+                text =
+                        "Records accessibility events and screen snapshots for replaying the " +
+                                "scan pipeline off-device. Traces contain on-screen text.",
+                style = MaterialTheme.typography.bodySmall,
+                color = TextSecondary,
+                modifier = Modifier.padding(bottom = 8.dp)
+        )
+        Row(modifier = Modifier.fillMaxWidth()) {
+            Button(
+                    onClick = {
+                        scope.launch {
+                            if (isRecording) {
+                                val count = withContext(Dispatchers.IO) { ScanRecorder.stop() }
+                                isRecording = false
+                                recorderStatus = "Recorded $count events"
+                            } else {
+                                val file =
+                                        withContext(Dispatchers.IO) {
+                                            ScanRecorder.start(context)
+                                        }
+                                isRecording = true
+                                recorderStatus = "Recording to ${file.name}…"
+                            }
+                        }
+                    },
+                    modifier = Modifier.weight(1f),
+                    colors =
+                            ButtonDefaults.buttonColors(
+                                    containerColor = if (isRecording) GhostRed else GhostPurple
+                            ),
+                    shape = RoundedCornerShape(12.dp)
+            ) {
+                Icon(
+                        if (isRecording) Icons.Default.Stop else Icons.Default.FiberManualRecord,
+                        contentDescription = null
+                )
+                Spacer(modifier = Modifier.width(8.dp))
+                Text(if (isRecording) "Stop" else "Record")
+            }
+            Spacer(modifier = Modifier.width(8.dp))
+            OutlinedButton(
+                    onClick = {
+                        val file = ScanRecorder.traceFile ?: return@OutlinedButton
+                        val uri =
+                                StreamShareProvider.register(
+                                        context,
+                                        file.name,
+                                        "application/octet-stream"
+                                ) { out -> file.inputStream().use { it.copyTo(out) } }
+                        val intent =
+                                Intent(Intent.ACTION_SEND).apply {
+                                    type = "application/octet-stream"
+                                    putExtra(Intent.EXTRA_STREAM, uri)
+                                    addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION)
+                                }
+                        context.startActivity(Intent.createChooser(intent, "Share Scan Trace"))
+                    },
+                    modifier = Modifier.weight(1f),
+                    shape = RoundedCornerShape(12.dp),
+                    enabled = !isRecording && ScanRecorder.traceFile != null
+            ) {
+                Icon(Icons.Default.Share, contentDescription = null)
+                Spacer(modifier = Modifier.width(8.dp))
+                Text("Share")
+            }
+        }
+        recorderStatus?.let { status ->
+            Text(
+                    text = status,
+                    style = MaterialTheme.typography.bodySmall,
+                    color = TextMuted,
+                    modifier = Modifier.padding(top = 4.dp)
+            )
+        }
+
+        // ─── DIAGNOSTICS ────────────────────────────────────────
+        Spacer(modifier = Modifier.height(24.dp))
+        SectionLabel("📈 DIAGNOSTICS")
+        DiagnosticsPanel()
+
         Spacer(modifier = Modifier.height(24.dp))
 
         // Test key info
@@ -385,6 +484,130 @@ fun TestBenchScreen() {
     }
 }
 
+/**
+ * Live view of [Metrics]: states, counters and latency percentiles, refreshed every second. "Trace" shares
+ * the [Tracer] ring buffer as Chrome trace JSON, for ui.perfetto.dev.
+ */
+@Composable
+private fun DiagnosticsPanel() {
+    val context = LocalContext.current
+    val clipboardManager = LocalClipboardManager.current
+    var refreshTick by remember { mutableIntStateOf(0) }
+    LaunchedEffect(Unit) {
+        while (true) {
+            delay(1_000)
+            refreshTick++
+        }
+    }
+    val states = remember(refreshTick) { Metrics.states() }
+    val counters = remember(refreshTick) { Metrics.counters() }
+    val latencies = remember(refreshTick) { Metrics.histograms() }
+
+    Card(
+            modifier = Modifier.fillMaxWidth(),
+            shape = RoundedCornerShape(12.dp),
+            colors = CardDefaults.cardColors(containerColor = DarkSurfaceVariant)
+    ) {
+        Column(modifier = Modifier.padding(16.dp)) {
+            states.forEach { (name, value) -> MetricRow(name, value) }
+            counters.forEach { (name, value) -> MetricRow(name, "%,d".format(value)) }
+            Spacer(modifier = Modifier.height(8.dp))
+            MetricRow("latency (ms)", "%6s %6s %6s %6s".format("n", "p50", "p99", "max"))
+            latencies.forEach { (name, latency) ->
+                MetricRow(
+                        name,
+                        "%6d %6.1f %6.1f %6.1f"
+                                .format(
+                                        latency.count,
+                                        latency.p50 / 1e6,
+                                        latency.p99 / 1e6,
+                                        latency.max / 1e6
+                                )
+                )
+            }
+            Spacer(modifier = Modifier.height(8.dp))
+            Row(horizontalArrangement = Arrangement.spacedBy(8.dp)) {
+                OutlinedButton(
+                        onClick = {
+                            Metrics.reset()
+                            Tracer.clear()
+                            refreshTick++
+                        },
+                        shape = RoundedCornerShape(8.dp)
+                ) {
+                    Text(
+                            "↺ Reset",
+                            color = GhostRed,
+                            style = MaterialTheme.typography.labelMedium
+                    )
+                }
+                OutlinedButton(
+                        onClick = {
+                            clipboardManager.setText(AnnotatedString(Metrics.toJson()))
+                            Toast.makeText(context, "Metrics copied as JSON", Toast.LENGTH_SHORT)
+                                    .show()
+                        },
+                        shape = RoundedCornerShape(8.dp)
+                ) {
+                    Text(
+                            "📋 Copy JSON",
+                            color = GhostPurple,
+                            style = MaterialTheme.typography.labelMedium
+                    )
+                }
+                OutlinedButton(
+                        onClick = {
+                            // Snapshot now, so every read of the share sees the same trace
+                            val trace =
+                                    ByteArrayOutputStream()
+                                            .also { Tracer.writeChromeJson(it) }
+                                            .toByteArray()
+                            val uri =
+                                    StreamShareProvider.register(
+                                            context,
+                                            "ghostwhisper_trace.json",
+                                            "application/json"
+                                    ) { out -> out.write(trace) }
+                            val intent =
+                                    Intent(Intent.ACTION_SEND).apply {
+                                        type = "application/json"
+                                        putExtra(Intent.EXTRA_STREAM, uri)
+                                        addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION)
+                                    }
+                            context.startActivity(Intent.createChooser(intent, "Share Trace"))
+                        },
+                        shape = RoundedCornerShape(8.dp)
+                ) {
+                    Text(
+                            "⏱ Trace",
+                            color = GhostGreen,
+                            style = MaterialTheme.typography.labelMedium
+                    )
+                }
+            }
+        }
+    }
+}
+
+@Composable
+private fun MetricRow(name: String, value: String) {
+    Row(modifier = Modifier.fillMaxWidth()) {
+        Text(
+                text = name,
+                style = MaterialTheme.typography.bodySmall,
+                color = TextSecondary,
+                fontFamily = FontFamily.Monospace,
+                modifier = Modifier.weight(1f)
+        )
+        Text(
+                text = value,
+                style = MaterialTheme.typography.bodySmall,
+                color = TextPrimary,
+                fontFamily = FontFamily.Monospace
+        )
+    }
+}
+
 @Composable
 private fun SectionLabel(text: String) {
     Text(
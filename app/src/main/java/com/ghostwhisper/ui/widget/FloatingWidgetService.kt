@@ -11,8 +11,10 @@ import android.graphics.PixelFormat
 import android.os.Build
 import android.os.IBinder
 import android.util.TypedValue
+import android.view.Choreographer
 import android.view.Gravity
 import android.view.MotionEvent
+import android.view.VelocityTracker
 import android.view.View
 import android.view.WindowManager
 import android.widget.TextView
@@ -59,6 +61,14 @@ class FloatingWidgetService : Service() {
     private var widgetView: View? = null
     private var widgetParams: WindowManager.LayoutParams? = null
 
+    /** Position the next frame applies (drag or settle); NaN when none is pending. */
+    private var pendingX = Float.NaN
+    private var pendingY = Float.NaN
+    private var frameScheduled = false
+    private var lastFrameNanos = 0L
+    private var motion: WidgetMotion? = null
+    private val frameCallback = Choreographer.FrameCallback(::onFrame)
+
     // Widget state
     enum class WidgetState {
         IDLE,
@@ -91,6 +101,8 @@ class FloatingWidgetService : Service() {
     }
 
     override fun onDestroy() {
+        Choreographer.getInstance().removeFrameCallback(frameCallback)
+        frameScheduled = false
         removeWidget()
         GhostWhisperService.onWhatsAppStateChanged = null
         super.onDestroy()
@@ -147,24 +159,36 @@ class FloatingWidgetService : Service() {
 
     // ─── Touch Handling ──────────────────────────────────────────────
 
+    /**
+     * Drag and fling the widget. Touch moves can arrive several times per display frame, so they
+     * only record where the widget should be; [onFrame] moves the window once per frame, and only
+     * when that lands on a different pixel. Let go, the widget flings on and settles against the
+     * nearer side edge ([WidgetMotion]).
+     */
     private fun setupTouchListener() {
         var initialX = 0
         var initialY = 0
         var initialTouchX = 0f
         var initialTouchY = 0f
         var isClick = true
+        var velocityTracker: VelocityTracker? = null
 
         widgetView?.setOnTouchListener { _, event ->
-            when (event.action) {
+            when (event.actionMasked) {
                 MotionEvent.ACTION_DOWN -> {
+                    // Grabbed mid-settle: stop where it is
+                    motion?.stop()
                     initialX = widgetParams?.x ?: 0
                     initialY = widgetParams?.y ?: 0
                     initialTouchX = event.rawX
                     initialTouchY = event.rawY
                     isClick = true
+                    velocityTracker?.recycle()
+                    velocityTracker = VelocityTracker.obtain().apply { addMovement(event) }
                     true
                 }
                 MotionEvent.ACTION_MOVE -> {
+                    velocityTracker?.addMovement(event)
                     val dx = (event.rawX - initialTouchX).toInt()
                     val dy = (event.rawY - initialTouchY).toInt()
 
@@ -172,18 +196,22 @@ class FloatingWidgetService : Service() {
                         isClick = false
                     }
 
-                    widgetParams?.x = initialX - dx
-                    widgetParams?.y = initialY + dy
-
-                    try {
-                        windowManager?.updateViewLayout(widgetView, widgetParams)
-                    } catch (e: Exception) {}
+                    // END gravity: x grows leftwards
+                    moveOnNextFrame((initialX - dx).toFloat(), (initialY + dy).toFloat())
                     true
                 }
-                MotionEvent.ACTION_UP -> {
-                    if (isClick) {
+                MotionEvent.ACTION_UP,
+                MotionEvent.ACTION_CANCEL -> {
+                    val tracker = velocityTracker
+                    velocityTracker = null
+                    if (isClick && event.actionMasked == MotionEvent.ACTION_UP) {
                         handleWidgetClick()
+                    } else if (tracker != null) {
+                        tracker.addMovement(event)
+                        tracker.computeCurrentVelocity(1000)
+                        settle(-tracker.xVelocity, tracker.yVelocity)
                     }
+                    tracker?.recycle()
                     true
                 }
                 else -> false
@@ -196,6 +224,66 @@ class FloatingWidgetService : Service() {
         }
     }
 
+    /** Let the widget go with a velocity in layout coordinates (px/s). */
+    private fun settle(vx: Float, vy: Float) {
+        val params = widgetParams ?: return
+        val metrics = resources.displayMetrics
+        val margin = dpToPx(8).toFloat()
+        val motion =
+                WidgetMotion(
+                        minX = margin,
+                        maxX = (metrics.widthPixels - params.width - margin).coerceAtLeast(margin),
+                        minY = 0f,
+                        maxY = (metrics.heightPixels - params.height).toFloat().coerceAtLeast(0f)
+                )
+        // From where the pending drag frame would have put it
+        val x = if (pendingX.isNaN()) params.x.toFloat() else pendingX
+        val y = if (pendingY.isNaN()) params.y.toFloat() else pendingY
+        motion.release(x, y, vx, vy)
+        this.motion = motion
+        lastFrameNanos = 0L
+        moveOnNextFrame(motion.x, motion.y)
+    }
+
+    private fun moveOnNextFrame(x: Float, y: Float) {
+        pendingX = x
+        pendingY = y
+        if (!frameScheduled) {
+            frameScheduled = true
+            Choreographer.getInstance().postFrameCallback(frameCallback)
+        }
+    }
+
+    private fun onFrame(frameTimeNanos: Long) {
+        frameScheduled = false
+        val motion = motion
+        if (motion != null && motion.isSettling) {
+            val seconds = if (lastFrameNanos == 0L) 0f else (frameTimeNanos - lastFrameNanos) / 1e9f
+            lastFrameNanos = frameTimeNanos
+            val moving = motion.step(seconds)
+            pendingX = motion.x
+            pendingY = motion.y
+            if (moving) {
+                frameScheduled = true
+                Choreographer.getInstance().postFrameCallback(frameCallback)
+            }
+        }
+        if (pendingX.isNaN()) return
+
+        val params = widgetParams ?: return
+        val x = Math.round(pendingX)
+        val y = Math.round(pendingY)
+        pendingX = Float.NaN
+        pendingY = Float.NaN
+        // Sub-pixel change: nothing to relayout
+        if (x == params.x && y == params.y) return
+        params.x = x
+        params.y = y
+        try {
+            windowManager?.updateViewLayout(widgetView, params)
+        } catch (e: Exception) {}
+    }
+
     private fun handleWidgetClick() {
         // Always trigger the encryption flow — it handles:
         // - Empty text → Toast
@@ -0,0 +1,102 @@
+package com.ghostwhisper.ui.widget
+
+import kotlin.math.abs
+import kotlin.math.exp
+import kotlin.math.sqrt
+
+/**
+ * Where the floating widget goes after it is let go: a fling carries it on with decaying speed,
+ * and it settles against whichever side edge the fling would have carried it nearer to.
+ *
+ * Positions are the widget's window layout `x`/`y` within [minX]..[maxX] and [minY]..[maxY], in
+ * pixels; velocities in pixels per second. Pure, so it is unit-tested on the JVM; the service
+ * calls [step] once per display frame.
+ */
+class WidgetMotion(
+        private val minX: Float,
+        private val maxX: Float,
+        private val minY: Float,
+        private val maxY: Float
+) {
+
+    companion object {
+        /** Fling decay rate, per second: a fling travels velocity / FRICTION before stopping. */
+        const val FRICTION = 4f
+
+        /** Edge spring stiffness (1/s²), critically damped: settles in about 0.3 s. */
+        const val STIFFNESS = 400f
+
+        /** Below these the widget counts as at rest. */
+        private const val REST_DISTANCE = 0.5f
+        private const val REST_VELOCITY = 20f
+
+        /** Longer frame gaps (a dropped frame, a paused process) are stepped as this long. */
+        private const val MAX_STEP_SECONDS = 1f / 30
+    }
+
+    var x = 0f
+        private set
+    var y = 0f
+        private set
+
+    /** Side edge the widget settles against; valid once [release] was called. */
+    var targetX = 0f
+        private set
+
+    private var vx = 0f
+    private var vy = 0f
+
+    /** Whether the widget is still moving on its own. */
+    var isSettling = false
+        private set
+
+    /** Let the widget go at ([x], [y]) with velocity ([vx], [vy]). */
+    fun release(x: Float, y: Float, vx: Float, vy: Float) {
+        this.x = x.coerceIn(minX, maxX)
+        this.y = y.coerceIn(minY, maxY)
+        this.vx = vx
+        this.vy = vy
+        val projected = this.x + vx / FRICTION
+        targetX = if (projected - minX <= maxX - projected) minX else maxX
+        isSettling = true
+    }
+
+    /** Stop where it is, e.g. because the user grabbed it again. */
+    fun stop() {
+        isSettling = false
+        vx = 0f
+        vy = 0f
+    }
+
+    /** Advance by [seconds]. Returns whether the widget is still settling. */
+    fun step(seconds: Float): Boolean {
+        if (!isSettling) return false
+        val dt = seconds.coerceIn(0f, MAX_STEP_SECONDS)
+
+        // Horizontal: critically damped spring toward the edge (semi-implicit Euler)
+        val damping = 2 * sqrt(STIFFNESS)
+        vx += (STIFFNESS * (targetX - x) - damping * vx) * dt
+        x += vx * dt
+        if (x < minX || x > maxX) {
+            x = x.coerceIn(minX, maxX)
+            vx = 0f
+        }
+
+        // Vertical: the fling just slows down, stopping at the top and bottom
+        vy *= exp(-FRICTION * dt)
+        y += vy * dt
+        if (y < minY || y > maxY) {
+            y = y.coerceIn(minY, maxY)
+            vy = 0f
+        }
+
+        if (abs(targetX - x) < REST_DISTANCE &&
+                        abs(vx) < REST_VELOCITY &&
+                        abs(vy) < REST_VELOCITY
+        ) {
+            x = targetX
+            stop()
+        }
+        return isSettling
+    }
+}
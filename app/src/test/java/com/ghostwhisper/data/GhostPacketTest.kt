@@ -45,6 +45,23 @@ class GhostPacketTest {
         assertEquals(packet.ciphertext, restored.ciphertext)
     }
 
+    @Test
+    fun `serialized size estimate matches real packets`() {
+        val key = AESCrypto.generateKey()
+        for (length in listOf(0, 1, 2, 3, 17, 100, 1000)) {
+            val encrypted = AESCrypto.encrypt("x".repeat(length), key)
+            val packet =
+                    GhostPacket(
+                            keyId = "8f3a",
+                            iv = encrypted.ivBase64(),
+                            ciphertext = encrypted.ciphertextBase64()
+                    )
+            val actual = packet.toBytes().size
+            assertEquals("length $length", actual, GhostPacket.serializedSizeFor(length))
+            assertEquals("length $length", length, GhostPacket.maxPlaintextFor(actual))
+        }
+    }
+
     @Test
     fun `full pipeline - plaintext to ZW and back`() {
         val originalMessage = "Let's bunk class and go to the canteen"
@@ -0,0 +1,73 @@
+package com.ghostwhisper.metrics
+
+import kotlin.random.Random
+import org.json.JSONObject
+import org.junit.Assert.*
+import org.junit.Test
+
+class LatencyHistogramTest {
+
+    @Test
+    fun bucketsCoverEveryValueWithBoundedError() {
+        val random = Random(7)
+        val values =
+                (0L..1_000L).toList() +
+                        List(10_000) { random.nextLong(0, Long.MAX_VALUE) } +
+                        listOf(Long.MAX_VALUE)
+        for (value in values) {
+            val bucket = LatencyHistogram.bucketOf(value)
+            val upper = LatencyHistogram.upperBoundOf(bucket)
+            assertTrue("$value above its bucket bound $upper", value <= upper)
+            // Relative width of a bucket is at most 1/SUB_BUCKETS
+            assertTrue(upper - value <= value / LatencyHistogram.SUB_BUCKETS)
+        }
+    }
+
+    @Test
+    fun percentilesOfUniformValues() {
+        val histogram = LatencyHistogram()
+        for (micros in 1..1_000) histogram.record(micros * 1_000L)
+
+        val snapshot = histogram.snapshot()
+
+        assertEquals(1_000, snapshot.count)
+        assertEquals(500_500, snapshot.mean)
+        assertEquals(1_000_000, snapshot.max)
+        assertEquals(500_000.0, snapshot.p50.toDouble(), 500_000.0 / LatencyHistogram.SUB_BUCKETS)
+        assertEquals(990_000.0, snapshot.p99.toDouble(), 990_000.0 / LatencyHistogram.SUB_BUCKETS)
+        assertTrue(snapshot.p99 <= snapshot.max)
+    }
+
+    @Test
+    fun concurrentRecordsAreNotLost() {
+        val histogram = LatencyHistogram()
+        val threads = List(4) { Thread { repeat(25_000) { histogram.record(it.toLong()) } } }
+        threads.forEach { it.start() }
+        threads.forEach { it.join() }
+
+        assertEquals(100_000, histogram.snapshot().count)
+    }
+
+    @Test
+    fun resetClearsEverything() {
+        val histogram = LatencyHistogram()
+        histogram.record(42)
+        histogram.reset()
+
+        assertEquals(LatencyHistogram.Snapshot(0, 0, 0, 0, 0, 0), histogram.snapshot())
+    }
+
+    @Test
+    fun registryExportsJson() {
+        Metrics.reset()
+        Metrics.decryptHits.increment()
+        Metrics.scanDuration.record(2_500_000)
+
+        val json = JSONObject(Metrics.toJson())
+
+        assertEquals(1, json.getJSONObject("counters").getLong("scan.decrypt.hits"))
+        val scan = json.getJSONObject("latencies").getJSONObject("scan.duration")
+        assertEquals(1, scan.getLong("count"))
+        assertEquals(2_500, scan.getLong("max_us"))
+    }
+}
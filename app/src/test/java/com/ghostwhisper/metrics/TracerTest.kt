@@ -0,0 +1,64 @@
+package com.ghostwhisper.metrics
+
+import java.io.ByteArrayOutputStream
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class TracerTest {
+
+    @Before
+    fun setUp() {
+        Tracer.clear()
+    }
+
+    private fun exportedEvents(): List<JSONObject> {
+        val out = ByteArrayOutputStream()
+        Tracer.writeChromeJson(out)
+        val events: JSONArray = JSONObject(out.toString("UTF-8")).getJSONArray("traceEvents")
+        return List(events.length()) { events.getJSONObject(it) }.filter { it["ph"] != "M" }
+    }
+
+    @Test
+    fun exportsChromeTraceEvents() {
+        val id = Tracer.newAsyncId()
+        Tracer.asyncBegin("secure send", Tracer.CATEGORY_SEND, id)
+        val result = Tracer.section("encrypt + encode", Tracer.CATEGORY_SEND) { 42 }
+        Tracer.instant("cover prompt shown", Tracer.CATEGORY_SEND)
+        Tracer.asyncEnd("secure send", Tracer.CATEGORY_SEND, id, mapOf("outcome" to "sent"))
+
+        val events = exportedEvents()
+
+        assertEquals(42, result)
+        assertEquals(listOf("b", "X", "i", "e"), events.map { it.getString("ph") })
+        assertEquals(id, events[0].getLong("id"))
+        assertEquals(id, events[3].getLong("id"))
+        assertEquals("sent", events[3].getJSONObject("args").getString("outcome"))
+        assertTrue(events[1].getDouble("dur") >= 0)
+        assertTrue(events.zipWithNext().all { (a, b) -> a.getDouble("ts") <= b.getDouble("ts") })
+    }
+
+    @Test
+    fun threadNamesAreExported() {
+        Thread({ Tracer.instant("from worker", Tracer.CATEGORY_BACKGROUND) }, "trace-worker")
+                .apply { start() }
+                .join()
+
+        val out = ByteArrayOutputStream()
+        Tracer.writeChromeJson(out)
+        assertTrue(out.toString("UTF-8").contains("\"trace-worker\""))
+    }
+
+    @Test
+    fun ringBufferKeepsNewestEvents() {
+        repeat(Tracer.CAPACITY + 100) { Tracer.instant("e$it", Tracer.CATEGORY_RECEIVE) }
+
+        val names = exportedEvents().map { it.getString("name") }
+
+        assertEquals(Tracer.CAPACITY, names.size)
+        assertEquals("e100", names.first())
+        assertEquals("e${Tracer.CAPACITY + 99}", names.last())
+    }
+}
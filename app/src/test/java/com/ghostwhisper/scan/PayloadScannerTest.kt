@@ -0,0 +1,248 @@
+package com.ghostwhisper.scan
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.data.model.GhostPacket
+import com.ghostwhisper.stegano.SteganoCodec
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+
+/** [PayloadScanner] over snapshot trees — the logic the service runs on live nodes. */
+class PayloadScannerTest {
+
+    private val key = AESCrypto.generateKey()
+    private val secret = ChannelSecret(AESCrypto.deriveKeyId("Family"), "Family", key)
+
+    /** A cover message carrying [plaintext] sealed with [channelKey] under [keyId]. */
+    private fun stego(
+            plaintext: String,
+            channelKey: ByteArray = key,
+            keyId: String = secret.keyId
+    ): String {
+        val encrypted = AESCrypto.encrypt(plaintext, channelKey)
+        val packet =
+                GhostPacket(
+                        keyId = keyId,
+                        iv = encrypted.ivBase64(),
+                        ciphertext = encrypted.ciphertextBase64()
+                )
+        return SteganoCodec.injectPayload("Noted 👍", SteganoCodec.encode(packet.toBytes()))
+    }
+
+    private fun scanner(decrypted: MutableList<DecryptedMessage>, vararg secrets: ChannelSecret) =
+            PayloadScanner(
+                    keys = { keyId -> secrets.firstOrNull { it.keyId == keyId } },
+                    onDecrypted = { decrypted.add(it) }
+            )
+
+    @Test
+    fun decryptsPayloadsInTextAndContentDescription() = runBlocking {
+        val inText = stego("meet at 7")
+        val inDescription = stego("bring the folder")
+        val tree =
+                SnapshotNode(
+                        children =
+                                listOf(
+                                        SnapshotNode(text = "plain message"),
+                                        SnapshotNode(
+                                                children =
+                                                        listOf(
+                                                                SnapshotNode(text = inText),
+                                                                SnapshotNode(
+                                                                        contentDescription =
+                                                                                inDescription
+                                                                )
+                                                        )
+                                        )
+                                )
+                )
+        val decrypted = mutableListOf<DecryptedMessage>()
+
+        val stats = scanner(decrypted, secret).scan(tree)
+
+        assertEquals(ScanStats(nodesVisited = 5, payloadsFound = 2, decrypts = 2, hits = 2), stats)
+        assertEquals(listOf("meet at 7", "bring the folder"), decrypted.map { it.plaintext })
+        assertEquals("Family", decrypted[0].channelName)
+        assertEquals(inText, decrypted[0].rawMessage)
+    }
+
+    @Test
+    fun silentlySkipsPayloadsWithoutKeyOrWithWrongKey() = runBlocking {
+        val tree =
+                SnapshotNode(
+                        children =
+                                listOf(
+                                        SnapshotNode(text = stego("not ours", keyId = "unknown")),
+                                        SnapshotNode(text = stego("x", AESCrypto.generateKey())),
+                                        SnapshotNode(text = "Noted 👍\u200B\u200C") // Truncated
+                                )
+                )
+        val decrypted = mutableListOf<DecryptedMessage>()
+
+        val noKeys = scanner(decrypted).scan(tree)
+        val wrongKey = scanner(decrypted, secret).scan(tree)
+
+        assertEquals(0, noKeys.decrypts)
+        assertEquals(3, noKeys.payloadsFound)
+        assertEquals(0, wrongKey.decrypts)
+        // Foreign key ID is a miss; forged and truncated packets are failures
+        assertEquals(1, wrongKey.misses)
+        assertEquals(2, wrongKey.failures)
+        assertTrue(decrypted.isEmpty())
+    }
+
+    @Test
+    fun repeatSightingsAreServedFromCache() = runBlocking {
+        val tree =
+                SnapshotNode(
+                        children =
+                                listOf(
+                                        SnapshotNode(text = stego("hello")),
+                                        SnapshotNode(text = SteganoCodec.chaff("just chatting"))
+                                )
+                )
+        val decrypted = mutableListOf<DecryptedMessage>()
+        val scanner = scanner(decrypted, secret)
+
+        val first = scanner.scan(tree)
+        val second = scanner.scan(tree)
+
+        assertEquals(
+                ScanStats(
+                        nodesVisited = 3,
+                        payloadsFound = 2,
+                        decrypts = 1,
+                        hits = 1,
+                        failures = 1
+                ),
+                first
+        )
+        assertEquals(
+                ScanStats(
+                        nodesVisited = 3,
+                        payloadsFound = 2,
+                        cacheHits = 2,
+                        hits = 1,
+                        failures = 1
+                ),
+                second
+        )
+        // Still delivered on every sighting, as before caching
+        assertEquals(listOf("hello", "hello"), decrypted.map { it.plaintext })
+    }
+
+    @Test
+    fun payloadsAreDecryptedBottomMostFirst() = runBlocking {
+        // Tree order is oldest first; the newest message sits lowest on screen
+        val tree =
+                SnapshotNode(
+                        children =
+                                listOf(
+                                        SnapshotNode(text = stego("old"), screenBottom = 300),
+                                        SnapshotNode(text = stego("newest"), screenBottom = 900),
+                                        SnapshotNode(text = stego("middle"), screenBottom = 600)
+                                )
+                )
+        val decrypted = mutableListOf<DecryptedMessage>()
+        val scanner = scanner(decrypted, secret)
+
+        scanner.scan(tree)
+        scanner.scan(TreeSnapshot.capture(tree))
+
+        val expected = listOf("newest", "middle", "old")
+        assertEquals(expected + expected, decrypted.map { it.plaintext })
+        assertEquals(listOf(0, 1, 2, 0, 1, 2), decrypted.map { it.rank })
+    }
+
+    @Test
+    fun cancelledScanLeavesLowerRankedPayloads() = runBlocking {
+        val tree = SnapshotNode(children = List(5) { SnapshotNode(text = stego("m$it")) })
+        val decrypted = mutableListOf<DecryptedMessage>()
+
+        coroutineScope {
+            val scan = launch {
+                val scanner =
+                        PayloadScanner(
+                                keys = { secret },
+                                onDecrypted = {
+                                    decrypted.add(it)
+                                    // A newer scan superseded this one
+                                    coroutineContext.cancel()
+                                }
+                        )
+                scanner.scan(tree)
+                fail("scan should have stopped")
+            }
+            scan.join()
+            assertTrue(scan.isCancelled)
+        }
+        assertEquals(listOf("m0"), decrypted.map { it.plaintext })
+    }
+
+    @Test
+    fun prefetchWarmsTheCacheWithoutDelivering() = runBlocking {
+        val raw = stego("sent while you were away")
+        val decrypted = mutableListOf<DecryptedMessage>()
+        val scanner = scanner(decrypted, secret)
+
+        val fresh = scanner.prefetch(listOf("no payload here", raw, SteganoCodec.chaff("hi")))
+        assertEquals(listOf("sent while you were away"), fresh.map { it.plaintext })
+        assertTrue("prefetch shows nothing", decrypted.isEmpty())
+        // Already cached: not reported as new again
+        assertTrue(scanner.prefetch(listOf(raw)).isEmpty())
+
+        // Opening the chat: the bubble is answered from the cache
+        val stats = scanner.scan(SnapshotNode(text = raw))
+        assertEquals(0, stats.decrypts)
+        assertEquals(1, stats.cacheHits)
+        assertEquals(listOf("sent while you were away"), decrypted.map { it.plaintext })
+    }
+
+    @Test
+    fun keyImportedLaterStillDecrypts() = runBlocking {
+        val tree = SnapshotNode(text = stego("late"))
+        val held = mutableListOf<ChannelSecret>()
+        val decrypted = mutableListOf<DecryptedMessage>()
+        val scanner =
+                PayloadScanner(
+                        keys = { keyId -> held.firstOrNull { it.keyId == keyId } },
+                        onDecrypted = { decrypted.add(it) }
+                )
+
+        assertEquals(0, scanner.scan(tree).decrypts)
+        held.add(secret)
+        assertEquals(1, scanner.scan(tree).decrypts)
+        assertEquals("late", decrypted.single().plaintext)
+    }
+
+    @Test
+    fun cacheIsBounded() = runBlocking {
+        val scanner = PayloadScanner(keys = { secret }, cacheCapacity = 8, onDecrypted = {})
+        val tree = SnapshotNode(children = List(50) { SnapshotNode(text = stego("m$it")) })
+
+        assertEquals(50, scanner.scan(tree).decrypts)
+        assertEquals(8, scanner.cacheSize)
+    }
+
+    @Test
+    fun childrenAreRecycledRootIsNot() = runBlocking {
+        val recycled = mutableListOf<String>()
+        class Node(val name: String, val kids: List<Node> = emptyList()) : ScanNode {
+            override val text: CharSequence? = null
+            override val contentDescription: CharSequence? = null
+            override val viewId: String? = null
+            override val childCount = kids.size
+            override fun getChild(index: Int) = kids[index]
+            override fun recycle() {
+                recycled.add(name)
+            }
+        }
+
+        scanner(mutableListOf()).scan(Node("root", listOf(Node("a", listOf(Node("b"))), Node("c"))))
+
+        assertEquals(listOf("b", "a", "c"), recycled)
+    }
+}
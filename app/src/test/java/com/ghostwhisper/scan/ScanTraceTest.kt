@@ -0,0 +1,79 @@
+package com.ghostwhisper.scan
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import org.junit.Assert.*
+import org.junit.Test
+
+class ScanTraceTest {
+
+    companion object {
+        private const val WHATSAPP = "com.whatsapp"
+    }
+
+    private fun bubble(text: String?) =
+            SnapshotNode(
+                    viewId = "com.whatsapp:id/message_text",
+                    children = listOf(SnapshotNode(text = text, contentDescription = "Message"))
+            )
+
+    private fun write(events: List<TraceEvent>): ByteArray {
+        val out = ByteArrayOutputStream()
+        ScanTraceFormat.writer(out).use { writer -> events.forEach { writer.append(it) } }
+        return out.toByteArray()
+    }
+
+    @Test
+    fun eventsRoundTrip() {
+        val tree =
+                SnapshotNode(
+                        viewId = "android:id/list",
+                        children = listOf(bubble("Hi 👋"), bubble(null), bubble("Noted 👍"))
+                )
+        val events =
+                listOf(
+                        TraceEvent(TraceEvent.TYPE_WINDOW_STATE_CHANGED, 1_000, WHATSAPP, null),
+                        TraceEvent(TraceEvent.TYPE_WINDOW_CONTENT_CHANGED, 1_016, WHATSAPP, tree),
+                        // Large time gap, no package
+                        TraceEvent(TraceEvent.TYPE_VIEW_TEXT_CHANGED, 5_000_000_000, null, null)
+                )
+
+        val read = ScanTraceFormat.read(ByteArrayInputStream(write(events)))
+
+        assertEquals(events, read)
+    }
+
+    @Test
+    fun repeatedStringsAreStoredOnce() {
+        val rows = List(500) { bubble("same text") }
+        val events =
+                listOf(
+                        TraceEvent(
+                                TraceEvent.TYPE_WINDOW_CONTENT_CHANGED,
+                                0,
+                                WHATSAPP,
+                                SnapshotNode(children = rows)
+                        )
+                )
+        // 1,001 nodes, each a handful of bytes before compression
+        assertTrue(write(events).size < 1_000)
+    }
+
+    @Test
+    fun captureHonoursNodeBudget() {
+        val wide = SnapshotNode(children = List(100) { bubble("row $it") })
+
+        val captured = SnapshotNode.capture(wide, maxNodes = 10)
+
+        assertTrue(captured.size() <= 10)
+        assertEquals("row 0", captured.children[0].children[0].text)
+    }
+
+    @Test(expected = IOException::class)
+    fun rejectsForeignFiles() {
+        val out = ByteArrayOutputStream()
+        java.util.zip.GZIPOutputStream(out).use { it.write("not a trace".toByteArray()) }
+        ScanTraceFormat.read(ByteArrayInputStream(out.toByteArray()))
+    }
+}
@@ -0,0 +1,90 @@
+package com.ghostwhisper.scan
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class SecretTimelineTest {
+
+    private fun message(text: String, rank: Int = 0, keyId: String = "k1") =
+            DecryptedMessage(
+                    keyId = keyId,
+                    channelName = "Family",
+                    plaintext = text,
+                    rawMessage = "cover $text",
+                    rank = rank
+            )
+
+    private fun SecretTimeline.texts(chat: String) = messages(chat).map { it.plaintext }
+
+    @Test
+    fun newestFirstScanIsStoredOldestFirst() {
+        val timeline = SecretTimeline()
+
+        // One scan: bottom-most bubble first
+        timeline.record("Mum", message("c", rank = 0))
+        timeline.record("Mum", message("b", rank = 1))
+        timeline.record("Mum", message("a", rank = 2))
+        // A later scan finds a new message below them
+        timeline.record("Mum", message("d", rank = 0))
+
+        assertEquals(listOf("a", "b", "c", "d"), timeline.texts("Mum"))
+        assertTrue(timeline.messages("Mum").all { it.rank == 0 })
+    }
+
+    @Test
+    fun scrollBackSlotsOlderMessagesBeforeTheOnesOnScreen() {
+        val timeline = SecretTimeline()
+        timeline.record("Mum", message("c"))
+        timeline.record("Mum", message("d"))
+
+        // Scrolled up: c is now the bottom-most payload, with an older one above it
+        assertFalse(timeline.record("Mum", message("c", rank = 0)))
+        assertTrue(timeline.record("Mum", message("b", rank = 1)))
+
+        assertEquals(listOf("b", "c", "d"), timeline.texts("Mum"))
+    }
+
+    @Test
+    fun chatsAreKeptApartAndBounded() {
+        val timeline = SecretTimeline(perChat = 2, maxChats = 2)
+        timeline.record("Mum", message("a"))
+        timeline.record("Mum", message("b"))
+        timeline.record("Mum", message("c"))
+        timeline.record("Work", message("x"))
+        timeline.record("Mum", message("d"))
+        timeline.record("Gym", message("y"))
+
+        assertEquals(listOf("c", "d"), timeline.texts("Mum"))
+        // Least recently recorded chat went first
+        assertEquals(emptyList<String>(), timeline.texts("Work"))
+        assertEquals(listOf("y"), timeline.texts("Gym"))
+    }
+
+    @Test
+    fun retainKeysDropsMessagesOfRemovedChannels() {
+        val timeline = SecretTimeline()
+        timeline.record("Mum", message("a", keyId = "k1"))
+        timeline.record("Mum", message("b", keyId = "k2"))
+
+        timeline.retainKeys(setOf("k2"))
+
+        assertEquals(listOf("b"), timeline.texts("Mum"))
+    }
+
+    @Test
+    fun restoreMergesASavedTimeline() {
+        val saved = SecretTimeline()
+        saved.record("Mum", message("a"))
+        saved.record("Mum", message("b"))
+        saved.record("Work", message("x"))
+
+        val timeline = SecretTimeline()
+        timeline.record("Mum", message("b"))
+        timeline.restore(saved.toJson())
+        timeline.record("Mum", message("c"))
+
+        assertEquals(listOf("a", "b", "c"), timeline.texts("Mum"))
+        assertEquals(listOf("x"), timeline.texts("Work"))
+        assertEquals(saved.messages("Work"), timeline.messages("Work"))
+    }
+}
@@ -0,0 +1,103 @@
+package com.ghostwhisper.scan
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.data.model.GhostPacket
+import com.ghostwhisper.stegano.SteganoCodec
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+
+class TreeSnapshotTest {
+
+    /** root → (a → (12:00, Read), 12:00) */
+    private val rowA =
+            SnapshotNode(
+                    text = "a",
+                    viewId = "row",
+                    children =
+                            listOf(
+                                    SnapshotNode(text = "12:00"),
+                                    SnapshotNode(contentDescription = "Read")
+                            )
+            )
+    private val rowB = SnapshotNode(text = "12:00", viewId = "row")
+    private val tree = SnapshotNode(viewId = "root", children = listOf(rowA, rowB))
+
+    /** Counts recycles per node, as the platform would complain about double recycles. */
+    private class CountingNode(
+            private val snapshot: SnapshotNode,
+            val recycled: MutableList<String>
+    ) : ScanNode by snapshot {
+        override fun getChild(index: Int): ScanNode? {
+            return snapshot.children.getOrNull(index)?.let { CountingNode(it, recycled) }
+        }
+
+        override fun recycle() {
+            recycled.add(snapshot.text ?: snapshot.contentDescription ?: snapshot.viewId ?: "?")
+        }
+    }
+
+    @Test
+    fun flattensInPreOrderWithParents() {
+        val snapshot = TreeSnapshot.capture(tree)
+
+        assertEquals(5, snapshot.size)
+        assertEquals(listOf(null, "a", "12:00", null, "12:00"), (0 until 5).map(snapshot::text))
+        assertEquals("Read", snapshot.contentDescription(3))
+        assertEquals(listOf(-1, 0, 1, 1, 0), (0 until 5).map(snapshot::parent))
+        assertEquals("row", snapshot.viewId(4))
+        // "12:00" and "row" are stored once each
+        assertEquals(5, snapshot.strings.size)
+    }
+
+    @Test
+    fun recyclesEveryChildOnceAndNotTheRoot() {
+        val recycled = mutableListOf<String>()
+
+        TreeSnapshot.capture(CountingNode(tree, recycled))
+
+        assertEquals(listOf("12:00", "Read", "a", "12:00"), recycled)
+    }
+
+    @Test
+    fun respectsNodeAndDepthLimits() {
+        assertEquals(3, TreeSnapshot.capture(tree, maxNodes = 3).size)
+        assertEquals(3, TreeSnapshot.capture(tree, maxDepth = 1).size)
+        assertEquals(1, TreeSnapshot.capture(tree, maxDepth = 0).size)
+    }
+
+    @Test
+    fun visibleOnlyLeavesOutOffScreenSubtrees() {
+        val offScreen = rowA.copy(isVisibleToUser = false)
+        val root = SnapshotNode(viewId = "root", children = listOf(offScreen, rowB))
+
+        assertEquals(5, TreeSnapshot.capture(root).size)
+        val visible = TreeSnapshot.capture(root, visibleOnly = true)
+        assertEquals(listOf("root", "row"), (0 until visible.size).map(visible::viewId))
+    }
+
+    @Test
+    fun scanOfSnapshotMatchesScanOfTree() = runBlocking {
+        val key = AESCrypto.generateKey()
+        val secret = ChannelSecret(AESCrypto.deriveKeyId("Family"), "Family", key)
+        val encrypted = AESCrypto.encrypt("meet at 7", key)
+        val packet =
+                GhostPacket(
+                        keyId = secret.keyId,
+                        iv = encrypted.ivBase64(),
+                        ciphertext = encrypted.ciphertextBase64()
+                )
+        val stego = SteganoCodec.injectPayload("Noted", SteganoCodec.encode(packet.toBytes()))
+        val root = SnapshotNode(children = listOf(tree, SnapshotNode(contentDescription = stego)))
+        val decrypted = mutableListOf<String>()
+        val scanner =
+                PayloadScanner(keys = { secret }, onDecrypted = { decrypted.add(it.plaintext) })
+
+        val live = scanner.scan(root)
+        scanner.clearCache()
+        val flat = scanner.scan(TreeSnapshot.capture(root))
+
+        assertEquals(live, flat)
+        assertEquals(listOf("meet at 7", "meet at 7"), decrypted)
+    }
+}
@@ -0,0 +1,78 @@
+package com.ghostwhisper.service
+
+import com.ghostwhisper.scan.DecryptedMessage
+import com.ghostwhisper.scan.SecretTimeline
+import org.junit.Assert.*
+import org.junit.Test
+
+class ChatTrackerTest {
+
+    private val timeline =
+            SecretTimeline().apply {
+                record("Mum", DecryptedMessage("k1", "Family", "hi", "cover hi"))
+            }
+
+    /** What the service does with a title: the chat whose timeline it shows, if any. */
+    private fun ChatTracker.shown(windowId: Int, title: String?): String? {
+        val entered = onTitle(windowId, title)
+        return title.takeIf { entered && timeline.messages(title!!).isNotEmpty() }
+    }
+
+    @Test
+    fun reenteringAChatAfterLeavingWhatsAppShowsItsTimeline() {
+        val chats = ChatTracker()
+        assertEquals("Mum", chats.shown(1, "Mum"))
+        // Another lookup in the same chat: already shown
+        assertNull(chats.shown(1, "Mum"))
+
+        chats.onLeft()
+        assertNull(chats.current)
+        assertEquals("Mum", chats.shown(1, "Mum"))
+    }
+
+    @Test
+    fun reenteringAChatFromTheChatListShowsItsTimeline() {
+        val chats = ChatTracker()
+        chats.shown(1, "Mum")
+        assertNull(chats.shown(1, ""))
+        assertNull(chats.current)
+        assertEquals("Mum", chats.shown(1, "Mum"))
+    }
+
+    @Test
+    fun messagesAreFiledUnderTheirWindowsChat() {
+        val chats = ChatTracker()
+        chats.onTitle(1, "Mum")
+        chats.onTitle(2, "Study Group")
+
+        assertEquals("Mum", chats.chatIn(1))
+        assertEquals("Study Group", chats.chatIn(2))
+        assertEquals("Study Group", chats.current)
+
+        // Back to the chat list: window 1 shows no chat any more
+        chats.onTitle(1, null)
+        assertNull(chats.chatIn(1))
+        assertTrue(chats.isKnown(1))
+
+        // Left WhatsApp: nothing is known until the windows are looked up again
+        chats.onLeft()
+        assertNull(chats.chatIn(2))
+        assertFalse(chats.isKnown(2))
+    }
+
+    @Test
+    fun lookedUpWindowKeepsItsTitle() {
+        val chats = ChatTracker(maxWindows = 2)
+        chats.onTitle(1, "Mum")
+        chats.markLookedUp(1)
+        chats.markLookedUp(2)
+
+        assertEquals("Mum", chats.chatIn(1))
+        assertTrue(chats.isKnown(2))
+        assertNull(chats.chatIn(2))
+
+        // Oldest window forgotten past the bound
+        chats.markLookedUp(3)
+        assertFalse(chats.isKnown(1))
+    }
+}
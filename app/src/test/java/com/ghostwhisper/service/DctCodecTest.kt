@@ -0,0 +1,83 @@
+package com.ghostwhisper.service
+
+import java.nio.charset.StandardCharsets
+import org.junit.Assert.*
+import org.junit.Test
+
+/**
+ * Plain-JVM tests for [DctCodec] over [IntArrayPixelBuffer] — the same kernel that runs over
+ * bitmaps on device.
+ */
+class DctCodecTest {
+
+    private fun noise(width: Int, height: Int): IntArrayPixelBuffer {
+        val pixels = IntArray(width * height) { i ->
+            val x = i % width
+            val y = i / width
+            (0xFF shl 24) or (((x * 7) % 256) shl 16) or (((y * 5) % 256) shl 8) or 0x80
+        }
+        return IntArrayPixelBuffer(width, height, pixels)
+    }
+
+    private fun bytes(text: String) = text.toByteArray(StandardCharsets.UTF_8)
+
+    @Test
+    fun embedAndExtractRoundTrip() {
+        val buffer = noise(128, 128)
+        val message = bytes("robust mode 👻")
+
+        assertTrue(DctCodec.embed(buffer, message))
+        assertArrayEquals(message, DctCodec.extract(buffer))
+    }
+
+    @Test
+    fun partialBlocksAtEdgesAreIgnored() {
+        // 130x70 -> 16x8 whole blocks; the extra columns and rows stay untouched
+        val original = noise(130, 70)
+        val buffer = original.copy()
+        val message = bytes("edges")
+
+        assertTrue(DctCodec.embed(buffer, message))
+        assertArrayEquals(message, DctCodec.extract(buffer))
+        for (y in 0 until 70) {
+            for (x in 128 until 130) {
+                assertEquals(original.pixels[y * 130 + x], buffer.pixels[y * 130 + x])
+            }
+        }
+    }
+
+    @Test
+    fun tooLongPayloadLeavesPixelsUntouched() {
+        // 64x64 -> 64 blocks = 64 bits: room for the 48-bit header and 2 bytes
+        val buffer = noise(64, 64)
+        val before = buffer.pixels.copyOf()
+
+        assertEquals(2, DctCodec.capacityBytes(64, 64))
+        assertFalse(DctCodec.embed(buffer, ByteArray(3)))
+        assertArrayEquals(before, buffer.pixels)
+        assertFalse(DctCodec.embed(noise(16, 16), ByteArray(0)))
+    }
+
+    @Test
+    fun coverWithoutSignatureExtractsNothing() {
+        assertNull(DctCodec.extract(noise(64, 64)))
+        assertNull(DctCodec.extract(IntArrayPixelBuffer(4, 4)))
+    }
+
+    @Test
+    fun probeReadsOnlyTheHeaderStrip() {
+        val width = 96
+        val height = 96
+        val buffer = noise(width, height)
+        DctCodec.embed(buffer, bytes("probe me"))
+
+        val stripHeight = DctCodec.headerStripHeight(width)
+        assertEquals(32, stripHeight) // 12 blocks per row -> 4 block rows for 48 bits
+        val strip =
+                IntArrayPixelBuffer(width, stripHeight, buffer.pixels.copyOf(width * stripHeight))
+
+        assertTrue(DctCodec.probeHeader(strip, height))
+        assertFalse(DctCodec.probeHeader(strip, stripHeight))
+        assertFalse(DctCodec.probeHeader(noise(width, stripHeight), height))
+    }
+}
@@ -0,0 +1,111 @@
+package com.ghostwhisper.service
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.data.model.GhostPacket
+import com.ghostwhisper.scan.ChannelSecret
+import com.ghostwhisper.scan.KeyResolver
+import com.ghostwhisper.stegano.SteganoCodec
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+
+class DraftEncryptorTest {
+
+    private val secret = ChannelSecret("k1", "Family", AESCrypto.generateKey())
+    private val lookups = AtomicInteger()
+    private val keys = KeyResolver { keyId ->
+        lookups.incrementAndGet()
+        secret.takeIf { it.keyId == keyId }
+    }
+
+    private fun CoroutineScope.encryptor() = DraftEncryptor(this, keys, debounceMillis = 10)
+
+    private fun decrypt(payload: String): String {
+        val packet = GhostPacket.fromBytes(SteganoCodec.decode(payload))
+        assertEquals(secret.keyId, packet.keyId)
+        return AESCrypto.decrypt(packet.ciphertextBytes(), secret.key, packet.ivBytes())
+    }
+
+    @Test
+    fun preparedPayloadDecryptsToDraft() = runBlocking {
+        val drafts = encryptor()
+
+        drafts.onDraftChanged("see you at 8", "k1")
+        delay(200)
+
+        val payload = drafts.take("see you at 8", "k1")
+        assertNotNull(payload)
+        assertEquals("see you at 8", decrypt(payload!!))
+        assertNull("a prepared payload is handed out once", drafts.take("see you at 8", "k1"))
+    }
+
+    @Test
+    fun onlyTheLastDraftIsEncrypted() = runBlocking {
+        val drafts = encryptor()
+
+        drafts.onDraftChanged("s", "k1")
+        drafts.onDraftChanged("se", "k1")
+        drafts.onDraftChanged("see", "k1")
+        delay(200)
+
+        assertEquals("debounced to one key lookup", 1, lookups.get())
+        assertEquals("see", decrypt(drafts.take("see", "k1")!!))
+    }
+
+    @Test
+    fun mismatchedSendGetsNothing() = runBlocking {
+        val drafts = encryptor()
+
+        drafts.onDraftChanged("hello", "k1")
+        delay(200)
+        assertNull("different text", drafts.take("hello!", "k1"))
+
+        drafts.onDraftChanged("hello", "k1")
+        delay(200)
+        assertNull("different channel", drafts.take("hello", "k2"))
+    }
+
+    @Test
+    fun editAfterPreparingDiscardsStaleResult() = runBlocking {
+        val drafts = encryptor()
+
+        drafts.onDraftChanged("hello", "k1")
+        delay(200)
+        drafts.onDraftChanged("hello there", "k1")
+
+        assertNull(drafts.take("hello", "k1"))
+    }
+
+    @Test
+    fun invalidateDropsDraftAndCachedKeys() = runBlocking {
+        val drafts = encryptor()
+
+        drafts.onDraftChanged("hello", "k1")
+        delay(200)
+        assertSame(secret, drafts.secret("k1"))
+        assertEquals("key cached after the first lookup", 1, lookups.get())
+
+        drafts.invalidate()
+
+        assertNull(drafts.take("hello", "k1"))
+        assertSame(secret, drafts.secret("k1"))
+        assertEquals(2, lookups.get())
+    }
+
+    @Test
+    fun unknownChannelOrBlankDraftPreparesNothing() = runBlocking {
+        val drafts = encryptor()
+
+        drafts.onDraftChanged("hello", "unknown")
+        delay(200)
+        assertNull(drafts.take("hello", "unknown"))
+
+        drafts.onDraftChanged("   ", "k1")
+        drafts.onDraftChanged("hello", null)
+        delay(200)
+        assertEquals(1, lookups.get())
+    }
+}
@@ -0,0 +1,88 @@
+package com.ghostwhisper.service
+
+import java.nio.charset.StandardCharsets
+import org.junit.Assert.*
+import org.junit.Test
+
+/**
+ * Plain-JVM tests for [LsbCodec] over [IntArrayPixelBuffer] — the same kernel that runs over
+ * bitmaps on device.
+ */
+class LsbCodecTest {
+
+    private fun noise(width: Int, height: Int): IntArrayPixelBuffer {
+        val pixels = IntArray(width * height) { i ->
+            val x = i % width
+            val y = i / width
+            (0xFF shl 24) or (((x * 7) % 256) shl 16) or (((y * 5) % 256) shl 8) or 0x80
+        }
+        return IntArrayPixelBuffer(width, height, pixels)
+    }
+
+    private fun bytes(text: String) = text.toByteArray(StandardCharsets.UTF_8)
+
+    @Test
+    fun embedAndExtractRoundTrip() {
+        val buffer = noise(100, 100)
+        val message = bytes("This is a secret message hidden in the pixels! 👻")
+
+        assertTrue(LsbCodec.embed(buffer, message))
+        assertArrayEquals(message, LsbCodec.extract(buffer))
+    }
+
+    @Test
+    fun onlyRgbLeastSignificantBitsChange() {
+        val original = noise(40, 40)
+        val encoded = original.copy()
+        LsbCodec.embed(encoded, bytes("only the low bits"))
+
+        for (i in original.pixels.indices) {
+            assertEquals(
+                    "pixel $i",
+                    original.pixels[i] and 0xFFFEFEFE.toInt(),
+                    encoded.pixels[i] and 0xFFFEFEFE.toInt()
+            )
+        }
+    }
+
+    @Test
+    fun tooLongPayloadLeavesPixelsUntouched() {
+        // Capacity = 10 * 10 * 3 bits = 300 bits -> 31 bytes after the 6-byte header
+        val buffer = noise(10, 10)
+        val before = buffer.pixels.copyOf()
+
+        assertEquals(31, LsbCodec.capacityBytes(10, 10))
+        assertFalse(LsbCodec.embed(buffer, ByteArray(32)))
+        assertArrayEquals(before, buffer.pixels)
+        assertTrue(LsbCodec.embed(buffer, ByteArray(31) { 0x5A }))
+        assertArrayEquals(ByteArray(31) { 0x5A }, LsbCodec.extract(buffer))
+    }
+
+    @Test
+    fun headerSpansRowsOnNarrowImages() {
+        val buffer = noise(3, 40)
+        val message = bytes("narrow")
+
+        assertTrue(LsbCodec.embed(buffer, message))
+        assertArrayEquals(message, LsbCodec.extract(buffer))
+    }
+
+    @Test
+    fun coverWithoutSignatureExtractsNothing() {
+        assertNull(LsbCodec.extract(noise(50, 50)))
+        assertNull(LsbCodec.extract(IntArrayPixelBuffer(2, 2)))
+    }
+
+    @Test
+    fun probeChecksHeaderAgainstFullImage() {
+        val width = 64
+        val buffer = noise(width, 64)
+        LsbCodec.embed(buffer, bytes("a message longer than one row of pixels can hold"))
+        val topRow = IntArrayPixelBuffer(width, 1, buffer.pixels.copyOf(width))
+
+        assertTrue(LsbCodec.probeHeader(topRow, 64))
+        // A length that can't fit the claimed image is rejected
+        assertFalse(LsbCodec.probeHeader(topRow, 1))
+        assertFalse(LsbCodec.probeHeader(IntArrayPixelBuffer(width, 1), 64))
+    }
+}
@@ -0,0 +1,48 @@
+package com.ghostwhisper.service
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class OverlayQueueTest {
+
+    @Test
+    fun messagesCoalescePerChannelInArrivalOrder() {
+        val queue = OverlayQueue<String>()
+        queue.offer("Study Group", "m1", "deck 1")
+        queue.offer("Family", "m2", "deck 2")
+        queue.offer("Study Group", "m3", "deck 3")
+        // A rescan offers the same message again: not counted twice
+        queue.offer("Study Group", "m3", "deck 4")
+
+        assertEquals(2, queue.size)
+        val first = queue.poll()!!
+        assertEquals("Study Group", first.channel)
+        assertEquals("deck 4", first.item)
+        assertEquals(2, first.newMessages)
+        assertEquals("Family", queue.poll()!!.channel)
+        assertNull(queue.poll())
+    }
+
+    @Test
+    fun fullQueueDropsTheChannelWaitingLongest() {
+        val queue = OverlayQueue<Int>(maxChannels = 2)
+        queue.offer("a", "1", 1)
+        queue.offer("b", "2", 2)
+        queue.offer("c", "3", 3)
+
+        assertEquals(listOf("b", "c"), listOfNotNull(queue.poll(), queue.poll()).map { it.channel })
+        assertTrue(queue.isEmpty())
+    }
+
+    @Test
+    fun peekAndRemoveLeaveTheRestInLine() {
+        val queue = OverlayQueue<Int>()
+        queue.offer("a", "1", 1)
+        queue.offer("b", "2", 2)
+
+        assertEquals("a", queue.peek()!!.channel)
+        queue.remove("a")
+        assertEquals("b", queue.peek()!!.channel)
+        assertEquals(1, queue.size)
+    }
+}
@@ -0,0 +1,149 @@
+package com.ghostwhisper.service
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.util.zip.Adler32
+import java.util.zip.Inflater
+import javax.imageio.ImageIO
+import kotlin.random.Random
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+
+/**
+ * Unit tests for the parallel PNG encoder.
+ *
+ * Verifies:
+ * - Pixel-exact round-trip through a standard PNG decoder (RGB and RGBA)
+ * - The concatenated row groups form a valid zlib stream (Adler-32 checked by Inflater)
+ * - Opaque images are written as RGB, translucent ones as RGBA
+ * - Adler-32 combination matches a single-pass checksum
+ */
+class ParallelPngEncoderTest {
+
+    /** Gradient + LSB noise: compressible like a photo, but every low bit matters. */
+    private fun testImage(width: Int, height: Int, alpha: Boolean): IntArray {
+        val random = Random(42)
+        return IntArray(width * height) { i ->
+            val x = i % width
+            val y = i / width
+            val r = (x * 255 / width) xor random.nextInt(2)
+            val g = (y * 255 / height) xor random.nextInt(2)
+            val b = ((x + y) and 0xFF) xor random.nextInt(2)
+            val a = if (alpha) (x * 7 + y) and 0xFF else 0xFF
+            (a shl 24) or (r shl 16) or (g shl 8) or b
+        }
+    }
+
+    private fun encode(pixels: IntArray, width: Int, height: Int, parallelism: Int = 4): ByteArray {
+        val out = ByteArrayOutputStream()
+        runBlocking {
+            ParallelPngEncoder.encode(
+                    width,
+                    height,
+                    { y, dst -> System.arraycopy(pixels, y * width, dst, 0, width) },
+                    out,
+                    parallelism = parallelism
+            )
+        }
+        return out.toByteArray()
+    }
+
+    private fun assertDecodesTo(png: ByteArray, pixels: IntArray, width: Int, height: Int) {
+        val image = ImageIO.read(ByteArrayInputStream(png))
+        assertNotNull("PNG not decodable", image)
+        assertEquals(width, image.width)
+        assertEquals(height, image.height)
+        val decoded = image.getRGB(0, 0, width, height, null, 0, width)
+        assertArrayEquals(pixels, decoded)
+    }
+
+    /** Concatenate IDAT payloads and inflate them — Inflater verifies the zlib Adler-32. */
+    private fun inflateIdat(png: ByteArray): ByteArray {
+        val input = DataInputStream(ByteArrayInputStream(png, 8, png.size - 8))
+        val zlib = ByteArrayOutputStream()
+        while (true) {
+            val length = input.readInt()
+            val type = ByteArray(4).also { input.readFully(it) }.toString(Charsets.US_ASCII)
+            val data = ByteArray(length).also { input.readFully(it) }
+            input.readInt() // CRC
+            if (type == "IDAT") zlib.write(data)
+            if (type == "IEND") break
+        }
+        val inflater = Inflater()
+        inflater.setInput(zlib.toByteArray())
+        val raw = ByteArrayOutputStream()
+        val buffer = ByteArray(64 * 1024)
+        while (!inflater.finished()) {
+            val n = inflater.inflate(buffer)
+            if (n == 0 && inflater.needsInput()) fail("Truncated zlib stream")
+            raw.write(buffer, 0, n)
+        }
+        inflater.end()
+        return raw.toByteArray()
+    }
+
+    @Test
+    fun `opaque image round-trips exactly across many row groups`() {
+        val width = 640
+        val height = 900
+        val pixels = testImage(width, height, alpha = false)
+        val png = encode(pixels, width, height)
+
+        assertDecodesTo(png, pixels, width, height)
+        assertEquals("Expected RGB color type", 2, png[25].toInt())
+    }
+
+    @Test
+    fun `translucent image is written as RGBA`() {
+        val width = 300
+        val height = 400
+        val pixels = testImage(width, height, alpha = true)
+        val png = encode(pixels, width, height)
+
+        assertDecodesTo(png, pixels, width, height)
+        assertEquals("Expected RGBA color type", 6, png[25].toInt())
+    }
+
+    @Test
+    fun `zlib stream inflates with valid checksum`() {
+        val width = 1000
+        val height = 700
+        val png = encode(testImage(width, height, alpha = false), width, height)
+
+        val raw = inflateIdat(png)
+        assertEquals((1 + width * 3) * height, raw.size)
+    }
+
+    @Test
+    fun `output is identical regardless of parallelism`() {
+        val width = 512
+        val height = 512
+        val pixels = testImage(width, height, alpha = false)
+
+        assertArrayEquals(encode(pixels, width, height, 1), encode(pixels, width, height, 8))
+    }
+
+    @Test
+    fun `tiny image encodes as a single group`() {
+        val pixels = intArrayOf(0xFF123456.toInt())
+        val png = encode(pixels, 1, 1)
+
+        assertDecodesTo(png, pixels, 1, 1)
+    }
+
+    @Test
+    fun `adler32 combine matches single pass`() {
+        val data = Random(7).nextBytes(100_000)
+        val split = 33_333
+        val first = Adler32().apply { update(data, 0, split) }.value
+        val second = Adler32().apply { update(data, split, data.size - split) }.value
+        val whole = Adler32().apply { update(data) }.value
+
+        assertEquals(
+                whole,
+                ParallelPngEncoder.combineAdler32(first, second, (data.size - split).toLong())
+        )
+    }
+}
@@ -0,0 +1,67 @@
+package com.ghostwhisper.service
+
+import android.os.PowerManager
+import com.ghostwhisper.service.ScanGovernor.Level
+import com.ghostwhisper.service.ScanGovernor.PowerState
+import org.junit.Assert.*
+import org.junit.Test
+
+class ScanGovernorTest {
+
+    @Test
+    fun coolChargedDeviceScansNormally() {
+        assertEquals(Level.NORMAL, ScanGovernor.levelFor(PowerState()))
+        assertEquals(Level.NORMAL, ScanGovernor.levelFor(PowerState(batteryPercent = 80)))
+        // A light thermal warning alone is not worth slower decrypts
+        assertEquals(
+                Level.NORMAL,
+                ScanGovernor.levelFor(PowerState(thermalStatus = PowerManager.THERMAL_STATUS_LIGHT))
+        )
+    }
+
+    @Test
+    fun heatBacksOffHarderThanBatterySaver() {
+        val moderate = PowerState(thermalStatus = PowerManager.THERMAL_STATUS_MODERATE)
+        val severe = PowerState(thermalStatus = PowerManager.THERMAL_STATUS_SEVERE)
+
+        assertEquals(Level.REDUCED, ScanGovernor.levelFor(PowerState(powerSave = true)))
+        assertEquals(Level.REDUCED, ScanGovernor.levelFor(PowerState(lowRamDevice = true)))
+        assertEquals(Level.REDUCED, ScanGovernor.levelFor(moderate))
+        assertEquals(Level.MINIMAL, ScanGovernor.levelFor(severe))
+        assertEquals(Level.MINIMAL, ScanGovernor.levelFor(severe.copy(charging = true)))
+    }
+
+    @Test
+    fun lowBatteryCountsOnlyWhileDischarging() {
+        assertEquals(Level.REDUCED, ScanGovernor.levelFor(PowerState(batteryPercent = 15)))
+        assertEquals(Level.MINIMAL, ScanGovernor.levelFor(PowerState(batteryPercent = 5)))
+        assertEquals(
+                Level.NORMAL,
+                ScanGovernor.levelFor(PowerState(batteryPercent = 5, charging = true))
+        )
+    }
+
+    @Test
+    fun levelsOnlyEverDoLessWork() {
+        for ((more, less) in Level.values().toList().zipWithNext()) {
+            assertTrue(less.coalesceMillis > more.coalesceMillis)
+            assertTrue(less.maxNodes < more.maxNodes)
+            assertTrue(more.scanOffscreen || !less.scanOffscreen)
+        }
+    }
+
+    @Test
+    fun updateReportsLevelChangesOnly() {
+        val changes = mutableListOf<Level>()
+        val governor = ScanGovernor { changes.add(it) }
+
+        governor.update { it.copy(batteryPercent = 60) }
+        governor.update { it.copy(batteryPercent = 12) }
+        governor.update { it.copy(batteryPercent = 11) }
+        governor.update { it.copy(charging = true) }
+
+        assertEquals(listOf(Level.REDUCED, Level.NORMAL), changes)
+        assertEquals(Level.NORMAL, governor.level)
+        assertEquals(PowerState(batteryPercent = 11, charging = true), governor.state)
+    }
+}
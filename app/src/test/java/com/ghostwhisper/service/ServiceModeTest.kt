@@ -0,0 +1,79 @@
+package com.ghostwhisper.service
+
+import android.accessibilityservice.AccessibilityServiceInfo
+import android.view.accessibility.AccessibilityEvent
+import org.junit.Assert.*
+import org.junit.Test
+
+class ServiceModeTest {
+
+    @Test
+    fun modeFollowsForegroundThenChannelsThenChat() {
+        assertEquals(ServiceMode.WHATSAPP_BACKGROUND, ServiceMode.of(false, false, true))
+        assertEquals(ServiceMode.WHATSAPP_BACKGROUND, ServiceMode.of(true, false, true))
+        assertEquals(ServiceMode.NO_CHANNELS, ServiceMode.of(false, true, true))
+        assertEquals(ServiceMode.CHAT_LIST, ServiceMode.of(true, true, false))
+        assertEquals(ServiceMode.OPEN_CHAT, ServiceMode.of(true, true, true))
+    }
+
+    @Test
+    fun onlyAnOpenChatReceivesContentAndTyping() {
+        val busy =
+                AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED or
+                        AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED
+        for (mode in ServiceMode.values()) {
+            // Every mode must notice WhatsApp's windows changing, or it could never leave
+            assertTrue(mode.eventTypes and AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED != 0)
+            assertEquals(mode == ServiceMode.OPEN_CHAT, mode.eventTypes and busy == busy)
+        }
+    }
+
+    @Test
+    fun everyModeWithWhatsAppInFrontWatchesTheWindowList() {
+        for (mode in ServiceMode.values()) {
+            val inFront = mode != ServiceMode.WHATSAPP_BACKGROUND
+            assertEquals(
+                    inFront,
+                    mode.eventTypes and AccessibilityEvent.TYPE_WINDOWS_CHANGED != 0
+            )
+            assertEquals(
+                    inFront,
+                    mode.flags and AccessibilityServiceInfo.FLAG_RETRIEVE_INTERACTIVE_WINDOWS != 0
+            )
+        }
+    }
+
+    @Test
+    fun whatsAppLeavingIsSeenAndReturnsToBackground() {
+        val own = "com.ghostwhisper"
+        assertEquals(ServiceMode.OPEN_CHAT, ServiceMode.of(true, true, true))
+
+        // The keyboard or system UI is active over the chat: no app window to go by
+        var inFront = ServiceMode.whatsAppInFront(null, own, true)
+        assertTrue(inFront)
+        // Our own overlay takes focus mid-send: nothing changes
+        inFront = ServiceMode.whatsAppInFront(own, own, inFront)
+        assertTrue(inFront)
+        inFront = ServiceMode.whatsAppInFront(GhostWhisperService.WHATSAPP_PACKAGE, own, inFront)
+        assertTrue(inFront)
+
+        // The user goes home
+        inFront = ServiceMode.whatsAppInFront("com.example.launcher", own, inFront)
+        assertFalse(inFront)
+        assertEquals(ServiceMode.WHATSAPP_BACKGROUND, ServiceMode.of(true, inFront, true))
+        // An overlay showing meanwhile doesn't bring it back
+        assertFalse(ServiceMode.whatsAppInFront(own, own, inFront))
+    }
+
+    @Test
+    fun idleModesBatchLonger() {
+        assertTrue(
+                ServiceMode.NO_CHANNELS.notificationTimeout >
+                        ServiceMode.OPEN_CHAT.notificationTimeout
+        )
+        assertEquals(
+                ServiceMode.NO_CHANNELS.notificationTimeout,
+                ServiceMode.WHATSAPP_BACKGROUND.notificationTimeout
+        )
+    }
+}
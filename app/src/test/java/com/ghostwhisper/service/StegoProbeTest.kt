@@ -0,0 +1,77 @@
+package com.ghostwhisper.service
+
+import java.nio.charset.StandardCharsets
+import org.junit.Assert.*
+import org.junit.Test
+
+/**
+ * Tests for the cheap header probes used by the background media scan.
+ *
+ * Each probe must accept what the matching encoder writes while only looking at the top of the
+ * file, and reject untouched media. Plain JVM: the codecs run over [IntArrayPixelBuffer], the way
+ * they run over a decoded strip's bitmap on device.
+ */
+class StegoProbeTest {
+
+    private val payload = "probe me".toByteArray(StandardCharsets.UTF_8)
+
+    /** Smallest valid GIF89a: 1x1, 2-color global table, one image, trailer. */
+    private val minimalGif =
+            byteArrayOf(
+                    0x47, 0x49, 0x46, 0x38, 0x39, 0x61, // GIF89a
+                    0x01, 0x00, 0x01, 0x00, 0x80.toByte(), 0x00, 0x00, // screen descriptor
+                    0x00, 0x00, 0x00, 0xFF.toByte(), 0xFF.toByte(), 0xFF.toByte(), // color table
+                    0x2C, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00, // image descriptor
+                    0x02, 0x02, 0x44, 0x01, 0x00, // image data
+                    0x3B // trailer
+            )
+
+    @Test
+    fun gifProbeFindsEmbeddedBlockInHead() {
+        val stego = GifHelper.embed(minimalGif, "hidden")
+        val head = stego.copyOf(minOf(stego.size, GifHelper.HEADER_PROBE_BYTES))
+
+        assertTrue(GifHelper.hasPayloadHeader(head))
+        assertFalse(GifHelper.hasPayloadHeader(minimalGif))
+        assertFalse(GifHelper.hasPayloadHeader(byteArrayOf(1, 2, 3)))
+    }
+
+    @Test
+    fun lsbProbeReadsHeaderFromFirstPixels() {
+        val width = 64
+        val height = 64
+        val cover = noise(width, height)
+        val encoded = cover.copy()
+        assertTrue(LsbCodec.embed(encoded, payload))
+
+        assertTrue(LsbCodec.probeHeader(topRows(encoded, 1), height))
+        assertFalse(LsbCodec.probeHeader(topRows(cover, 1), height))
+    }
+
+    @Test
+    fun dctProbeReadsHeaderFromTopStrip() {
+        val width = 128
+        val height = 128
+        val cover = noise(width, height)
+        val encoded = cover.copy()
+        assertTrue(DctCodec.embed(encoded, payload))
+        val stripHeight = DctCodec.headerStripHeight(width)
+
+        assertTrue(DctCodec.probeHeader(topRows(encoded, stripHeight), height))
+        assertFalse(DctCodec.probeHeader(topRows(cover, stripHeight), height))
+    }
+
+    private fun noise(width: Int, height: Int): IntArrayPixelBuffer {
+        val pixels = IntArray(width * height) { i ->
+            val x = i % width
+            val y = i / width
+            (0xFF shl 24) or (((x * 7) % 256) shl 16) or (((y * 5) % 256) shl 8) or 0x80
+        }
+        return IntArrayPixelBuffer(width, height, pixels)
+    }
+
+    /** The top [rows] of [image], as [StegoProbe] would decode them. */
+    private fun topRows(image: IntArrayPixelBuffer, rows: Int): PixelBuffer {
+        return IntArrayPixelBuffer(image.width, rows, image.pixels.copyOf(image.width * rows))
+    }
+}
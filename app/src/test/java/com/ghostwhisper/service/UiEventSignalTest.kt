@@ -0,0 +1,65 @@
+package com.ghostwhisper.service
+
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+
+class UiEventSignalTest {
+
+    @Test
+    fun returnsAtOnceWhenConditionAlreadyHolds() = runBlocking {
+        val signal = UiEventSignal(fallbackPollMillis = 10_000)
+        val start = System.nanoTime()
+
+        assertEquals("ready", signal.await(5_000) { "ready" })
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 1_000)
+    }
+
+    @Test
+    fun signalWakesWaiterBeforeFallbackPoll() = runBlocking {
+        // Fallback poll far beyond the timeout: only the signal can satisfy the wait
+        val signal = UiEventSignal(fallbackPollMillis = 60_000)
+        val ready = AtomicBoolean(false)
+
+        val waiter =
+                async(Dispatchers.Default) { signal.await(5_000) { true.takeIf { ready.get() } } }
+        delay(50)
+        ready.set(true)
+        signal.signal()
+
+        assertEquals(true, waiter.await())
+    }
+
+    @Test
+    fun timesOutWithNull() = runBlocking {
+        val signal = UiEventSignal(fallbackPollMillis = 10)
+        val checks = AtomicInteger()
+
+        val result =
+                signal.await<String>(100) {
+                    checks.incrementAndGet()
+                    null
+                }
+
+        assertNull(result)
+        assertTrue("fallback poll should re-check", checks.get() > 1)
+    }
+
+    @Test
+    fun fallbackPollCatchesUnsignalledChange() = runBlocking {
+        val signal = UiEventSignal(fallbackPollMillis = 10)
+        val ready = AtomicBoolean(false)
+
+        val waiter =
+                async(Dispatchers.Default) { signal.await(5_000) { 42.takeIf { ready.get() } } }
+        delay(50)
+        ready.set(true)
+
+        assertEquals(42, waiter.await())
+    }
+}
@@ -0,0 +1,250 @@
+package com.ghostwhisper.service
+
+import com.ghostwhisper.service.WorkScheduler.Lane
+import com.ghostwhisper.service.WorkScheduler.LaneConfig
+import com.ghostwhisper.service.WorkScheduler.Overflow
+import java.util.Collections
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+
+class WorkSchedulerTest {
+
+    private val scope = CoroutineScope(Dispatchers.Default + SupervisorJob())
+    private val ran: MutableList<String> = Collections.synchronizedList(mutableListOf())
+    private val dropped: MutableList<String> = Collections.synchronizedList(mutableListOf())
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+    }
+
+    private fun scheduler(
+            send: LaneConfig = WorkScheduler.DEFAULT_SEND,
+            scan: LaneConfig = LaneConfig(1, 2, Overflow.DROP_OLDEST),
+            onError: (Lane, Exception) -> Unit = { _, _ -> }
+    ) = WorkScheduler(scope, send = send, scan = scan, onError = onError)
+
+    private fun WorkScheduler.task(lane: Lane, name: String, key: Any? = null): Boolean {
+        return submit(lane, key, onDrop = { dropped.add("$name:$it") }) { ran.add(name) }
+    }
+
+    /** Occupy one worker of [lane] until the returned gate is completed. */
+    private suspend fun WorkScheduler.block(lane: Lane): CompletableDeferred<Unit> {
+        val started = CompletableDeferred<Unit>()
+        val gate = CompletableDeferred<Unit>()
+        submit(lane) {
+            started.complete(Unit)
+            gate.await()
+        }
+        withTimeout(2_000) { started.await() }
+        return gate
+    }
+
+    private suspend fun awaitIdle(scheduler: WorkScheduler) {
+        withTimeout(2_000) {
+            while (Lane.values().any { scheduler.activeCount(it) > 0 }) delay(5)
+        }
+    }
+
+    @Test
+    fun queuedScanOfSameKeyIsSuperseded() = runBlocking {
+        val scheduler = scheduler()
+        val gate = scheduler.block(Lane.SCAN)
+
+        assertTrue(scheduler.task(Lane.SCAN, "first", key = "window 1"))
+        assertTrue(scheduler.task(Lane.SCAN, "second", key = "window 1"))
+        gate.complete(Unit)
+        awaitIdle(scheduler)
+
+        assertEquals(listOf("second"), ran)
+        assertEquals(listOf("first:SUPERSEDED"), dropped)
+    }
+
+    @Test
+    fun holdCoalescesUpdatesArrivingWithinTheWindow() = runBlocking {
+        val scheduler = scheduler()
+        scheduler.setHold(Lane.SCAN, 100)
+        val start = System.nanoTime()
+
+        scheduler.task(Lane.SCAN, "a1", key = "a")
+        delay(30)
+        scheduler.task(Lane.SCAN, "a2", key = "a")
+        awaitIdle(scheduler)
+
+        assertEquals(listOf("a2"), ran)
+        assertEquals(listOf("a1:SUPERSEDED"), dropped)
+        // Timed from the first submission, not restarted by the second
+        val elapsedMs = (System.nanoTime() - start) / 1_000_000
+        assertTrue("ran after $elapsedMs ms", elapsedMs in 100..1_000)
+    }
+
+    @Test
+    fun runningTaskIsCancelledBySameKeyWithPreempt() = runBlocking {
+        val scheduler = scheduler(scan = LaneConfig(1, 2, Overflow.DROP_OLDEST, preempt = true))
+        val started = CompletableDeferred<Unit>()
+        scheduler.submit(Lane.SCAN, key = "a") {
+            try {
+                WorkScheduler.allowPreemption()
+                started.complete(Unit)
+                CompletableDeferred<Unit>().await()
+            } finally {
+                ran.add("a1 ended")
+            }
+        }
+        withTimeout(2_000) { started.await() }
+
+        scheduler.task(Lane.SCAN, "a2", key = "a")
+        scheduler.task(Lane.SCAN, "b", key = "b")
+        awaitIdle(scheduler)
+
+        assertEquals(listOf("a1 ended", "a2", "b"), ran)
+        assertTrue("a started task is not dropped", dropped.isEmpty())
+    }
+
+    @Test
+    fun runningTaskIsNotCancelledBeforeItAllowsPreemption() = runBlocking {
+        val scheduler = scheduler(scan = LaneConfig(2, 2, Overflow.DROP_OLDEST, preempt = true))
+        val started = CompletableDeferred<Unit>()
+        val delivered = CompletableDeferred<Unit>()
+        scheduler.submit(Lane.SCAN, key = "a") {
+            try {
+                started.complete(Unit)
+                delivered.await()
+                ran.add("a1 delivered")
+                WorkScheduler.allowPreemption()
+                ran.add("a1 went on")
+            } finally {
+                ran.add("a1 ended")
+            }
+        }
+        withTimeout(2_000) { started.await() }
+
+        scheduler.task(Lane.SCAN, "a2", key = "a")
+        // Not cancelled, and not run next to it on the idle worker either
+        delay(50)
+        assertTrue(ran.isEmpty())
+
+        delivered.complete(Unit)
+        awaitIdle(scheduler)
+        // a2 was waiting, so a1 is cancelled as soon as it allows it (a2 may start before a1's
+        // finally block has run, on the other worker)
+        assertEquals("a1 delivered", ran.first())
+        assertEquals(setOf("a1 delivered", "a1 ended", "a2"), ran.toSet())
+        assertEquals(3, ran.size)
+    }
+
+    @Test
+    fun steadyStreamOfSameKeySubmissionsStillCompletesScans() = runBlocking {
+        val scheduler = scheduler(scan = LaneConfig(2, 16, Overflow.DROP_OLDEST, preempt = true))
+        val delivered = AtomicInteger()
+        // A node changing every 5 ms, each scan taking 20 ms to its first message
+        repeat(40) {
+            scheduler.submit(Lane.SCAN, key = "node") {
+                delay(20)
+                delivered.incrementAndGet()
+                WorkScheduler.allowPreemption()
+                delay(20)
+            }
+            delay(5)
+        }
+
+        // Scans delivered while the stream was still going, not just the last one after it
+        assertTrue("delivered ${delivered.get()}", delivered.get() >= 2)
+        awaitIdle(scheduler)
+    }
+
+    @Test
+    fun fullScanLaneDropsOldest() = runBlocking {
+        val scheduler = scheduler()
+        val gate = scheduler.block(Lane.SCAN)
+
+        scheduler.task(Lane.SCAN, "a")
+        scheduler.task(Lane.SCAN, "b")
+        assertTrue(scheduler.task(Lane.SCAN, "c"))
+        gate.complete(Unit)
+        awaitIdle(scheduler)
+
+        assertEquals(listOf("b", "c"), ran)
+        assertEquals(listOf("a:OVERFLOW"), dropped)
+    }
+
+    @Test
+    fun fullSendLaneRejectsNewTask() = runBlocking {
+        val scheduler = scheduler(send = LaneConfig(1, 1, Overflow.REJECT))
+        val gate = scheduler.block(Lane.SEND)
+
+        assertTrue(scheduler.task(Lane.SEND, "queued"))
+        assertFalse(scheduler.task(Lane.SEND, "refused"))
+        gate.complete(Unit)
+        awaitIdle(scheduler)
+
+        assertEquals(listOf("queued"), ran)
+        assertTrue("a refused task is not dropped", dropped.isEmpty())
+    }
+
+    @Test
+    fun busyScanLaneDoesNotDelaySend() = runBlocking<Unit> {
+        val scheduler = scheduler()
+        val gate = scheduler.block(Lane.SCAN)
+        repeat(5) { scheduler.task(Lane.SCAN, "scan $it") }
+
+        val sent = CompletableDeferred<Unit>()
+        scheduler.submit(Lane.SEND) { sent.complete(Unit) }
+
+        withTimeout(1_000) { sent.await() }
+        gate.complete(Unit)
+    }
+
+    @Test
+    fun scansWaitWhileSendIsActive() = runBlocking {
+        val scheduler = scheduler()
+        val gate = scheduler.block(Lane.SEND)
+
+        scheduler.task(Lane.SCAN, "scan")
+        scheduler.task(Lane.HOUSEKEEPING, "housekeeping")
+        delay(100)
+        assertTrue("lower lanes start nothing during a send", ran.isEmpty())
+
+        gate.complete(Unit)
+        awaitIdle(scheduler)
+        assertEquals(setOf("scan", "housekeeping"), ran.toSet())
+    }
+
+    @Test
+    fun failingTaskIsReportedAndLaneContinues() = runBlocking {
+        val errors = Collections.synchronizedList(mutableListOf<Lane>())
+        val scheduler = scheduler(onError = { lane, _ -> errors.add(lane) })
+
+        scheduler.submit(Lane.HOUSEKEEPING) { throw IllegalStateException("boom") }
+        scheduler.task(Lane.HOUSEKEEPING, "after")
+        awaitIdle(scheduler)
+
+        assertEquals(listOf(Lane.HOUSEKEEPING), errors)
+        assertEquals(listOf("after"), ran)
+    }
+
+    @Test
+    fun shutdownDropsQueuedAndRefusesNew() = runBlocking {
+        val scheduler = scheduler()
+        scheduler.block(Lane.SCAN)
+        scheduler.task(Lane.SCAN, "queued")
+
+        scheduler.shutdown()
+
+        assertEquals(listOf("queued:SHUTDOWN"), dropped)
+        assertFalse(scheduler.task(Lane.SEND, "late"))
+        // The blocked task is cancelled, not dropped
+        awaitIdle(scheduler)
+        assertTrue(ran.isEmpty())
+    }
+}
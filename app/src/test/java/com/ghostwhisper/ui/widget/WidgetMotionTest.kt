@@ -0,0 +1,70 @@
+package com.ghostwhisper.ui.widget
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class WidgetMotionTest {
+
+    private fun motion() = WidgetMotion(minX = 20f, maxX = 900f, minY = 0f, maxY = 2000f)
+
+    /** Step at 120 Hz until at rest; returns the frames it took. */
+    private fun WidgetMotion.settle(): Int {
+        var frames = 0
+        while (step(1f / 120)) {
+            frames++
+            check(frames < 10_000) { "never came to rest" }
+        }
+        return frames
+    }
+
+    @Test
+    fun releasedWithoutFlingSnapsToTheNearerEdge() {
+        val nearRight = motion()
+        nearRight.release(x = 300f, y = 500f, vx = 0f, vy = 0f)
+        nearRight.settle()
+        assertEquals(20f, nearRight.x)
+        assertEquals(500f, nearRight.y, 0.01f)
+
+        val nearLeft = motion()
+        nearLeft.release(x = 700f, y = 500f, vx = 0f, vy = 0f)
+        nearLeft.settle()
+        assertEquals(900f, nearLeft.x)
+    }
+
+    @Test
+    fun flingCarriesItToTheFarEdge() {
+        val motion = motion()
+        motion.release(x = 300f, y = 500f, vx = 3_000f, vy = 0f)
+
+        assertEquals(900f, motion.targetX)
+        val frames = motion.settle()
+        assertEquals(900f, motion.x)
+        // Well under two seconds at 120 Hz
+        assertTrue(frames < 240)
+    }
+
+    @Test
+    fun verticalFlingSlowsDownAndStaysOnScreen() {
+        val motion = motion()
+        motion.release(x = 20f, y = 500f, vx = 0f, vy = 1_000f)
+        motion.settle()
+        // Travels about vy / FRICTION
+        assertEquals(750f, motion.y, 15f)
+
+        val hard = motion()
+        hard.release(x = 20f, y = 1_900f, vx = 0f, vy = 20_000f)
+        hard.settle()
+        assertEquals(2000f, hard.y)
+    }
+
+    @Test
+    fun stopHaltsSettling() {
+        val motion = motion()
+        motion.release(x = 300f, y = 500f, vx = 0f, vy = 0f)
+        motion.step(1f / 120)
+        motion.stop()
+
+        assertFalse(motion.isSettling)
+        assertFalse(motion.step(1f / 120))
+    }
+}
@@ -0,0 +1,128 @@
+import org.jetbrains.kotlin.gradle.dsl.JvmTarget
+
+plugins {
+    id("org.jetbrains.kotlin.jvm")
+    id("me.champeau.jmh")
+}
+
+// JMH benchmarks for the message and image pipelines.
+//
+// The app module is an Android application, so instead of depending on it we compile its
+// platform-independent sources straight into this JVM module — the benchmarks measure exactly
+// the code that ships. Keep this list free of android.* imports.
+//
+//   ./gradlew :benchmark:jmh                          # everything
+//   ./gradlew :benchmark:jmh -PjmhInclude=LsbCodec    # one class / method regex
+//
+// The test source set also holds the perf regression guard (see PerfGuardTest). Its timing
+// checks run in their own task, not in :benchmark:test, so a loaded build machine can't fail
+// the regular test run:
+//
+//   ./gradlew :benchmark:perfGuard                    # compare with perf-baseline.json
+//   ./gradlew :benchmark:updatePerfBaseline           # re-measure and rewrite it
+//   ./gradlew :benchmark:perfGuard -PperfMaxSlowdown=3.0 -PperfMaxAllocIncrease=1.5
+//
+// Traces recorded on a device (TestBench → Scan Recorder) replay through the payload scanner:
+//
+//   ./gradlew :benchmark:replayScan -Ptrace=scan.gwtrace -Pkeys="Family=base64Key;Work=..."
+val sharedSources =
+        listOf(
+                "crypto/AESCrypto.kt",
+                "stegano/SteganoCodec.kt",
+                "data/model/GhostPacket.kt",
+                "service/GifHelper.kt",
+                "service/PixelBuffer.kt",
+                "service/LsbCodec.kt",
+                "service/DctCodec.kt",
+                "scan/ScanNode.kt",
+                "scan/PayloadScanner.kt",
+                "scan/TreeSnapshot.kt",
+                "scan/ScanTrace.kt"
+        )
+
+sourceSets {
+    main {
+        kotlin {
+            srcDir("../app/src/main/java")
+            include(sharedSources.map { "com/ghostwhisper/$it" })
+            include("com/ghostwhisper/benchmark/**") // shared fixtures in src/main/kotlin
+        }
+    }
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+kotlin { compilerOptions { jvmTarget.set(JvmTarget.JVM_17) } }
+
+dependencies {
+    // Android ships org.json; on the JVM it comes from Maven (same version as the app's tests)
+    implementation("org.json:json:20240303")
+    // PayloadScanner is suspend-based; the replay runner drives it with runBlocking
+    implementation("org.jetbrains.kotlinx:kotlinx-coroutines-core:1.9.0")
+
+    testImplementation("junit:junit:4.13.2")
+}
+
+val perfBaseline = layout.projectDirectory.file("perf-baseline.json").asFile
+
+fun Test.configurePerfGuard() {
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    filter { includeTestsMatching("*.PerfGuardTest") }
+    systemProperty("perf.baseline", perfBaseline.absolutePath)
+    systemProperty("perf.maxSlowdown", project.findProperty("perfMaxSlowdown") ?: "2.0")
+    systemProperty("perf.maxAllocIncrease", project.findProperty("perfMaxAllocIncrease") ?: "1.25")
+    maxHeapSize = "1g"
+    testLogging { showStandardStreams = true }
+    // Timings must be measured, never restored from the build cache
+    outputs.upToDateWhen { false }
+    outputs.cacheIf { false }
+}
+
+tasks.test {
+    filter { excludeTestsMatching("*.PerfGuardTest") }
+    testLogging { showStandardStreams = true }
+}
+
+tasks.register<Test>("perfGuard") {
+    description = "Checks the hot paths' cost and allocation against perf-baseline.json."
+    group = "verification"
+    configurePerfGuard()
+}
+
+tasks.register<Test>("updatePerfBaseline") {
+    description = "Re-measures the perf guard scenarios and rewrites perf-baseline.json."
+    group = "verification"
+    configurePerfGuard()
+    systemProperty("perf.updateBaseline", "true")
+}
+
+tasks.register<JavaExec>("replayScan") {
+    description = "Replays a recorded accessibility trace through the payload scanner."
+    group = "benchmark"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.ghostwhisper.benchmark.ScanReplayKt")
+    val trace = project.findProperty("trace")?.toString()
+    val keys = project.findProperty("keys")?.toString()?.split(';').orEmpty()
+    args = listOfNotNull(trace?.let { file(it).absolutePath }) +
+            keys.filter { it.isNotBlank() }.flatMap { listOf("--key", it) } +
+            project.findProperty("passes")?.let { listOf("--passes", it.toString()) }.orEmpty()
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // ops/s plus allocation (gc.alloc.rate.norm = bytes/op)
+    benchmarkMode.set(listOf("thrpt"))
+    timeUnit.set("s")
+    profilers.add("gc")
+    // 48 MP pixel buffers are ~190 MB each
+    jvmArgs.set(listOf("-Xmx3g"))
+    resultFormat.set("JSON")
+    findProperty("jmhInclude")?.let { includes.set(listOf(it.toString())) }
+}
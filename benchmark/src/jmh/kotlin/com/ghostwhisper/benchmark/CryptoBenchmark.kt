@@ -0,0 +1,35 @@
+package com.ghostwhisper.benchmark
+
+import com.ghostwhisper.crypto.AESCrypto
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/** AES-256-GCM encrypt/decrypt at chat message sizes. */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class CryptoBenchmark {
+
+    /** Plaintext length in chars: short reply, typical message, long paste. */
+    @Param("32", "280", "4096") var messageLength: Int = 0
+
+    private lateinit var key: ByteArray
+    private lateinit var plaintext: String
+    private lateinit var encrypted: AESCrypto.EncryptedPayload
+
+    @Setup
+    fun setUp() {
+        key = AESCrypto.generateKey()
+        plaintext = Fixtures.chatMessage(messageLength)
+        encrypted = AESCrypto.encrypt(plaintext, key)
+    }
+
+    @Benchmark fun encrypt(): AESCrypto.EncryptedPayload = AESCrypto.encrypt(plaintext, key)
+
+    @Benchmark
+    fun decrypt(): String = AESCrypto.decrypt(encrypted.ciphertext, key, encrypted.iv)
+}
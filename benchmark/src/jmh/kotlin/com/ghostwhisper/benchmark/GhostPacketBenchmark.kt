@@ -0,0 +1,33 @@
+package com.ghostwhisper.benchmark
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.data.model.GhostPacket
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/** JSON wire-format (de)serialization of [GhostPacket]. */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class GhostPacketBenchmark {
+
+    /** Plaintext length in chars carried by the packet. */
+    @Param("32", "280", "4096") var messageLength: Int = 0
+
+    private lateinit var packet: GhostPacket
+    private lateinit var bytes: ByteArray
+
+    @Setup
+    fun setUp() {
+        packet = Fixtures.packet(Fixtures.chatMessage(messageLength), AESCrypto.generateKey())
+        bytes = packet.toBytes()
+    }
+
+    @Benchmark fun toBytes(): ByteArray = packet.toBytes()
+
+    @Benchmark fun fromBytes(): GhostPacket = GhostPacket.fromBytes(bytes)
+}
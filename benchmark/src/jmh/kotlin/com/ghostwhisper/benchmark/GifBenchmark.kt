@@ -0,0 +1,40 @@
+package com.ghostwhisper.benchmark
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.service.GifHelper
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/**
+ * GIF application-extension embedding. [extractClean] walks every frame of a GIF without a
+ * payload — the cost of checking an ordinary animation.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class GifBenchmark {
+
+    /** GIF size in MB: sticker, typical animation, large WhatsApp GIF. */
+    @Param("1", "10", "30") var sizeMb: Int = 0
+
+    private lateinit var clean: ByteArray
+    private lateinit var stego: ByteArray
+    private lateinit var packetJson: String
+
+    @Setup
+    fun setUp() {
+        clean = Fixtures.syntheticGif(sizeMb * 1024 * 1024)
+        packetJson = Fixtures.packet(Fixtures.chatMessage(280), AESCrypto.generateKey()).toJson()
+        stego = GifHelper.embed(clean, packetJson)
+    }
+
+    @Benchmark fun embed(): ByteArray = GifHelper.embed(clean, packetJson)
+
+    @Benchmark fun extract(): String? = GifHelper.extract(stego)
+
+    @Benchmark fun extractClean(): String? = GifHelper.extract(clean)
+}
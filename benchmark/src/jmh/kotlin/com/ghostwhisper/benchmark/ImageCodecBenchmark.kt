@@ -0,0 +1,48 @@
+package com.ghostwhisper.benchmark
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.service.DctCodec
+import com.ghostwhisper.service.IntArrayPixelBuffer
+import com.ghostwhisper.service.LsbCodec
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/**
+ * LSB and DCT image codecs over [IntArrayPixelBuffer] — the kernels behind the Steganography
+ * Lab, minus bitmap decode/encode. Embedding rewrites the same buffer in place each invocation,
+ * so only the rows/bands holding the payload are touched, as on device.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class ImageCodecBenchmark {
+
+    /** Image size: 1 MP, 12 MP phone camera, 48 MP high-res sensor. */
+    @Param("1000x1000", "4000x3000", "8000x6000") var size: String = ""
+
+    private lateinit var lsbImage: IntArrayPixelBuffer
+    private lateinit var dctImage: IntArrayPixelBuffer
+    private lateinit var payload: ByteArray
+
+    @Setup
+    fun setUp() {
+        val (width, height) = Fixtures.parseSize(size)
+        payload = Fixtures.packet(Fixtures.chatMessage(280), AESCrypto.generateKey()).toBytes()
+        lsbImage = Fixtures.noiseImage(width, height)
+        dctImage = lsbImage.copy()
+        check(LsbCodec.embed(lsbImage, payload))
+        check(DctCodec.embed(dctImage, payload))
+    }
+
+    @Benchmark fun lsbEmbed(): Boolean = LsbCodec.embed(lsbImage, payload)
+
+    @Benchmark fun lsbExtract(): ByteArray? = LsbCodec.extract(lsbImage)
+
+    @Benchmark fun dctEmbed(): Boolean = DctCodec.embed(dctImage, payload)
+
+    @Benchmark fun dctExtract(): ByteArray? = DctCodec.extract(dctImage)
+}
@@ -0,0 +1,65 @@
+package com.ghostwhisper.benchmark
+
+import com.ghostwhisper.scan.KeyResolver
+import com.ghostwhisper.scan.PayloadScanner
+import com.ghostwhisper.scan.ScanStats
+import com.ghostwhisper.scan.TreeSnapshot
+import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+ * One payload scan of a chat screen held in a simulated remote process ([RemoteTree]), with
+ * every binder call charged [ipcCostTokens] of CPU work.
+ *
+ * `live` is the old path: the scanner recurses over live nodes, one call per child. `snapshot`
+ * is the current one: flatten with descendant prefetch ([TreeSnapshot.capture]), then scan the
+ * arrays. Calls per scan for each path are printed by `:benchmark:test` (ScanTraversalTest).
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class ScanTraversalBenchmark {
+
+    /** Messages on screen; four nodes each. */
+    @Param("20", "200") var messages: Int = 0
+
+    /** Simulated binder round trip, in [Blackhole.consumeCPU] tokens (0 = free calls). */
+    @Param("0", "2000") var ipcCostTokens: Long = 0
+
+    private lateinit var live: RemoteTree
+    private lateinit var prefetched: RemoteTree
+    private lateinit var scanner: PayloadScanner
+
+    @Setup
+    fun setUp() {
+        val generator =
+                ChatTreeGenerator(ChatTreeGenerator.Config(messagesPerScreen = messages))
+        val frame = generator.frame(0)
+        val cost = ipcCostTokens
+        live = RemoteTree(frame, prefetch = false) { Blackhole.consumeCPU(cost) }
+        prefetched = RemoteTree(frame, prefetch = true) { Blackhole.consumeCPU(cost) }
+        val secrets = generator.ownSecrets.associateBy { it.keyId }
+        // Warm outcome cache: the steady state while a chat is open
+        scanner = PayloadScanner(KeyResolver { secrets[it] }, onDecrypted = {})
+        runBlocking { scanner.scan(frame) }
+    }
+
+    @Benchmark
+    fun live(): ScanStats {
+        live.reset()
+        return runBlocking { scanner.scan(live.root()) }
+    }
+
+    @Benchmark
+    fun snapshot(): ScanStats {
+        prefetched.reset()
+        val tree = TreeSnapshot.capture(prefetched.root())
+        return runBlocking { scanner.scan(tree) }
+    }
+}
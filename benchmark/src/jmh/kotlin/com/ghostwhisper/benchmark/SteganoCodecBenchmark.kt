@@ -0,0 +1,45 @@
+package com.ghostwhisper.benchmark
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.stegano.SteganoCodec
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/**
+ * Zero-width text codec over real packets: what the accessibility service does per message
+ * sent (encode, inject, chaff) and per message seen on screen (extract, decode).
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class SteganoCodecBenchmark {
+
+    /** Hidden plaintext length in chars. */
+    @Param("32", "280", "4096") var messageLength: Int = 0
+
+    private lateinit var packetBytes: ByteArray
+    private lateinit var encoded: String
+    private lateinit var chatMessage: String
+    private lateinit var cover: String
+
+    @Setup
+    fun setUp() {
+        val key = AESCrypto.generateKey()
+        packetBytes = Fixtures.packet(Fixtures.chatMessage(messageLength), key).toBytes()
+        encoded = SteganoCodec.encode(packetBytes)
+        cover = "Noted 👍"
+        chatMessage = SteganoCodec.injectPayload(cover, encoded)
+    }
+
+    @Benchmark fun encode(): String = SteganoCodec.encode(packetBytes)
+
+    @Benchmark fun decode(): ByteArray = SteganoCodec.decode(encoded)
+
+    @Benchmark fun extractPayload(): String? = SteganoCodec.extractPayload(chatMessage)
+
+    @Benchmark fun chaff(): String = SteganoCodec.chaff(cover)
+}
@@ -0,0 +1,173 @@
+package com.ghostwhisper.benchmark
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.data.model.GhostPacket
+import com.ghostwhisper.scan.ChannelSecret
+import com.ghostwhisper.scan.SnapshotNode
+import com.ghostwhisper.scan.TraceEvent
+import com.ghostwhisper.stegano.SteganoCodec
+import kotlin.random.Random
+
+/**
+ * Synthetic WhatsApp-like conversation screens for load-testing the payload scan without a
+ * device.
+ *
+ * The conversation is an endless stream of messages whose kinds are fixed by [Config.seed]; keys
+ * and chaff noise are fresh per instance. Each frame is the window of [Config.messagesPerScreen]
+ * messages starting [Config.scrollDelta] further down than the last, as consecutive
+ * content-changed events look while a chat scrolls. A message keeps the exact same text in every
+ * frame it appears in, just like a real bubble.
+ *
+ * Tree shape per frame: root → toolbar (chat title) + list → one row per message, each row with
+ * message text, timestamp and a delivery-status content description — four nodes per message.
+ */
+class ChatTreeGenerator(val config: Config = Config()) {
+
+    data class Config(
+            val messagesPerScreen: Int = 20,
+            /** Fraction of messages carrying zero-width characters at all. */
+            val zeroWidthFraction: Double = 0.2,
+            /** Of those, the fraction that is chaff noise rather than a real packet. */
+            val chaffFraction: Double = 0.0,
+            /** Of the real packets, the fraction for [ownSecrets]; the rest are foreign. */
+            val ownKeyFraction: Double = 0.5,
+            /** Messages scrolled between consecutive frames. */
+            val scrollDelta: Int = 3,
+            /** Hidden plaintext length of real packets. */
+            val plaintextLength: Int = 64,
+            val seed: Long = 42
+    )
+
+    enum class Kind {
+        PLAIN,
+        CHAFF,
+        OWN_PAYLOAD,
+        FOREIGN_PAYLOAD
+    }
+
+    /** Channels "this device" holds keys for; pass them to the scanner's key resolver. */
+    val ownSecrets: List<ChannelSecret> =
+            listOf("Family", "Work").map { name ->
+                ChannelSecret(AESCrypto.deriveKeyId(name), name, AESCrypto.generateKey())
+            }
+
+    private val foreignKeyId = AESCrypto.deriveKeyId("Someone Else's Channel")
+    private val foreignKey = AESCrypto.generateKey()
+
+    private val messages = HashMap<Int, String>()
+
+    /** What message [index] carries. */
+    fun kindOf(index: Int): Kind {
+        val random = randomFor(index)
+        return when {
+            random.nextDouble() >= config.zeroWidthFraction -> Kind.PLAIN
+            random.nextDouble() < config.chaffFraction -> Kind.CHAFF
+            random.nextDouble() < config.ownKeyFraction -> Kind.OWN_PAYLOAD
+            else -> Kind.FOREIGN_PAYLOAD
+        }
+    }
+
+    /** On-screen text of message [index], generated once and then reused. */
+    fun message(index: Int): String {
+        return messages.getOrPut(index) {
+            val cover = COVERS[index % COVERS.size]
+            when (kindOf(index)) {
+                Kind.PLAIN -> cover
+                Kind.CHAFF -> SteganoCodec.chaff(cover)
+                Kind.OWN_PAYLOAD -> {
+                    val secret = ownSecrets[index % ownSecrets.size]
+                    stego(cover, index, secret.keyId, secret.key)
+                }
+                Kind.FOREIGN_PAYLOAD -> stego(cover, index, foreignKeyId, foreignKey)
+            }
+        }
+    }
+
+    /** Index of the first message visible in [frame]. */
+    fun firstMessage(frame: Int): Int = frame * config.scrollDelta
+
+    /** The screen at scroll position [frame]. */
+    fun frame(frame: Int): SnapshotNode {
+        val first = firstMessage(frame)
+        val rows = List(config.messagesPerScreen) { row(first + it) }
+        return SnapshotNode(
+                viewId = "android:id/content",
+                children =
+                        listOf(
+                                SnapshotNode(
+                                        viewId = "com.whatsapp:id/toolbar",
+                                        children =
+                                                listOf(
+                                                        SnapshotNode(
+                                                                text = "Family",
+                                                                viewId = ID_CONTACT_NAME
+                                                        )
+                                                )
+                                ),
+                                SnapshotNode(viewId = "android:id/list", children = rows)
+                        )
+        )
+    }
+
+    /** [count] consecutive frames as content-changed events, 16 ms apart. */
+    fun contentEvents(count: Int): List<TraceEvent> {
+        return List(count) {
+            TraceEvent(TraceEvent.TYPE_WINDOW_CONTENT_CHANGED, it * 16L, PACKAGE, frame(it))
+        }
+    }
+
+    /** Nodes in one frame, for checking scan counts. */
+    val nodesPerFrame: Int
+        get() = 4 + NODES_PER_MESSAGE * config.messagesPerScreen
+
+    private fun row(index: Int): SnapshotNode {
+        return SnapshotNode(
+                viewId = "com.whatsapp:id/main_layout",
+                children =
+                        listOf(
+                                SnapshotNode(text = message(index), viewId = ID_MESSAGE_TEXT),
+                                SnapshotNode(
+                                        text = "%02d:%02d".format(9 + index / 60 % 12, index % 60),
+                                        viewId = "com.whatsapp:id/date"
+                                ),
+                                SnapshotNode(
+                                        contentDescription =
+                                                if (index % 3 == 0) "Read" else "Delivered",
+                                        viewId = "com.whatsapp:id/status"
+                                )
+                        )
+        )
+    }
+
+    private fun stego(cover: String, index: Int, keyId: String, key: ByteArray): String {
+        val plaintext = Fixtures.chatMessage(config.plaintextLength + index % 7)
+        val encrypted = AESCrypto.encrypt(plaintext, key)
+        val packet =
+                GhostPacket(
+                        keyId = keyId,
+                        iv = encrypted.ivBase64(),
+                        ciphertext = encrypted.ciphertextBase64()
+                )
+        return SteganoCodec.injectPayload(cover, SteganoCodec.encode(packet.toBytes()))
+    }
+
+    private fun randomFor(index: Int) = Random(config.seed * 1_000_003 + index)
+
+    companion object {
+        const val PACKAGE = "com.whatsapp"
+        const val NODES_PER_MESSAGE = 4
+        private const val ID_CONTACT_NAME = "com.whatsapp:id/conversation_contact_name"
+        private const val ID_MESSAGE_TEXT = "com.whatsapp:id/message_text"
+
+        private val COVERS =
+                listOf(
+                        "Noted 👍",
+                        "ok see you then",
+                        "haha yes",
+                        "Can you send me the photos from yesterday?",
+                        "On my way",
+                        "👀",
+                        "Sounds good, I'll check and get back to you tomorrow morning"
+                )
+    }
+}
@@ -0,0 +1,81 @@
+package com.ghostwhisper.benchmark
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.data.model.GhostPacket
+import com.ghostwhisper.service.IntArrayPixelBuffer
+import java.io.ByteArrayOutputStream
+import java.nio.charset.StandardCharsets
+import kotlin.random.Random
+
+/** Deterministic inputs shared by the benchmarks. */
+object Fixtures {
+
+    private const val CHAT_TEXT =
+            "Meet at the usual place at 7 — bring the blue folder. Don't reply here 👻 "
+
+    /** Chat-style text of exactly [length] chars (mostly ASCII, with the odd emoji). */
+    fun chatMessage(length: Int): String {
+        val sb = StringBuilder(length + CHAT_TEXT.length)
+        while (sb.length < length) sb.append(CHAT_TEXT)
+        sb.setLength(length)
+        // Don't end on a dangling high surrogate
+        if (sb.isNotEmpty() && sb.last().isHighSurrogate()) sb.setCharAt(sb.length - 1, '.')
+        return sb.toString()
+    }
+
+    /** A real encrypted packet for [plaintext], as the send path builds it. */
+    fun packet(plaintext: String, key: ByteArray): GhostPacket {
+        val encrypted = AESCrypto.encrypt(plaintext, key)
+        return GhostPacket(
+                keyId = AESCrypto.deriveKeyId("Benchmark Channel"),
+                iv = encrypted.ivBase64(),
+                ciphertext = encrypted.ciphertextBase64()
+        )
+    }
+
+    /** Opaque RGB noise — a worst case for nothing, a stand-in for a camera photo. */
+    fun noiseImage(width: Int, height: Int, seed: Int = 42): IntArrayPixelBuffer {
+        val random = Random(seed)
+        val pixels = IntArray(width * height) { (0xFF shl 24) or random.nextInt(0x1000000) }
+        return IntArrayPixelBuffer(width, height, pixels)
+    }
+
+    /** Parse a `WIDTHxHEIGHT` benchmark parameter. */
+    fun parseSize(size: String): Pair<Int, Int> {
+        val (width, height) = size.split('x').map { it.trim().toInt() }
+        return width to height
+    }
+
+    private const val FRAME_DATA_BLOCKS = 200 // ~50 KB of LZW data per frame
+
+    /**
+     * A structurally valid animated GIF of at least [targetBytes]: global color table, then
+     * frames (graphic control extension + image descriptor + LZW sub-blocks) until the size is
+     * reached. The LZW data is random — only the block structure matters to [GifHelper].
+     */
+    fun syntheticGif(targetBytes: Int, seed: Int = 42): ByteArray {
+        val random = Random(seed)
+        val out = ByteArrayOutputStream(targetBytes + FRAME_DATA_BLOCKS * 256)
+        out.write("GIF89a".toByteArray(StandardCharsets.US_ASCII))
+        // Logical screen 320x240, 256-entry global color table
+        out.write(byteArrayOf(0x40, 0x01, 0xF0.toByte(), 0x00, 0xF7.toByte(), 0x00, 0x00))
+        out.write(ByteArray(768) { it.toByte() })
+
+        val block = ByteArray(255)
+        while (out.size() < targetBytes) {
+            // Graphic control extension: 100 ms frame delay
+            out.write(byteArrayOf(0x21, 0xF9.toByte(), 0x04, 0x00, 0x0A, 0x00, 0x00, 0x00))
+            // Image descriptor: full screen, no local color table
+            out.write(byteArrayOf(0x2C, 0, 0, 0, 0, 0x40, 0x01, 0xF0.toByte(), 0x00, 0x00))
+            out.write(8) // LZW minimum code size
+            repeat(FRAME_DATA_BLOCKS) {
+                random.nextBytes(block)
+                out.write(block.size)
+                out.write(block)
+            }
+            out.write(0) // block terminator
+        }
+        out.write(0x3B) // trailer
+        return out.toByteArray()
+    }
+}
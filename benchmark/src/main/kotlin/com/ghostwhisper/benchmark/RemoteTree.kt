@@ -0,0 +1,83 @@
+package com.ghostwhisper.benchmark
+
+import com.ghostwhisper.scan.ScanNode
+import com.ghostwhisper.scan.SnapshotNode
+import java.util.Collections
+import java.util.IdentityHashMap
+
+/**
+ * A [SnapshotNode] tree served as if it lived in another process, counting binder calls.
+ *
+ * Models how the platform hands accessibility nodes to a service: a node's own fields (text,
+ * content description, view ID, child count) arrive parceled with it and are local reads, while
+ * fetching a child is one IPC unless that child is already in the service's node cache. With
+ * [prefetch], each IPC also returns up to [batch] of the fetched child's descendants in pre-order
+ * (like `FLAG_PREFETCH_DESCENDANTS_*` on API 33+), which fill the cache.
+ *
+ * [onIpc] runs once per simulated call, so benchmarks can charge a realistic cost for it.
+ */
+class RemoteTree(
+        private val root: SnapshotNode,
+        private val prefetch: Boolean,
+        private val batch: Int = PLATFORM_PREFETCH_LIMIT,
+        private val onIpc: () -> Unit = {}
+) {
+
+    companion object {
+        /** Nodes the platform returns per prefetching call. */
+        const val PLATFORM_PREFETCH_LIMIT = 50
+    }
+
+    private val cache = Collections.newSetFromMap(IdentityHashMap<SnapshotNode, Boolean>())
+
+    /** Simulated binder calls since the last [reset]. */
+    var ipcCount = 0
+        private set
+
+    /** The root, as the service already holds it (e.g. an event's source). */
+    fun root(): ScanNode = Node(root)
+
+    /** Clear the counter and the node cache, as a content change invalidates it. */
+    fun reset() {
+        ipcCount = 0
+        cache.clear()
+    }
+
+    private fun fetch(node: SnapshotNode) {
+        if (node in cache) return
+        ipcCount++
+        onIpc()
+        if (prefetch) {
+            var budget = batch
+            fun fill(parent: SnapshotNode) {
+                for (child in parent.children) {
+                    if (budget == 0) return
+                    budget--
+                    cache.add(child)
+                    fill(child)
+                }
+            }
+            fill(node)
+        }
+    }
+
+    private inner class Node(private val snapshot: SnapshotNode) : ScanNode {
+        override val text: CharSequence?
+            get() = snapshot.text
+
+        override val contentDescription: CharSequence?
+            get() = snapshot.contentDescription
+
+        override val viewId: String?
+            get() = snapshot.viewId
+
+        override val childCount: Int
+            get() = snapshot.children.size
+
+        override fun getChild(index: Int): ScanNode? {
+            val child = snapshot.children.getOrNull(index) ?: return null
+            fetch(child)
+            return Node(child)
+        }
+    }
+}
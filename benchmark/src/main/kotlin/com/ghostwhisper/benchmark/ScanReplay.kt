@@ -0,0 +1,149 @@
+package com.ghostwhisper.benchmark
+
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.scan.ChannelSecret
+import com.ghostwhisper.scan.KeyResolver
+import com.ghostwhisper.scan.PayloadScanner
+import com.ghostwhisper.scan.ScanTraceFormat
+import com.ghostwhisper.scan.TraceEvent
+import java.io.File
+import java.util.Locale
+import kotlin.system.exitProcess
+import kotlinx.coroutines.runBlocking
+
+/**
+ * Replays a recorded accessibility trace through [PayloadScanner], the way
+ * `GhostWhisperService.handleContentChanged` would: every content-changed event with a source
+ * snapshot is scanned in full, one after another. Other event types are counted but cost nothing
+ * here — on device they don't scan either.
+ *
+ * Decrypted messages are discarded; only the work is measured.
+ */
+class ScanReplay(private val events: List<TraceEvent>, secrets: Collection<ChannelSecret>) {
+
+    private val secretsById = secrets.associateBy { it.keyId }
+    private val scanner =
+            PayloadScanner(keys = KeyResolver { secretsById[it] }, onDecrypted = {})
+
+    /** Totals for one or more passes over the trace. */
+    class Report(
+            val events: Int,
+            val scans: Int,
+            val nodesVisited: Long,
+            val payloadsFound: Long,
+            val decrypts: Long,
+            val elapsedNanos: Long,
+            /** Per-scan latency, sorted ascending. */
+            private val latenciesNanos: LongArray
+    ) {
+        val eventsPerSecond: Double
+            get() = if (elapsedNanos == 0L) 0.0 else events * 1e9 / elapsedNanos
+
+        /** Scan latency at percentile [p] (0–100), nearest-rank. */
+        fun latencyNanos(p: Double): Long {
+            if (latenciesNanos.isEmpty()) return 0
+            val rank =
+                    Math.ceil(p / 100.0 * latenciesNanos.size)
+                            .toInt()
+                            .coerceIn(1, latenciesNanos.size)
+            return latenciesNanos[rank - 1]
+        }
+
+        override fun toString(): String {
+            return String.format(
+                    Locale.US,
+                    "%,d events (%,d scans) in %.1f ms: %,.0f events/s, %,d nodes visited, " +
+                            "%,d payloads, %,d decrypts, scan latency p50 %.1f us / p99 %.1f us",
+                    events,
+                    scans,
+                    elapsedNanos / 1e6,
+                    eventsPerSecond,
+                    nodesVisited,
+                    payloadsFound,
+                    decrypts,
+                    latencyNanos(50.0) / 1e3,
+                    latencyNanos(99.0) / 1e3
+            )
+        }
+    }
+
+    /** Replay the trace [passes] times and report the combined result. */
+    fun run(passes: Int = 1): Report = runBlocking {
+        var nodes = 0L
+        var payloads = 0L
+        var decrypts = 0L
+        val latencies = ArrayList<Long>()
+        val start = System.nanoTime()
+        repeat(passes) {
+            for (event in events) {
+                if (event.type != TraceEvent.TYPE_WINDOW_CONTENT_CHANGED) continue
+                val root = event.root ?: continue
+                val scanStart = System.nanoTime()
+                val stats = scanner.scan(root)
+                latencies.add(System.nanoTime() - scanStart)
+                nodes += stats.nodesVisited
+                payloads += stats.payloadsFound
+                decrypts += stats.decrypts
+            }
+        }
+        val elapsed = System.nanoTime() - start
+        Report(
+                events = events.size * passes,
+                scans = latencies.size,
+                nodesVisited = nodes,
+                payloadsFound = payloads,
+                decrypts = decrypts,
+                elapsedNanos = elapsed,
+                latenciesNanos = latencies.toLongArray().apply { sort() }
+        )
+    }
+
+    companion object {
+        /** Parse `Channel Name=base64Key` pairs; key IDs are derived as the app does. */
+        fun parseSecrets(specs: List<String>): List<ChannelSecret> {
+            return specs.map { spec ->
+                // Base64 may end in '=' padding, so split on the first '='
+                val separator = spec.indexOf('=')
+                require(separator > 0) { "Expected <channel name>=<base64 key>, got '$spec'" }
+                val name = spec.substring(0, separator)
+                ChannelSecret(
+                        keyId = AESCrypto.deriveKeyId(name),
+                        channelName = name,
+                        key = AESCrypto.keyFromBase64(spec.substring(separator + 1))
+                )
+            }
+        }
+    }
+}
+
+/**
+ * `ScanReplay <trace.gwtrace> [--key "Channel=base64Key"]... [--passes N] [--warmup N]`
+ *
+ * Without keys, payloads are found but never decrypted — still a fair measure of the tree walk.
+ */
+fun main(args: Array<String>) {
+    var trace: File? = null
+    val keySpecs = mutableListOf<String>()
+    var passes = 5
+    var warmup = 2
+    var i = 0
+    while (i < args.size) {
+        when (val arg = args[i++]) {
+            "--key" -> keySpecs.add(args[i++])
+            "--passes" -> passes = args[i++].toInt()
+            "--warmup" -> warmup = args[i++].toInt()
+            else -> trace = File(arg)
+        }
+    }
+    if (trace == null || !trace.isFile) {
+        System.err.println("usage: ScanReplay <trace.gwtrace> [--key Name=base64]... [--passes N]")
+        exitProcess(2)
+    }
+
+    val events = trace.inputStream().use { ScanTraceFormat.read(it) }
+    val replay = ScanReplay(events, ScanReplay.parseSecrets(keySpecs))
+    println("Loaded ${events.size} events from ${trace.name}")
+
+    if (warmup > 0) replay.run(warmup)
+    repeat(passes) { pass -> println("pass ${pass + 1}: ${replay.run()}") }
+}
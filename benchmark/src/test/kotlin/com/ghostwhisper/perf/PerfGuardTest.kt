@@ -0,0 +1,134 @@
+package com.ghostwhisper.perf
+
+import com.ghostwhisper.benchmark.Fixtures
+import com.ghostwhisper.crypto.AESCrypto
+import com.ghostwhisper.data.model.GhostPacket
+import com.ghostwhisper.service.DctCodec
+import com.ghostwhisper.service.GifHelper
+import com.ghostwhisper.service.LsbCodec
+import com.ghostwhisper.stegano.SteganoCodec
+import java.io.File
+import org.junit.AfterClass
+import org.junit.Assert.*
+import org.junit.Test
+
+/**
+ * Perf regression guard for the hot paths, compared against `perf-baseline.json`.
+ *
+ * Each scenario fails if its calibrated cost grows past `perf.maxSlowdown` times the baseline,
+ * or its bytes/op past `perf.maxAllocIncrease` times the baseline. Scenarios missing from the
+ * baseline only report their numbers.
+ *
+ * Run with `./gradlew :benchmark:perfGuard` (not part of `:benchmark:test`); refresh the
+ * baseline with `./gradlew :benchmark:updatePerfBaseline` after an intentional change.
+ */
+class PerfGuardTest {
+
+    companion object {
+        /** Allocation noise floor, so tiny per-op numbers don't flap. */
+        private const val ALLOC_SLACK_BYTES = 1024.0
+
+        private val baselineFile =
+                File(System.getProperty("perf.baseline") ?: "perf-baseline.json")
+        private val updateBaseline = System.getProperty("perf.updateBaseline") == "true"
+        private val maxSlowdown = System.getProperty("perf.maxSlowdown")?.toDouble() ?: 2.0
+        private val maxAllocIncrease =
+                System.getProperty("perf.maxAllocIncrease")?.toDouble() ?: 1.25
+
+        private val baseline = PerfHarness.Baseline(baselineFile)
+
+        @JvmStatic
+        @AfterClass
+        fun saveBaseline() {
+            if (updateBaseline) baseline.save()
+        }
+    }
+
+    private val key = AESCrypto.generateKey()
+    private val packetBytes = Fixtures.packet(Fixtures.chatMessage(280), key).toBytes()
+
+    @Test
+    fun textPipeline() {
+        val plaintext = Fixtures.chatMessage(280)
+        val keyId = AESCrypto.deriveKeyId("Benchmark Channel")
+
+        guard("textPipeline") {
+            val encrypted = AESCrypto.encrypt(plaintext, key)
+            val packet =
+                    GhostPacket(
+                            keyId = keyId,
+                            iv = encrypted.ivBase64(),
+                            ciphertext = encrypted.ciphertextBase64()
+                    )
+            val message =
+                    SteganoCodec.injectPayload("Noted 👍", SteganoCodec.encode(packet.toBytes()))
+
+            val payload = SteganoCodec.extractPayload(message)!!
+            val received = GhostPacket.fromBytes(SteganoCodec.decode(payload))
+            val decrypted = AESCrypto.decrypt(received.ciphertextBytes(), key, received.ivBytes())
+            check(decrypted == plaintext)
+            decrypted
+        }
+    }
+
+    @Test
+    fun lsbRoundTrip() {
+        val image = Fixtures.noiseImage(1000, 1000)
+        guard("lsbRoundTrip") {
+            LsbCodec.embed(image, packetBytes)
+            LsbCodec.extract(image)!!
+        }
+    }
+
+    @Test
+    fun dctRoundTrip() {
+        // Robust mode costs a DCT + IDCT per payload bit; a short message keeps this quick
+        val shortPacket = Fixtures.packet(Fixtures.chatMessage(32), key).toBytes()
+        val image = Fixtures.noiseImage(1000, 1000)
+        guard("dctRoundTrip") {
+            DctCodec.embed(image, shortPacket)
+            DctCodec.extract(image)!!
+        }
+    }
+
+    @Test
+    fun gifRoundTrip() {
+        val gif = Fixtures.syntheticGif(5 * 1024 * 1024)
+        val packetJson = String(packetBytes, Charsets.UTF_8)
+        guard("gifRoundTrip") { GifHelper.extract(GifHelper.embed(gif, packetJson))!! }
+    }
+
+    private fun guard(name: String, op: () -> Any) {
+        val current = PerfHarness.measure(op)
+        val reference = baseline.get(name)
+        val referenceText =
+                reference?.let { "%.3f, %.0f B/op".format(it.relativeCost, it.bytesPerOp) }
+        println(
+                "[perf] $name: %.1f us/op, %.0f B/op, cost %.3f (baseline: %s)"
+                        .format(
+                                current.nsPerOp / 1000,
+                                current.bytesPerOp,
+                                current.relativeCost,
+                                referenceText ?: "none"
+                        )
+        )
+
+        if (updateBaseline) {
+            baseline.put(name, current)
+            return
+        }
+        if (reference == null) return
+
+        val slowdown = current.relativeCost / reference.relativeCost
+        assertTrue(
+                "$name is %.2fx slower than baseline (limit %.2fx)".format(slowdown, maxSlowdown),
+                slowdown <= maxSlowdown
+        )
+        val allocLimit = reference.bytesPerOp * maxAllocIncrease + ALLOC_SLACK_BYTES
+        assertTrue(
+                "$name allocates %.0f B/op, baseline %.0f B/op (limit %.0f)"
+                        .format(current.bytesPerOp, reference.bytesPerOp, allocLimit),
+                current.bytesPerOp <= allocLimit
+        )
+    }
+}
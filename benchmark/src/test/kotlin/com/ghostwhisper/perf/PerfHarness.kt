@@ -0,0 +1,140 @@
+package com.ghostwhisper.perf
+
+import java.io.File
+import java.lang.management.ManagementFactory
+import org.json.JSONObject
+
+/**
+ * Minimal in-process measurement for the perf guard suite — short, warmed-up, and good enough
+ * to catch a hot path getting 2x slower or allocating a new copy of its input. Use the JMH
+ * benchmarks for real numbers.
+ *
+ * Times are stored normalized against [calibrationNanos] (a fixed integer/array loop measured in
+ * the same JVM), so a baseline recorded on one machine is usable on another. The loop is plain
+ * Kotlin like the code under test: a library routine such as SHA-256 may be replaced by a CPU
+ * intrinsic on some hosts and not others, which would skew every ratio. Allocation is reported
+ * as bytes/op from the thread allocation counter and compared as-is.
+ */
+object PerfHarness {
+
+    /** One scenario's result. [relativeCost] is ns/op divided by the calibration's ns/op. */
+    data class Measurement(val nsPerOp: Double, val bytesPerOp: Double, val relativeCost: Double)
+
+    private const val WARMUP_NANOS = 300_000_000L
+    private const val BATCH_NANOS = 20_000_000L
+    private const val BATCHES = 15
+
+    /** Ops slower than a whole batch get fewer batches, keeping each scenario to a few seconds. */
+    private const val SLOW_OP_BATCHES = 5
+
+    private val threadBean =
+            ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+
+    private val calibrationPixels = IntArray(64 * 1024) { it * -0x61c88647 }
+
+    /** ns/op of the calibration workload in this JVM (measured once, lazily). */
+    val calibrationNanos: Double by lazy { time { calibrate(calibrationPixels) }.first }
+
+    /**
+     * The calibration workload: one pass over [pixels] that hashes each value and rewrites its
+     * low bit, like the LSB codec's inner loop. The running hash makes every step depend on the
+     * one before, so the JIT can't vectorize it differently from one CPU to the next.
+     */
+    private fun calibrate(pixels: IntArray): Int {
+        var hash = -0x7ee3623b // FNV-1a offset basis
+        for (i in pixels.indices) {
+            val pixel = pixels[i]
+            hash = (hash xor pixel) * 0x01000193
+            pixels[i] = (pixel and 1.inv()) or (hash ushr 31)
+        }
+        return hash
+    }
+
+    /** Measure [op]: warm up, then the median ns/op over several batches, plus bytes/op. */
+    fun measure(op: () -> Any?): Measurement {
+        val (nsPerOp, bytesPerOp) = time(op)
+        return Measurement(nsPerOp, bytesPerOp, nsPerOp / calibrationNanos)
+    }
+
+    private fun time(op: () -> Any?): Pair<Double, Double> {
+        var sink = 0
+        val warmupEnd = System.nanoTime() + WARMUP_NANOS
+        var opsPerBatch = 0L
+        while (System.nanoTime() < warmupEnd) {
+            sink += op().hashCode()
+            opsPerBatch++
+        }
+        val batches = if (opsPerBatch * BATCH_NANOS < WARMUP_NANOS) SLOW_OP_BATCHES else BATCHES
+        opsPerBatch = (opsPerBatch * BATCH_NANOS / WARMUP_NANOS).coerceAtLeast(1)
+
+        val samples = DoubleArray(batches)
+        val threadId = Thread.currentThread().id
+        var allocated = 0L
+        for (batch in 0 until batches) {
+            val allocBefore = threadBean.getThreadAllocatedBytes(threadId)
+            val start = System.nanoTime()
+            for (i in 0 until opsPerBatch) sink += op().hashCode()
+            samples[batch] = (System.nanoTime() - start).toDouble() / opsPerBatch
+            allocated += threadBean.getThreadAllocatedBytes(threadId) - allocBefore
+        }
+        if (sink == 42) print("") // keep results observable to the JIT
+        samples.sort()
+        return samples[batches / 2] to allocated.toDouble() / (opsPerBatch * batches)
+    }
+
+    /** Checked-in baseline: scenario name -> measurement. */
+    class Baseline(private val file: File) {
+        private val entries: JSONObject =
+                if (file.exists()) JSONObject(file.readText()).getJSONObject("scenarios")
+                else JSONObject()
+
+        fun get(name: String): Measurement? {
+            val entry = entries.optJSONObject(name) ?: return null
+            return Measurement(
+                    nsPerOp = entry.getDouble("nsPerOp"),
+                    bytesPerOp = entry.getDouble("bytesPerOp"),
+                    relativeCost = entry.getDouble("relativeCost")
+            )
+        }
+
+        fun put(name: String, measurement: Measurement) {
+            entries.put(
+                    name,
+                    JSONObject()
+                            .put("nsPerOp", round(measurement.nsPerOp))
+                            .put("bytesPerOp", round(measurement.bytesPerOp))
+                            .put("relativeCost", round(measurement.relativeCost))
+            )
+        }
+
+        /** Write back, keeping scenarios that weren't re-measured in this run. */
+        fun save() {
+            // Written by hand so keys stay sorted and diffs of the checked-in file stay readable
+            val scenarios =
+                    entries.keySet().sorted().joinToString(",\n") { name ->
+                        val entry = entries.getJSONObject(name)
+                        "    \"$name\": {" +
+                                " \"nsPerOp\": ${entry.getDouble("nsPerOp")}," +
+                                " \"bytesPerOp\": ${entry.getDouble("bytesPerOp")}," +
+                                " \"relativeCost\": ${entry.getDouble("relativeCost")} }"
+                    }
+            file.writeText(
+                    """
+                    |{
+                    |  "note": "Generated by ./gradlew :benchmark:updatePerfBaseline. $NOTE",
+                    |  "calibrationNsPerOp": ${round(calibrationNanos)},
+                    |  "scenarios": {
+                    |$scenarios
+                    |  }
+                    |}
+                    |""".trimMargin()
+            )
+        }
+
+        private fun round(value: Double) = Math.round(value * 1000) / 1000.0
+
+        private companion object {
+            const val NOTE = "relativeCost = nsPerOp / calibration loop (64 Ki ints) nsPerOp."
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.ghostwhisper.perf
+
+import com.ghostwhisper.benchmark.ChatTreeGenerator
+import com.ghostwhisper.benchmark.ChatTreeGenerator.Kind
+import com.ghostwhisper.scan.KeyResolver
+import com.ghostwhisper.scan.PayloadScanner
+import com.ghostwhisper.scan.ScanStats
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+
+/**
+ * Load tests for the payload scan over synthetic chat screens of 100–10,000 messages.
+ *
+ * Counts are asserted exactly; timings are printed (cold first sighting vs. warm re-scan, per
+ * message) so growth with window size is visible in the test log without making the suite flaky.
+ */
+class ScanStressTest {
+
+    private fun scannerFor(generator: ChatTreeGenerator, capacity: Int): PayloadScanner {
+        val secrets = generator.ownSecrets.associateBy { it.keyId }
+        return PayloadScanner(
+                keys = KeyResolver { secrets[it] },
+                cacheCapacity = capacity,
+                onDecrypted = {}
+        )
+    }
+
+    private fun countKind(generator: ChatTreeGenerator, range: IntRange, kind: Kind): Int {
+        return range.count { generator.kindOf(it) == kind }
+    }
+
+    @Test
+    fun costPerMessageAcrossWindowSizes() = runBlocking {
+        for (window in listOf(100, 1_000, 10_000)) {
+            val generator =
+                    ChatTreeGenerator(
+                            ChatTreeGenerator.Config(
+                                    messagesPerScreen = window,
+                                    zeroWidthFraction = 0.3,
+                                    chaffFraction = 0.3
+                            )
+                    )
+            val frame = generator.frame(0)
+            val visible = 0 until window
+            val own = countKind(generator, visible, Kind.OWN_PAYLOAD)
+            val zeroWidth = window - countKind(generator, visible, Kind.PLAIN)
+            // Cache sized for the window, as on device where it covers a few screens
+            val scanner = scannerFor(generator, capacity = window)
+
+            val coldStart = System.nanoTime()
+            val cold = scanner.scan(frame)
+            val coldNanos = System.nanoTime() - coldStart
+            val warmStart = System.nanoTime()
+            val warm = scanner.scan(frame)
+            val warmNanos = System.nanoTime() - warmStart
+
+            assertEquals(generator.nodesPerFrame, cold.nodesVisited)
+            assertEquals(zeroWidth, cold.payloadsFound)
+            assertEquals(own, cold.decrypts)
+            assertEquals(0, warm.decrypts)
+            assertEquals(zeroWidth, warm.cacheHits)
+            assertEquals(own, warm.hits)
+            println(
+                    "[scan] %,6d messages: cold %.2f us/msg, warm %.2f us/msg (%d own payloads)"
+                            .format(window, coldNanos / 1e3 / window, warmNanos / 1e3 / window, own)
+            )
+        }
+    }
+
+    @Test
+    fun scrollingOnlyDecryptsNewlyVisibleMessages() = runBlocking {
+        val generator =
+                ChatTreeGenerator(
+                        ChatTreeGenerator.Config(messagesPerScreen = 30, scrollDelta = 5)
+                )
+        val frames = 200
+        val scanner = scannerFor(generator, PayloadScanner.DEFAULT_CACHE_CAPACITY)
+
+        var total = ScanStats()
+        repeat(frames) { total += scanner.scan(generator.frame(it)) }
+
+        // Each distinct bubble is decoded once, however many frames it stays on screen
+        val seen = 0 until generator.firstMessage(frames - 1) + 30
+        val distinctZeroWidth = seen.count { generator.kindOf(it) != Kind.PLAIN }
+        assertEquals(countKind(generator, seen, Kind.OWN_PAYLOAD), total.decrypts)
+        assertEquals(distinctZeroWidth, total.payloadsFound - total.cacheHits)
+    }
+
+    @Test
+    fun windowLargerThanCacheThrashesButStaysBounded() = runBlocking {
+        val generator =
+                ChatTreeGenerator(
+                        ChatTreeGenerator.Config(messagesPerScreen = 2_000, zeroWidthFraction = 0.5)
+                )
+        val scanner = scannerFor(generator, PayloadScanner.DEFAULT_CACHE_CAPACITY)
+        val own = countKind(generator, 0 until 2_000, Kind.OWN_PAYLOAD)
+
+        scanner.scan(generator.frame(0))
+        val second = scanner.scan(generator.frame(0))
+
+        // Scanned in order, an LRU smaller than the window evicts everything before reuse
+        assertEquals(own, second.decrypts)
+        assertEquals(0, second.cacheHits)
+        assertTrue(scanner.cacheSize <= PayloadScanner.DEFAULT_CACHE_CAPACITY)
+    }
+
+    @Test
+    fun chaffAndForeignPayloadsNeverDecrypt() = runBlocking {
+        val generator =
+                ChatTreeGenerator(
+                        ChatTreeGenerator.Config(
+                                messagesPerScreen = 1_000,
+                                zeroWidthFraction = 1.0,
+                                chaffFraction = 0.5,
+                                ownKeyFraction = 0.0
+                        )
+                )
+        val scanner = scannerFor(generator, capacity = 1_000)
+
+        val stats = scanner.scan(generator.frame(0))
+
+        assertEquals(1_000, stats.payloadsFound)
+        assertEquals(0, stats.decrypts)
+    }
+}
@@ -0,0 +1,50 @@
+package com.ghostwhisper.perf
+
+import com.ghostwhisper.benchmark.ChatTreeGenerator
+import com.ghostwhisper.benchmark.RemoteTree
+import com.ghostwhisper.scan.KeyResolver
+import com.ghostwhisper.scan.PayloadScanner
+import com.ghostwhisper.scan.TreeSnapshot
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+
+/**
+ * Binder calls per payload scan, live recursion vs. prefetching snapshot, over simulated remote
+ * chat screens (see [RemoteTree]). Call counts are deterministic, so they are asserted; the
+ * table is printed for comparison with ScanTraversalBenchmark timings.
+ */
+class ScanTraversalTest {
+
+    @Test
+    fun snapshotWithPrefetchCutsCallsPerScan() = runBlocking {
+        for (messages in listOf(20, 200, 1_000)) {
+            val generator =
+                    ChatTreeGenerator(ChatTreeGenerator.Config(messagesPerScreen = messages))
+            val frame = generator.frame(0)
+            val secrets = generator.ownSecrets.associateBy { it.keyId }
+            val scanner = PayloadScanner(KeyResolver { secrets[it] }, onDecrypted = {})
+
+            val live = RemoteTree(frame, prefetch = false)
+            val before = scanner.scan(live.root())
+
+            val prefetched = RemoteTree(frame, prefetch = true)
+            val tree = TreeSnapshot.capture(prefetched.root())
+            val after = scanner.scan(tree)
+
+            // Same nodes, same findings
+            assertEquals(generator.nodesPerFrame, tree.size)
+            assertEquals(before.nodesVisited, after.nodesVisited)
+            assertEquals(before.payloadsFound, after.payloadsFound)
+            assertEquals(before.hits, after.hits)
+
+            // Every node but the root is one call when fetched one by one
+            assertEquals(generator.nodesPerFrame - 1, live.ipcCount)
+            println(
+                    "[traversal] %,5d nodes: %,5d calls live, %,4d with prefetch"
+                            .format(tree.size, live.ipcCount, prefetched.ipcCount)
+            )
+            assertTrue(prefetched.ipcCount * 3 < live.ipcCount)
+        }
+    }
+}
@@ -22,3 +22,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "GhostWhisper"
 include(":app")
+include(":benchmark")